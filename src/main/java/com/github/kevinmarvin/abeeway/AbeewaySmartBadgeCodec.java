@@ -9,12 +9,17 @@ import com.github.kevinmarvin.abeeway.models.UplinkData;
 import com.github.kevinmarvin.abeeway.enums.MessageType;
 import com.github.kevinmarvin.abeeway.decoders.*;
 import com.github.kevinmarvin.abeeway.encoders.CommandEncoder;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand;
 import com.github.kevinmarvin.abeeway.encoders.ParameterEncoder;
+import com.github.kevinmarvin.abeeway.encoders.ParameterTemplate;
 import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
 import com.github.kevinmarvin.abeeway.utils.BitUtils;
 import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.MacAddressCache;
+import com.github.kevinmarvin.abeeway.utils.TimestampParser;
 import com.github.kevinmarvin.abeeway.utils.ValidationUtils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -30,20 +35,37 @@ public class AbeewaySmartBadgeCodec {
     private final PositionDecoder positionDecoder;
     private final ConfigurationDecoder configurationDecoder;
     private final EventDecoder eventDecoder;
+    private final ProximityDecoder proximityDecoder;
     private final CommonFieldsDecoder commonFieldsDecoder;
     private final CommandEncoder commandEncoder;
     private final ParameterEncoder parameterEncoder;
     
     public AbeewaySmartBadgeCodec() {
-        this.positionDecoder = new PositionDecoder();
+        this(null);
+    }
+    
+    /**
+     * Create a codec that interns decoded WiFi BSSIDs, BLE beacon MACs and proximity peer MACs.
+     * Share one cache between codec instances to maximise reuse across a fleet.
+     *
+     * @param macAddressCache The interning cache, or null to disable interning
+     */
+    public AbeewaySmartBadgeCodec(MacAddressCache macAddressCache) {
+        this.positionDecoder = new PositionDecoder(macAddressCache);
         this.configurationDecoder = new ConfigurationDecoder();
         this.eventDecoder = new EventDecoder();
+        this.proximityDecoder = new ProximityDecoder(macAddressCache);
         this.commonFieldsDecoder = new CommonFieldsDecoder();
-        this.commandEncoder = new CommandEncoder();
         this.parameterEncoder = new ParameterEncoder();
-        
-        // Initialize configuration decoder parameters
-        this.configurationDecoder.initializeParameters();
+        this.commandEncoder = new CommandEncoder(parameterEncoder);
+    }
+
+    /**
+     * Set the RSSI threshold, in dBm, at or above which a detected peer is reported as a contact.
+     * Should match the {@code proximityThreshold} parameter configured on the badges.
+     */
+    public void setProximityThreshold(int rssiDbm) {
+        proximityDecoder.setContactThreshold(rssiDbm);
     }
 
     /**
@@ -58,8 +80,36 @@ public class AbeewaySmartBadgeCodec {
     public DecodedUplink decodeUplink(byte[] bytes, int fPort, String timestamp) 
             throws DecodingException {
         
-        List<String> errors = new ArrayList<>();
         List<String> warnings = new ArrayList<>();
+        long timestampMillis = UplinkData.NO_TIMESTAMP;
+        if (timestamp != null && !timestamp.isEmpty()) {
+            try {
+                timestampMillis = TimestampParser.parse(timestamp);
+            } catch (IllegalArgumentException e) {
+                warnings.add("Invalid timestamp: " + timestamp);
+            }
+        }
+        return decodeUplink(bytes, fPort, timestampMillis, warnings);
+    }
+    
+    /**
+     * Decodes an uplink message from an Abeeway Smart Badge device.
+     *
+     * @param bytes           The raw payload bytes
+     * @param fPort           The LoRaWAN frame port
+     * @param timestampMillis Reception time in epoch milliseconds, or {@link UplinkData#NO_TIMESTAMP}
+     * @return DecodedUplink containing the decoded data and any errors/warnings
+     * @throws DecodingException if the payload cannot be decoded
+     */
+    public DecodedUplink decodeUplink(byte[] bytes, int fPort, long timestampMillis) 
+            throws DecodingException {
+        return decodeUplink(bytes, fPort, timestampMillis, new ArrayList<>());
+    }
+    
+    private DecodedUplink decodeUplink(byte[] bytes, int fPort, long timestampMillis, List<String> warnings) 
+            throws DecodingException {
+        
+        List<String> errors = new ArrayList<>();
         
         try {
             // Validate input parameters
@@ -73,6 +123,7 @@ public class AbeewaySmartBadgeCodec {
             
             // Create uplink data container
             UplinkData data = new UplinkData();
+            data.setTimestampMillis(timestampMillis);
             data.setPayload(ByteUtils.bytesToHex(bytes));
             
             // Step 1: Determine message type
@@ -251,8 +302,8 @@ public class AbeewaySmartBadgeCodec {
     }
     
     private void decodeProximityDetection(UplinkData data, byte[] bytes) {
-        // Extract proximity detection data
-        // Implementation would depend on specific payload format
+        // Extract detected peer badges
+        proximityDecoder.decodeProximity(data, bytes);
     }
     
     private void decodeSMS(UplinkData data, byte[] bytes) {
@@ -284,6 +335,30 @@ public class AbeewaySmartBadgeCodec {
         return commandEncoder.encodeDownlink(commandData, fPort);
     }
     
+    /**
+     * Encode a typed downlink command.
+     *
+     * @param command The command to encode
+     * @param fPort   The LoRaWAN frame port
+     * @return EncodedDownlink containing the encoded bytes
+     * @throws EncodingException if the command cannot be encoded
+     */
+    public EncodedDownlink encodeCommand(DownlinkCommand command, int fPort) throws EncodingException {
+        return commandEncoder.encode(command, fPort);
+    }
+    
+    /**
+     * Encode a typed downlink command at the position of a caller-provided buffer.
+     *
+     * @param command The command to encode
+     * @param buffer  The buffer receiving the frame
+     * @return The size of the frame
+     * @throws EncodingException if the command cannot be encoded or the buffer is too small
+     */
+    public int encodeCommand(DownlinkCommand command, ByteBuffer buffer) throws EncodingException {
+        return commandEncoder.encode(command, buffer);
+    }
+    
     /**
      * Encode device parameters using the high-level parameter builder.
      *
@@ -297,6 +372,31 @@ public class AbeewaySmartBadgeCodec {
         return parameterEncoder.encodeParameters(params, fPort);
     }
     
+    /**
+     * Encode device parameters at the position of a caller-provided buffer, so that frames
+     * for many devices can be written without allocating.
+     *
+     * @param params The parameters to encode
+     * @param buffer The buffer receiving the frame
+     * @return The size of the frame
+     * @throws EncodingException if the parameters cannot be encoded or the buffer is too small
+     */
+    public int encodeParameters(AbeewayParams params, ByteBuffer buffer) 
+            throws EncodingException {
+        return parameterEncoder.encodeParameters(params, buffer);
+    }
+    
+    /**
+     * Compile device parameters once into a template encoding per-device variants of them.
+     *
+     * @param params The parameters shared by the devices
+     * @return The compiled template
+     * @throws EncodingException if the parameters cannot be encoded
+     */
+    public ParameterTemplate compileParameters(AbeewayParams params) throws EncodingException {
+        return parameterEncoder.compile(params);
+    }
+    
     /**
      * Encode a configuration command (mode change, config request, etc.).
      *
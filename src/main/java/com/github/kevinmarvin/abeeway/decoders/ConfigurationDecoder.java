@@ -1,7 +1,8 @@
 package com.github.kevinmarvin.abeeway.decoders;
 
+import com.github.kevinmarvin.abeeway.models.BitmapValue;
 import com.github.kevinmarvin.abeeway.models.UplinkData;
-import com.github.kevinmarvin.abeeway.utils.BitUtils;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
 import com.github.kevinmarvin.abeeway.utils.ByteUtils;
 
 import java.util.HashMap;
@@ -13,8 +14,15 @@ import java.util.Map;
  */
 public class ConfigurationDecoder {
     
-    // Parameter definitions would typically be loaded from parameters.json
-    private final Map<Integer, ParameterDefinition> parametersById = new HashMap<>();
+    private final ParameterSchema schema;
+    
+    public ConfigurationDecoder() {
+        this(ParameterSchema.getDefault());
+    }
+    
+    public ConfigurationDecoder(ParameterSchema schema) {
+        this.schema = schema;
+    }
     
     /**
      * Decode configuration message.
@@ -32,7 +40,7 @@ public class ConfigurationDecoder {
             offset++;
             
             // Get parameter definition
-            ParameterDefinition paramDef = parametersById.get(paramId);
+            com.github.kevinmarvin.abeeway.parameters.ParameterDefinition paramDef = schema.get(paramId);
             if (paramDef == null) {
                 // Skip unknown parameter - need to determine length somehow
                 break;
@@ -53,7 +61,8 @@ public class ConfigurationDecoder {
     /**
      * Decode a single parameter based on its definition.
      */
-    private Object decodeParameter(byte[] payload, int offset, ParameterDefinition paramDef) {
+    private Object decodeParameter(byte[] payload, int offset,
+            com.github.kevinmarvin.abeeway.parameters.ParameterDefinition paramDef) {
         if (offset + paramDef.getSize() > payload.length) {
             return null;
         }
@@ -73,22 +82,12 @@ public class ConfigurationDecoder {
     /**
      * Decode a number parameter.
      */
-    private Object decodeNumberParameter(byte[] payload, int offset, ParameterDefinition paramDef) {
-        int size = paramDef.getSize();
-        long rawValue;
-        
-        if (size == 1) {
-            rawValue = ByteUtils.toUnsigned(payload[offset]);
-        } else if (size == 2) {
-            rawValue = ByteUtils.bytesToInt(payload, offset, 2);
-        } else if (size <= 4) {
-            rawValue = ByteUtils.bytesToLong(payload, offset, size);
-        } else {
-            return null; // Unsupported size
-        }
+    private Object decodeNumberParameter(byte[] payload, int offset,
+            com.github.kevinmarvin.abeeway.parameters.ParameterDefinition paramDef) {
+        long rawValue = readRaw(payload, offset, paramDef);
         
         // Apply scaling if defined
-        if (paramDef.getMultiplier() != null && paramDef.getMultiplier() != 1.0) {
+        if (paramDef.getMultiplier() != 1.0) {
             return rawValue * paramDef.getMultiplier();
         }
         
@@ -98,74 +97,65 @@ public class ConfigurationDecoder {
     /**
      * Decode a string parameter (enum mapping).
      */
-    private Object decodeStringParameter(byte[] payload, int offset, ParameterDefinition paramDef) {
-        int size = paramDef.getSize();
-        long rawValue;
-        
-        if (size == 1) {
-            rawValue = ByteUtils.toUnsigned(payload[offset]);
-        } else if (size <= 4) {
-            rawValue = ByteUtils.bytesToLong(payload, offset, size);
-        } else {
-            return null;
-        }
-        
+    private Object decodeStringParameter(byte[] payload, int offset,
+            com.github.kevinmarvin.abeeway.parameters.ParameterDefinition paramDef) {
         // Map raw value to string using parameter definition
-        return paramDef.mapValueToString((int) rawValue);
+        return paramDef.mapValueToString((int) readRaw(payload, offset, paramDef));
     }
     
     /**
-     * Decode a bitmap parameter.
+     * Read a big-endian raw value, sign-extended when the parameter range is signed.
      */
-    private Object decodeBitmapParameter(byte[] payload, int offset, ParameterDefinition paramDef) {
+    private static long readRaw(byte[] payload, int offset,
+            com.github.kevinmarvin.abeeway.parameters.ParameterDefinition paramDef) {
         int size = paramDef.getSize();
-        Map<String, Object> bitmap = new HashMap<>();
-        
-        // Read raw bytes
-        for (int i = 0; i < size && offset + i < payload.length; i++) {
-            int byteValue = ByteUtils.toUnsigned(payload[offset + i]);
-            
-            // Decode individual bits according to parameter definition
-            for (int bit = 0; bit < 8; bit++) {
-                boolean bitValue = BitUtils.getBit(byteValue, bit);
-                String bitName = paramDef.getBitName(i * 8 + bit);
-                if (bitName != null) {
-                    bitmap.put(bitName, bitValue);
-                }
-            }
+        long rawValue = ByteUtils.bytesToLong(payload, offset, size);
+        if (paramDef.isSigned()) {
+            int unused = 64 - size * 8;
+            rawValue = (rawValue << unused) >> unused;
         }
-        
-        return bitmap;
+        return rawValue;
     }
     
     /**
-     * Initialize parameter definitions.
-     * In a full implementation, this would load from parameters.json.
+     * Decode a bitmap parameter, the first byte holding flags 0 to 7.
      */
+    private Object decodeBitmapParameter(byte[] payload, int offset,
+            com.github.kevinmarvin.abeeway.parameters.ParameterDefinition paramDef) {
+        long bits = 0;
+        for (int i = 0; i < paramDef.getSize(); i++) {
+            bits |= (long) ByteUtils.toUnsigned(payload[offset + i]) << (i * 8);
+        }
+        return new BitmapValue(paramDef, bits);
+    }
+    
+    /**
+     * Formerly loaded the placeholder parameter definitions; the decoder now reads the
+     * {@link ParameterSchema} given to its constructor.
+     *
+     * @deprecated No longer needed, to be removed in the next release.
+     */
+    @Deprecated
     public void initializeParameters() {
-        // Example parameter definitions
-        parametersById.put(0x01, new ParameterDefinition(
-            0x01, "ul_period", ParameterType.NUMBER, 2, 1.0, null
-        ));
-        
-        parametersById.put(0x02, new ParameterDefinition(
-            0x02, "lora_period", ParameterType.NUMBER, 2, 1.0, null
-        ));
-        
-        // Add more parameter definitions as needed
     }
     
     /**
      * Parameter type enumeration.
+     *
+     * @deprecated Use {@link com.github.kevinmarvin.abeeway.parameters.ParameterType}.
      */
+    @Deprecated
     public enum ParameterType {
         NUMBER, STRING, BITMAP
     }
     
     /**
-     * Parameter definition class.
-     * In a full implementation, this would be loaded from JSON.
+     * Parameter definition class, no longer read by the decoder.
+     *
+     * @deprecated Use {@link com.github.kevinmarvin.abeeway.parameters.ParameterDefinition}
+     * from the {@link ParameterSchema}.
      */
+    @Deprecated
     public static class ParameterDefinition {
         private final int id;
         private final String name;
@@ -204,4 +194,4 @@ public class ConfigurationDecoder {
             bitNames.put(bitPosition, name);
         }
     }
-}
\ No newline at end of file
+}
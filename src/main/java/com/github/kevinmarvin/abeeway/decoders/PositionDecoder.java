@@ -4,6 +4,7 @@ import com.github.kevinmarvin.abeeway.enums.*;
 import com.github.kevinmarvin.abeeway.models.*;
 import com.github.kevinmarvin.abeeway.utils.BitUtils;
 import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.MacAddressCache;
 import com.github.kevinmarvin.abeeway.utils.ValidationUtils;
 
 import java.util.ArrayList;
@@ -16,6 +17,22 @@ import java.util.List;
  */
 public class PositionDecoder {
     
+    // Optional interning cache for WiFi BSSIDs and BLE beacon MACs
+    private final MacAddressCache macAddressCache;
+    
+    public PositionDecoder() {
+        this(null);
+    }
+    
+    /**
+     * Create a decoder that shares MAC address strings through the given cache.
+     *
+     * @param macAddressCache The interning cache, or null to format a new string per access point
+     */
+    public PositionDecoder(MacAddressCache macAddressCache) {
+        this.macAddressCache = macAddressCache;
+    }
+    
     /**
      * Decode a position message.
      */
@@ -169,14 +186,13 @@ public class PositionDecoder {
         if (offset + 6 > payload.length) return null;
         
         // Extract MAC address (6 bytes)
-        byte[] macBytes = Arrays.copyOfRange(payload, offset, offset + 6);
-        String macAddress = ByteUtils.bytesToHex(macBytes);
+        String macAddress = decodeMacAddress(payload, offset);
         
         // Extract RSSI (1 byte)
         int rssi = payload[offset + 6] & 0xFF;
         if (rssi > 127) rssi = rssi - 256; // Convert to signed
         
-        WiFiAccessPoint ap = new WiFiAccessPoint(formatMacAddress(macAddress), rssi);
+        WiFiAccessPoint ap = new WiFiAccessPoint(macAddress, rssi);
         
         if (withCypher && offset + 7 <= payload.length) {
             int cypherInfo = ByteUtils.toUnsigned(payload[offset + 6]);
@@ -216,14 +232,13 @@ public class PositionDecoder {
         if (offset + 7 > payload.length) return null;
         
         // Extract MAC address (6 bytes)
-        byte[] macBytes = Arrays.copyOfRange(payload, offset, offset + 6);
-        String macAddress = ByteUtils.bytesToHex(macBytes);
+        String macAddress = decodeMacAddress(payload, offset);
         
         // Extract RSSI (1 byte)
         int rssi = payload[offset + 6] & 0xFF;
         if (rssi > 127) rssi = rssi - 256;
         
-        return new BleBeacon(formatMacAddress(macAddress), rssi);
+        return new BleBeacon(macAddress, rssi);
     }
     
     /**
@@ -360,16 +375,10 @@ public class PositionDecoder {
     }
     
     /**
-     * Format MAC address with colons.
+     * Decode a 6-byte MAC address formatted with colons, shared through the cache when configured.
      */
-    private String formatMacAddress(String macAddress) {
-        if (macAddress.length() != 12) return macAddress;
-        
-        StringBuilder formatted = new StringBuilder();
-        for (int i = 0; i < macAddress.length(); i += 2) {
-            if (i > 0) formatted.append(":");
-            formatted.append(macAddress.substring(i, i + 2));
-        }
-        return formatted.toString();
+    private String decodeMacAddress(byte[] payload, int offset) {
+        long mac = ByteUtils.macToLong(payload, offset);
+        return macAddressCache != null ? macAddressCache.intern(mac) : ByteUtils.formatMacAddress(mac);
     }
 }
\ No newline at end of file
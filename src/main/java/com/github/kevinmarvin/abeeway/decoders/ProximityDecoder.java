@@ -0,0 +1,95 @@
+package com.github.kevinmarvin.abeeway.decoders;
+
+import com.github.kevinmarvin.abeeway.models.ProximityData;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.MacAddressCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder for proximity detection messages from Abeeway Smart Badge devices.
+ * <p>
+ * Each detected peer badge is reported as its 6-byte BLE MAC address followed by a signed
+ * RSSI byte, the same record layout as BLE beacon positions. Distances are estimated with a
+ * log-distance path loss model, and peers at or above the proximity threshold are classified
+ * as {@link #CONTACT}, others as {@link #DETECTED}.
+ */
+public class ProximityDecoder {
+
+    public static final String CONTACT = "CONTACT";
+    public static final String DETECTED = "DETECTED";
+
+    /** Default of the {@code proximityThreshold} parameter, in dBm. */
+    public static final int DEFAULT_CONTACT_THRESHOLD = -70;
+
+    // Expected RSSI at 1 m and path loss exponent of a badge worn on the body, indoors
+    private static final double RSSI_AT_ONE_METER = -59.0;
+    private static final double PATH_LOSS_EXPONENT = 2.0;
+
+    private static final int RECORD_SIZE = 7; // MAC (6) + RSSI (1)
+
+    private final MacAddressCache macAddressCache;
+    private volatile int contactThreshold = DEFAULT_CONTACT_THRESHOLD;
+
+    public ProximityDecoder() {
+        this(null);
+    }
+
+    /**
+     * Create a decoder that shares peer MAC address strings through the given cache.
+     *
+     * @param macAddressCache The interning cache, or null to format a new string per peer
+     */
+    public ProximityDecoder(MacAddressCache macAddressCache) {
+        this.macAddressCache = macAddressCache;
+    }
+
+    /**
+     * Decode a proximity detection message.
+     */
+    public void decodeProximity(UplinkData data, byte[] payload) {
+        int startIndex = 1; // Skip the first byte (message type info)
+        int recordCount = Math.max(0, (payload.length - startIndex) / RECORD_SIZE);
+        List<ProximityData> peers = new ArrayList<>(recordCount);
+        int threshold = contactThreshold;
+
+        for (int i = 0; i < recordCount; i++) {
+            int offset = startIndex + (i * RECORD_SIZE);
+            long mac = ByteUtils.macToLong(payload, offset);
+            String peerId = macAddressCache != null ? macAddressCache.intern(mac) : ByteUtils.formatMacAddress(mac);
+            int rssi = payload[offset + 6];
+
+            ProximityData peer = new ProximityData(peerId, rssi);
+            peer.setDistance(estimateDistance(rssi));
+            peer.setProximityType(rssi >= threshold ? CONTACT : DETECTED);
+            peers.add(peer);
+        }
+
+        data.setProximityData(peers);
+    }
+
+    /**
+     * Set the RSSI at or above which a peer counts as a contact, normally the
+     * {@code proximityThreshold} parameter configured on the badges.
+     */
+    public void setContactThreshold(int rssiDbm) {
+        if (rssiDbm < -100 || rssiDbm > -30) {
+            throw new IllegalArgumentException("Contact threshold must be between -100 and -30 dBm: " + rssiDbm);
+        }
+        this.contactThreshold = rssiDbm;
+    }
+
+    public int getContactThreshold() {
+        return contactThreshold;
+    }
+
+    /**
+     * Estimate the distance to a peer in meters from its RSSI, rounded to centimeters.
+     */
+    public static double estimateDistance(int rssi) {
+        double meters = Math.pow(10.0, (RSSI_AT_ONE_METER - rssi) / (10.0 * PATH_LOSS_EXPONENT));
+        return Math.round(meters * 100.0) / 100.0;
+    }
+}
@@ -1,16 +1,128 @@
 package com.github.kevinmarvin.abeeway.encoders;
 
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand.Debug;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand.PositionOnDemand;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand.RequestConfiguration;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand.ResetConfiguration;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand.SetMode;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand.SetParameters;
 import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
 import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
 import com.github.kevinmarvin.abeeway.utils.ByteUtils;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
  * Encoder for downlink commands to Abeeway Smart Badge devices.
+ * <p>
+ * Typed {@link DownlinkCommand}s are written straight into caller buffers. The frames of
+ * commands without arguments are shared read-only, see {@link #constantFrame}.
  */
 public class CommandEncoder {
     
+    private static final byte REQUEST_CONFIG = 0x01;
+    private static final byte SET_MODE = 0x02;
+    private static final byte POSITION_ON_DEMAND = 0x04;
+    private static final byte RESET_CONFIG = 0x05;
+    private static final byte DEBUG = 0x07;
+    
+    private static final ByteBuffer REQUEST_CONFIG_FRAME = constant(REQUEST_CONFIG);
+    private static final ByteBuffer POSITION_ON_DEMAND_FRAME = constant(POSITION_ON_DEMAND);
+    private static final ByteBuffer RESET_CONFIG_FRAME = constant(RESET_CONFIG);
+    
+    private final ParameterEncoder parameterEncoder;
+    
+    public CommandEncoder() {
+        this(new ParameterEncoder());
+    }
+    
+    /**
+     * @param parameterEncoder Encoder of {@link SetParameters} commands
+     */
+    public CommandEncoder(ParameterEncoder parameterEncoder) {
+        this.parameterEncoder = parameterEncoder;
+    }
+    
+    /**
+     * Get the frame of a command without arguments, as a read-only view of bytes shared by
+     * every caller, or null if the command has arguments.
+     */
+    public static ByteBuffer constantFrame(DownlinkCommand command) {
+        ByteBuffer frame;
+        if (command instanceof RequestConfiguration) {
+            frame = REQUEST_CONFIG_FRAME;
+        } else if (command instanceof PositionOnDemand) {
+            frame = POSITION_ON_DEMAND_FRAME;
+        } else if (command instanceof ResetConfiguration) {
+            frame = RESET_CONFIG_FRAME;
+        } else {
+            return null;
+        }
+        // Own position and limit for each caller
+        return frame.duplicate();
+    }
+    
+    /**
+     * Encode a typed command.
+     */
+    public EncodedDownlink encode(DownlinkCommand command, int fPort) throws EncodingException {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(command));
+        encode(command, buffer);
+        return new EncodedDownlink(buffer.array(), fPort);
+    }
+    
+    /**
+     * Encode a typed command at the position of a buffer, which is left after the frame.
+     * The position is left unchanged if the command cannot be encoded.
+     *
+     * @return The size of the frame
+     * @throws EncodingException if the command cannot be encoded or the buffer is too small
+     */
+    public int encode(DownlinkCommand command, ByteBuffer buffer) throws EncodingException {
+        if (command instanceof SetParameters setParameters) {
+            return parameterEncoder.encodeParameters(setParameters.params(), buffer);
+        }
+        int start = buffer.position();
+        try {
+            if (command instanceof RequestConfiguration) {
+                buffer.put(REQUEST_CONFIG);
+            } else if (command instanceof PositionOnDemand) {
+                buffer.put(POSITION_ON_DEMAND);
+            } else if (command instanceof ResetConfiguration) {
+                buffer.put(RESET_CONFIG);
+            } else if (command instanceof SetMode setMode) {
+                // Mode codes follow the declaration order of Mode
+                buffer.put(SET_MODE).put((byte) setMode.mode().ordinal());
+            } else if (command instanceof Debug debug) {
+                buffer.put(DEBUG).put(debug.payload());
+            } else {
+                throw new EncodingException("Unknown downlink command: " + command);
+            }
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            throw new EncodingException("Buffer too small for " + command.messageType() + " command");
+        }
+        return buffer.position() - start;
+    }
+    
+    /**
+     * Get the size of the frame of a typed command.
+     */
+    public int encodedSize(DownlinkCommand command) throws EncodingException {
+        if (command instanceof SetParameters setParameters) {
+            return parameterEncoder.encodedSize(setParameters.params());
+        } else if (command instanceof SetMode) {
+            return 2;
+        } else if (command instanceof Debug debug) {
+            return 1 + debug.payload().length;
+        }
+        return 1;
+    }
+    
     /**
      * Encode a downlink command.
      */
@@ -91,9 +203,9 @@ public class CommandEncoder {
     }
     
     /**
-     * Encode set parameter command.
+     * Encode set parameter command, with the value sized and ordered as by the parameter encoder.
      */
-    private byte[] encodeSetParameter(Map<String, Object> data) {
+    private byte[] encodeSetParameter(Map<String, Object> data) throws EncodingException {
         Object paramId = data.get("parameterId");
         Object paramValue = data.get("parameterValue");
         
@@ -102,14 +214,11 @@ public class CommandEncoder {
         }
         
         int id = ((Number) paramId).intValue();
-        int value = ((Number) paramValue).intValue();
-        
-        return new byte[]{
-            0x09, // Set parameter command
-            (byte) id,
-            (byte) (value & 0xFF),
-            (byte) ((value >> 8) & 0xFF)
-        };
+        if (id < 0 || id >= ParameterSchema.MAX_PARAMETERS) {
+            throw new IllegalArgumentException("Invalid parameter ID: " + id);
+        }
+        AbeewayParams params = AbeewayParams.builder().setCustomParameter(id, paramValue).build();
+        return parameterEncoder.encodeParameters(params, 0).getBytes();
     }
     
     /**
@@ -128,4 +237,8 @@ public class CommandEncoder {
                 throw new IllegalArgumentException("Unknown mode: " + mode);
         }
     }
-}
\ No newline at end of file
+    
+    private static ByteBuffer constant(byte command) {
+        return ByteBuffer.wrap(new byte[]{command}).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.kevinmarvin.abeeway.encoders;
+
+import com.github.kevinmarvin.abeeway.enums.DownMessageType;
+import com.github.kevinmarvin.abeeway.enums.Mode;
+import com.github.kevinmarvin.abeeway.enums.OptionalCommand;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+
+/**
+ * Typed downlink command, encoded by {@link CommandEncoder#encode(DownlinkCommand, java.nio.ByteBuffer)}
+ * without building a map. Commands without arguments are singletons.
+ * <p>
+ * Only the commands with a known frame layout are defined; the other values of
+ * {@link OptionalCommand} and {@link DownMessageType} have no encoding in this codec.
+ */
+public sealed interface DownlinkCommand {
+
+    /** Request the device configuration, frame {@code 0x01}. */
+    RequestConfiguration REQUEST_CONFIG = new RequestConfiguration();
+
+    /** Request a position, frame {@code 0x04}. */
+    PositionOnDemand POSITION_ON_DEMAND = new PositionOnDemand();
+
+    /** Reset the configuration to its defaults, frame {@code 0x05}. */
+    ResetConfiguration RESET_CONFIG = new ResetConfiguration();
+
+    /**
+     * Get the downlink message type of the command, UNKNOWN if it has none.
+     */
+    DownMessageType messageType();
+
+    /**
+     * Get the optional command of the command, UNKNOWN if it has none.
+     */
+    OptionalCommand command();
+
+    record RequestConfiguration() implements DownlinkCommand {
+        public DownMessageType messageType() { return DownMessageType.REQUEST_CONFIG; }
+        public OptionalCommand command() { return OptionalCommand.REQUEST_CONFIG; }
+    }
+
+    record PositionOnDemand() implements DownlinkCommand {
+        public DownMessageType messageType() { return DownMessageType.POSITION_ON_DEMAND; }
+        public OptionalCommand command() { return OptionalCommand.REQUEST_POSITION; }
+    }
+
+    record ResetConfiguration() implements DownlinkCommand {
+        public DownMessageType messageType() { return DownMessageType.UNKNOWN; }
+        public OptionalCommand command() { return OptionalCommand.RESET_CONFIG; }
+    }
+
+    /**
+     * Switch the tracking mode, frame {@code 0x02} followed by the mode code.
+     */
+    record SetMode(Mode mode) implements DownlinkCommand {
+        public SetMode {
+            if (mode == null || mode == Mode.UNKNOWN) {
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+        }
+
+        public DownMessageType messageType() { return DownMessageType.SET_MODE; }
+        public OptionalCommand command() { return OptionalCommand.SET_MODE; }
+    }
+
+    /**
+     * Set parameters, encoded as by {@link ParameterEncoder}.
+     */
+    record SetParameters(AbeewayParams params) implements DownlinkCommand {
+        public SetParameters {
+            if (params == null) {
+                throw new IllegalArgumentException("Missing parameters");
+            }
+        }
+
+        public DownMessageType messageType() { return DownMessageType.SET_PARAM; }
+        public OptionalCommand command() { return OptionalCommand.SET_PARAM; }
+    }
+
+    /**
+     * Debug command, frame {@code 0x07} followed by the payload. The payload is not copied.
+     */
+    record Debug(byte[] payload) implements DownlinkCommand {
+        public Debug {
+            if (payload == null) {
+                throw new IllegalArgumentException("Missing debug payload");
+            }
+        }
+
+        public DownMessageType messageType() { return DownMessageType.DEBUG_COMMAND; }
+        public OptionalCommand command() { return OptionalCommand.UNKNOWN; }
+    }
+}
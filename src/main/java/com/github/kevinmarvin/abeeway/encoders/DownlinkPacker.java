@@ -0,0 +1,232 @@
+package com.github.kevinmarvin.abeeway.encoders;
+
+import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
+import com.github.kevinmarvin.abeeway.models.PackedDownlink;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a parameter set into the fewest SET_PARAM downlinks fitting the maximum application
+ * payload of a LoRaWAN region and data rate, and gives the time on air of each frame.
+ * <p>
+ * Parameters are packed first-fit decreasing: the largest encoded parameters are placed
+ * first, each in the first frame with room left. Within a frame parameters are kept in id
+ * order. Payload limits are those of the LoRaWAN regional parameters without FOpts, and the
+ * time on air follows the Semtech LoRa modem formula for a downlink: explicit header, coding
+ * rate 4/5, no payload CRC, an 8-symbol preamble and the 13 bytes of MAC header, frame
+ * header, port and MIC around the payload.
+ */
+public class DownlinkPacker {
+
+    /** Bytes added by the MAC layer to the application payload without FOpts. */
+    public static final int MAC_OVERHEAD = 13;
+
+    private static final byte SET_PARAM = 0x09;
+    private static final int PREAMBLE_SYMBOLS = 8;
+    private static final int CODING_RATE = 1;
+
+    /**
+     * LoRaWAN region, with the spreading factor, bandwidth and maximum application payload
+     * of its downlink data rates. Data rates not used for LoRa downlinks have no entry.
+     */
+    public enum Region {
+        EU868(new int[]{12, 11, 10, 9, 8, 7, 7}, new int[]{125, 125, 125, 125, 125, 125, 250},
+            new int[]{51, 51, 51, 115, 222, 222, 222}),
+        AS923(new int[]{12, 11, 10, 9, 8, 7, 7}, new int[]{125, 125, 125, 125, 125, 125, 250},
+            new int[]{51, 51, 51, 115, 222, 222, 222}),
+        IN865(new int[]{12, 11, 10, 9, 8, 7}, new int[]{125, 125, 125, 125, 125, 125},
+            new int[]{51, 51, 51, 115, 222, 222}),
+        KR920(new int[]{12, 11, 10, 9, 8, 7}, new int[]{125, 125, 125, 125, 125, 125},
+            new int[]{51, 51, 51, 115, 222, 222}),
+        US915(new int[]{0, 0, 0, 0, 0, 0, 0, 0, 12, 11, 10, 9, 8, 7},
+            new int[]{0, 0, 0, 0, 0, 0, 0, 0, 500, 500, 500, 500, 500, 500},
+            new int[]{0, 0, 0, 0, 0, 0, 0, 0, 33, 109, 222, 222, 222, 222}),
+        AU915(new int[]{0, 0, 0, 0, 0, 0, 0, 0, 12, 11, 10, 9, 8, 7},
+            new int[]{0, 0, 0, 0, 0, 0, 0, 0, 500, 500, 500, 500, 500, 500},
+            new int[]{0, 0, 0, 0, 0, 0, 0, 0, 33, 109, 222, 222, 222, 222});
+
+        private final int[] spreadingFactors;
+        private final int[] bandwidthsKhz;
+        private final int[] maxPayloads;
+
+        Region(int[] spreadingFactors, int[] bandwidthsKhz, int[] maxPayloads) {
+            this.spreadingFactors = spreadingFactors;
+            this.bandwidthsKhz = bandwidthsKhz;
+            this.maxPayloads = maxPayloads;
+        }
+
+        /**
+         * Check whether a data rate is a LoRa downlink data rate of the region.
+         */
+        public boolean supports(int dataRate) {
+            return dataRate >= 0 && dataRate < maxPayloads.length && maxPayloads[dataRate] > 0;
+        }
+
+        /**
+         * Get the maximum application payload of a data rate, in bytes.
+         */
+        public int getMaxPayload(int dataRate) {
+            return maxPayloads[check(dataRate)];
+        }
+
+        public int getSpreadingFactor(int dataRate) {
+            return spreadingFactors[check(dataRate)];
+        }
+
+        public int getBandwidthKhz(int dataRate) {
+            return bandwidthsKhz[check(dataRate)];
+        }
+
+        /**
+         * Get the first data rate using a spreading factor, or -1.
+         */
+        public int dataRateOf(int spreadingFactor) {
+            for (int dataRate = 0; dataRate < spreadingFactors.length; dataRate++) {
+                if (maxPayloads[dataRate] > 0 && spreadingFactors[dataRate] == spreadingFactor) {
+                    return dataRate;
+                }
+            }
+            return -1;
+        }
+
+        private int check(int dataRate) {
+            if (!supports(dataRate)) {
+                throw new IllegalArgumentException("No LoRa downlink data rate " + dataRate + " in " + name());
+            }
+            return dataRate;
+        }
+    }
+
+    private final Region region;
+    private final ParameterEncoder encoder;
+
+    public DownlinkPacker(Region region) {
+        this(region, new ParameterEncoder());
+    }
+
+    public DownlinkPacker(Region region, ParameterEncoder encoder) {
+        this.region = region;
+        this.encoder = encoder;
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+
+    /**
+     * Pack parameters into the fewest SET_PARAM downlinks fitting a data rate.
+     *
+     * @throws EncodingException if a parameter cannot be encoded
+     * @throws IllegalArgumentException if the region has no such downlink data rate
+     */
+    public List<PackedDownlink> pack(AbeewayParams params, int dataRate, int fPort) throws EncodingException {
+        int maxPayload = region.getMaxPayload(dataRate);
+        int capacity = maxPayload - 1;
+
+        // Encode every parameter once, keeping the offset, size and id of its bytes
+        int count = params.getParameterNames().size();
+        ByteBuffer encoded = ByteBuffer.allocate(encoder.encodedSize(params));
+        long[] items = new long[count];
+        int item = 0;
+        for (String paramName : params.getParameterNames()) {
+            int offset = encoded.position();
+            int size = encoder.encodeParameter(paramName, params.getParameter(paramName), encoded);
+            int id = encoded.get(offset) & 0xFF;
+            // Sort key: decreasing size, then increasing id
+            items[item++] = (long) (0xFF - size) << 40 | (long) id << 32 | (long) offset << 8 | size;
+        }
+        Arrays.sort(items);
+
+        // First fit decreasing
+        int[] free = new int[count];
+        long[][] bins = new long[count][];
+        int[] binSizes = new int[count];
+        int binCount = 0;
+        for (long packed : items) {
+            int size = (int) (packed & 0xFF);
+            int bin = 0;
+            while (bin < binCount && free[bin] < size) {
+                bin++;
+            }
+            if (bin == binCount) {
+                free[binCount] = capacity;
+                bins[binCount++] = new long[count];
+            }
+            free[bin] -= size;
+            bins[bin][binSizes[bin]++] = packed;
+        }
+
+        List<PackedDownlink> downlinks = new ArrayList<>(binCount);
+        for (int bin = 0; bin < binCount; bin++) {
+            long[] binItems = Arrays.copyOf(bins[bin], binSizes[bin]);
+            // Drop the size from the sort key to keep parameters in id order within a frame
+            for (int i = 0; i < binItems.length; i++) {
+                binItems[i] = binItems[i] & 0xFF_FFFF_FFFFL;
+            }
+            Arrays.sort(binItems);
+            byte[] frame = new byte[1 + capacity - free[bin]];
+            frame[0] = SET_PARAM;
+            int length = 1;
+            for (long packed : binItems) {
+                int offset = (int) (packed >>> 8) & 0xFFFFFF;
+                int size = (int) (packed & 0xFF);
+                System.arraycopy(encoded.array(), offset, frame, length, size);
+                length += size;
+            }
+            downlinks.add(describe(frame, fPort, dataRate, binItems.length));
+        }
+        return downlinks;
+    }
+
+    /**
+     * Get the time on air of an application payload at a data rate of the region.
+     */
+    public double timeOnAirMillis(int payloadSize, int dataRate) {
+        return timeOnAirMillis(payloadSize, region.getSpreadingFactor(dataRate), region.getBandwidthKhz(dataRate));
+    }
+
+    /**
+     * Get the time on air of an application payload for spreading factors 7 to 12, at the
+     * bandwidth of the region's data rate using each, NaN where the region has none.
+     */
+    public double[] timeOnAirBySpreadingFactor(int payloadSize) {
+        double[] timeOnAir = new double[6];
+        for (int spreadingFactor = 7; spreadingFactor <= 12; spreadingFactor++) {
+            int dataRate = region.dataRateOf(spreadingFactor);
+            timeOnAir[spreadingFactor - 7] = dataRate < 0 ? Double.NaN
+                : timeOnAirMillis(payloadSize, spreadingFactor, region.getBandwidthKhz(dataRate));
+        }
+        return timeOnAir;
+    }
+
+    /**
+     * Get the time on air of a downlink application payload, in milliseconds.
+     *
+     * @param payloadSize     Application payload size, without the MAC overhead
+     * @param spreadingFactor 7 to 12
+     * @param bandwidthKhz    125, 250 or 500
+     */
+    public static double timeOnAirMillis(int payloadSize, int spreadingFactor, int bandwidthKhz) {
+        double symbolMillis = (double) (1 << spreadingFactor) / bandwidthKhz;
+        // Low data rate optimisation when symbols last 16 ms or more
+        int lowDataRate = symbolMillis >= 16 ? 1 : 0;
+        int physicalPayload = payloadSize + MAC_OVERHEAD;
+        double numerator = 8 * physicalPayload - 4 * spreadingFactor + 28;
+        int payloadSymbols = 8 + Math.max(
+            (int) Math.ceil(numerator / (4 * (spreadingFactor - 2 * lowDataRate))) * (CODING_RATE + 4), 0);
+        return (PREAMBLE_SYMBOLS + 4.25 + payloadSymbols) * symbolMillis;
+    }
+
+    private PackedDownlink describe(byte[] frame, int fPort, int dataRate, int parameterCount) {
+        PackedDownlink downlink = new PackedDownlink(frame, fPort);
+        downlink.setDataRate(dataRate);
+        downlink.setParameterCount(parameterCount);
+        downlink.setTimeOnAirMillis(timeOnAirMillis(frame.length, dataRate));
+        downlink.setTimeOnAirBySpreadingFactor(timeOnAirBySpreadingFactor(frame.length));
+        return downlink;
+    }
+}
@@ -1,58 +1,125 @@
 package com.github.kevinmarvin.abeeway.encoders;
 
 import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
+import com.github.kevinmarvin.abeeway.models.BitmapValue;
 import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
 import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
-import com.github.kevinmarvin.abeeway.parameters.ParameterRegistry;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
 import com.github.kevinmarvin.abeeway.utils.ByteUtils;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Encoder for Abeeway Smart Badge parameters using high-level parameter objects.
+ * Each parameter is written as its id followed by its value, big-endian on the size given by
+ * the {@link ParameterSchema}; ids unknown to the schema take 4 bytes. Bitmap parameters also
+ * accept a {@link BitmapValue}.
  */
 public class ParameterEncoder {
     
-    private final ParameterRegistry registry = ParameterRegistry.getInstance();
+    /** Value size of parameters missing from the schema. */
+    public static final int DEFAULT_VALUE_SIZE = 4;
+    
+    private static final byte SET_PARAM = 0x09;
+    
+    // Frames are built here before being copied to their exact size
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+    
+    private final ParameterSchema schema;
+    
+    public ParameterEncoder() {
+        this(ParameterSchema.getDefault());
+    }
+    
+    public ParameterEncoder(ParameterSchema schema) {
+        this.schema = schema;
+    }
     
     /**
      * Encode a set of parameters for downlink transmission.
      */
     public EncodedDownlink encodeParameters(AbeewayParams params, int fPort) throws EncodingException {
-        List<Byte> encodedBytes = new ArrayList<>();
-        
-        // Add SET_PARAM command header
-        encodedBytes.add((byte) 0x09); // SET_PARAM command
-        
-        // Encode each parameter
-        Map<String, Object> parameters = params.getParameters();
-        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
-            String paramName = entry.getKey();
-            Object value = entry.getValue();
-            
-            // Handle custom parameters (by ID)
-            if (paramName.startsWith("custom_")) {
-                int paramId = Integer.parseInt(paramName.substring(7));
-                encodeParameter(encodedBytes, paramId, value);
-            } else {
-                // Look up parameter ID from registry
-                Integer paramId = registry.getParameterId(paramName);
-                if (paramId == null) {
-                    throw new EncodingException("Unknown parameter: " + paramName);
-                }
-                encodeParameter(encodedBytes, paramId, value);
-            }
+        ByteBuffer buffer = SCRATCH.get();
+        int size;
+        while ((size = write(params, buffer.clear())) < 0) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            SCRATCH.set(buffer);
         }
-        
-        // Convert to byte array
-        byte[] result = new byte[encodedBytes.size()];
-        for (int i = 0; i < encodedBytes.size(); i++) {
-            result[i] = encodedBytes.get(i);
+        return new EncodedDownlink(Arrays.copyOf(buffer.array(), size), fPort);
+    }
+    
+    /**
+     * Get the size of the SET_PARAM frame of a set of parameters.
+     *
+     * @throws EncodingException if a parameter name is unknown
+     */
+    public int encodedSize(AbeewayParams params) throws EncodingException {
+        int size = 1;
+        for (String paramName : params.getParameterNames()) {
+            ParameterDefinition definition = schema.get(parameterId(paramName));
+            size += 1 + (definition != null ? definition.getSize() : DEFAULT_VALUE_SIZE);
+        }
+        return size;
+    }
+    
+    /**
+     * Encode a set of parameters as a SET_PARAM frame at the position of a buffer, which is
+     * left after the frame. The position is left unchanged if the frame cannot be encoded.
+     *
+     * @return The size of the frame
+     * @throws EncodingException if a parameter cannot be encoded or the buffer is too small
+     */
+    public int encodeParameters(AbeewayParams params, ByteBuffer buffer) throws EncodingException {
+        int size = write(params, buffer);
+        if (size < 0) {
+            throw new EncodingException("Buffer too small: " + encodedSize(params) + " bytes needed, "
+                + buffer.remaining() + " remaining");
+        }
+        return size;
+    }
+    
+    /**
+     * Encode one parameter, its id then its value, without the SET_PARAM header, at the
+     * position of a buffer.
+     *
+     * @param paramName Parameter name, or {@code custom_<id>}
+     * @return The encoded size
+     * @throws EncodingException if the parameter cannot be encoded or the buffer is too small
+     */
+    public int encodeParameter(String paramName, Object value, ByteBuffer buffer) throws EncodingException {
+        int start = buffer.position();
+        try {
+            encodeParameter(buffer, parameterId(paramName), value);
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            throw new EncodingException("Buffer too small for parameter " + paramName);
+        }
+        return buffer.position() - start;
+    }
+    
+    /**
+     * Write a frame in one pass over the parameters.
+     *
+     * @return The size of the frame, or -1 if the buffer is too small
+     */
+    private int write(AbeewayParams params, ByteBuffer buffer) throws EncodingException {
+        int start = buffer.position();
+        try {
+            buffer.put(SET_PARAM);
+            for (String paramName : params.getParameterNames()) {
+                encodeParameter(buffer, parameterId(paramName), params.getParameter(paramName));
+            }
+            return buffer.position() - start;
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            return -1;
+        } catch (EncodingException e) {
+            buffer.position(start);
+            throw e;
         }
-        
-        return new EncodedDownlink(result, fPort);
     }
     
     /**
@@ -119,35 +186,76 @@ public class ParameterEncoder {
         return new ConfigurationCommand(ConfigurationCommand.Type.RESET_CONFIG, null);
     }
     
+    /**
+     * Precompile the SET_PARAM frame of a set of parameters, to encode many variants of it.
+     *
+     * @throws EncodingException if a parameter cannot be encoded
+     */
+    public ParameterTemplate compile(AbeewayParams params) throws EncodingException {
+        return new ParameterTemplate(this, params);
+    }
+    
+    /**
+     * Get the id of a parameter name, custom parameters being named by their id.
+     */
+    int parameterId(String paramName) throws EncodingException {
+        if (paramName.startsWith("custom_")) {
+            return Integer.parseInt(paramName.substring(7));
+        }
+        int paramId = schema.getId(paramName);
+        if (paramId < 0) {
+            throw new EncodingException("Unknown parameter: " + paramName);
+        }
+        return paramId;
+    }
+    
     /**
      * Encode a single parameter.
      */
-    private void encodeParameter(List<Byte> bytes, int parameterId, Object value) throws EncodingException {
-        // Add parameter ID
-        bytes.add((byte) parameterId);
+    private void encodeParameter(ByteBuffer buffer, int parameterId, Object value) throws EncodingException {
+        int size = valueSize(parameterId);
+        long raw = rawValue(parameterId, value);
         
-        // Encode value based on type
-        if (value instanceof Number) {
-            int intValue = ((Number) value).intValue();
-            
-            // Determine encoding size based on parameter ID (simplified logic)
-            if (intValue <= 255) {
-                // Single byte value
-                bytes.add((byte) intValue);
-            } else if (intValue <= 65535) {
-                // Two byte value (little endian)
-                bytes.add((byte) (intValue & 0xFF));
-                bytes.add((byte) ((intValue >> 8) & 0xFF));
-            } else {
-                // Four byte value (little endian)
-                bytes.add((byte) (intValue & 0xFF));
-                bytes.add((byte) ((intValue >> 8) & 0xFF));
-                bytes.add((byte) ((intValue >> 16) & 0xFF));
-                bytes.add((byte) ((intValue >> 24) & 0xFF));
+        // Add parameter ID, then the value big-endian
+        buffer.put((byte) parameterId);
+        for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+            buffer.put((byte) (raw >> shift));
+        }
+    }
+    
+    /**
+     * Get the value size of a parameter id.
+     */
+    int valueSize(int parameterId) {
+        ParameterDefinition definition = schema.get(parameterId);
+        return definition != null ? definition.getSize() : DEFAULT_VALUE_SIZE;
+    }
+    
+    /**
+     * Get the raw value of a parameter, as written on {@link #valueSize} bytes.
+     */
+    long rawValue(int parameterId, Object value) throws EncodingException {
+        ParameterDefinition definition = schema.get(parameterId);
+        if (value instanceof BitmapValue) {
+            BitmapValue bitmap = (BitmapValue) value;
+            int size = valueSize(parameterId);
+            if (bitmap.getDefinition().getId() != parameterId || bitmap.getDefinition().getSize() != size) {
+                throw new EncodingException("Bitmap of " + bitmap.getDefinition().getName()
+                    + " given for parameter " + parameterId);
+            }
+            // Flag 0 goes in the first byte
+            return Long.reverseBytes(bitmap.getBits()) >>> (64 - size * 8);
+        } else if (definition != null) {
+            try {
+                return definition.toRaw(value);
+            } catch (IllegalArgumentException e) {
+                throw new EncodingException(e.getMessage(), e);
             }
-        } else {
-            throw new EncodingException("Unsupported parameter value type: " + value.getClass());
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
         }
+        throw new EncodingException("Unsupported parameter value type: "
+            + (value == null ? "null" : value.getClass()));
     }
     
     /**
@@ -0,0 +1,132 @@
+package com.github.kevinmarvin.abeeway.encoders;
+
+import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
+import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of SET_PARAM frames keyed by the content of the parameter set,
+ * for campaigns pushing one configuration to many devices.
+ * <p>
+ * Equal parameter sets, even built separately, are encoded once. The downlinks handed out are
+ * immutable and copy the cached frame on every {@link EncodedDownlink#getBytes()}, so callers
+ * may modify the bytes they get; {@link #frame} gives a read-only view of the frame without
+ * copying it. The least recently used frame is evicted once the cache is full.
+ */
+public class ParameterEncodingCache {
+
+    private final ParameterEncoder encoder;
+    private final int maximumSize;
+    private final Map<AbeewayParams, byte[]> frames;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ParameterEncodingCache(int maximumSize) {
+        this(new ParameterEncoder(), maximumSize);
+    }
+
+    public ParameterEncodingCache(ParameterEncoder encoder, int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.encoder = encoder;
+        this.maximumSize = maximumSize;
+        this.frames = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<AbeewayParams, byte[]> eldest) {
+                return size() > ParameterEncodingCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Encode a set of parameters, reusing the frame of any equal set encoded before.
+     *
+     * @return An immutable downlink, whose getBytes() returns a new copy of the frame
+     */
+    public EncodedDownlink encodeParameters(AbeewayParams params, int fPort) throws EncodingException {
+        return new CachedDownlink(bytes(params), fPort);
+    }
+
+    /**
+     * Get the SET_PARAM frame of a set of parameters as a read-only buffer.
+     */
+    public ByteBuffer frame(AbeewayParams params) throws EncodingException {
+        return ByteBuffer.wrap(bytes(params)).asReadOnlyBuffer();
+    }
+
+    private byte[] bytes(AbeewayParams params) throws EncodingException {
+        synchronized (frames) {
+            byte[] cached = frames.get(params);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        // Encoded outside the lock; a concurrent miss on the same set keeps the first frame
+        byte[] encoded = encoder.encodeParameters(params, 0).getBytes();
+        synchronized (frames) {
+            byte[] cached = frames.putIfAbsent(params, encoded);
+            return cached != null ? cached : encoded;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of cached frames.
+     */
+    public int size() {
+        synchronized (frames) {
+            return frames.size();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void clear() {
+        synchronized (frames) {
+            frames.clear();
+        }
+    }
+
+    /**
+     * Downlink over a cached frame, which is never exposed.
+     */
+    private static final class CachedDownlink extends EncodedDownlink {
+
+        CachedDownlink(byte[] frame, int fPort) {
+            super(frame, fPort);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return super.getBytes().clone();
+        }
+
+        @Override
+        public void setBytes(byte[] bytes) {
+            throw new UnsupportedOperationException("Cached downlinks are immutable");
+        }
+
+        @Override
+        public void setfPort(int fPort) {
+            throw new UnsupportedOperationException("Cached downlinks are immutable");
+        }
+    }
+}
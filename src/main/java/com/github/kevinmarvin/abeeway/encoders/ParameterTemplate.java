@@ -0,0 +1,131 @@
+package com.github.kevinmarvin.abeeway.encoders;
+
+import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
+import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SET_PARAM frame of a campaign configuration compiled once, with the position of each value,
+ * so that per-device variants only copy the frame and overwrite the overridden values.
+ * Overrides must name parameters of the template; the frame layout never changes.
+ * Immutable and thread-safe.
+ *
+ * @see ParameterEncoder#compile(AbeewayParams)
+ */
+public class ParameterTemplate {
+
+    private final ParameterEncoder encoder;
+    private final byte[] frame;
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    ParameterTemplate(ParameterEncoder encoder, AbeewayParams params) throws EncodingException {
+        this.encoder = encoder;
+        ByteBuffer buffer = ByteBuffer.allocate(encoder.encodedSize(params));
+        buffer.put((byte) 0x09);
+        for (String paramName : params.getParameterNames()) {
+            int offset = buffer.position();
+            int size = encoder.encodeParameter(paramName, params.getParameter(paramName), buffer);
+            slots.put(paramName, new Slot(buffer.get(offset) & 0xFF, offset + 1, size - 1));
+        }
+        frame = buffer.array();
+    }
+
+    /**
+     * Get the size of the frames of the template.
+     */
+    public int getFrameSize() {
+        return frame.length;
+    }
+
+    /**
+     * Check whether a parameter can be overridden.
+     */
+    public boolean contains(String paramName) {
+        return slots.containsKey(paramName);
+    }
+
+    /**
+     * Encode the template with the values of some of its parameters replaced.
+     *
+     * @param overrides Values by parameter name, empty for the template itself
+     * @throws EncodingException if a parameter is not in the template or a value is invalid
+     */
+    public EncodedDownlink encode(Map<String, Object> overrides, int fPort) throws EncodingException {
+        byte[] bytes = frame.clone();
+        patch(overrides, bytes, 0);
+        return new EncodedDownlink(bytes, fPort);
+    }
+
+    /**
+     * Encode the template with some values replaced at the position of a buffer, which is left
+     * after the frame. The position is left unchanged if the frame cannot be encoded.
+     *
+     * @return The size of the frame
+     * @throws EncodingException if an override is invalid or the buffer is too small
+     */
+    public int encode(Map<String, Object> overrides, ByteBuffer buffer) throws EncodingException {
+        int start = buffer.position();
+        try {
+            buffer.put(frame);
+        } catch (BufferOverflowException e) {
+            throw new EncodingException("Buffer too small: " + frame.length + " bytes needed, "
+                + buffer.remaining() + " remaining");
+        }
+        try {
+            if (buffer.hasArray()) {
+                patch(overrides, buffer.array(), buffer.arrayOffset() + start);
+            } else {
+                for (Map.Entry<String, Object> override : overrides.entrySet()) {
+                    Slot slot = slot(override.getKey());
+                    long raw = encoder.rawValue(slot.id, override.getValue());
+                    for (int i = 0; i < slot.size; i++) {
+                        buffer.put(start + slot.offset + i, (byte) (raw >> ((slot.size - 1 - i) * 8)));
+                    }
+                }
+            }
+        } catch (EncodingException e) {
+            buffer.position(start);
+            throw e;
+        }
+        return frame.length;
+    }
+
+    private void patch(Map<String, Object> overrides, byte[] bytes, int start) throws EncodingException {
+        for (Map.Entry<String, Object> override : overrides.entrySet()) {
+            Slot slot = slot(override.getKey());
+            long raw = encoder.rawValue(slot.id, override.getValue());
+            for (int i = start + slot.offset + slot.size - 1; i >= start + slot.offset; i--) {
+                bytes[i] = (byte) raw;
+                raw >>= 8;
+            }
+        }
+    }
+
+    private Slot slot(String paramName) throws EncodingException {
+        Slot slot = slots.get(paramName);
+        if (slot == null) {
+            throw new EncodingException("Parameter not in template: " + paramName);
+        }
+        return slot;
+    }
+
+    /**
+     * Id of a parameter and position of its value in the frame.
+     */
+    private static final class Slot {
+        final int id;
+        final int offset;
+        final int size;
+
+        Slot(int id, int offset, int size) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
@@ -11,5 +11,19 @@ public enum Mode {
     START_END_TRACKING,
     ACTIVITY_TRACKING,
     SOS_MODE,
-    UNKNOWN
+    UNKNOWN;
+
+    private static final Mode[] VALUES = values();
+
+    /**
+     * Get the mode with a name, UNKNOWN if there is none.
+     */
+    public static Mode fromName(String name) {
+        for (Mode mode : VALUES) {
+            if (mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        return UNKNOWN;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+package com.github.kevinmarvin.abeeway.fleet;
+
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+import com.github.kevinmarvin.abeeway.utils.CompressedBitmap;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the configuration values reported by a fleet, answering compliance questions
+ * such as "which devices have {@code gpsTimeout != 120}" with bitmap algebra.
+ * <p>
+ * Devices are numbered by {@link DeviceSlots}. For every parameter the index keeps the
+ * bitmap of the devices that reported it and one bitmap per reported value, keyed by raw
+ * value so that {@code 45.5}, {@code 455} and the encoded bytes all mean the same setting.
+ * A configuration uplink moves each of its devices from the bitmap of its previous value to
+ * the bitmap of its new one. Query results are new bitmaps that can be combined with
+ * {@link CompressedBitmap#and}, {@link CompressedBitmap#or} and {@link CompressedBitmap#andNot}.
+ * All methods are thread-safe.
+ */
+public class ConfigurationComplianceIndex {
+
+    private final ParameterSchema schema;
+    private final DeviceSlots slots;
+    private final Parameter[] parameters = new Parameter[ParameterSchema.MAX_PARAMETERS];
+    private final CompressedBitmap devices = new CompressedBitmap();
+
+    public ConfigurationComplianceIndex() {
+        this(ParameterSchema.getDefault(), 1024);
+    }
+
+    /**
+     * @param schema          Parameter catalog of the devices
+     * @param expectedDevices Number of devices to size the tables for
+     */
+    public ConfigurationComplianceIndex(ParameterSchema schema, int expectedDevices) {
+        this.schema = schema;
+        this.slots = new DeviceSlots(expectedDevices);
+    }
+
+    /**
+     * Index the configuration of a decoded configuration uplink. Parameters absent from the
+     * uplink keep their previous value.
+     *
+     * @return false if the uplink holds no configuration
+     */
+    public boolean update(long deviceId, UplinkData data) {
+        Map<String, Object> configuration = data.getDeviceConfiguration();
+        if (configuration == null) {
+            return false;
+        }
+        update(deviceId, configuration);
+        return true;
+    }
+
+    /**
+     * Index configuration values reported by a device, as produced by the configuration
+     * decoder. Unknown names and values that cannot be encoded are ignored.
+     */
+    public synchronized void update(long deviceId, Map<String, Object> configuration) {
+        int slot = slots.slotOf(deviceId);
+        devices.add(slot);
+        for (Map.Entry<String, Object> entry : configuration.entrySet()) {
+            ParameterDefinition definition = schema.get(entry.getKey());
+            if (definition == null) {
+                continue;
+            }
+            int raw;
+            try {
+                raw = ConfigurationValues.toRaw(definition, entry.getValue());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            parameter(definition).set(slot, raw);
+        }
+    }
+
+    /**
+     * Remove a device from the index.
+     */
+    public synchronized void remove(long deviceId) {
+        int slot = slots.release(deviceId);
+        if (slot < 0) {
+            return;
+        }
+        devices.remove(slot);
+        for (Parameter parameter : parameters) {
+            if (parameter != null) {
+                parameter.clear(slot);
+            }
+        }
+    }
+
+    /**
+     * Get the devices that reported a parameter with a value.
+     *
+     * @param value The value as decoded or as given to the encoder
+     * @throws IllegalArgumentException if the parameter is unknown or the value invalid
+     */
+    public synchronized CompressedBitmap devicesWith(String parameter, Object value) {
+        ParameterDefinition definition = definition(parameter);
+        Parameter indexed = parameters[definition.getId()];
+        CompressedBitmap matching = indexed != null
+            ? indexed.byValue.get(ConfigurationValues.toRaw(definition, value)) : null;
+        return matching != null ? matching.copy() : new CompressedBitmap();
+    }
+
+    /**
+     * Get the devices that reported a parameter with another value.
+     *
+     * @param value The value as decoded or as given to the encoder
+     * @throws IllegalArgumentException if the parameter is unknown or the value invalid
+     */
+    public synchronized CompressedBitmap devicesWithout(String parameter, Object value) {
+        ParameterDefinition definition = definition(parameter);
+        Parameter indexed = parameters[definition.getId()];
+        if (indexed == null) {
+            return new CompressedBitmap();
+        }
+        CompressedBitmap matching = indexed.byValue.get(ConfigurationValues.toRaw(definition, value));
+        return matching != null ? CompressedBitmap.andNot(indexed.reported, matching) : indexed.reported.copy();
+    }
+
+    /**
+     * Get the devices that reported a parameter.
+     */
+    public synchronized CompressedBitmap devicesReporting(String parameter) {
+        Parameter indexed = parameters[definition(parameter).getId()];
+        return indexed != null ? indexed.reported.copy() : new CompressedBitmap();
+    }
+
+    /**
+     * Get every indexed device.
+     */
+    public synchronized CompressedBitmap allDevices() {
+        return devices.copy();
+    }
+
+    /**
+     * Count the devices per reported value of a parameter, most frequent value first. Values
+     * are given as the configuration decoder gives them.
+     */
+    public synchronized Map<Object, Integer> distribution(String parameter) {
+        ParameterDefinition definition = definition(parameter);
+        Map<Object, Integer> distribution = new LinkedHashMap<>();
+        Parameter indexed = parameters[definition.getId()];
+        if (indexed == null) {
+            return distribution;
+        }
+        List<long[]> counts = new ArrayList<>();
+        indexed.byValue.forEach((raw, bitmap) -> counts.add(new long[]{raw, bitmap.cardinality()}));
+        counts.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]));
+        for (long[] count : counts) {
+            distribution.put(ConfigurationValues.toValue(definition, (int) count[0]), (int) count[1]);
+        }
+        return distribution;
+    }
+
+    /**
+     * Get the DevEUIs of a set of devices returned by this index.
+     */
+    public synchronized long[] deviceIds(CompressedBitmap devices) {
+        return slots.deviceIds(devices);
+    }
+
+    /**
+     * Get the number of indexed devices.
+     */
+    public synchronized int getDeviceCount() {
+        return slots.size();
+    }
+
+    private ParameterDefinition definition(String parameter) {
+        ParameterDefinition definition = schema.get(parameter);
+        if (definition == null) {
+            throw new IllegalArgumentException("Unknown parameter: " + parameter);
+        }
+        return definition;
+    }
+
+    private Parameter parameter(ParameterDefinition definition) {
+        Parameter parameter = parameters[definition.getId()];
+        if (parameter == null) {
+            parameter = new Parameter();
+            parameters[definition.getId()] = parameter;
+        }
+        return parameter;
+    }
+
+    /**
+     * Devices per value of one parameter, and the raw value of each device by slot.
+     */
+    private static final class Parameter {
+        final CompressedBitmap reported = new CompressedBitmap();
+        final LongObjectHashMap<CompressedBitmap> byValue = new LongObjectHashMap<>();
+        int[] values = new int[16];
+
+        void set(int slot, int raw) {
+            if (reported.contains(slot)) {
+                if (values[slot] == raw) {
+                    return;
+                }
+                removeValue(slot, values[slot]);
+            } else {
+                reported.add(slot);
+            }
+            if (slot >= values.length) {
+                values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+            }
+            values[slot] = raw;
+            CompressedBitmap bitmap = byValue.get(raw);
+            if (bitmap == null) {
+                bitmap = new CompressedBitmap();
+                byValue.put(raw, bitmap);
+            }
+            bitmap.add(slot);
+        }
+
+        void clear(int slot) {
+            if (reported.remove(slot)) {
+                removeValue(slot, values[slot]);
+            }
+        }
+
+        private void removeValue(int slot, int raw) {
+            CompressedBitmap bitmap = byValue.get(raw);
+            bitmap.remove(slot);
+            if (bitmap.isEmpty()) {
+                byValue.remove(raw);
+            }
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.github.kevinmarvin.abeeway.fleet;
+
+import com.github.kevinmarvin.abeeway.encoders.ParameterEncoder;
+import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
+import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Desired-state configuration of a fleet: keeps the configuration last reported by every
+ * device and the configuration it should have, and encodes only the parameters that differ.
+ * <p>
+ * A desired configuration is set per group and optionally per device, the device entries
+ * overriding the group entries. It is compiled once through the {@link ParameterEncoder}
+ * into one encoded fragment and one raw value per parameter, so diffing a device compares
+ * integers and building its downlinks copies bytes. Reported configurations are stored as
+ * raw values in schema order, one {@code int} per parameter plus a bitmask of the reported
+ * ones. Values are compared on their encoding: a reported value equals a desired one when
+ * they would be sent as the same bytes.
+ * <p>
+ * The reported configuration only changes with the device's configuration uplinks, so a
+ * device keeps showing differences until it reports the configuration it received. All
+ * methods are thread-safe.
+ */
+public class ConfigurationReconciler {
+
+    /** Payload size fitting every LoRaWAN region and data rate. */
+    public static final int DEFAULT_MAX_PAYLOAD = 51;
+
+    private static final byte SET_PARAM = 0x09;
+    private static final int NO_GROUP = -1;
+    private static final int[] NONE = new int[0];
+
+    private final ParameterSchema schema;
+    private final ParameterEncoder encoder;
+    private final int maxPayload;
+    private final int[] slotById = new int[ParameterSchema.MAX_PARAMETERS];
+    private final ParameterDefinition[] definitions;
+    private final int maskWords;
+
+    private final LongObjectHashMap<Device> devices = new LongObjectHashMap<>();
+    private final Map<String, Integer> groupIndex = new HashMap<>();
+    private final List<Desired> groups = new ArrayList<>();
+
+    public ConfigurationReconciler() {
+        this(ParameterSchema.getDefault(), DEFAULT_MAX_PAYLOAD);
+    }
+
+    /**
+     * @param schema     Parameter catalog of the devices
+     * @param maxPayload Largest downlink payload, in bytes
+     */
+    public ConfigurationReconciler(ParameterSchema schema, int maxPayload) {
+        if (maxPayload < 6) {
+            throw new IllegalArgumentException("Payload too small for one parameter: " + maxPayload);
+        }
+        this.schema = schema;
+        this.encoder = new ParameterEncoder(schema);
+        this.maxPayload = maxPayload;
+        this.definitions = schema.getDefinitions().toArray(new ParameterDefinition[0]);
+        this.maskWords = (definitions.length + 63) >>> 6;
+        Arrays.fill(slotById, -1);
+        for (int slot = 0; slot < definitions.length; slot++) {
+            slotById[definitions[slot].getId()] = slot;
+        }
+    }
+
+    /**
+     * Record the configuration reported by a device in a decoded configuration uplink.
+     * Parameters absent from the uplink keep their previous value.
+     *
+     * @return false if the uplink holds no configuration
+     */
+    public boolean report(long deviceId, UplinkData data) {
+        Map<String, Object> configuration = data.getDeviceConfiguration();
+        if (configuration == null) {
+            return false;
+        }
+        report(deviceId, configuration);
+        return true;
+    }
+
+    /**
+     * Record configuration values reported by a device, as produced by the configuration
+     * decoder. Unknown names and values that cannot be encoded are ignored.
+     */
+    public synchronized void report(long deviceId, Map<String, Object> configuration) {
+        Device device = device(deviceId);
+        if (device.values == null) {
+            device.values = new int[definitions.length];
+            device.reported = new long[maskWords];
+        }
+        for (Map.Entry<String, Object> entry : configuration.entrySet()) {
+            ParameterDefinition definition = schema.get(entry.getKey());
+            if (definition == null) {
+                continue;
+            }
+            int raw;
+            try {
+                raw = ConfigurationValues.toRaw(definition, entry.getValue());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            int slot = slotById[definition.getId()];
+            device.values[slot] = raw;
+            device.reported[slot >>> 6] |= 1L << slot;
+        }
+    }
+
+    /**
+     * Set the desired configuration of a group, replacing the previous one.
+     *
+     * @throws EncodingException if a parameter cannot be encoded
+     */
+    public synchronized void setGroupConfiguration(String group, AbeewayParams params) throws EncodingException {
+        Desired desired = compile(params);
+        Integer index = groupIndex.get(group);
+        if (index == null) {
+            groupIndex.put(group, groups.size());
+            groups.add(desired);
+        } else {
+            groups.set(index, desired);
+        }
+    }
+
+    /**
+     * Assign a device to a group, or remove it from its group when {@code group} is null.
+     *
+     * @throws IllegalArgumentException if the group has no configuration
+     */
+    public synchronized void assignGroup(long deviceId, String group) {
+        int index = NO_GROUP;
+        if (group != null) {
+            Integer known = groupIndex.get(group);
+            if (known == null) {
+                throw new IllegalArgumentException("Unknown group: " + group);
+            }
+            index = known;
+        }
+        device(deviceId).group = index;
+    }
+
+    /**
+     * Set the desired configuration specific to a device, overriding its group for the
+     * parameters it holds, or clear it when {@code params} is null.
+     *
+     * @throws EncodingException if a parameter cannot be encoded
+     */
+    public synchronized void setDeviceConfiguration(long deviceId, AbeewayParams params) throws EncodingException {
+        device(deviceId).desired = params != null ? compile(params) : null;
+    }
+
+    /**
+     * Get the ids of the desired parameters that the device did not report with the desired
+     * value, in increasing order.
+     */
+    public synchronized int[] diff(long deviceId) {
+        Device device = devices.get(deviceId);
+        if (device == null) {
+            return NONE;
+        }
+        int[] slots = new int[definitions.length];
+        int count = diff(device, slots);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = definitions[slots[i]].getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Encode the SET_PARAM downlinks bringing a device to its desired configuration, split
+     * so that no payload exceeds the maximum size.
+     *
+     * @return The downlinks, empty when the device is up to date
+     */
+    public synchronized List<EncodedDownlink> reconcile(long deviceId, int fPort) {
+        Device device = devices.get(deviceId);
+        if (device == null) {
+            return Collections.emptyList();
+        }
+        int[] slots = new int[definitions.length];
+        int count = diff(device, slots);
+        return count == 0 ? Collections.emptyList() : encode(device, slots, count, fPort);
+    }
+
+    /**
+     * Encode the downlinks of every device that differs from its desired configuration.
+     *
+     * @return The number of devices needing downlinks
+     */
+    public synchronized int reconcileAll(int fPort, DownlinkConsumer consumer) {
+        int[] slots = new int[definitions.length];
+        int[] devicesNeedingDownlinks = {0};
+        devices.forEach((deviceId, device) -> {
+            int count = diff(device, slots);
+            if (count > 0) {
+                devicesNeedingDownlinks[0]++;
+                consumer.accept(deviceId, encode(device, slots, count, fPort));
+            }
+        });
+        return devicesNeedingDownlinks[0];
+    }
+
+    /**
+     * Forget a device.
+     */
+    public synchronized void remove(long deviceId) {
+        devices.remove(deviceId);
+    }
+
+    /**
+     * Get the number of known devices.
+     */
+    public synchronized int getDeviceCount() {
+        return devices.size();
+    }
+
+    private Device device(long deviceId) {
+        Device device = devices.get(deviceId);
+        if (device == null) {
+            device = new Device();
+            devices.put(deviceId, device);
+        }
+        return device;
+    }
+
+    /**
+     * Collect the slots to send, device entries first then group entries they do not
+     * override, each list in slot order.
+     */
+    private int diff(Device device, int[] slots) {
+        int count = 0;
+        Desired own = device.desired;
+        if (own != null) {
+            count = collect(device, own, null, slots, count);
+        }
+        if (device.group != NO_GROUP) {
+            count = collect(device, groups.get(device.group), own, slots, count);
+        }
+        if (own != null && device.group != NO_GROUP && count > 1) {
+            Arrays.sort(slots, 0, count);
+        }
+        return count;
+    }
+
+    private int collect(Device device, Desired desired, Desired overrides, int[] slots, int count) {
+        for (int i = 0; i < desired.slots.length; i++) {
+            int slot = desired.slots[i];
+            if (overrides != null && (overrides.mask[slot >>> 6] & (1L << slot)) != 0) {
+                continue;
+            }
+            boolean reported = device.reported != null && (device.reported[slot >>> 6] & (1L << slot)) != 0;
+            if (!reported || device.values[slot] != desired.raws[i]) {
+                slots[count++] = slot;
+            }
+        }
+        return count;
+    }
+
+    private List<EncodedDownlink> encode(Device device, int[] slots, int count, int fPort) {
+        List<EncodedDownlink> downlinks = new ArrayList<>(1);
+        byte[] frame = new byte[maxPayload];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] fragment = fragment(device, slots[i]);
+            if (length + fragment.length > maxPayload) {
+                downlinks.add(new EncodedDownlink(Arrays.copyOf(frame, length), fPort));
+                length = 0;
+            }
+            if (length == 0) {
+                frame[length++] = SET_PARAM;
+            }
+            System.arraycopy(fragment, 0, frame, length, fragment.length);
+            length += fragment.length;
+        }
+        downlinks.add(new EncodedDownlink(Arrays.copyOf(frame, length), fPort));
+        return downlinks;
+    }
+
+    private byte[] fragment(Device device, int slot) {
+        Desired own = device.desired;
+        if (own != null && (own.mask[slot >>> 6] & (1L << slot)) != 0) {
+            return own.fragment(slot);
+        }
+        return groups.get(device.group).fragment(slot);
+    }
+
+    /**
+     * Compile a configuration: encode each parameter alone and keep its bytes after the
+     * SET_PARAM header, along with the raw value they hold.
+     */
+    private Desired compile(AbeewayParams params) throws EncodingException {
+        int[] raws = new int[definitions.length];
+        byte[][] fragments = new byte[definitions.length][];
+        for (Map.Entry<String, Object> entry : params.getParameters().entrySet()) {
+            AbeewayParams single = AbeewayParams.builder().setCustomParameter(id(entry.getKey()), entry.getValue()).build();
+            byte[] bytes = encoder.encodeParameters(single, 0).getBytes();
+            int slot = slotById[bytes[1] & 0xFF];
+            int raw = 0;
+            for (int i = 2; i < bytes.length; i++) {
+                raw = raw << 8 | (bytes[i] & 0xFF);
+            }
+            raws[slot] = raw;
+            fragments[slot] = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return new Desired(raws, fragments, maskWords);
+    }
+
+    private int id(String name) throws EncodingException {
+        if (name.startsWith("custom_")) {
+            int id = Integer.parseInt(name.substring(7));
+            if (id < 0 || id >= ParameterSchema.MAX_PARAMETERS || slotById[id] < 0) {
+                throw new EncodingException("Parameter " + id + " is not in the schema");
+            }
+            return id;
+        }
+        int id = schema.getId(name);
+        if (id < 0) {
+            throw new EncodingException("Unknown parameter: " + name);
+        }
+        return id;
+    }
+
+    /**
+     * Receiver of the downlinks of a device.
+     */
+    @FunctionalInterface
+    public interface DownlinkConsumer {
+        void accept(long deviceId, List<EncodedDownlink> downlinks);
+    }
+
+    private static final class Device {
+        int[] values;
+        long[] reported;
+        Desired desired;
+        int group = NO_GROUP;
+    }
+
+    private static final class Desired {
+        final int[] slots;
+        final int[] raws;
+        final byte[][] fragments;
+        final long[] mask;
+
+        Desired(int[] rawsBySlot, byte[][] fragmentsBySlot, int maskWords) {
+            int count = 0;
+            for (byte[] fragment : fragmentsBySlot) {
+                if (fragment != null) {
+                    count++;
+                }
+            }
+            slots = new int[count];
+            raws = new int[count];
+            fragments = fragmentsBySlot;
+            mask = new long[maskWords];
+            int i = 0;
+            for (int slot = 0; slot < fragmentsBySlot.length; slot++) {
+                if (fragmentsBySlot[slot] != null) {
+                    slots[i] = slot;
+                    raws[i++] = rawsBySlot[slot];
+                    mask[slot >>> 6] |= 1L << slot;
+                }
+            }
+        }
+
+        byte[] fragment(int slot) {
+            return fragments[slot];
+        }
+    }
+}
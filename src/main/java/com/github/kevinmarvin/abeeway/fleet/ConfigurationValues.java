@@ -0,0 +1,55 @@
+package com.github.kevinmarvin.abeeway.fleet;
+
+import com.github.kevinmarvin.abeeway.models.BitmapValue;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterType;
+
+/**
+ * Conversions between decoded configuration values and the raw values sent on the air,
+ * held as the unsigned big-endian value of their encoded bytes.
+ */
+final class ConfigurationValues {
+
+    private ConfigurationValues() {
+    }
+
+    /**
+     * Convert a value, as decoded or as given to the encoder, to its raw value. Numbers are
+     * truncated to the parameter size without range checks.
+     *
+     * @throws IllegalArgumentException if the value is of an unsupported type or an unknown name
+     */
+    static int toRaw(ParameterDefinition definition, Object value) {
+        long raw;
+        if (value instanceof BitmapValue) {
+            // Flag 0 is in the first byte
+            raw = Long.reverseBytes(((BitmapValue) value).getBits()) >>> (64 - definition.getSize() * 8);
+        } else if (value instanceof Double && definition.getType() == ParameterType.NUMBER) {
+            raw = Math.round((Double) value / definition.getMultiplier());
+        } else if (value instanceof Number) {
+            // Only the low bytes matter: a 4-byte value from 2^31 up is decoded as a negative int
+            raw = ((Number) value).longValue();
+        } else {
+            raw = definition.toRaw(value);
+        }
+        int bits = definition.getSize() * 8;
+        return (int) (bits == 32 ? raw : raw & ((1L << bits) - 1));
+    }
+
+    /**
+     * Convert a raw value to the value the configuration decoder gives for it.
+     */
+    static Object toValue(ParameterDefinition definition, int raw) {
+        int unused = 32 - definition.getSize() * 8;
+        switch (definition.getType()) {
+            case BITMAP:
+                return new BitmapValue(definition,
+                    Long.reverseBytes(raw & 0xFFFFFFFFL) >>> (64 - definition.getSize() * 8));
+            case STRING:
+                return definition.mapValueToString(definition.isSigned() ? (raw << unused) >> unused : raw);
+            default:
+                int value = definition.isSigned() ? (raw << unused) >> unused : raw;
+                return definition.getMultiplier() != 1.0 ? (Object) (value * definition.getMultiplier()) : (Object) value;
+        }
+    }
+}
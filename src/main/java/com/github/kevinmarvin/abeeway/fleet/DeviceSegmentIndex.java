@@ -0,0 +1,259 @@
+package com.github.kevinmarvin.abeeway.fleet;
+
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.enums.Mode;
+import com.github.kevinmarvin.abeeway.models.DeviceState;
+import com.github.kevinmarvin.abeeway.tracking.DeviceStateStore;
+import com.github.kevinmarvin.abeeway.utils.CompressedBitmap;
+
+import java.util.Arrays;
+
+/**
+ * Bitmap indexes over the low-cardinality fields of live device state, for fleet segments
+ * such as "critical battery, permanent tracking and moving".
+ * <p>
+ * Every value of {@link BatteryStatus}, {@link DynamicMotionState} and tracking
+ * {@link Mode}, and every {@value #BATTERY_BUCKET_PERCENT}% battery level bucket, has a
+ * {@link CompressedBitmap} of the device slots holding it. The index keeps the indexed
+ * values of each slot packed in one {@code int}, so an update only touches the bitmaps of
+ * the fields that changed. Feed it the states of a {@link DeviceStateStore} after merging
+ * uplinks. Segments are built with {@link Query}; each operation is atomic, a chain of them
+ * is not. All methods are thread-safe.
+ */
+public class DeviceSegmentIndex {
+
+    /** Width of the battery level buckets, in percent. */
+    public static final int BATTERY_BUCKET_PERCENT = 10;
+
+    private static final int BATTERY_BUCKETS = 100 / BATTERY_BUCKET_PERCENT + 1;
+
+    // Packed layout: one byte per field holding (index + 1), 0 meaning unknown
+    private static final int BATTERY_STATUS = 0;
+    private static final int MOTION = 1;
+    private static final int MODE = 2;
+    private static final int BATTERY_LEVEL = 3;
+
+    private final DeviceSlots slots;
+    private final CompressedBitmap devices = new CompressedBitmap();
+    private final CompressedBitmap[][] bitmaps = {
+        bitmaps(BatteryStatus.values().length),
+        bitmaps(DynamicMotionState.values().length),
+        bitmaps(Mode.values().length),
+        bitmaps(BATTERY_BUCKETS)
+    };
+    private int[] packed;
+
+    public DeviceSegmentIndex() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedDevices Number of devices to size the tables for
+     */
+    public DeviceSegmentIndex(int expectedDevices) {
+        slots = new DeviceSlots(expectedDevices);
+        packed = new int[Math.max(16, expectedDevices)];
+    }
+
+    /**
+     * Index the current state of a device.
+     */
+    public synchronized void update(DeviceState state) {
+        int slot = slots.slotOf(state.getDeviceId());
+        if (slot >= packed.length) {
+            packed = Arrays.copyOf(packed, Math.max(slot + 1, packed.length * 2));
+        }
+        devices.add(slot);
+        int level = state.getBatteryLevel();
+        int previous = packed[slot];
+        int current = code(BATTERY_STATUS, state.getBatteryStatus() != null ? state.getBatteryStatus().ordinal() : -1)
+            | code(MOTION, state.getDynamicMotionState() != null ? state.getDynamicMotionState().ordinal() : -1)
+            | code(MODE, state.getTrackingMode() != null ? Mode.fromName(state.getTrackingMode()).ordinal() : -1)
+            | code(BATTERY_LEVEL, level >= 0 ? Math.min(level, 100) / BATTERY_BUCKET_PERCENT : -1);
+        if (current == previous) {
+            return;
+        }
+        for (int field = 0; field < bitmaps.length; field++) {
+            int before = (previous >>> (field * 8)) & 0xFF;
+            int after = (current >>> (field * 8)) & 0xFF;
+            if (before != after) {
+                if (before != 0) {
+                    bitmaps[field][before - 1].remove(slot);
+                }
+                if (after != 0) {
+                    bitmaps[field][after - 1].add(slot);
+                }
+            }
+        }
+        packed[slot] = current;
+    }
+
+    /**
+     * Remove a device from the index.
+     */
+    public synchronized void remove(long deviceId) {
+        int slot = slots.release(deviceId);
+        if (slot < 0) {
+            return;
+        }
+        devices.remove(slot);
+        for (int field = 0; field < bitmaps.length; field++) {
+            int code = (packed[slot] >>> (field * 8)) & 0xFF;
+            if (code != 0) {
+                bitmaps[field][code - 1].remove(slot);
+            }
+        }
+        packed[slot] = 0;
+    }
+
+    /**
+     * Start a segment with the devices holding a battery status, motion state or mode.
+     *
+     * @throws IllegalArgumentException if the enum is not indexed
+     */
+    public Query where(Enum<?> value) {
+        return new Query(value);
+    }
+
+    /**
+     * Start a segment with the devices whose battery level is below a bucket boundary.
+     *
+     * @param percent Multiple of {@value #BATTERY_BUCKET_PERCENT}
+     */
+    public Query whereBatteryBelow(int percent) {
+        return new Query(batteryBelow(percent));
+    }
+
+    /**
+     * Start a segment with every indexed device.
+     */
+    public synchronized Query whereAll() {
+        return new Query(devices.copy());
+    }
+
+    /**
+     * Get the DevEUIs of the devices of a segment.
+     */
+    public synchronized long[] deviceIds(CompressedBitmap segment) {
+        return slots.deviceIds(segment);
+    }
+
+    /**
+     * Get the number of indexed devices.
+     */
+    public synchronized int getDeviceCount() {
+        return slots.size();
+    }
+
+    private CompressedBitmap bitmap(Enum<?> value) {
+        if (value instanceof BatteryStatus) {
+            return bitmaps[BATTERY_STATUS][value.ordinal()];
+        } else if (value instanceof DynamicMotionState) {
+            return bitmaps[MOTION][value.ordinal()];
+        } else if (value instanceof Mode) {
+            return bitmaps[MODE][value.ordinal()];
+        }
+        throw new IllegalArgumentException("Not an indexed field: "
+            + (value == null ? "null" : value.getDeclaringClass().getSimpleName()));
+    }
+
+    private synchronized CompressedBitmap batteryBelow(int percent) {
+        if (percent < 0 || percent % BATTERY_BUCKET_PERCENT != 0) {
+            throw new IllegalArgumentException("Battery level must be a multiple of "
+                + BATTERY_BUCKET_PERCENT + ": " + percent);
+        }
+        CompressedBitmap result = new CompressedBitmap();
+        for (int bucket = 0; bucket < Math.min(BATTERY_BUCKETS, percent / BATTERY_BUCKET_PERCENT); bucket++) {
+            result = CompressedBitmap.or(result, bitmaps[BATTERY_LEVEL][bucket]);
+        }
+        return result;
+    }
+
+    private static int code(int field, int index) {
+        return (index + 1) << (field * 8);
+    }
+
+    private static CompressedBitmap[] bitmaps(int count) {
+        CompressedBitmap[] bitmaps = new CompressedBitmap[count];
+        for (int i = 0; i < count; i++) {
+            bitmaps[i] = new CompressedBitmap();
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Segment of devices combined left to right with the fields of the index. An operation
+     * on an enum value only reads its bitmap, without copying it.
+     */
+    public final class Query {
+        private CompressedBitmap result;
+
+        private Query(Enum<?> value) {
+            synchronized (DeviceSegmentIndex.this) {
+                result = bitmap(value).copy();
+            }
+        }
+
+        private Query(CompressedBitmap result) {
+            this.result = result;
+        }
+
+        /** Keep the devices also holding a value. */
+        public Query and(Enum<?> value) {
+            synchronized (DeviceSegmentIndex.this) {
+                result = CompressedBitmap.and(result, bitmap(value));
+            }
+            return this;
+        }
+
+        /** Add the devices holding a value. */
+        public Query or(Enum<?> value) {
+            synchronized (DeviceSegmentIndex.this) {
+                result = CompressedBitmap.or(result, bitmap(value));
+            }
+            return this;
+        }
+
+        /** Drop the devices holding a value. */
+        public Query andNot(Enum<?> value) {
+            synchronized (DeviceSegmentIndex.this) {
+                result = CompressedBitmap.andNot(result, bitmap(value));
+            }
+            return this;
+        }
+
+        /** Keep the devices also in another segment. */
+        public Query and(Query other) {
+            result = CompressedBitmap.and(result, other.result);
+            return this;
+        }
+
+        /** Add the devices of another segment. */
+        public Query or(Query other) {
+            result = CompressedBitmap.or(result, other.result);
+            return this;
+        }
+
+        /** Drop the devices of another segment. */
+        public Query andNot(Query other) {
+            result = CompressedBitmap.andNot(result, other.result);
+            return this;
+        }
+
+        /** Get the device slots of the segment. */
+        public CompressedBitmap toBitmap() {
+            return result;
+        }
+
+        /** Get the number of devices in the segment. */
+        public int count() {
+            return result.cardinality();
+        }
+
+        /** Get the DevEUIs of the devices in the segment. */
+        public long[] deviceIds() {
+            return DeviceSegmentIndex.this.deviceIds(result);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.kevinmarvin.abeeway.fleet;
+
+import com.github.kevinmarvin.abeeway.utils.CompressedBitmap;
+import com.github.kevinmarvin.abeeway.utils.LongLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Dense numbering of devices, so that sets of devices can be held in a
+ * {@link CompressedBitmap}: a new DevEUI takes the most recently released slot, or the next
+ * slot never used when none was released, so slots stay below the largest number of devices
+ * held at once. Not thread-safe.
+ */
+public class DeviceSlots {
+
+    private static final long NO_SLOT = -1;
+
+    private final LongLongHashMap slotsById;
+    private long[] idsBySlot;
+    private boolean[] used;
+    private int[] free = new int[16];
+    private int freeCount;
+    private int next;
+
+    public DeviceSlots() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedDevices Number of devices to size the tables for
+     */
+    public DeviceSlots(int expectedDevices) {
+        slotsById = new LongLongHashMap(expectedDevices);
+        idsBySlot = new long[Math.max(16, expectedDevices)];
+        used = new boolean[idsBySlot.length];
+    }
+
+    /**
+     * Get the slot of a device, allocating one if it has none.
+     */
+    public int slotOf(long deviceId) {
+        long slot = slotsById.get(deviceId, NO_SLOT);
+        if (slot != NO_SLOT) {
+            return (int) slot;
+        }
+        int allocated = freeCount > 0 ? free[--freeCount] : next++;
+        if (allocated == idsBySlot.length) {
+            idsBySlot = Arrays.copyOf(idsBySlot, allocated * 2);
+            used = Arrays.copyOf(used, allocated * 2);
+        }
+        idsBySlot[allocated] = deviceId;
+        used[allocated] = true;
+        slotsById.put(deviceId, allocated);
+        return allocated;
+    }
+
+    /**
+     * Get the slot of a device, or -1 if it has none.
+     */
+    public int find(long deviceId) {
+        return (int) slotsById.get(deviceId, NO_SLOT);
+    }
+
+    /**
+     * Get the DevEUI holding a slot.
+     *
+     * @throws IllegalArgumentException if the slot is free
+     */
+    public long deviceAt(int slot) {
+        if (slot < 0 || slot >= next || !used[slot]) {
+            throw new IllegalArgumentException("Free device slot: " + slot);
+        }
+        return idsBySlot[slot];
+    }
+
+    /**
+     * Release the slot of a device.
+     *
+     * @return The released slot, or -1 if the device had none
+     */
+    public int release(long deviceId) {
+        long slot = slotsById.remove(deviceId, NO_SLOT);
+        if (slot == NO_SLOT) {
+            return -1;
+        }
+        used[(int) slot] = false;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = (int) slot;
+        return (int) slot;
+    }
+
+    /**
+     * Get the DevEUIs of the devices in a set of slots, in slot order.
+     */
+    public long[] deviceIds(CompressedBitmap slots) {
+        long[] ids = new long[slots.cardinality()];
+        int[] count = {0};
+        slots.forEach(slot -> ids[count[0]++] = deviceAt(slot));
+        return ids;
+    }
+
+    /**
+     * Get the number of devices holding a slot.
+     */
+    public int size() {
+        return slotsById.size();
+    }
+}
@@ -0,0 +1,543 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import com.github.kevinmarvin.abeeway.enums.EventType;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+import com.github.kevinmarvin.abeeway.utils.LongLongHashMap;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Last known position of every badge, answering nearest-badge and radius queries.
+ * <p>
+ * Positions are bucketed in a uniform latitude/longitude grid. Cells are spread over a fixed
+ * set of lock stripes, so concurrent updates only contend when they hit the same stripe and
+ * queries lock one stripe at a time while scanning the cells around the query point. A
+ * nearest-badge query scans rings of cells outwards from the query cell and stops as soon as
+ * the unvisited rings are farther away than the k-th candidate found so far.
+ * <p>
+ * Typical use is finding responders for an SOS alert:
+ * <pre>
+ * index.update(deviceId, data);
+ * if (BadgeSpatialIndex.isSosAlert(data)) {
+ *     List&lt;Neighbor&gt; responders = index.nearestTo(deviceId, 5, 2_000);
+ * }
+ * </pre>
+ * Distances use the equirectangular approximation, which is accurate for the few kilometres
+ * these queries cover. A badge moving between cells is briefly absent from query results,
+ * never reported twice. All methods are thread-safe.
+ */
+public class BadgeSpatialIndex {
+
+    private static final double DEFAULT_CELL_SIZE_DEGREES = 0.005;
+    private static final int CELL_STRIPES = 256;
+    private static final int DEVICE_STRIPES = 256;
+    private static final long NO_CELL = Long.MIN_VALUE;
+
+    private final double cellSize;
+    private final int rowCount;
+    private final int columnCount;
+    private final CellStripe[] cellStripes = new CellStripe[CELL_STRIPES];
+    private final DeviceStripe[] deviceStripes = new DeviceStripe[DEVICE_STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+    private final ThreadLocal<Candidates> scratch = ThreadLocal.withInitial(Candidates::new);
+
+    public BadgeSpatialIndex() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * @param cellSizeDegrees Grid cell size in degrees of latitude and longitude. Smaller cells
+     *                        make dense sites cheaper to scan, larger cells make sparse
+     *                        fleets cheaper to search.
+     */
+    public BadgeSpatialIndex(double cellSizeDegrees) {
+        if (!(cellSizeDegrees > 0) || cellSizeDegrees > 90) {
+            throw new IllegalArgumentException("cellSizeDegrees must be in (0, 90]: " + cellSizeDegrees);
+        }
+        this.cellSize = cellSizeDegrees;
+        this.rowCount = (int) Math.ceil(180.0 / cellSizeDegrees) + 1;
+        this.columnCount = (int) Math.ceil(360.0 / cellSizeDegrees);
+        for (int i = 0; i < CELL_STRIPES; i++) {
+            cellStripes[i] = new CellStripe();
+        }
+        for (int i = 0; i < DEVICE_STRIPES; i++) {
+            deviceStripes[i] = new DeviceStripe();
+        }
+    }
+
+    /**
+     * Check whether an uplink raises an SOS alert: an {@link EventType#SOS_PRESS} event or a
+     * nonzero SOS flag in the common header.
+     */
+    public static boolean isSosAlert(UplinkData data) {
+        return data.getEventType() == EventType.SOS_PRESS
+            || (data.getSosFlag() != null && data.getSosFlag() != 0);
+    }
+
+    /**
+     * Record the GPS position of a decoded uplink, if it carries one.
+     *
+     * @return true if the index was updated
+     */
+    public boolean update(long deviceId, UplinkData data) {
+        if (data.getGpsLatitude() == null || data.getGpsLongitude() == null) {
+            return false;
+        }
+        update(deviceId, data.getGpsLatitude(), data.getGpsLongitude());
+        return true;
+    }
+
+    /**
+     * Record the last known position of a badge.
+     */
+    public void update(long deviceId, double latitude, double longitude) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            throw new IllegalArgumentException("Invalid position: " + latitude + ", " + longitude);
+        }
+        latitude = Math.max(-90.0, Math.min(90.0, latitude));
+        longitude = normalizeLongitude(longitude);
+        long newCell = cellKey(row(latitude), column(longitude));
+
+        // The device stripe stays locked while the cells change, so updates of one device are
+        // applied in order. Lock order is always device stripe, then cell stripe.
+        DeviceStripe deviceStripe = deviceStripes[deviceStripeFor(deviceId)];
+        synchronized (deviceStripe) {
+            long oldCell = deviceStripe.cells.put(deviceId, newCell, NO_CELL);
+            if (oldCell == NO_CELL) {
+                size.incrementAndGet();
+            } else if (oldCell != newCell) {
+                removeFromCell(oldCell, deviceId);
+            }
+            CellStripe cellStripe = cellStripes[cellStripeFor(newCell)];
+            synchronized (cellStripe) {
+                Cell cell = cellStripe.cells.get(newCell);
+                if (cell == null) {
+                    cell = new Cell();
+                    cellStripe.cells.put(newCell, cell);
+                }
+                cell.set(deviceId, latitude, longitude);
+            }
+        }
+    }
+
+    /**
+     * Forget a badge.
+     *
+     * @return true if the badge was indexed
+     */
+    public boolean remove(long deviceId) {
+        DeviceStripe deviceStripe = deviceStripes[deviceStripeFor(deviceId)];
+        synchronized (deviceStripe) {
+            long cellKey = deviceStripe.cells.remove(deviceId, NO_CELL);
+            if (cellKey == NO_CELL) {
+                return false;
+            }
+            removeFromCell(cellKey, deviceId);
+            size.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Get the last known position of a badge.
+     *
+     * @param out Receives latitude and longitude
+     * @return false if the badge is not indexed
+     */
+    public boolean getPosition(long deviceId, double[] out) {
+        DeviceStripe deviceStripe = deviceStripes[deviceStripeFor(deviceId)];
+        synchronized (deviceStripe) {
+            long cellKey = deviceStripe.cells.get(deviceId, NO_CELL);
+            if (cellKey == NO_CELL) {
+                return false;
+            }
+            CellStripe cellStripe = cellStripes[cellStripeFor(cellKey)];
+            synchronized (cellStripe) {
+                Cell cell = cellStripe.cells.get(cellKey);
+                int index = cell.indexOf(deviceId);
+                out[0] = cell.latitudes[index];
+                out[1] = cell.longitudes[index];
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Find the badges nearest to another badge, excluding the badge itself.
+     *
+     * @param k               Maximum number of badges to return
+     * @param maxRadiusMeters Search radius
+     * @return Nearest badges by ascending distance, empty if the badge is not indexed
+     */
+    public List<Neighbor> nearestTo(long deviceId, int k, double maxRadiusMeters) {
+        double[] position = new double[2];
+        if (!getPosition(deviceId, position)) {
+            return Collections.emptyList();
+        }
+        return nearest(position[0], position[1], k, maxRadiusMeters, deviceId, true);
+    }
+
+    /**
+     * Find the badges nearest to a point.
+     *
+     * @param k               Maximum number of badges to return
+     * @param maxRadiusMeters Search radius
+     * @return Nearest badges by ascending distance
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, double maxRadiusMeters) {
+        return nearest(latitude, longitude, k, maxRadiusMeters, 0, false);
+    }
+
+    /**
+     * Find every badge within a radius of a point.
+     *
+     * @return Badges by ascending distance
+     */
+    public List<Neighbor> withinRadius(double latitude, double longitude, double radiusMeters) {
+        longitude = normalizeLongitude(longitude);
+        Candidates candidates = scratch.get();
+        candidates.reset(Integer.MAX_VALUE, squaredDegrees(radiusMeters), Math.cos(Math.toRadians(latitude)));
+
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        int rowSpan = (int) Math.ceil(radiusMeters / (cellSize * GeoUtils.METERS_PER_DEGREE));
+        int columnSpan = columnSpan(latitude, rowSpan, radiusMeters);
+        // At half the globe both ends of the span are the same column
+        int lastColumn = centerColumn + (2 * columnSpan == columnCount ? columnSpan - 1 : columnSpan);
+        for (int r = centerRow - rowSpan; r <= centerRow + rowSpan; r++) {
+            for (int c = centerColumn - columnSpan; c <= lastColumn; c++) {
+                scanCell(r, c, latitude, longitude, 0, false, candidates);
+            }
+        }
+        return candidates.toNeighbors();
+    }
+
+    /**
+     * Get the number of indexed badges.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private List<Neighbor> nearest(double latitude, double longitude, int k, double maxRadiusMeters,
+                                   long excludedId, boolean exclude) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        longitude = normalizeLongitude(longitude);
+        Candidates candidates = scratch.get();
+        candidates.reset(k, squaredDegrees(maxRadiusMeters), Math.cos(Math.toRadians(latitude)));
+
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        double cellHeightMeters = cellSize * GeoUtils.METERS_PER_DEGREE;
+        int rowSpan = (int) Math.ceil(maxRadiusMeters / cellHeightMeters);
+        int columnSpan = columnSpan(latitude, rowSpan, maxRadiusMeters);
+
+        for (int ring = 0; ring <= Math.max(rowSpan, columnSpan); ring++) {
+            int rowLimit = Math.min(ring, rowSpan);
+            int columnLimit = Math.min(ring, columnSpan);
+            for (int dr = -rowLimit; dr <= rowLimit; dr++) {
+                if (Math.abs(dr) == ring) {
+                    int lastColumn = 2 * columnLimit == columnCount ? columnLimit - 1 : columnLimit;
+                    for (int dc = -columnLimit; dc <= lastColumn; dc++) {
+                        scanCell(centerRow + dr, centerColumn + dc, latitude, longitude, excludedId, exclude, candidates);
+                    }
+                } else if (ring <= columnSpan) {
+                    scanCell(centerRow + dr, centerColumn - ring, latitude, longitude, excludedId, exclude, candidates);
+                    if (2 * ring != columnCount) {
+                        scanCell(centerRow + dr, centerColumn + ring, latitude, longitude, excludedId, exclude, candidates);
+                    }
+                }
+            }
+            // Everything outside this ring is at least one full ring away from the query
+            if (candidates.isFull() && candidates.worstMeters() <= ring * minimumCellMeters(latitude, ring)) {
+                break;
+            }
+        }
+        return candidates.toNeighbors();
+    }
+
+    private void scanCell(int row, int column, double latitude, double longitude,
+                          long excludedId, boolean exclude, Candidates candidates) {
+        if (row < 0 || row >= rowCount) {
+            return;
+        }
+        long cellKey = cellKey(row, Math.floorMod(column, columnCount));
+        CellStripe cellStripe = cellStripes[cellStripeFor(cellKey)];
+        synchronized (cellStripe) {
+            Cell cell = cellStripe.cells.get(cellKey);
+            if (cell == null) {
+                return;
+            }
+            for (int i = 0; i < cell.size; i++) {
+                if (exclude && cell.ids[i] == excludedId) {
+                    continue;
+                }
+                double dy = cell.latitudes[i] - latitude;
+                double dx = wrapLongitudeDelta(cell.longitudes[i] - longitude) * candidates.cosLatitude;
+                candidates.offer(cell.ids[i], dx * dx + dy * dy, cell.latitudes[i], cell.longitudes[i]);
+            }
+        }
+    }
+
+    private void removeFromCell(long cellKey, long deviceId) {
+        CellStripe cellStripe = cellStripes[cellStripeFor(cellKey)];
+        synchronized (cellStripe) {
+            Cell cell = cellStripe.cells.get(cellKey);
+            if (cell != null && cell.remove(deviceId) && cell.size == 0) {
+                cellStripe.cells.remove(cellKey);
+            }
+        }
+    }
+
+    /**
+     * Number of columns to either side of the query covering the radius, capped at half the globe.
+     */
+    private int columnSpan(double latitude, int rowSpan, double radiusMeters) {
+        double widthMeters = minimumCellMeters(latitude, rowSpan);
+        double span = Math.ceil(radiusMeters / widthMeters);
+        return (int) Math.min(span, columnCount / 2);
+    }
+
+    /**
+     * Smallest cell side in meters within {@code rings} rows of the latitude, where cells are narrowest.
+     */
+    private double minimumCellMeters(double latitude, int rings) {
+        double farthestLatitude = Math.min(90.0, Math.abs(latitude) + (rings + 1) * cellSize);
+        double width = cellSize * GeoUtils.metersPerDegreeLongitude(farthestLatitude);
+        double height = cellSize * GeoUtils.METERS_PER_DEGREE;
+        return Math.max(Math.min(width, height), 1e-3);
+    }
+
+    private static double squaredDegrees(double meters) {
+        double degrees = meters / GeoUtils.METERS_PER_DEGREE;
+        return degrees * degrees;
+    }
+
+    private static double wrapLongitudeDelta(double delta) {
+        if (delta > 180.0) return delta - 360.0;
+        if (delta < -180.0) return delta + 360.0;
+        return delta;
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        if (longitude >= -180.0 && longitude < 180.0) {
+            return longitude;
+        }
+        return ((longitude + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90.0) / cellSize);
+    }
+
+    private int column(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180.0) / cellSize), columnCount);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int cellStripeFor(long cellKey) {
+        return (int) ((cellKey * 0x9E3779B97F4A7C15L) >>> 56);
+    }
+
+    private static int deviceStripeFor(long deviceId) {
+        return (int) ((deviceId * 0x9E3779B97F4A7C15L) >>> 56);
+    }
+
+    /**
+     * A badge returned by a query.
+     */
+    public static class Neighbor {
+        private final long deviceId;
+        private final double distanceMeters;
+        private final double latitude;
+        private final double longitude;
+
+        public Neighbor(long deviceId, double distanceMeters, double latitude, double longitude) {
+            this.deviceId = deviceId;
+            this.distanceMeters = distanceMeters;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public long getDeviceId() { return deviceId; }
+        public double getDistanceMeters() { return distanceMeters; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+    }
+
+    private static final class CellStripe {
+        final LongObjectHashMap<Cell> cells = new LongObjectHashMap<>();
+    }
+
+    private static final class DeviceStripe {
+        final LongLongHashMap cells = new LongLongHashMap();
+    }
+
+    /**
+     * Badges in one grid cell, in parallel arrays. Removal swaps the last badge into the hole;
+     * crowded cells keep an id-to-index map so updates do not scan the whole cell.
+     */
+    private static final class Cell {
+        private static final int INDEX_THRESHOLD = 32;
+
+        long[] ids = new long[4];
+        double[] latitudes = new double[4];
+        double[] longitudes = new double[4];
+        int size;
+        LongLongHashMap positions;
+
+        int indexOf(long id) {
+            if (positions != null) {
+                return (int) positions.get(id, -1);
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) return i;
+            }
+            return -1;
+        }
+
+        void set(long id, double latitude, double longitude) {
+            int index = indexOf(id);
+            if (index < 0) {
+                if (size == ids.length) {
+                    int capacity = size << 1;
+                    ids = Arrays.copyOf(ids, capacity);
+                    latitudes = Arrays.copyOf(latitudes, capacity);
+                    longitudes = Arrays.copyOf(longitudes, capacity);
+                }
+                index = size++;
+                ids[index] = id;
+                if (positions != null) {
+                    positions.put(id, index);
+                } else if (size > INDEX_THRESHOLD) {
+                    positions = new LongLongHashMap(size * 2);
+                    for (int i = 0; i < size; i++) {
+                        positions.put(ids[i], i);
+                    }
+                }
+            }
+            latitudes[index] = latitude;
+            longitudes[index] = longitude;
+        }
+
+        boolean remove(long id) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return false;
+            }
+            int last = --size;
+            if (index != last) {
+                ids[index] = ids[last];
+                latitudes[index] = latitudes[last];
+                longitudes[index] = longitudes[last];
+                if (positions != null) {
+                    positions.put(ids[index], index);
+                }
+            }
+            if (positions != null) {
+                positions.remove(id, -1);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Bounded max-heap of the best candidates of one query, by squared distance in degrees.
+     */
+    private static final class Candidates {
+        long[] ids = new long[16];
+        double[] keys = new double[16];
+        double[] latitudes = new double[16];
+        double[] longitudes = new double[16];
+        int size;
+        int limit;
+        double maxKey;
+        double cosLatitude;
+
+        void reset(int limit, double maxKey, double cosLatitude) {
+            this.size = 0;
+            this.limit = limit;
+            this.maxKey = maxKey;
+            this.cosLatitude = cosLatitude;
+        }
+
+        boolean isFull() {
+            return size == limit;
+        }
+
+        double worstMeters() {
+            return Math.sqrt(keys[0]) * GeoUtils.METERS_PER_DEGREE;
+        }
+
+        void offer(long id, double key, double latitude, double longitude) {
+            if (key > maxKey) {
+                return;
+            }
+            if (size < limit) {
+                if (size == ids.length) {
+                    int capacity = size << 1;
+                    ids = Arrays.copyOf(ids, capacity);
+                    keys = Arrays.copyOf(keys, capacity);
+                    latitudes = Arrays.copyOf(latitudes, capacity);
+                    longitudes = Arrays.copyOf(longitudes, capacity);
+                }
+                int i = size++;
+                // Sift up
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys[parent] >= key) break;
+                    move(parent, i);
+                    i = parent;
+                }
+                store(i, id, key, latitude, longitude);
+            } else if (key < keys[0]) {
+                // Replace the root and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && keys[child + 1] > keys[child]) child++;
+                    if (keys[child] <= key) break;
+                    move(child, i);
+                    i = child;
+                }
+                store(i, id, key, latitude, longitude);
+            }
+        }
+
+        List<Neighbor> toNeighbors() {
+            List<Neighbor> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(new Neighbor(ids[i], Math.sqrt(keys[i]) * GeoUtils.METERS_PER_DEGREE,
+                    latitudes[i], longitudes[i]));
+            }
+            result.sort((a, b) -> Double.compare(a.getDistanceMeters(), b.getDistanceMeters()));
+            return result;
+        }
+
+        private void move(int from, int to) {
+            ids[to] = ids[from];
+            keys[to] = keys[from];
+            latitudes[to] = latitudes[from];
+            longitudes[to] = longitudes[from];
+        }
+
+        private void store(int i, long id, double key, double latitude, double longitude) {
+            ids[i] = id;
+            keys[i] = key;
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import com.github.kevinmarvin.abeeway.models.BleBeacon;
+import com.github.kevinmarvin.abeeway.models.PositionEstimate;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indoor positioning by BLE fingerprinting.
+ * <p>
+ * A fingerprint is the RSSI vector recorded for each beacon at a surveyed location. A decoded
+ * {@code BLE_BEACON_SCAN} is matched against the fingerprints with a k-nearest-neighbour search
+ * in signal space, where beacons missing from either vector count as {@value #MISSING_RSSI} dBm.
+ * <p>
+ * Fingerprints are kept in an inverted index by beacon MAC. With {@code a = f - missing} and
+ * {@code b = q - missing}, the squared distance between fingerprint {@code f} and query {@code q}
+ * is {@code |a|^2 + |b|^2 - 2 a.b}; {@code |a|^2} is precomputed, so a query only touches the
+ * postings of the beacons it actually heard and never scans the full fingerprint set.
+ * <p>
+ * Adding fingerprints is not thread-safe; once the survey is loaded, queries may run concurrently.
+ */
+public class BleFingerprintIndex {
+
+    /** RSSI assumed for a beacon that is not part of a vector. */
+    public static final int MISSING_RSSI = -105;
+
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+    private float[] baselines = new float[1024];
+    private int fingerprintCount;
+
+    private final LongObjectHashMap<Postings> postingsByBeacon = new LongObjectHashMap<>();
+
+    private final ThreadLocal<QueryScratch> scratch = ThreadLocal.withInitial(QueryScratch::new);
+
+    /**
+     * Add a surveyed fingerprint.
+     *
+     * @param latitude  Latitude of the surveyed location
+     * @param longitude Longitude of the surveyed location
+     * @param beacons   Packed 48-bit beacon MACs
+     * @param rssis     RSSI in dBm for each beacon
+     * @return The fingerprint id
+     */
+    public int addFingerprint(double latitude, double longitude, long[] beacons, int[] rssis) {
+        if (beacons.length != rssis.length) {
+            throw new IllegalArgumentException("beacons and rssis must have the same length");
+        }
+        int id = fingerprintCount;
+        if (id == latitudes.length) {
+            int newLength = id << 1;
+            latitudes = Arrays.copyOf(latitudes, newLength);
+            longitudes = Arrays.copyOf(longitudes, newLength);
+            baselines = Arrays.copyOf(baselines, newLength);
+        }
+
+        float baseline = 0;
+        for (int i = 0; i < beacons.length; i++) {
+            Postings postings = postingsByBeacon.get(beacons[i]);
+            if (postings == null) {
+                postings = new Postings();
+                postingsByBeacon.put(beacons[i], postings);
+            } else if (postings.size > 0 && postings.ids[postings.size - 1] == id) {
+                continue; // duplicate beacon within one fingerprint
+            }
+            int a = Math.max(rssis[i], MISSING_RSSI) - MISSING_RSSI;
+            postings.add(id, a);
+            baseline += a * a;
+        }
+
+        latitudes[id] = latitude;
+        longitudes[id] = longitude;
+        baselines[id] = baseline;
+        fingerprintCount++;
+        return id;
+    }
+
+    /**
+     * Add a surveyed fingerprint from decoded beacons.
+     */
+    public int addFingerprint(double latitude, double longitude, List<BleBeacon> beacons) {
+        long[] macs = new long[beacons.size()];
+        int[] rssis = new int[beacons.size()];
+        int n = 0;
+        for (BleBeacon beacon : beacons) {
+            if (beacon.getMacAddress() == null || beacon.getRssi() == null) continue;
+            macs[n] = ByteUtils.macToLong(beacon.getMacAddress());
+            rssis[n] = beacon.getRssi();
+            n++;
+        }
+        return addFingerprint(latitude, longitude, Arrays.copyOf(macs, n), Arrays.copyOf(rssis, n));
+    }
+
+    /**
+     * Find the k fingerprints closest to a scan, nearest first.
+     * Fingerprints sharing no beacon with the scan are never returned.
+     */
+    public List<Match> nearest(List<BleBeacon> scan, int k) {
+        QueryScratch s = scratch.get();
+        int found = search(scan, k, s);
+        List<Match> matches = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int id = s.heapIds[i];
+            matches.add(new Match(id, Math.sqrt(s.heapDistances[i]), latitudes[id], longitudes[id]));
+        }
+        matches.sort((x, y) -> Double.compare(x.distance, y.distance));
+        return matches;
+    }
+
+    /**
+     * Estimate a position as the inverse-distance weighted mean of the k nearest fingerprints.
+     *
+     * @return The estimate, or null if no fingerprint shares a beacon with the scan
+     */
+    public PositionEstimate locate(List<BleBeacon> scan, int k) {
+        PositionEstimate estimate = new PositionEstimate();
+        return locate(scan, k, estimate) ? estimate : null;
+    }
+
+    /**
+     * Estimate a position into a caller-supplied estimate.
+     *
+     * @return true if an estimate was written
+     */
+    public boolean locate(List<BleBeacon> scan, int k, PositionEstimate out) {
+        QueryScratch s = scratch.get();
+        int found = search(scan, k, s);
+        if (found == 0) {
+            return false;
+        }
+
+        double weightSum = 0, latitude = 0, longitude = 0;
+        for (int i = 0; i < found; i++) {
+            double weight = 1.0 / (1.0 + Math.sqrt(s.heapDistances[i]));
+            int id = s.heapIds[i];
+            weightSum += weight;
+            latitude += weight * latitudes[id];
+            longitude += weight * longitudes[id];
+        }
+        latitude /= weightSum;
+        longitude /= weightSum;
+
+        // Accuracy: weighted spread of the neighbours around the estimate
+        double spread = 0;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        for (int i = 0; i < found; i++) {
+            int id = s.heapIds[i];
+            double dy = (latitudes[id] - latitude) * GeoUtils.METERS_PER_DEGREE;
+            double dx = (longitudes[id] - longitude) * GeoUtils.METERS_PER_DEGREE * cosLatitude;
+            spread += (1.0 / (1.0 + Math.sqrt(s.heapDistances[i]))) * (dx * dx + dy * dy);
+        }
+
+        out.setLatitude(latitude);
+        out.setLongitude(longitude);
+        out.setAccuracy(Math.sqrt(spread / weightSum));
+        out.setSourceCount(found);
+        return true;
+    }
+
+    /**
+     * Get the number of fingerprints.
+     */
+    public int size() {
+        return fingerprintCount;
+    }
+
+    /**
+     * Get the number of distinct beacons across all fingerprints.
+     */
+    public int getBeaconCount() {
+        return postingsByBeacon.size();
+    }
+
+    /**
+     * Run the k-NN search; leaves the k best (unordered) in the scratch heap and returns their count.
+     */
+    private int search(List<BleBeacon> scan, int k, QueryScratch s) {
+        if (scan == null || scan.isEmpty() || k <= 0) {
+            return 0;
+        }
+        s.prepare(fingerprintCount, k);
+
+        float queryNorm = 0;
+        for (BleBeacon beacon : scan) {
+            if (beacon.getMacAddress() == null || beacon.getRssi() == null) continue;
+            int b = Math.max(beacon.getRssi(), MISSING_RSSI) - MISSING_RSSI;
+            queryNorm += b * b;
+
+            Postings postings = postingsByBeacon.get(ByteUtils.macToLong(beacon.getMacAddress()));
+            if (postings == null) continue;
+            for (int i = 0; i < postings.size; i++) {
+                s.accumulate(postings.ids[i], postings.values[i] * b);
+            }
+        }
+
+        for (int i = 0; i < s.touchedCount; i++) {
+            int id = s.touched[i];
+            float distance = baselines[id] + queryNorm - 2 * s.dots[id];
+            s.offer(id, Math.max(0, distance));
+        }
+        return s.heapSize;
+    }
+
+    /**
+     * A fingerprint matched by a query.
+     */
+    public static class Match {
+        private final int fingerprintId;
+        private final double distance;
+        private final double latitude;
+        private final double longitude;
+
+        public Match(int fingerprintId, double distance, double latitude, double longitude) {
+            this.fingerprintId = fingerprintId;
+            this.distance = distance;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public int getFingerprintId() { return fingerprintId; }
+        /** Euclidean distance in signal space (dB). */
+        public double getDistance() { return distance; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+    }
+
+    /**
+     * Fingerprint ids and offset RSSI values for one beacon.
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        short[] values = new short[4];
+        int size;
+
+        void add(int id, int value) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+                values = Arrays.copyOf(values, size << 1);
+            }
+            ids[size] = id;
+            values[size] = (short) value;
+            size++;
+        }
+    }
+
+    /**
+     * Per-thread query buffers, reused across queries to avoid allocation.
+     * Generation stamps replace clearing the dot-product array between queries.
+     */
+    private static final class QueryScratch {
+        float[] dots = new float[0];
+        int[] stamps = new int[0];
+        int[] touched = new int[0];
+        int touchedCount;
+        int generation;
+
+        int[] heapIds = new int[0];
+        float[] heapDistances = new float[0];
+        int heapSize;
+        int heapCapacity;
+
+        void prepare(int fingerprints, int k) {
+            if (dots.length < fingerprints) {
+                int length = Math.max(fingerprints, dots.length << 1);
+                dots = new float[length];
+                stamps = new int[length];
+                touched = new int[length];
+                generation = 0;
+            }
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+            touchedCount = 0;
+
+            if (heapIds.length < k) {
+                heapIds = new int[k];
+                heapDistances = new float[k];
+            }
+            heapSize = 0;
+            heapCapacity = k;
+        }
+
+        void accumulate(int id, float product) {
+            if (stamps[id] != generation) {
+                stamps[id] = generation;
+                dots[id] = 0;
+                touched[touchedCount++] = id;
+            }
+            dots[id] += product;
+        }
+
+        /**
+         * Keep the k smallest distances in a max-heap.
+         */
+        void offer(int id, float distance) {
+            if (heapSize < heapCapacity) {
+                int i = heapSize++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (heapDistances[parent] >= distance) break;
+                    heapIds[i] = heapIds[parent];
+                    heapDistances[i] = heapDistances[parent];
+                    i = parent;
+                }
+                heapIds[i] = id;
+                heapDistances[i] = distance;
+            } else if (distance < heapDistances[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= heapSize) break;
+                    if (child + 1 < heapSize && heapDistances[child + 1] > heapDistances[child]) child++;
+                    if (heapDistances[child] <= distance) break;
+                    heapIds[i] = heapIds[child];
+                    heapDistances[i] = heapDistances[child];
+                    i = child;
+                }
+                heapIds[i] = id;
+                heapDistances[i] = distance;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.models.WiFiAccessPoint;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.List;
+
+/**
+ * Grows a {@link BssidLocationStore} from fleet traffic.
+ * <p>
+ * Badges alternate between GPS fixes and WiFi scans. Whenever a device reports a GPS fix
+ * and a WiFi scan within {@code maxGapMillis} of each other, every access point in the scan
+ * is credited with the GPS position. Observations are weighted by signal strength (a strong
+ * signal means the badge was close to the access point) and by how close in time the fix
+ * and scan were. Each scan is learned at most once.
+ * <p>
+ * Per-device state holds only the latest fix and the latest unmatched scan. All methods are
+ * synchronized.
+ */
+public class BssidLocationLearner {
+
+    private static final long DEFAULT_MAX_GAP_MILLIS = 60_000L;
+    private static final int MAX_SCAN_SIZE = 32;
+
+    private final BssidLocationStore store;
+    private final long maxGapMillis;
+    private final LongObjectHashMap<DeviceObservation> devices = new LongObjectHashMap<>();
+
+    public BssidLocationLearner(BssidLocationStore store) {
+        this(store, DEFAULT_MAX_GAP_MILLIS);
+    }
+
+    /**
+     * @param store        The store to update
+     * @param maxGapMillis Maximum time between a GPS fix and a WiFi scan for them to be paired
+     */
+    public BssidLocationLearner(BssidLocationStore store, long maxGapMillis) {
+        this.store = store;
+        this.maxGapMillis = maxGapMillis;
+    }
+
+    /**
+     * Feed a decoded uplink from a device.
+     *
+     * @param deviceId        Device identifier (for example the DevEUI as a long)
+     * @param timestampMillis Reception time of the uplink in epoch milliseconds
+     * @param data            The decoded uplink
+     */
+    public synchronized void observe(long deviceId, long timestampMillis, UplinkData data) {
+        boolean hasFix = data.getGpsLatitude() != null && data.getGpsLongitude() != null;
+        List<WiFiAccessPoint> scan = data.getWifiAccessPoints();
+        boolean hasScan = scan != null && !scan.isEmpty();
+        if (!hasFix && !hasScan) {
+            return;
+        }
+
+        DeviceObservation device = devices.get(deviceId);
+        if (device == null) {
+            device = new DeviceObservation();
+            devices.put(deviceId, device);
+        }
+
+        if (hasScan) {
+            device.recordScan(timestampMillis, scan);
+        }
+        if (hasFix) {
+            device.fixTime = timestampMillis;
+            device.latitude = data.getGpsLatitude();
+            device.longitude = data.getGpsLongitude();
+            device.hasFix = true;
+        }
+
+        if (device.hasFix && device.scanSize > 0) {
+            long gap = Math.abs(device.fixTime - device.scanTime);
+            if (gap <= maxGapMillis) {
+                learn(device, 1.0 - (double) gap / (maxGapMillis + 1));
+            }
+        }
+    }
+
+    /**
+     * Forget per-device pairing state for devices not heard from since the given time.
+     */
+    public synchronized void evictIdleDevices(long olderThanMillis) {
+        LongObjectHashMap<DeviceObservation> idle = new LongObjectHashMap<>();
+        devices.forEach((deviceId, device) -> {
+            if (Math.max(device.fixTime, device.scanTime) < olderThanMillis) {
+                idle.put(deviceId, device);
+            }
+        });
+        idle.forEach((deviceId, device) -> devices.remove(deviceId));
+    }
+
+    /**
+     * Get the number of devices with pairing state.
+     */
+    public synchronized int getTrackedDeviceCount() {
+        return devices.size();
+    }
+
+    public BssidLocationStore getStore() {
+        return store;
+    }
+
+    private void learn(DeviceObservation device, double timeWeight) {
+        for (int i = 0; i < device.scanSize; i++) {
+            double weight = WifiPositionResolver.rssiWeight(device.rssis[i]) * timeWeight;
+            store.update(device.bssids[i], device.latitude, device.longitude, weight);
+        }
+        device.scanSize = 0;
+    }
+
+    /**
+     * Latest GPS fix and latest unmatched WiFi scan of one device.
+     */
+    private static final class DeviceObservation {
+        boolean hasFix;
+        long fixTime = Long.MIN_VALUE;
+        double latitude;
+        double longitude;
+
+        long scanTime = Long.MIN_VALUE;
+        final long[] bssids = new long[MAX_SCAN_SIZE];
+        final int[] rssis = new int[MAX_SCAN_SIZE];
+        int scanSize;
+
+        void recordScan(long timestampMillis, List<WiFiAccessPoint> scan) {
+            scanTime = timestampMillis;
+            scanSize = 0;
+            for (WiFiAccessPoint ap : scan) {
+                if (scanSize == MAX_SCAN_SIZE) break;
+                if (ap.getMacAddress() == null || ap.getRssi() == null) continue;
+                bssids[scanSize] = ByteUtils.macToLong(ap.getMacAddress());
+                rssis[scanSize] = ap.getRssi();
+                scanSize++;
+            }
+        }
+    }
+}
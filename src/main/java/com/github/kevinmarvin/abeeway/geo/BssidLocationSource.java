@@ -0,0 +1,16 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+/**
+ * Source of known access point locations keyed by packed 48-bit BSSID.
+ */
+public interface BssidLocationSource {
+
+    /**
+     * Look up the location of an access point.
+     *
+     * @param bssid The BSSID packed into the low 48 bits
+     * @param out   Receives latitude, longitude and accuracy (meters) at indices 0, 1 and 2
+     * @return true if the BSSID is known, false otherwise (out is left untouched)
+     */
+    boolean lookup(long bssid, double[] out);
+}
@@ -0,0 +1,264 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Learned access point locations: a running weighted mean position per BSSID.
+ * <p>
+ * Each access point costs a fixed number of primitive slots (mean latitude/longitude,
+ * total weight, weighted squared spread and sample count), regardless of how many
+ * observations it has seen. The store can be saved to a compact binary file
+ * (28 bytes per access point) and reloaded through a memory-mapped read at startup.
+ * <p>
+ * All methods are synchronized.
+ */
+public class BssidLocationStore implements BssidLocationSource {
+
+    private static final int MAGIC = 0x4142534C; // "ABSL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 28;
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double MIN_ACCURACY = 10.0;
+
+    // Keys are stored as bssid + 1 so that 0 can mark an empty slot
+    private long[] keys;
+    private double[] latitudes;
+    private double[] longitudes;
+    private float[] weights;
+    private float[] spreads;
+    private int[] counts;
+    private int mask;
+    private int size;
+    private int minSamples;
+
+    public BssidLocationStore() {
+        this(1024);
+    }
+
+    public BssidLocationStore(int expectedAccessPoints) {
+        allocate(tableSizeFor(expectedAccessPoints));
+        this.minSamples = 1;
+    }
+
+    /**
+     * Set how many samples an access point needs before {@link #lookup} reports it.
+     */
+    public synchronized void setMinSamples(int minSamples) {
+        this.minSamples = Math.max(1, minSamples);
+    }
+
+    /**
+     * Fold one observation of an access point into its running weighted mean.
+     *
+     * @param bssid     The BSSID packed into the low 48 bits
+     * @param latitude  Latitude of the observation in degrees
+     * @param longitude Longitude of the observation in degrees
+     * @param weight    Positive observation weight
+     */
+    public synchronized void update(long bssid, double latitude, double longitude, double weight) {
+        if (!(weight > 0)) {
+            return;
+        }
+        int slot = findOrInsert(bssid & 0xFFFFFFFFFFFFL);
+
+        double previousWeight = weights[slot];
+        double totalWeight = previousWeight + weight;
+        double deltaLatitude = latitude - latitudes[slot];
+        double deltaLongitude = longitude - longitudes[slot];
+
+        if (counts[slot] == 0) {
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+        } else {
+            latitudes[slot] += deltaLatitude * weight / totalWeight;
+            longitudes[slot] += deltaLongitude * weight / totalWeight;
+
+            // Weighted Welford update of the squared spread, in square meters
+            double dy = deltaLatitude * GeoUtils.METERS_PER_DEGREE;
+            double dx = deltaLongitude * GeoUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitudes[slot]));
+            spreads[slot] += (float) ((dx * dx + dy * dy) * previousWeight * weight / totalWeight);
+        }
+        weights[slot] = (float) totalWeight;
+        counts[slot]++;
+    }
+
+    @Override
+    public synchronized boolean lookup(long bssid, double[] out) {
+        int slot = find(bssid & 0xFFFFFFFFFFFFL);
+        if (slot < 0 || counts[slot] < minSamples) {
+            return false;
+        }
+        out[0] = latitudes[slot];
+        out[1] = longitudes[slot];
+        out[2] = Math.max(MIN_ACCURACY, Math.sqrt(spreads[slot] / weights[slot]));
+        return true;
+    }
+
+    /**
+     * Get the number of samples folded into an access point (0 if unknown).
+     */
+    public synchronized int getSampleCount(long bssid) {
+        int slot = find(bssid & 0xFFFFFFFFFFFFL);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Get the number of access points learned.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Write the store to a file. The file is replaced atomically where the file system allows,
+     * and by a plain move otherwise.
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(size);
+
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == 0) continue;
+                if (buffer.remaining() < RECORD_BYTES) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(keys[slot] - 1)
+                    .putInt((int) Math.round(latitudes[slot] * COORDINATE_SCALE))
+                    .putInt((int) Math.round(longitudes[slot] * COORDINATE_SCALE))
+                    .putFloat(weights[slot])
+                    .putFloat(spreads[slot])
+                    .putInt(counts[slot]);
+            }
+            drain(channel, buffer);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Load a store previously written by {@link #save}.
+     */
+    public static BssidLocationStore load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < HEADER_BYTES || mapped.getInt() != MAGIC) {
+                throw new IOException("Not a BSSID location store: " + file);
+            }
+            int version = mapped.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported BSSID location store version: " + version);
+            }
+            long count = mapped.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE || mapped.remaining() < count * RECORD_BYTES) {
+                throw new IOException("Truncated BSSID location store: " + file);
+            }
+
+            BssidLocationStore store = new BssidLocationStore((int) count);
+            for (long i = 0; i < count; i++) {
+                int slot = store.findOrInsert(mapped.getLong());
+                store.latitudes[slot] = mapped.getInt() / COORDINATE_SCALE;
+                store.longitudes[slot] = mapped.getInt() / COORDINATE_SCALE;
+                store.weights[slot] = mapped.getFloat();
+                store.spreads[slot] = mapped.getFloat();
+                store.counts[slot] = mapped.getInt();
+            }
+            return store;
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private int find(long bssid) {
+        long key = bssid + 1;
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+            if (keys[slot] == 0) return -1;
+        }
+    }
+
+    private int findOrInsert(long bssid) {
+        long key = bssid + 1;
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+            if (keys[slot] == 0) {
+                if (size + 1 > keys.length * LOAD_FACTOR) {
+                    rehash(keys.length << 1);
+                    return findOrInsert(bssid);
+                }
+                keys[slot] = key;
+                size++;
+                return slot;
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        double[] oldLatitudes = latitudes;
+        double[] oldLongitudes = longitudes;
+        float[] oldWeights = weights;
+        float[] oldSpreads = spreads;
+        int[] oldCounts = counts;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) continue;
+            int slot = slotFor(oldKeys[i]);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            latitudes[slot] = oldLatitudes[i];
+            longitudes[slot] = oldLongitudes[i];
+            weights[slot] = oldWeights[i];
+            spreads[slot] = oldSpreads[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        weights = new float[capacity];
+        spreads = new float[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotFor(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private static int tableSizeFor(int expected) {
+        int needed = (int) Math.ceil(Math.max(expected, 16) / LOAD_FACTOR);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+}
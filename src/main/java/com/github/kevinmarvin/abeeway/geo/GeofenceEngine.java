@@ -0,0 +1,433 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import com.github.kevinmarvin.abeeway.enums.EventType;
+import com.github.kevinmarvin.abeeway.models.GeofenceTransition;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Server-side geofence evaluation for decoded positions.
+ * <p>
+ * Polygons and circles are registered in a uniform latitude/longitude grid: each cell lists
+ * the geofences whose bounding box overlaps it, so a position is only tested against the
+ * handful of geofences in its own cell instead of the whole set. The cell size should be
+ * in the order of the typical geofence size (the default 0.01 degrees is about 1 km).
+ * Geofences spanning more than {@value #MAX_CELLS_PER_GEOFENCE} cells are not spread over
+ * the grid but kept in one list tested on every evaluation.
+ * <p>
+ * The engine tracks which geofences each device is inside and reports
+ * {@link EventType#GEOFENCE_ENTER} / {@link EventType#GEOFENCE_EXIT} transitions.
+ * Polygons are tested in planar latitude/longitude coordinates and must not cross the
+ * antimeridian. All methods are thread-safe.
+ */
+public class GeofenceEngine {
+
+    private static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+    private static final int STATE_STRIPES = 64;
+    private static final int[] NONE = new int[0];
+
+    /** Grid cells above which a geofence is tested on every evaluation instead. */
+    public static final int MAX_CELLS_PER_GEOFENCE = 4096;
+
+    private final double cellSize;
+    private final ReadWriteLock fenceLock = new ReentrantReadWriteLock();
+    private final LongObjectHashMap<CellEntries> cells = new LongObjectHashMap<>();
+    private final CellEntries largeGeofences = new CellEntries();
+    private Geofence[] geofences = new Geofence[256];
+    private int geofenceCount;
+    private int activeCount;
+
+    private final DeviceStripe[] stripes = new DeviceStripe[STATE_STRIPES];
+    private final ThreadLocal<int[][]> scratch = ThreadLocal.withInitial(() -> new int[][]{new int[16]});
+
+    public GeofenceEngine() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * @param cellSizeDegrees Grid cell size in degrees of latitude and longitude
+     */
+    public GeofenceEngine(double cellSizeDegrees) {
+        if (!(cellSizeDegrees > 0)) {
+            throw new IllegalArgumentException("cellSizeDegrees must be positive: " + cellSizeDegrees);
+        }
+        this.cellSize = cellSizeDegrees;
+        for (int i = 0; i < STATE_STRIPES; i++) {
+            stripes[i] = new DeviceStripe();
+        }
+    }
+
+    /**
+     * Register a polygon geofence.
+     *
+     * @param latitudes  Vertex latitudes (at least 3, the ring is closed implicitly)
+     * @param longitudes Vertex longitudes
+     * @return The geofence id
+     */
+    public int addPolygon(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices with matching coordinates");
+        }
+        return register(new Polygon(latitudes.clone(), longitudes.clone()));
+    }
+
+    /**
+     * Register a circular geofence.
+     *
+     * @return The geofence id
+     */
+    public int addCircle(double latitude, double longitude, double radiusMeters) {
+        if (!(radiusMeters > 0)) {
+            throw new IllegalArgumentException("radiusMeters must be positive: " + radiusMeters);
+        }
+        return register(new Circle(latitude, longitude, radiusMeters));
+    }
+
+    /**
+     * Remove a geofence. Devices inside it get an exit transition on their next evaluation.
+     */
+    public void removeGeofence(int geofenceId) {
+        fenceLock.writeLock().lock();
+        try {
+            if (geofenceId < 0 || geofenceId >= geofenceCount || geofences[geofenceId] == null) {
+                return;
+            }
+            Geofence fence = geofences[geofenceId];
+            if (isLarge(fence)) {
+                largeGeofences.remove(geofenceId);
+            } else {
+                forEachCell(fence, key -> {
+                    CellEntries entries = cells.get(key);
+                    if (entries != null && entries.remove(geofenceId) && entries.size == 0) {
+                        cells.remove(key);
+                    }
+                });
+            }
+            geofences[geofenceId] = null;
+            activeCount--;
+        } finally {
+            fenceLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of registered geofences.
+     */
+    public int size() {
+        fenceLock.readLock().lock();
+        try {
+            return activeCount;
+        } finally {
+            fenceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Test whether a point lies inside a geofence.
+     */
+    public boolean contains(int geofenceId, double latitude, double longitude) {
+        fenceLock.readLock().lock();
+        try {
+            Geofence fence = geofenceId >= 0 && geofenceId < geofenceCount ? geofences[geofenceId] : null;
+            return fence != null && fence.contains(latitude, longitude);
+        } finally {
+            fenceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the geofences containing a point, in ascending id order, without touching any
+     * device state.
+     */
+    public int[] findGeofences(double latitude, double longitude) {
+        int[][] holder = scratch.get();
+        int count = findContaining(latitude, longitude, holder);
+        return count == 0 ? NONE : Arrays.copyOf(holder[0], count);
+    }
+
+    /**
+     * Evaluate the GPS position of a decoded uplink.
+     *
+     * @return The transitions caused by this position; empty if none or if the uplink has no position
+     */
+    public List<GeofenceTransition> evaluate(long deviceId, UplinkData data) {
+        if (data.getGpsLatitude() == null || data.getGpsLongitude() == null) {
+            return Collections.emptyList();
+        }
+        return evaluate(deviceId, data.getGpsLatitude(), data.getGpsLongitude());
+    }
+
+    /**
+     * Evaluate a device position and update its inside/outside state.
+     * Allocates nothing when the device stays in the same set of geofences.
+     *
+     * @return The enter and exit transitions caused by this position
+     */
+    public List<GeofenceTransition> evaluate(long deviceId, double latitude, double longitude) {
+        int[][] holder = scratch.get();
+        int insideCount = findContaining(latitude, longitude, holder);
+        int[] inside = holder[0];
+
+        DeviceStripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            int[] previous = stripe.states.get(deviceId);
+            if (previous == null) previous = NONE;
+            if (Arrays.equals(previous, 0, previous.length, inside, 0, insideCount)) {
+                return Collections.emptyList();
+            }
+
+            List<GeofenceTransition> transitions = new ArrayList<>();
+            int i = 0, j = 0;
+            while (i < previous.length || j < insideCount) {
+                if (j == insideCount || (i < previous.length && previous[i] < inside[j])) {
+                    transitions.add(new GeofenceTransition(deviceId, previous[i++], EventType.GEOFENCE_EXIT));
+                } else if (i == previous.length || inside[j] < previous[i]) {
+                    transitions.add(new GeofenceTransition(deviceId, inside[j++], EventType.GEOFENCE_ENTER));
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+
+            if (insideCount == 0) {
+                stripe.states.remove(deviceId);
+            } else {
+                stripe.states.put(deviceId, Arrays.copyOf(inside, insideCount));
+            }
+            return transitions;
+        }
+    }
+
+    /**
+     * Get the geofences a device is currently inside, in ascending id order.
+     */
+    public int[] getInsideGeofences(long deviceId) {
+        DeviceStripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            int[] inside = stripe.states.get(deviceId);
+            return inside == null ? NONE : inside.clone();
+        }
+    }
+
+    /**
+     * Forget the inside/outside state of a device.
+     */
+    public void removeDevice(long deviceId) {
+        DeviceStripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            stripe.states.remove(deviceId);
+        }
+    }
+
+    /**
+     * Collect the ids of geofences containing the point, ascending, into holder[0].
+     */
+    private int findContaining(double latitude, double longitude, int[][] holder) {
+        fenceLock.readLock().lock();
+        try {
+            CellEntries entries = cells.get(cellKey(row(latitude), column(longitude)));
+            int count = 0;
+            if (entries != null) {
+                count = collect(entries, latitude, longitude, holder, count);
+            }
+            if (largeGeofences.size > 0) {
+                int gridCount = count;
+                count = collect(largeGeofences, latitude, longitude, holder, count);
+                if (gridCount > 0 && count > gridCount) {
+                    Arrays.sort(holder[0], 0, count);
+                }
+            }
+            return count;
+        } finally {
+            fenceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append the ids of the entries containing the point to holder[0], after count ids.
+     */
+    private int collect(CellEntries entries, double latitude, double longitude, int[][] holder, int count) {
+        int[] out = holder[0];
+        for (int i = 0; i < entries.size; i++) {
+            int id = entries.ids[i];
+            if (geofences[id].contains(latitude, longitude)) {
+                if (count == out.length) {
+                    out = Arrays.copyOf(out, count << 1);
+                    holder[0] = out;
+                }
+                out[count++] = id;
+            }
+        }
+        return count;
+    }
+
+    private int register(Geofence fence) {
+        fenceLock.writeLock().lock();
+        try {
+            int id = geofenceCount++;
+            if (id == geofences.length) {
+                geofences = Arrays.copyOf(geofences, id << 1);
+            }
+            geofences[id] = fence;
+            activeCount++;
+            if (isLarge(fence)) {
+                largeGeofences.add(id);
+                return id;
+            }
+            forEachCell(fence, key -> {
+                CellEntries entries = cells.get(key);
+                if (entries == null) {
+                    entries = new CellEntries();
+                    cells.put(key, entries);
+                }
+                entries.add(id);
+            });
+            return id;
+        } finally {
+            fenceLock.writeLock().unlock();
+        }
+    }
+
+    private boolean isLarge(Geofence fence) {
+        long rows = (long) row(fence.maxLatitude) - row(fence.minLatitude) + 1;
+        long columns = (long) column(fence.maxLongitude) - column(fence.minLongitude) + 1;
+        return rows * columns > MAX_CELLS_PER_GEOFENCE;
+    }
+
+    private void forEachCell(Geofence fence, CellVisitor visitor) {
+        int minRow = row(fence.minLatitude), maxRow = row(fence.maxLatitude);
+        int minColumn = column(fence.minLongitude), maxColumn = column(fence.maxLongitude);
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                visitor.visit(cellKey(r, c));
+            }
+        }
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90.0) / cellSize);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor((longitude + 180.0) / cellSize);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int stripeFor(long deviceId) {
+        long h = deviceId * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 58);
+    }
+
+    @FunctionalInterface
+    private interface CellVisitor {
+        void visit(long cellKey);
+    }
+
+    /**
+     * Ascending geofence ids registered in one grid cell.
+     */
+    private static final class CellEntries {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            ids[size++] = id;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) return false;
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+
+    private static final class DeviceStripe {
+        final LongObjectHashMap<int[]> states = new LongObjectHashMap<>();
+    }
+
+    private abstract static class Geofence {
+        double minLatitude, maxLatitude, minLongitude, maxLongitude;
+
+        abstract boolean contains(double latitude, double longitude);
+
+        boolean inBounds(double latitude, double longitude) {
+            return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+        }
+    }
+
+    private static final class Polygon extends Geofence {
+        private final double[] latitudes;
+        private final double[] longitudes;
+
+        Polygon(double[] latitudes, double[] longitudes) {
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            minLatitude = maxLatitude = latitudes[0];
+            minLongitude = maxLongitude = longitudes[0];
+            for (int i = 1; i < latitudes.length; i++) {
+                minLatitude = Math.min(minLatitude, latitudes[i]);
+                maxLatitude = Math.max(maxLatitude, latitudes[i]);
+                minLongitude = Math.min(minLongitude, longitudes[i]);
+                maxLongitude = Math.max(maxLongitude, longitudes[i]);
+            }
+        }
+
+        /**
+         * Even-odd ray casting along the longitude axis.
+         */
+        @Override
+        boolean contains(double latitude, double longitude) {
+            if (!inBounds(latitude, longitude)) return false;
+            boolean inside = false;
+            for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+                if ((latitudes[i] > latitude) != (latitudes[j] > latitude)) {
+                    double crossing = longitudes[i] + (latitude - latitudes[i])
+                        * (longitudes[j] - longitudes[i]) / (latitudes[j] - latitudes[i]);
+                    if (longitude < crossing) inside = !inside;
+                }
+            }
+            return inside;
+        }
+    }
+
+    private static final class Circle extends Geofence {
+        private final double latitude;
+        private final double longitude;
+        private final double radiusMeters;
+
+        Circle(double latitude, double longitude, double radiusMeters) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radiusMeters = radiusMeters;
+            double dLat = radiusMeters / GeoUtils.METERS_PER_DEGREE;
+            double dLon = radiusMeters / Math.max(1.0, GeoUtils.metersPerDegreeLongitude(latitude));
+            minLatitude = latitude - dLat;
+            maxLatitude = latitude + dLat;
+            minLongitude = longitude - dLon;
+            maxLongitude = longitude + dLon;
+        }
+
+        @Override
+        boolean contains(double lat, double lon) {
+            return inBounds(lat, lon)
+                && GeoUtils.approximateDistanceMeters(latitude, longitude, lat, lon) <= radiusMeters;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Off-heap open-addressing hash table mapping 48-bit BSSIDs to access point locations.
+ * <p>
+ * Each slot is 16 bytes in direct memory: the BSSID and accuracy packed into one long,
+ * followed by latitude and longitude as ints in 1e-7 degree units (the same scale used by
+ * GPS position messages). Keeping tens of millions of entries outside the Java heap avoids
+ * both the object overhead of a {@code HashMap} and the GC cost of scanning it.
+ * <p>
+ * Writes are not thread-safe; once loading is complete, lookups may run concurrently.
+ */
+public class OffHeapBssidIndex implements BssidLocationSource {
+
+    private static final int SLOT_BYTES = 16;
+    private static final int SLOTS_PER_BUFFER_SHIFT = 26; // 64M slots = 1 GiB per buffer
+    private static final int SLOTS_PER_BUFFER = 1 << SLOTS_PER_BUFFER_SHIFT;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+    private static final int MAX_ACCURACY = 0xFFFE;
+    private static final int DEFAULT_ACCURACY = 50;
+    private static final double COORDINATE_SCALE = 1e7;
+
+    private ByteBuffer[] buffers;
+    private long capacity;
+    private long mask;
+    private long size;
+
+    // Scratch for the CSV parser: {value, end index}
+    private final long[] parsed = new long[2];
+
+    public OffHeapBssidIndex() {
+        this(1024);
+    }
+
+    /**
+     * Create an index sized for the expected number of access points.
+     */
+    public OffHeapBssidIndex(long expectedEntries) {
+        allocate(tableSizeFor(expectedEntries));
+    }
+
+    /**
+     * Load an index from a CSV file with lines of {@code bssid,latitude,longitude[,accuracy]}.
+     * A header line and malformed lines are skipped.
+     */
+    public static OffHeapBssidIndex loadCsv(Path csvFile) throws IOException {
+        // Roughly 40 bytes per line; undersizing only costs a rehash
+        OffHeapBssidIndex index = new OffHeapBssidIndex(Math.max(1024, Files.size(csvFile) / 40));
+        try (InputStream in = Files.newInputStream(csvFile)) {
+            index.loadCsv(in);
+        }
+        return index;
+    }
+
+    /**
+     * Add every valid line of a CSV stream to this index.
+     *
+     * @return The number of records added or updated
+     */
+    public long loadCsv(InputStream in) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        long loaded = 0;
+
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = chunk[i];
+                if (b == '\n') {
+                    if (parseLine(line, lineLength)) loaded++;
+                    lineLength = 0;
+                } else if (lineLength < line.length) {
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        if (lineLength > 0 && parseLine(line, lineLength)) {
+            loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * Add or replace the location of an access point.
+     *
+     * @param bssid          The BSSID packed into the low 48 bits
+     * @param latitude       Latitude in degrees
+     * @param longitude      Longitude in degrees
+     * @param accuracyMeters Accuracy radius in meters (capped at 65534)
+     */
+    public void put(long bssid, double latitude, double longitude, int accuracyMeters) {
+        putScaled(bssid, (int) Math.round(latitude * COORDINATE_SCALE),
+            (int) Math.round(longitude * COORDINATE_SCALE), accuracyMeters);
+    }
+
+    @Override
+    public boolean lookup(long bssid, double[] out) {
+        long tag = bssid & 0xFFFFFFFFFFFFL;
+        for (long slot = mix(tag) & mask; ; slot = (slot + 1) & mask) {
+            ByteBuffer buffer = buffers[(int) (slot >>> SLOTS_PER_BUFFER_SHIFT)];
+            int offset = (int) (slot & (SLOTS_PER_BUFFER - 1)) * SLOT_BYTES;
+            long word = buffer.getLong(offset);
+            if (word == 0) {
+                return false;
+            }
+            if (word >>> 16 == tag) {
+                out[0] = buffer.getInt(offset + 8) / COORDINATE_SCALE;
+                out[1] = buffer.getInt(offset + 12) / COORDINATE_SCALE;
+                out[2] = (word & 0xFFFF) - 1;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the number of access points stored.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get the number of slots in the table.
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the amount of direct memory held by the table.
+     */
+    public long memoryBytes() {
+        return capacity * SLOT_BYTES;
+    }
+
+    private void putScaled(long bssid, int latitude, int longitude, int accuracyMeters) {
+        if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+            rehash(capacity << 1);
+        }
+        if (insert(bssid & 0xFFFFFFFFFFFFL, latitude, longitude,
+                Math.max(0, Math.min(accuracyMeters, MAX_ACCURACY)) + 1)) {
+            size++;
+        }
+    }
+
+    /**
+     * Insert into the current table; returns true if the BSSID was not present.
+     */
+    private boolean insert(long tag, int latitude, int longitude, int accuracyTag) {
+        for (long slot = mix(tag) & mask; ; slot = (slot + 1) & mask) {
+            ByteBuffer buffer = buffers[(int) (slot >>> SLOTS_PER_BUFFER_SHIFT)];
+            int offset = (int) (slot & (SLOTS_PER_BUFFER - 1)) * SLOT_BYTES;
+            long word = buffer.getLong(offset);
+            if (word == 0 || word >>> 16 == tag) {
+                buffer.putLong(offset, (tag << 16) | accuracyTag);
+                buffer.putInt(offset + 8, latitude);
+                buffer.putInt(offset + 12, longitude);
+                return word == 0;
+            }
+        }
+    }
+
+    private void rehash(long newCapacity) {
+        ByteBuffer[] old = buffers;
+        long oldCapacity = capacity;
+        allocate(newCapacity);
+
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer buffer = old[(int) (slot >>> SLOTS_PER_BUFFER_SHIFT)];
+            int offset = (int) (slot & (SLOTS_PER_BUFFER - 1)) * SLOT_BYTES;
+            long word = buffer.getLong(offset);
+            if (word != 0) {
+                insert(word >>> 16, buffer.getInt(offset + 8), buffer.getInt(offset + 12), (int) (word & 0xFFFF));
+            }
+        }
+    }
+
+    private void allocate(long slots) {
+        int bufferCount = (int) ((slots + SLOTS_PER_BUFFER - 1) >>> SLOTS_PER_BUFFER_SHIFT);
+        buffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            long slotsInBuffer = Math.min(SLOTS_PER_BUFFER, slots - ((long) i << SLOTS_PER_BUFFER_SHIFT));
+            buffers[i] = ByteBuffer.allocateDirect((int) (slotsInBuffer * SLOT_BYTES)).order(ByteOrder.nativeOrder());
+        }
+        capacity = slots;
+        mask = slots - 1;
+    }
+
+    private static long tableSizeFor(long expectedEntries) {
+        long needed = (long) Math.ceil(Math.max(expectedEntries, 16) / MAX_LOAD_FACTOR);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Parse {@code bssid,latitude,longitude[,accuracy]} without allocating.
+     */
+    private boolean parseLine(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') length--;
+
+        long bssid = 0;
+        int digits = 0;
+        int i = 0;
+        for (; i < length && line[i] != ','; i++) {
+            int nibble = Character.digit(line[i], 16);
+            if (nibble >= 0) {
+                bssid = (bssid << 4) | nibble;
+                digits++;
+            } else if (line[i] != ':' && line[i] != '-') {
+                return false;
+            }
+        }
+        if (digits != 12 || i >= length) return false;
+
+        long[] field = parseFixedPoint(line, i + 1, length);
+        if (field == null) return false;
+        long latitude = field[0];
+
+        field = parseFixedPoint(line, (int) field[1] + 1, length);
+        if (field == null) return false;
+        long longitude = field[0];
+
+        int accuracy = DEFAULT_ACCURACY;
+        if (field[1] < length) {
+            long[] accuracyField = parseFixedPoint(line, (int) field[1] + 1, length);
+            if (accuracyField != null) {
+                accuracy = (int) (accuracyField[0] / (long) COORDINATE_SCALE);
+            }
+        }
+
+        if (Math.abs(latitude) > 90 * (long) COORDINATE_SCALE || Math.abs(longitude) > 180 * (long) COORDINATE_SCALE) {
+            return false;
+        }
+        putScaled(bssid, (int) latitude, (int) longitude, accuracy);
+        return true;
+    }
+
+    /**
+     * Parse a decimal field into 1e-7 units; returns {value, index of terminator} or null.
+     */
+    private long[] parseFixedPoint(byte[] line, int start, int length) {
+        int i = start;
+        boolean negative = false;
+        if (i < length && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+
+        long integer = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean inFraction = false;
+
+        for (; i < length && line[i] != ','; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (inFraction) {
+                    if (fractionDigits < 7) {
+                        fraction = fraction * 10 + (b - '0');
+                        fractionDigits++;
+                    }
+                } else if (integer < 100_000_000L) {
+                    integer = integer * 10 + (b - '0');
+                }
+            } else if (b == '.' && !inFraction) {
+                inFraction = true;
+            } else if (b != ' ') {
+                return null;
+            }
+        }
+        if (!seenDigit) return null;
+
+        for (; fractionDigits < 7; fractionDigits++) {
+            fraction *= 10;
+        }
+        long value = integer * (long) COORDINATE_SCALE + fraction;
+        parsed[0] = negative ? -value : value;
+        parsed[1] = i;
+        return parsed;
+    }
+}
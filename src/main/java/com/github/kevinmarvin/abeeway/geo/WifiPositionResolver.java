@@ -0,0 +1,140 @@
+package com.github.kevinmarvin.abeeway.geo;
+
+import com.github.kevinmarvin.abeeway.models.PositionEstimate;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.models.WiFiAccessPoint;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+
+import java.util.List;
+
+/**
+ * Local WiFi geolocation: resolves decoded BSSID scans to a position using a
+ * {@link BssidLocationSource} instead of an external resolver.
+ * <p>
+ * The position is the RSSI-weighted centroid of the known access points; stronger signals
+ * pull the estimate closer. Accuracy combines the access point accuracies with the spread
+ * of the access points around the centroid. Instances are thread-safe if the source is.
+ */
+public class WifiPositionResolver {
+
+    private static final int DEFAULT_RSSI = -90;
+
+    // Linear amplitude weight for every signed 8-bit RSSI value, indexed by rssi + 128
+    private static final double[] RSSI_WEIGHTS = new double[256];
+
+    static {
+        for (int rssi = -128; rssi < 128; rssi++) {
+            RSSI_WEIGHTS[rssi + 128] = Math.pow(10.0, Math.min(rssi, 0) / 20.0);
+        }
+    }
+
+    private final BssidLocationSource source;
+    private final int minAccessPoints;
+
+    public WifiPositionResolver(BssidLocationSource source) {
+        this(source, 1);
+    }
+
+    /**
+     * @param source          Known access point locations
+     * @param minAccessPoints Minimum number of known access points required for an estimate
+     */
+    public WifiPositionResolver(BssidLocationSource source, int minAccessPoints) {
+        this.source = source;
+        this.minAccessPoints = Math.max(1, minAccessPoints);
+    }
+
+    /**
+     * Resolve the WiFi scan of a decoded uplink.
+     *
+     * @return The estimated position, or null if the uplink has no scan or too few known access points
+     */
+    public PositionEstimate resolve(UplinkData data) {
+        PositionEstimate estimate = new PositionEstimate();
+        return resolve(data.getWifiAccessPoints(), estimate) ? estimate : null;
+    }
+
+    /**
+     * Resolve a list of access points into a caller-supplied estimate.
+     *
+     * @return true if an estimate was written, false otherwise
+     */
+    public boolean resolve(List<WiFiAccessPoint> accessPoints, PositionEstimate out) {
+        if (accessPoints == null || accessPoints.isEmpty()) {
+            return false;
+        }
+
+        int count = accessPoints.size();
+        double[] location = new double[3];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        double[] weights = new double[count];
+        double[] accuracies = new double[count];
+
+        int known = 0;
+        double weightSum = 0;
+        double latitudeSum = 0;
+        double longitudeOffsetSum = 0;
+        double referenceLongitude = 0;
+
+        for (int i = 0; i < count; i++) {
+            WiFiAccessPoint ap = accessPoints.get(i);
+            if (ap.getMacAddress() == null || !source.lookup(ByteUtils.macToLong(ap.getMacAddress()), location)) {
+                continue;
+            }
+
+            double weight = rssiWeight(ap.getRssi() != null ? ap.getRssi() : DEFAULT_RSSI);
+
+            if (known == 0) {
+                referenceLongitude = location[1];
+            }
+            // Average longitudes relative to the first AP so scans across the antimeridian work
+            double longitudeOffset = normalizeLongitude(location[1] - referenceLongitude);
+
+            latitudes[known] = location[0];
+            longitudes[known] = longitudeOffset;
+            weights[known] = weight;
+            accuracies[known] = location[2];
+            known++;
+
+            weightSum += weight;
+            latitudeSum += weight * location[0];
+            longitudeOffsetSum += weight * longitudeOffset;
+        }
+
+        if (known < minAccessPoints) {
+            return false;
+        }
+
+        double latitude = latitudeSum / weightSum;
+        double longitudeOffset = longitudeOffsetSum / weightSum;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+
+        double varianceSum = 0;
+        for (int i = 0; i < known; i++) {
+            double dy = (latitudes[i] - latitude) * GeoUtils.METERS_PER_DEGREE;
+            double dx = (longitudes[i] - longitudeOffset) * GeoUtils.METERS_PER_DEGREE * cosLatitude;
+            varianceSum += weights[i] * (accuracies[i] * accuracies[i] + dx * dx + dy * dy);
+        }
+
+        out.setLatitude(latitude);
+        out.setLongitude(normalizeLongitude(referenceLongitude + longitudeOffset));
+        out.setAccuracy(Math.sqrt(varianceSum / weightSum));
+        out.setSourceCount(known);
+        return true;
+    }
+
+    /**
+     * Relative linear weight of a signal strength in dBm.
+     */
+    static double rssiWeight(int rssi) {
+        return RSSI_WEIGHTS[Math.max(-128, Math.min(127, rssi)) + 128];
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        if (longitude > 180.0) return longitude - 360.0;
+        if (longitude < -180.0) return longitude + 360.0;
+        return longitude;
+    }
+}
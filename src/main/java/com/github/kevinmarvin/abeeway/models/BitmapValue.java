@@ -0,0 +1,171 @@
+package com.github.kevinmarvin.abeeway.models;
+
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterType;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable value of a {@link ParameterType#BITMAP} parameter: the raw flags, bit 0 being the
+ * lowest bit of the first byte on the air, and the definition giving their names.
+ * <p>
+ * Iterating returns the names of the flags that are set; {@link #toMap()} renders every named
+ * flag when a map is needed.
+ */
+public final class BitmapValue implements Iterable<String> {
+
+    private final ParameterDefinition definition;
+    private final long bits;
+
+    /**
+     * @param definition Bitmap parameter definition
+     * @param bits       Flags, bit n holding flag n
+     * @throws IllegalArgumentException if the flags do not fit the parameter size
+     */
+    public BitmapValue(ParameterDefinition definition, long bits) {
+        int size = definition.getSize() * 8;
+        if (size < 64 && (bits >>> size) != 0) {
+            throw new IllegalArgumentException("Bitmap of " + definition.getName() + " does not fit "
+                + definition.getSize() + " bytes: 0x" + Long.toHexString(bits));
+        }
+        this.definition = definition;
+        this.bits = bits;
+    }
+
+    /**
+     * Create a bitmap with the named flags set.
+     *
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    public static BitmapValue of(ParameterDefinition definition, String... names) {
+        long bits = 0;
+        for (String name : names) {
+            bits |= 1L << indexOf(definition, name);
+        }
+        return new BitmapValue(definition, bits);
+    }
+
+    public ParameterDefinition getDefinition() { return definition; }
+
+    /** Flags, bit n holding flag n. */
+    public long getBits() { return bits; }
+
+    /**
+     * Check a flag by position.
+     */
+    public boolean isSet(int index) {
+        return index >= 0 && index < 64 && (bits & (1L << index)) != 0;
+    }
+
+    /**
+     * Check a flag by name.
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public boolean isSet(String name) {
+        return isSet(indexOf(definition, name));
+    }
+
+    /**
+     * Get a copy with a flag changed.
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public BitmapValue with(String name, boolean set) {
+        long mask = 1L << indexOf(definition, name);
+        return new BitmapValue(definition, set ? bits | mask : bits & ~mask);
+    }
+
+    /**
+     * Get the number of flags set.
+     */
+    public int cardinality() {
+        return Long.bitCount(bits);
+    }
+
+    /**
+     * Iterate over the names of the flags set, in bit order. Unnamed bits are skipped.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private long remaining = namedBits();
+
+            @Override
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            @Override
+            public String next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                int index = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return definition.getBitName(index);
+            }
+        };
+    }
+
+    /**
+     * Render every named flag, in bit order.
+     */
+    public Map<String, Boolean> toMap() {
+        Map<String, Boolean> map = new LinkedHashMap<>();
+        for (int i = 0; i < definition.getBitCount(); i++) {
+            String name = definition.getBitName(i);
+            if (name != null) {
+                map.put(name, isSet(i));
+            }
+        }
+        return map;
+    }
+
+    private long namedBits() {
+        long named = bits;
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            int index = Long.numberOfTrailingZeros(rest);
+            if (definition.getBitName(index) == null) {
+                named &= ~(1L << index);
+            }
+        }
+        return named;
+    }
+
+    private static int indexOf(ParameterDefinition definition, String name) {
+        int index = definition.getBitIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown flag of " + definition.getName() + ": " + name);
+        }
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BitmapValue)) return false;
+        BitmapValue other = (BitmapValue) o;
+        return bits == other.bits && definition.getId() == other.definition.getId();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * definition.getId() + Long.hashCode(bits);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(definition.getName()).append('[');
+        for (String name : this) {
+            if (builder.charAt(builder.length() - 1) != '[') {
+                builder.append(", ");
+            }
+            builder.append(name);
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.kevinmarvin.abeeway.models;
+
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+
+/**
+ * Data class representing the latest known state of a device, merged from its decoded uplinks.
+ * Fields not reported yet hold {@code NaN}, {@code -1} or {@code null}.
+ */
+public class DeviceState {
+    private long deviceId;
+    private double latitude = Double.NaN;
+    private double longitude = Double.NaN;
+    private long positionTimeMillis;
+    private int batteryLevel = -1;
+    private BatteryStatus batteryStatus;
+    private DynamicMotionState dynamicMotionState;
+    private String trackingMode;
+    private int ackToken = -1;
+    private double temperature = Double.NaN;
+    private long lastSeenMillis;
+
+    public DeviceState() {
+    }
+
+    public long getDeviceId() { return deviceId; }
+    public void setDeviceId(long deviceId) { this.deviceId = deviceId; }
+
+    public double getLatitude() { return latitude; }
+    public void setLatitude(double latitude) { this.latitude = latitude; }
+
+    public double getLongitude() { return longitude; }
+    public void setLongitude(double longitude) { this.longitude = longitude; }
+
+    /** Whether a position has been reported. */
+    public boolean hasPosition() { return !Double.isNaN(latitude); }
+
+    /** Time of the uplink that carried the last position, in epoch milliseconds. */
+    public long getPositionTimeMillis() { return positionTimeMillis; }
+    public void setPositionTimeMillis(long positionTimeMillis) { this.positionTimeMillis = positionTimeMillis; }
+
+    public int getBatteryLevel() { return batteryLevel; }
+    public void setBatteryLevel(int batteryLevel) { this.batteryLevel = batteryLevel; }
+
+    public BatteryStatus getBatteryStatus() { return batteryStatus; }
+    public void setBatteryStatus(BatteryStatus batteryStatus) { this.batteryStatus = batteryStatus; }
+
+    public DynamicMotionState getDynamicMotionState() { return dynamicMotionState; }
+    public void setDynamicMotionState(DynamicMotionState dynamicMotionState) { this.dynamicMotionState = dynamicMotionState; }
+
+    public String getTrackingMode() { return trackingMode; }
+    public void setTrackingMode(String trackingMode) { this.trackingMode = trackingMode; }
+
+    public int getAckToken() { return ackToken; }
+    public void setAckToken(int ackToken) { this.ackToken = ackToken; }
+
+    public double getTemperature() { return temperature; }
+    public void setTemperature(double temperature) { this.temperature = temperature; }
+
+    /** Time of the last uplink, in epoch milliseconds. */
+    public long getLastSeenMillis() { return lastSeenMillis; }
+    public void setLastSeenMillis(long lastSeenMillis) { this.lastSeenMillis = lastSeenMillis; }
+}
@@ -0,0 +1,31 @@
+package com.github.kevinmarvin.abeeway.models;
+
+import com.github.kevinmarvin.abeeway.enums.EventType;
+
+/**
+ * Data class representing a device entering or leaving a server-side geofence.
+ */
+public class GeofenceTransition {
+    private long deviceId;
+    private int geofenceId;
+    private EventType eventType;
+
+    public GeofenceTransition() {
+    }
+
+    public GeofenceTransition(long deviceId, int geofenceId, EventType eventType) {
+        this.deviceId = deviceId;
+        this.geofenceId = geofenceId;
+        this.eventType = eventType;
+    }
+
+    public long getDeviceId() { return deviceId; }
+    public void setDeviceId(long deviceId) { this.deviceId = deviceId; }
+
+    public int getGeofenceId() { return geofenceId; }
+    public void setGeofenceId(int geofenceId) { this.geofenceId = geofenceId; }
+
+    /** {@link EventType#GEOFENCE_ENTER} or {@link EventType#GEOFENCE_EXIT}. */
+    public EventType getEventType() { return eventType; }
+    public void setEventType(EventType eventType) { this.eventType = eventType; }
+}
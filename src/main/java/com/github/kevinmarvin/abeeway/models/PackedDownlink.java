@@ -0,0 +1,42 @@
+package com.github.kevinmarvin.abeeway.models;
+
+/**
+ * Encoded downlink sized for a LoRaWAN data rate, with its time on air.
+ */
+public class PackedDownlink extends EncodedDownlink {
+    private int dataRate;
+    private int parameterCount;
+    private double timeOnAirMillis;
+    private double[] timeOnAirBySpreadingFactor;
+
+    public PackedDownlink() {
+    }
+
+    public PackedDownlink(byte[] bytes, int fPort) {
+        super(bytes, fPort);
+    }
+
+    /** Data rate the frame was sized for. */
+    public int getDataRate() { return dataRate; }
+    public void setDataRate(int dataRate) { this.dataRate = dataRate; }
+
+    public int getParameterCount() { return parameterCount; }
+    public void setParameterCount(int parameterCount) { this.parameterCount = parameterCount; }
+
+    /** Time on air at the data rate the frame was sized for, in milliseconds. */
+    public double getTimeOnAirMillis() { return timeOnAirMillis; }
+    public void setTimeOnAirMillis(double timeOnAirMillis) { this.timeOnAirMillis = timeOnAirMillis; }
+
+    /** Time on air for spreading factors 7 to 12, in milliseconds, NaN where the region has none. */
+    public double[] getTimeOnAirBySpreadingFactor() { return timeOnAirBySpreadingFactor; }
+    public void setTimeOnAirBySpreadingFactor(double[] timeOnAirBySpreadingFactor) { this.timeOnAirBySpreadingFactor = timeOnAirBySpreadingFactor; }
+
+    /**
+     * Get the time on air for a spreading factor, in milliseconds.
+     */
+    public double getTimeOnAirMillis(int spreadingFactor) {
+        int index = spreadingFactor - 7;
+        return timeOnAirBySpreadingFactor != null && index >= 0 && index < timeOnAirBySpreadingFactor.length
+            ? timeOnAirBySpreadingFactor[index] : Double.NaN;
+    }
+}
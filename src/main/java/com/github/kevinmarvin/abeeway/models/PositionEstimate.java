@@ -0,0 +1,35 @@
+package com.github.kevinmarvin.abeeway.models;
+
+/**
+ * Data class representing a position computed from decoded radio measurements (WiFi or BLE).
+ */
+public class PositionEstimate {
+    private double latitude;
+    private double longitude;
+    private double accuracy;
+    private int sourceCount;
+
+    public PositionEstimate() {
+    }
+
+    public PositionEstimate(double latitude, double longitude, double accuracy, int sourceCount) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.sourceCount = sourceCount;
+    }
+
+    public double getLatitude() { return latitude; }
+    public void setLatitude(double latitude) { this.latitude = latitude; }
+
+    public double getLongitude() { return longitude; }
+    public void setLongitude(double longitude) { this.longitude = longitude; }
+
+    /** Estimated horizontal accuracy in meters. */
+    public double getAccuracy() { return accuracy; }
+    public void setAccuracy(double accuracy) { this.accuracy = accuracy; }
+
+    /** Number of access points or beacons that contributed to the estimate. */
+    public int getSourceCount() { return sourceCount; }
+    public void setSourceCount(int sourceCount) { this.sourceCount = sourceCount; }
+}
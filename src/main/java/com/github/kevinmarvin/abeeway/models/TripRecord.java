@@ -0,0 +1,51 @@
+package com.github.kevinmarvin.abeeway.models;
+
+/**
+ * Data class representing a completed trip of a device, between a motion start and the
+ * following stop. Coordinates are {@code NaN} when no position was reported at that end.
+ */
+public class TripRecord {
+    private long deviceId;
+    private long startTimeMillis;
+    private long endTimeMillis;
+    private double startLatitude = Double.NaN;
+    private double startLongitude = Double.NaN;
+    private double endLatitude = Double.NaN;
+    private double endLongitude = Double.NaN;
+    private double distanceMeters;
+    private int positionCount;
+
+    public TripRecord() {
+    }
+
+    public long getDeviceId() { return deviceId; }
+    public void setDeviceId(long deviceId) { this.deviceId = deviceId; }
+
+    public long getStartTimeMillis() { return startTimeMillis; }
+    public void setStartTimeMillis(long startTimeMillis) { this.startTimeMillis = startTimeMillis; }
+
+    public long getEndTimeMillis() { return endTimeMillis; }
+    public void setEndTimeMillis(long endTimeMillis) { this.endTimeMillis = endTimeMillis; }
+
+    public long getDurationMillis() { return endTimeMillis - startTimeMillis; }
+
+    public double getStartLatitude() { return startLatitude; }
+    public void setStartLatitude(double startLatitude) { this.startLatitude = startLatitude; }
+
+    public double getStartLongitude() { return startLongitude; }
+    public void setStartLongitude(double startLongitude) { this.startLongitude = startLongitude; }
+
+    public double getEndLatitude() { return endLatitude; }
+    public void setEndLatitude(double endLatitude) { this.endLatitude = endLatitude; }
+
+    public double getEndLongitude() { return endLongitude; }
+    public void setEndLongitude(double endLongitude) { this.endLongitude = endLongitude; }
+
+    /** Distance travelled along the reported positions, in meters. */
+    public double getDistanceMeters() { return distanceMeters; }
+    public void setDistanceMeters(double distanceMeters) { this.distanceMeters = distanceMeters; }
+
+    /** Number of positions reported during the trip. */
+    public int getPositionCount() { return positionCount; }
+    public void setPositionCount(int positionCount) { this.positionCount = positionCount; }
+}
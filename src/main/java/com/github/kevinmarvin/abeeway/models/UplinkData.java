@@ -8,7 +8,11 @@ import java.util.List;
  * Main data class containing all decoded uplink message information from an Abeeway Smart Badge device.
  */
 public class UplinkData {
+    /** Value of {@link #getTimestampMillis()} when no timestamp was given. */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
     // Core message fields
+    private long timestampMillis = NO_TIMESTAMP;
     private MessageType messageType;
     private String payload;
     private Integer ackToken;
@@ -77,6 +81,12 @@ public class UplinkData {
     }
     
     // Getters and Setters
+    /** Reception time of the uplink in epoch milliseconds, or {@link #NO_TIMESTAMP}. */
+    public long getTimestampMillis() { return timestampMillis; }
+    public void setTimestampMillis(long timestampMillis) { this.timestampMillis = timestampMillis; }
+
+    public boolean hasTimestamp() { return timestampMillis != NO_TIMESTAMP; }
+    
     public MessageType getMessageType() { return messageType; }
     public void setMessageType(MessageType messageType) { this.messageType = messageType; }
     
@@ -0,0 +1,51 @@
+package com.github.kevinmarvin.abeeway.models;
+
+/**
+ * Data class representing the aggregates of one key over a closed time window.
+ * The window covers {@code [windowStartMillis, windowEndMillis)}.
+ */
+public class WindowResult {
+    private long key;
+    private long windowStartMillis;
+    private long windowEndMillis;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    private double last;
+    private long lastTimeMillis;
+
+    public WindowResult() {
+    }
+
+    public long getKey() { return key; }
+    public void setKey(long key) { this.key = key; }
+
+    public long getWindowStartMillis() { return windowStartMillis; }
+    public void setWindowStartMillis(long windowStartMillis) { this.windowStartMillis = windowStartMillis; }
+
+    public long getWindowEndMillis() { return windowEndMillis; }
+    public void setWindowEndMillis(long windowEndMillis) { this.windowEndMillis = windowEndMillis; }
+
+    /** Number of values in the window. */
+    public long getCount() { return count; }
+    public void setCount(long count) { this.count = count; }
+
+    public double getSum() { return sum; }
+    public void setSum(double sum) { this.sum = sum; }
+
+    public double getMin() { return min; }
+    public void setMin(double min) { this.min = min; }
+
+    public double getMax() { return max; }
+    public void setMax(double max) { this.max = max; }
+
+    public double getAverage() { return count == 0 ? Double.NaN : sum / count; }
+
+    /** Value with the latest timestamp in the window. */
+    public double getLast() { return last; }
+    public void setLast(double last) { this.last = last; }
+
+    public long getLastTimeMillis() { return lastTimeMillis; }
+    public void setLastTimeMillis(long lastTimeMillis) { this.lastTimeMillis = lastTimeMillis; }
+}
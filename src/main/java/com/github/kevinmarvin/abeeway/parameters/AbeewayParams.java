@@ -37,6 +37,19 @@ public class AbeewayParams {
         return parameters.keySet();
     }
     
+    /**
+     * Parameter sets are equal when they hold the same names and values.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof AbeewayParams && parameters.equals(((AbeewayParams) o).parameters));
+    }
+    
+    @Override
+    public int hashCode() {
+        return parameters.hashCode();
+    }
+    
     /**
      * Create a new builder instance.
      */
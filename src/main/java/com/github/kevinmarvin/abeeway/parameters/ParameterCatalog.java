@@ -0,0 +1,303 @@
+package com.github.kevinmarvin.abeeway.parameters;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Loader of the parameter catalog bundled with the library.
+ * <p>
+ * The catalog source is {@code parameters.json}. It is compiled into {@code parameters.bin},
+ * a compact binary form that loads without a JSON parser; the binary records the CRC-32 of
+ * the JSON it was compiled from, and is ignored in favour of the JSON when they no longer
+ * match. Regenerate it with {@code mvn -Pcompile-catalog process-classes}, or by running
+ * {@link #main(String[])} with the JSON and binary paths.
+ */
+public final class ParameterCatalog {
+
+    /** Classpath location of the JSON catalog. */
+    public static final String JSON_RESOURCE = "/com/github/kevinmarvin/abeeway/parameters/parameters.json";
+
+    /** Classpath location of the compiled catalog. */
+    public static final String BINARY_RESOURCE = "/com/github/kevinmarvin/abeeway/parameters/parameters.bin";
+
+    private static final int MAGIC = 0x41425053; // "ABPS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HAS_DESCRIPTION = 1;
+    private static final int HAS_MIN = 2;
+    private static final int HAS_MAX = 4;
+    private static final int HAS_UNIT = 8;
+
+    private ParameterCatalog() {
+    }
+
+    /**
+     * Load the bundled catalog, from the compiled form when it is up to date.
+     */
+    public static ParameterSchema loadDefault() {
+        byte[] json = readResource(JSON_RESOURCE);
+        if (json == null) {
+            throw new IllegalStateException("Missing parameter catalog " + JSON_RESOURCE);
+        }
+        byte[] binary = readResource(BINARY_RESOURCE);
+        if (binary != null) {
+            try {
+                ParameterSchema schema = readBinary(binary, crc(json));
+                if (schema != null) {
+                    return schema;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Corrupt binary: fall back to the JSON source
+            }
+        }
+        return parseJson(json);
+    }
+
+    /**
+     * Parse a JSON catalog.
+     *
+     * @throws IllegalArgumentException if the catalog is malformed
+     */
+    public static ParameterSchema parseJson(byte[] json) {
+        JsonNode root;
+        try {
+            root = new ObjectMapper().readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid parameter catalog: " + e.getMessage(), e);
+        }
+        JsonNode parameters = root.path("parameters");
+        if (!parameters.isArray()) {
+            throw new IllegalArgumentException("Parameter catalog has no parameters array");
+        }
+        ParameterSchema.Builder builder = ParameterSchema.builder();
+        for (JsonNode node : parameters) {
+            builder.add(parseDefinition(node));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Compile a catalog into its binary form.
+     *
+     * @param jsonCrc CRC-32 of the JSON source, checked when loading
+     */
+    public static byte[] writeBinary(ParameterSchema schema, long jsonCrc) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeInt((int) jsonCrc);
+            out.writeShort(schema.size());
+            for (ParameterDefinition definition : schema.getDefinitions()) {
+                out.writeByte(definition.getId());
+                out.writeByte(definition.getType().ordinal());
+                out.writeByte(definition.getSize());
+                int flags = (definition.getDescription() != null ? HAS_DESCRIPTION : 0)
+                    | (definition.getMinValue() != null ? HAS_MIN : 0)
+                    | (definition.getMaxValue() != null ? HAS_MAX : 0)
+                    | (definition.getUnit() != null ? HAS_UNIT : 0);
+                out.writeByte(flags);
+                out.writeUTF(definition.getName());
+                if (definition.getDescription() != null) out.writeUTF(definition.getDescription());
+                if (definition.getMinValue() != null) out.writeInt(definition.getMinValue());
+                if (definition.getMaxValue() != null) out.writeInt(definition.getMaxValue());
+                if (definition.getUnit() != null) out.writeUTF(definition.getUnit());
+                out.writeDouble(definition.getMultiplier());
+
+                Map<Integer, String> valueNames = definition.getValueNames();
+                out.writeShort(valueNames.size());
+                for (Map.Entry<Integer, String> entry : valueNames.entrySet()) {
+                    out.writeShort(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+                out.writeByte(definition.getBitCount());
+                for (int bit = 0; bit < definition.getBitCount(); bit++) {
+                    String bitName = definition.getBitName(bit);
+                    out.writeUTF(bitName != null ? bitName : "");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Load a compiled catalog.
+     *
+     * @param expectedJsonCrc CRC-32 of the current JSON source, or -1 to skip the check
+     * @return The schema, or null if the binary was compiled from another JSON source
+     * @throws IOException if the binary is truncated
+     * @throws IllegalArgumentException if the binary is not a compiled catalog or is corrupt
+     */
+    public static ParameterSchema readBinary(byte[] binary, long expectedJsonCrc) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(binary));
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not a compiled parameter catalog");
+        }
+        long jsonCrc = in.readInt() & 0xFFFFFFFFL;
+        if (expectedJsonCrc >= 0 && jsonCrc != expectedJsonCrc) {
+            return null;
+        }
+        ParameterType[] types = ParameterType.values();
+        ParameterSchema.Builder builder = ParameterSchema.builder();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int id = in.readUnsignedByte();
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= types.length) {
+                throw new IllegalArgumentException("Invalid parameter type: " + ordinal);
+            }
+            ParameterType type = types[ordinal];
+            int size = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            String name = in.readUTF();
+            String description = (flags & HAS_DESCRIPTION) != 0 ? in.readUTF() : null;
+            Integer min = (flags & HAS_MIN) != 0 ? in.readInt() : null;
+            Integer max = (flags & HAS_MAX) != 0 ? in.readInt() : null;
+            String unit = (flags & HAS_UNIT) != 0 ? in.readUTF() : null;
+            double multiplier = in.readDouble();
+
+            int valueCount = in.readUnsignedShort();
+            String[] valueNames = null;
+            for (int v = 0; v < valueCount; v++) {
+                int value = in.readUnsignedShort();
+                String valueName = in.readUTF();
+                valueNames = put(valueNames, value, valueName);
+            }
+            int bitCount = in.readUnsignedByte();
+            String[] bitNames = bitCount > 0 ? new String[bitCount] : null;
+            for (int bit = 0; bit < bitCount; bit++) {
+                String bitName = in.readUTF();
+                bitNames[bit] = bitName.isEmpty() ? null : bitName;
+            }
+            builder.add(new ParameterDefinition(id, name, description, type, size, multiplier,
+                min, max, unit, valueNames, bitNames));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Compute the CRC-32 recorded in a compiled catalog.
+     */
+    public static long crc(byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        return crc.getValue();
+    }
+
+    /**
+     * Compile a JSON catalog file into a binary catalog file.
+     * <pre>
+     * java ... ParameterCatalog src/main/resources/.../parameters.json src/main/resources/.../parameters.bin
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ParameterCatalog <parameters.json> <parameters.bin>");
+            System.exit(2);
+        }
+        byte[] json = Files.readAllBytes(Paths.get(args[0]));
+        byte[] binary = writeBinary(parseJson(json), crc(json));
+        Path target = Paths.get(args[1]);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Files.write(target, binary);
+        System.out.printf("Compiled %d bytes of JSON into %d bytes%n", json.length, binary.length);
+    }
+
+    private static ParameterDefinition parseDefinition(JsonNode node) {
+        String name = requiredText(node, "name");
+        JsonNode id = node.get("id");
+        JsonNode size = node.get("size");
+        if (id == null || !id.canConvertToInt() || size == null || !size.canConvertToInt()) {
+            throw new IllegalArgumentException("Parameter " + name + " needs an integer id and size");
+        }
+        ParameterType type;
+        try {
+            type = ParameterType.valueOf(requiredText(node, "type"));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown type for parameter " + name + ": " + node.get("type"));
+        }
+
+        String[] valueNames = null;
+        JsonNode values = node.get("values");
+        if (values != null) {
+            for (Iterator<Map.Entry<String, JsonNode>> it = values.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> entry = it.next();
+                int value;
+                try {
+                    value = Integer.parseInt(entry.getKey());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Value keys of " + name + " must be integers: " + entry.getKey());
+                }
+                valueNames = put(valueNames, value, entry.getValue().asText());
+            }
+        }
+        String[] bitNames = null;
+        JsonNode bits = node.get("bits");
+        if (bits != null) {
+            bitNames = new String[bits.size()];
+            for (int i = 0; i < bitNames.length; i++) {
+                bitNames[i] = bits.get(i).isNull() ? null : bits.get(i).asText();
+            }
+        }
+
+        return new ParameterDefinition(id.asInt(), name, optionalText(node, "description"), type, size.asInt(),
+            node.path("multiplier").asDouble(1.0),
+            node.hasNonNull("min") ? node.get("min").asInt() : null,
+            node.hasNonNull("max") ? node.get("max").asInt() : null,
+            optionalText(node, "unit"), valueNames, bitNames);
+    }
+
+    private static String[] put(String[] names, int value, String name) {
+        if (value < 0 || value > 0xFFFF) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        if (names == null || value >= names.length) {
+            String[] grown = new String[value + 1];
+            if (names != null) {
+                System.arraycopy(names, 0, grown, 0, names.length);
+            }
+            names = grown;
+        }
+        names[value] = name;
+        return names;
+    }
+
+    private static String requiredText(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Parameter entry misses " + field + ": " + node);
+        }
+        return value.asText();
+    }
+
+    private static String optionalText(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static byte[] readResource(String path) {
+        try (InputStream in = ParameterCatalog.class.getResourceAsStream(path)) {
+            return in != null ? in.readAllBytes() : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
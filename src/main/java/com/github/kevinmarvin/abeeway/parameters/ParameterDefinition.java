@@ -0,0 +1,201 @@
+package com.github.kevinmarvin.abeeway.parameters;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable definition of a configuration parameter: its id and name, how its value is
+ * encoded on the air, and its documented range.
+ * <p>
+ * Values are encoded big-endian on {@code size} bytes, in two's complement when the range
+ * allows negative values. Names of enumerated values are indexed by raw value, and names of
+ * bitmap flags by bit position, the first byte holding bits 0 to 7.
+ */
+public final class ParameterDefinition {
+
+    private static final String[] NONE = new String[0];
+
+    private final int id;
+    private final String name;
+    private final String description;
+    private final ParameterType type;
+    private final int size;
+    private final double multiplier;
+    private final Integer minValue;
+    private final Integer maxValue;
+    private final String unit;
+    private final String[] valueNames;
+    private final String[] bitNames;
+
+    /**
+     * @param id          Parameter id, 0 to 255
+     * @param name        Parameter name
+     * @param description Human-readable description
+     * @param type        Value encoding
+     * @param size        Encoded size in bytes, 1 to 4
+     * @param multiplier  Scale applied to decoded numbers, 1 for raw values
+     * @param minValue    Smallest raw value allowed, or null
+     * @param maxValue    Largest raw value allowed, or null
+     * @param unit        Unit of the raw value, or null
+     * @param valueNames  Names of the raw values of a {@link ParameterType#STRING} parameter, or null
+     * @param bitNames    Names of the flags of a {@link ParameterType#BITMAP} parameter, or null
+     */
+    public ParameterDefinition(int id, String name, String description, ParameterType type, int size,
+                               double multiplier, Integer minValue, Integer maxValue, String unit,
+                               String[] valueNames, String[] bitNames) {
+        if (id < 0 || id >= ParameterSchema.MAX_PARAMETERS) {
+            throw new IllegalArgumentException("Parameter id out of range: " + id);
+        }
+        if (size < 1 || size > 4) {
+            throw new IllegalArgumentException("Parameter size must be 1 to 4 bytes: " + name);
+        }
+        if (bitNames != null && bitNames.length > size * 8) {
+            throw new IllegalArgumentException("More bit names than bits: " + name);
+        }
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.type = type;
+        this.size = size;
+        this.multiplier = multiplier;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.unit = unit;
+        this.valueNames = valueNames != null ? valueNames.clone() : NONE;
+        this.bitNames = bitNames != null ? bitNames.clone() : NONE;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public String getDescription() { return description; }
+    public ParameterType getType() { return type; }
+    public int getSize() { return size; }
+    public double getMultiplier() { return multiplier; }
+    public Integer getMinValue() { return minValue; }
+    public Integer getMaxValue() { return maxValue; }
+    public String getUnit() { return unit; }
+
+    /**
+     * Whether the raw value is encoded in two's complement.
+     */
+    public boolean isSigned() {
+        return minValue != null && minValue < 0;
+    }
+
+    /**
+     * Get the constraints of the raw value.
+     */
+    public ParameterConstraints getConstraints() {
+        return new ParameterConstraints(minValue, maxValue, unit);
+    }
+
+    /**
+     * Get the name of a raw value, or the value itself if it has no name.
+     */
+    public String mapValueToString(int value) {
+        String valueName = value >= 0 && value < valueNames.length ? valueNames[value] : null;
+        return valueName != null ? valueName : String.valueOf(value);
+    }
+
+    /**
+     * Get the raw value of a value name, also accepting decimal numbers.
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public int parseValue(String valueName) {
+        for (int i = 0; i < valueNames.length; i++) {
+            if (valueName.equals(valueNames[i])) {
+                return i;
+            }
+        }
+        try {
+            return Integer.parseInt(valueName);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown value for " + name + ": " + valueName);
+        }
+    }
+
+    /**
+     * Get the names of the raw values, keyed by raw value.
+     */
+    public Map<Integer, String> getValueNames() {
+        Map<Integer, String> names = new LinkedHashMap<>();
+        for (int i = 0; i < valueNames.length; i++) {
+            if (valueNames[i] != null) {
+                names.put(i, valueNames[i]);
+            }
+        }
+        return Collections.unmodifiableMap(names);
+    }
+
+    /**
+     * Get the name of a bitmap flag, or null.
+     */
+    public String getBitName(int bitPosition) {
+        return bitPosition >= 0 && bitPosition < bitNames.length ? bitNames[bitPosition] : null;
+    }
+
+    /**
+     * Get the position of a bitmap flag, or -1.
+     */
+    public int getBitIndex(String bitName) {
+        for (int i = 0; i < bitNames.length; i++) {
+            if (bitName.equals(bitNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the number of named bitmap flags, including unnamed gaps.
+     */
+    public int getBitCount() {
+        return bitNames.length;
+    }
+
+    /**
+     * Convert a value to its raw encoding: numbers as is, booleans as 0 or 1, and names or
+     * enum constants through the value names.
+     *
+     * @throws IllegalArgumentException if the value cannot be converted or does not fit the size
+     */
+    public long toRaw(Object value) {
+        long raw;
+        if (value instanceof Number) {
+            raw = ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            raw = (Boolean) value ? 1 : 0;
+        } else if (value instanceof Enum) {
+            raw = parseValue(((Enum<?>) value).name());
+        } else if (value instanceof CharSequence) {
+            raw = parseValue(value.toString());
+        } else {
+            throw new IllegalArgumentException("Unsupported value for " + name + ": "
+                + (value == null ? "null" : value.getClass().getName()));
+        }
+        if (!fits(raw)) {
+            throw new IllegalArgumentException("Value of " + name + " does not fit " + size + " bytes: " + raw);
+        }
+        return raw;
+    }
+
+    /**
+     * Check whether a raw value can be encoded on the parameter size.
+     */
+    public boolean fits(long raw) {
+        int bits = size * 8;
+        return isSigned()
+            ? raw >= -(1L << (bits - 1)) && raw < (1L << (bits - 1))
+            : raw >= 0 && raw < (1L << bits);
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterDefinition{id=" + id + ", name=" + name + ", type=" + type + ", size=" + size
+            + (valueNames.length > 0 ? ", values=" + Arrays.toString(valueNames) : "")
+            + (bitNames.length > 0 ? ", bits=" + Arrays.toString(bitNames) : "") + "}";
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.kevinmarvin.abeeway.parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled, immutable catalog of configuration parameters shared by the encoder and decoder.
+ * <p>
+ * Definitions are held in a 256-slot array indexed by parameter id, and names are resolved
+ * through a perfect hash built from the cached {@link String#hashCode()}: the seed is chosen
+ * at build time so that no two names share a slot, and a lookup is one multiply, one array
+ * load and one {@code equals}. A name whose hash code equals that of another name cannot be
+ * separated by a seed; it is looked up in a small overflow map instead.
+ */
+public final class ParameterSchema {
+
+    /** Number of parameter ids. */
+    public static final int MAX_PARAMETERS = 256;
+
+    private final ParameterDefinition[] byId;
+    private final ParameterDefinition[] byName;
+    private final int nameSeed;
+    private final int nameShift;
+    private final Map<String, ParameterDefinition> overflow;
+    private final List<ParameterDefinition> definitions;
+
+    private ParameterSchema(ParameterDefinition[] byId, ParameterDefinition[] byName, int nameSeed, int nameShift,
+                            Map<String, ParameterDefinition> overflow, List<ParameterDefinition> definitions) {
+        this.byId = byId;
+        this.byName = byName;
+        this.nameSeed = nameSeed;
+        this.nameShift = nameShift;
+        this.overflow = overflow;
+        this.definitions = definitions;
+    }
+
+    /**
+     * Get the built-in catalog of Abeeway Smart Badge parameters, loaded once from the
+     * bundled resources by {@link ParameterCatalog#loadDefault()}.
+     */
+    public static ParameterSchema getDefault() {
+        return DefaultHolder.SCHEMA;
+    }
+
+    /**
+     * Create a builder for a custom catalog.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get a parameter by id, or null.
+     */
+    public ParameterDefinition get(int id) {
+        return (id & ~0xFF) == 0 ? byId[id] : null;
+    }
+
+    /**
+     * Get a parameter by name, or null.
+     */
+    public ParameterDefinition get(String name) {
+        ParameterDefinition definition = byName[slot(name.hashCode(), nameSeed, nameShift)];
+        if (definition != null && definition.getName().equals(name)) {
+            return definition;
+        }
+        return overflow != null ? overflow.get(name) : null;
+    }
+
+    /**
+     * Get the id of a parameter, or -1 if the name is unknown.
+     */
+    public int getId(String name) {
+        ParameterDefinition definition = get(name);
+        return definition != null ? definition.getId() : -1;
+    }
+
+    /**
+     * Get every definition, in id order.
+     */
+    public List<ParameterDefinition> getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * Get the number of parameters.
+     */
+    public int size() {
+        return definitions.size();
+    }
+
+    private static int slot(int hashCode, int seed, int shift) {
+        return ((hashCode ^ seed) * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Builder of a schema. Ids and names must be unique.
+     */
+    public static class Builder {
+        private final ParameterDefinition[] byId = new ParameterDefinition[MAX_PARAMETERS];
+
+        /**
+         * Add a definition.
+         */
+        public Builder add(ParameterDefinition definition) {
+            if (byId[definition.getId()] != null) {
+                throw new IllegalArgumentException("Duplicate parameter id: " + definition.getId());
+            }
+            byId[definition.getId()] = definition;
+            return this;
+        }
+
+        /**
+         * Compile the schema.
+         *
+         * @throws IllegalArgumentException if two parameters have the same name
+         */
+        public ParameterSchema build() {
+            List<ParameterDefinition> definitions = new ArrayList<>();
+            Map<String, ParameterDefinition> names = new HashMap<>();
+            Set<Integer> hashCodes = new HashSet<>();
+            List<ParameterDefinition> hashed = new ArrayList<>();
+            Map<String, ParameterDefinition> overflow = null;
+            for (ParameterDefinition definition : byId) {
+                if (definition == null) {
+                    continue;
+                }
+                ParameterDefinition previous = names.putIfAbsent(definition.getName(), definition);
+                if (previous != null) {
+                    throw new IllegalArgumentException("Duplicate parameter name " + definition.getName()
+                        + ": ids " + previous.getId() + " and " + definition.getId());
+                }
+                definitions.add(definition);
+                if (hashCodes.add(definition.getName().hashCode())) {
+                    hashed.add(definition);
+                } else {
+                    // No seed separates equal hash codes
+                    if (overflow == null) {
+                        overflow = new HashMap<>();
+                    }
+                    overflow.put(definition.getName(), definition);
+                }
+            }
+
+            // Search a seed without collisions, doubling the table after a number of tries
+            int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, hashed.size() * 2 - 1)));
+            for (; bits <= 16; bits++) {
+                int shift = 32 - bits;
+                ParameterDefinition[] byName = new ParameterDefinition[1 << bits];
+                for (int seed = 0; seed < 4096; seed++) {
+                    if (fill(hashed, byName, seed, shift)) {
+                        return new ParameterSchema(byId.clone(), byName, seed, shift, overflow,
+                            Collections.unmodifiableList(definitions));
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Cannot build a name index for " + hashed.size() + " parameters");
+        }
+
+        private static boolean fill(List<ParameterDefinition> definitions, ParameterDefinition[] byName, int seed, int shift) {
+            Arrays.fill(byName, null);
+            for (ParameterDefinition definition : definitions) {
+                int slot = slot(definition.getName().hashCode(), seed, shift);
+                if (byName[slot] != null) {
+                    return false;
+                }
+                byName[slot] = definition;
+            }
+            return true;
+        }
+    }
+
+    private static final class DefaultHolder {
+        static final ParameterSchema SCHEMA = createDefault();
+    }
+
+    private static ParameterSchema createDefault() {
+        return ParameterCatalog.loadDefault();
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.kevinmarvin.abeeway.parameters;
+
+/**
+ * Encoding of a configuration parameter value.
+ */
+public enum ParameterType {
+    /** Integer value, optionally scaled by a multiplier when decoded. */
+    NUMBER,
+    /** Integer value with a name for each known value. */
+    STRING,
+    /** Set of named flags, one per bit. */
+    BITMAP
+}
@@ -0,0 +1,377 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.decoders.ProximityDecoder;
+import com.github.kevinmarvin.abeeway.models.ProximityData;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.LongLongHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming contact graph built from proximity detection uplinks.
+ * <p>
+ * Badge identifiers are interned to 32-bit slots so an unordered pair of badges packs into a
+ * single {@code long} key. Exposure is credited per pair as the time between consecutive
+ * contacts of that pair, as long as the gap stays within {@code maxGapMillis}; both badges
+ * of a pair report each other, and sharing the pair state means the overlapping reports are
+ * counted once. Credits are accumulated in time buckets forming a sliding window: advancing
+ * past the oldest bucket expires it, and contacts older than the window are dropped.
+ * <p>
+ * Memory is bounded by {@code maxPairs}, which caps both the open pairs and the pairs of each
+ * bucket; contacts that would exceed it are counted by {@link #getDroppedCount()}. Slots are
+ * counted by the open and bucketed pairs referencing them and released, for reuse by other
+ * badges, once the last of these pairs expires, so they are bounded by the pairs too. Badges are
+ * identified by their BLE MAC address as a {@code long}, the identity peers report them by.
+ * All methods are thread-safe.
+ */
+public class ContactAggregator {
+
+    private static final long NONE = -1;
+
+    private final long bucketMillis;
+    private final long maxGapMillis;
+    private final int maxPairs;
+
+    private final LongLongHashMap[] buckets;
+    private final long[] bucketEpochs;
+    private long latestEpoch = Long.MIN_VALUE;
+
+    // Pair key -> timestamp of the latest contact, for gaps still open
+    private LongLongHashMap lastContacts = new LongLongHashMap();
+    private long lastPruneEpoch = Long.MIN_VALUE;
+
+    private final LongLongHashMap slotsById = new LongLongHashMap();
+    private long[] idsBySlot = new long[1024];
+    private int[] refsBySlot = new int[1024];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    private long droppedCount;
+
+    /**
+     * @param windowMillis Length of the sliding window exposure is reported over
+     * @param bucketCount  Number of buckets the window is divided into; expiry happens one bucket at a time
+     * @param maxGapMillis Longest gap between two contacts of a pair still counted as continuous exposure,
+     *                     typically twice the proximity scan period
+     * @param maxPairs     Maximum number of pairs kept open and per bucket
+     */
+    public ContactAggregator(long windowMillis, int bucketCount, long maxGapMillis, int maxPairs) {
+        if (bucketCount <= 0 || windowMillis < bucketCount) {
+            throw new IllegalArgumentException("windowMillis must be at least bucketCount milliseconds");
+        }
+        if (maxGapMillis <= 0 || maxPairs <= 0) {
+            throw new IllegalArgumentException("maxGapMillis and maxPairs must be positive");
+        }
+        this.bucketMillis = windowMillis / bucketCount;
+        this.maxGapMillis = maxGapMillis;
+        this.maxPairs = maxPairs;
+        this.buckets = new LongLongHashMap[bucketCount];
+        this.bucketEpochs = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new LongLongHashMap();
+            bucketEpochs[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Record the contacts of a decoded proximity detection uplink. Only peers classified
+     * as {@link ProximityDecoder#CONTACT} are counted.
+     *
+     * @param deviceId        BLE MAC address of the reporting badge
+     * @param timestampMillis Time of the uplink
+     * @return The number of contacts recorded
+     */
+    public int observe(long deviceId, long timestampMillis, UplinkData data) {
+        List<ProximityData> peers = data.getProximityData();
+        if (peers == null) {
+            return 0;
+        }
+        int recorded = 0;
+        for (ProximityData peer : peers) {
+            if (ProximityDecoder.CONTACT.equals(peer.getProximityType()) && peer.getDeviceId() != null) {
+                if (observe(deviceId, ByteUtils.macToLong(peer.getDeviceId()), timestampMillis)) {
+                    recorded++;
+                }
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Record one contact between two badges.
+     *
+     * @return false if the contact was dropped, because it is older than the window or the pair limit was reached
+     */
+    public synchronized boolean observe(long deviceId, long peerId, long timestampMillis) {
+        if (deviceId == peerId) {
+            return false;
+        }
+        long epoch = Math.floorDiv(timestampMillis, bucketMillis);
+        LongLongHashMap bucket = bucketFor(epoch);
+        if (bucket == null) {
+            droppedCount++;
+            return false;
+        }
+
+        // Slots are only allocated once the contact is accepted
+        long slotA = slotsById.get(deviceId, NONE);
+        long slotB = slotsById.get(peerId, NONE);
+        long pair = slotA != NONE && slotB != NONE ? pairKey((int) slotA, (int) slotB) : NONE;
+        long last = pair != NONE ? lastContacts.get(pair, NONE) : NONE;
+        long credit = 0;
+        if (last == NONE) {
+            if (lastContacts.size() >= maxPairs) {
+                droppedCount++;
+                return false;
+            }
+        } else if (timestampMillis <= last) {
+            // Out of order or already covered by the other badge's report
+            return true;
+        } else if (timestampMillis - last <= maxGapMillis) {
+            credit = timestampMillis - last;
+        }
+
+        boolean inBucket = pair != NONE && bucket.containsKey(pair);
+        if (bucket.size() >= maxPairs && !inBucket) {
+            droppedCount++;
+            return false;
+        }
+        if (pair == NONE) {
+            pair = pairKey(slotFor(deviceId), slotFor(peerId));
+        }
+        if (last == NONE) {
+            retain(pair);
+        }
+        if (!inBucket) {
+            retain(pair);
+        }
+        lastContacts.put(pair, timestampMillis);
+        bucket.addTo(pair, credit);
+        return true;
+    }
+
+    /**
+     * Get the exposure between two badges over the window, in milliseconds.
+     */
+    public synchronized long getExposureMillis(long deviceId, long peerId) {
+        long slotA = slotsById.get(deviceId, NONE);
+        long slotB = slotsById.get(peerId, NONE);
+        if (slotA == NONE || slotB == NONE || slotA == slotB) {
+            return 0;
+        }
+        long pair = pairKey((int) slotA, (int) slotB);
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (isLive(i)) {
+                total += buckets[i].get(pair, 0);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * List the badges a badge was in contact with over the window.
+     *
+     * @param minExposureMillis Minimum cumulated exposure for a contact to be reported
+     * @return Contacts by descending exposure
+     */
+    public synchronized List<Exposure> getContacts(long deviceId, long minExposureMillis) {
+        long slot = slotsById.get(deviceId, NONE);
+        List<Exposure> contacts = new ArrayList<>();
+        if (slot == NONE) {
+            return contacts;
+        }
+        LongLongHashMap totals = new LongLongHashMap();
+        for (int i = 0; i < buckets.length; i++) {
+            if (isLive(i)) {
+                buckets[i].forEach((pair, millis) -> {
+                    int low = (int) (pair >>> 32);
+                    int high = (int) pair;
+                    if (low == slot) {
+                        totals.addTo(high, millis);
+                    } else if (high == slot) {
+                        totals.addTo(low, millis);
+                    }
+                });
+            }
+        }
+        totals.forEach((peerSlot, millis) -> {
+            if (millis >= minExposureMillis) {
+                contacts.add(new Exposure(idsBySlot[(int) peerSlot], millis));
+            }
+        });
+        contacts.sort((a, b) -> Long.compare(b.getExposureMillis(), a.getExposureMillis()));
+        return contacts;
+    }
+
+    /**
+     * Visit every pair of badges with its exposure over the window.
+     */
+    public synchronized void forEachPair(PairConsumer consumer) {
+        LongLongHashMap totals = new LongLongHashMap(maxPairs);
+        for (int i = 0; i < buckets.length; i++) {
+            if (isLive(i)) {
+                buckets[i].forEach(totals::addTo);
+            }
+        }
+        totals.forEach((pair, millis) ->
+            consumer.accept(idsBySlot[(int) (pair >>> 32)], idsBySlot[(int) pair], millis));
+    }
+
+    /**
+     * Get the number of pairs with a contact in the window.
+     */
+    public synchronized int getPairCount() {
+        int[] count = new int[1];
+        forEachPair((a, b, millis) -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Get the number of badges with a pair in the window or still open.
+     */
+    public synchronized int getBadgeCount() {
+        return slotsById.size();
+    }
+
+    /**
+     * Get the number of contacts dropped for being late or exceeding the pair limit.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Callback for {@link #forEachPair}.
+     */
+    @FunctionalInterface
+    public interface PairConsumer {
+        void accept(long deviceId, long peerId, long exposureMillis);
+    }
+
+    /**
+     * Cumulated exposure to one peer badge.
+     */
+    public static class Exposure {
+        private final long peerId;
+        private final long exposureMillis;
+
+        public Exposure(long peerId, long exposureMillis) {
+            this.peerId = peerId;
+            this.exposureMillis = exposureMillis;
+        }
+
+        public long getPeerId() { return peerId; }
+        public long getExposureMillis() { return exposureMillis; }
+    }
+
+    /**
+     * Get the bucket of an epoch, advancing the window if needed.
+     *
+     * @return The bucket, or null if the epoch has already expired
+     */
+    private LongLongHashMap bucketFor(long epoch) {
+        if (latestEpoch != Long.MIN_VALUE && epoch <= latestEpoch - buckets.length) {
+            return null;
+        }
+        if (epoch > latestEpoch) {
+            latestEpoch = epoch;
+            expireBuckets();
+            pruneLastContacts();
+        }
+        int index = (int) Math.floorMod(epoch, (long) buckets.length);
+        if (bucketEpochs[index] != epoch) {
+            bucketEpochs[index] = epoch;
+        }
+        return buckets[index];
+    }
+
+    /**
+     * Empty the buckets that fell out of the window, releasing the slots of their pairs.
+     */
+    private void expireBuckets() {
+        for (int i = 0; i < buckets.length; i++) {
+            if (bucketEpochs[i] != Long.MIN_VALUE && !isLive(i)) {
+                buckets[i].forEach((pair, millis) -> release(pair));
+                buckets[i].clear();
+                bucketEpochs[i] = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    private boolean isLive(int index) {
+        return bucketEpochs[index] != Long.MIN_VALUE && bucketEpochs[index] > latestEpoch - buckets.length;
+    }
+
+    /**
+     * Drop pairs whose gap can no longer be continued, once per bucket.
+     */
+    private void pruneLastContacts() {
+        if (latestEpoch == lastPruneEpoch) {
+            return;
+        }
+        lastPruneEpoch = latestEpoch;
+        long cutoff = latestEpoch * bucketMillis - maxGapMillis;
+        LongLongHashMap open = new LongLongHashMap(lastContacts.size());
+        lastContacts.forEach((pair, last) -> {
+            if (last >= cutoff) {
+                open.put(pair, last);
+            } else {
+                release(pair);
+            }
+        });
+        lastContacts = open;
+    }
+
+    private int slotFor(long id) {
+        long slot = slotsById.get(id, NONE);
+        if (slot == NONE) {
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (slotCount == idsBySlot.length) {
+                    idsBySlot = Arrays.copyOf(idsBySlot, slotCount << 1);
+                    refsBySlot = Arrays.copyOf(refsBySlot, slotCount << 1);
+                }
+                slot = slotCount++;
+            }
+            idsBySlot[(int) slot] = id;
+            slotsById.put(id, slot);
+        }
+        return (int) slot;
+    }
+
+    /**
+     * Count a reference from an open or bucketed pair to both of its slots.
+     */
+    private void retain(long pair) {
+        refsBySlot[(int) (pair >>> 32)]++;
+        refsBySlot[(int) pair]++;
+    }
+
+    private void release(long pair) {
+        releaseSlot((int) (pair >>> 32));
+        releaseSlot((int) pair);
+    }
+
+    private void releaseSlot(int slot) {
+        if (--refsBySlot[slot] == 0) {
+            slotsById.remove(idsBySlot[slot], NONE);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+
+    private static long pairKey(int slotA, int slotB) {
+        int low = Math.min(slotA, slotB);
+        int high = Math.max(slotA, slotB);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,434 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.enums.Mode;
+import com.github.kevinmarvin.abeeway.models.DecodedUplink;
+import com.github.kevinmarvin.abeeway.models.DeviceState;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+
+/**
+ * Latest state of every device, merged from its decoded uplinks.
+ * <p>
+ * Devices are keyed by their 64-bit DevEUI in open-addressing tables split into segments.
+ * Each table stores the state of a device in parallel primitive arrays (about 44 bytes per
+ * slot): coordinates at 1e-7 degrees, timestamps, and battery, motion, tracking mode, ack
+ * token and temperature packed into one {@code long}.
+ * <p>
+ * Writers lock their segment. Readers never lock: every slot carries a sequence number that
+ * is odd while a write is in progress, and a read retries when the number changed under it.
+ * Growing a segment publishes a new table through a volatile field, so a read racing a
+ * resize sees the state as of the resize. DevEUIs {@code 0} and {@code 0x8000000000000000}
+ * are reserved. All methods are thread-safe.
+ */
+public class DeviceStateStore {
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final int SEGMENT_BITS = 6;
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = Long.MIN_VALUE;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final double COORDINATE_SCALE = 1e7;
+
+    // Packed field layout: four unsigned bytes holding (value + 1), 0 meaning unknown,
+    // then the temperature in 1/8 degree steps
+    private static final int BATTERY_SHIFT = 0;
+    private static final int BATTERY_STATUS_SHIFT = 8;
+    private static final int MOTION_SHIFT = 16;
+    private static final int MODE_SHIFT = 24;
+    private static final int ACK_SHIFT = 32;
+    private static final int TEMPERATURE_SHIFT = 48;
+    private static final short NO_TEMPERATURE = Short.MIN_VALUE;
+    private static final long EMPTY_PACKED = (long) (NO_TEMPERATURE & 0xFFFF) << TEMPERATURE_SHIFT;
+
+    private static final BatteryStatus[] BATTERY_STATUSES = BatteryStatus.values();
+    private static final DynamicMotionState[] MOTION_STATES = DynamicMotionState.values();
+    private static final Mode[] MODES = Mode.values();
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public DeviceStateStore() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedDevices Number of devices to size the tables for
+     */
+    public DeviceStateStore(int expectedDevices) {
+        int perSegment = (int) Math.ceil(Math.max(1, expectedDevices) / LOAD_FACTOR) >> SEGMENT_BITS;
+        perSegment = Integer.highestOneBit(Math.max(16, perSegment) - 1) << 1;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Merge a decoded uplink into the state of its device.
+     *
+     * @param deviceId        DevEUI of the device
+     * @param timestampMillis Reception time of the uplink
+     */
+    public void update(long deviceId, long timestampMillis, DecodedUplink uplink) {
+        if (uplink.getData() instanceof UplinkData) {
+            update(deviceId, timestampMillis, (UplinkData) uplink.getData());
+        } else {
+            update(deviceId, timestampMillis, new UplinkData());
+        }
+    }
+
+    /**
+     * Merge decoded uplink data into the state of its device. Fields absent from the
+     * uplink keep their previous value.
+     *
+     * @param deviceId        DevEUI of the device
+     * @param timestampMillis Reception time of the uplink
+     */
+    public void update(long deviceId, long timestampMillis, UplinkData data) {
+        if (deviceId == EMPTY || deviceId == TOMBSTONE) {
+            throw new IllegalArgumentException("Reserved DevEUI: " + Long.toHexString(deviceId));
+        }
+        long hash = mix(deviceId);
+        Segment segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        synchronized (segment) {
+            Table table = segment.table;
+            int slot = table.find(deviceId, hash);
+            boolean inserted = slot < 0;
+            if (inserted) {
+                if (segment.used + 1 > table.capacity() * LOAD_FACTOR) {
+                    table = segment.grow();
+                }
+                slot = table.insertionSlot(hash);
+            }
+
+            int version = table.versions[slot];
+            INTS.setOpaque(table.versions, slot, version + 1);
+            VarHandle.storeStoreFence();
+
+            if (inserted) {
+                if (table.keys[slot] == EMPTY) {
+                    segment.used++;
+                }
+                segment.size++;
+                table.latitudes[slot] = 0;
+                table.longitudes[slot] = 0;
+                table.positionTimes[slot] = NO_TIME;
+                table.lastSeen[slot] = NO_TIME;
+                table.packed[slot] = EMPTY_PACKED;
+                LONGS.setRelease(table.keys, slot, deviceId);
+            }
+            merge(table, slot, timestampMillis, data);
+
+            INTS.setRelease(table.versions, slot, version + 2);
+        }
+    }
+
+    /**
+     * Read the state of a device without locking.
+     *
+     * @param out Receives the state
+     * @return false if the device is unknown
+     */
+    public boolean get(long deviceId, DeviceState out) {
+        if (deviceId == EMPTY || deviceId == TOMBSTONE) {
+            return false;
+        }
+        long hash = mix(deviceId);
+        Segment segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        while (true) {
+            Table table = segment.table;
+            int slot = table.find(deviceId, hash);
+            if (slot < 0) {
+                return false;
+            }
+            int version = (int) INTS.getAcquire(table.versions, slot);
+            if ((version & 1) == 0) {
+                int latitude = table.latitudes[slot];
+                int longitude = table.longitudes[slot];
+                long positionTime = table.positionTimes[slot];
+                long lastSeen = table.lastSeen[slot];
+                long packed = table.packed[slot];
+                long key = table.keys[slot];
+                VarHandle.acquireFence();
+                if (table.versions[slot] == version) {
+                    if (key != deviceId) {
+                        return false;
+                    }
+                    unpack(deviceId, latitude, longitude, positionTime, lastSeen, packed, out);
+                    return true;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Read the state of a device without locking.
+     *
+     * @return A new state object, or null if the device is unknown
+     */
+    public DeviceState get(long deviceId) {
+        DeviceState state = new DeviceState();
+        return get(deviceId, state) ? state : null;
+    }
+
+    /**
+     * Forget a device.
+     *
+     * @return true if the device was known
+     */
+    public boolean remove(long deviceId) {
+        if (deviceId == EMPTY || deviceId == TOMBSTONE) {
+            return false;
+        }
+        long hash = mix(deviceId);
+        Segment segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        synchronized (segment) {
+            Table table = segment.table;
+            int slot = table.find(deviceId, hash);
+            if (slot < 0) {
+                return false;
+            }
+            segment.removeAt(table, slot);
+            return true;
+        }
+    }
+
+    /**
+     * Forget devices not seen since the given time.
+     *
+     * @return The number of devices removed
+     */
+    public int removeIdle(long lastSeenBeforeMillis) {
+        int removed = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Table table = segment.table;
+                for (int slot = 0; slot < table.capacity(); slot++) {
+                    long key = table.keys[slot];
+                    if (key != EMPTY && key != TOMBSTONE && table.lastSeen[slot] < lastSeenBeforeMillis) {
+                        segment.removeAt(table, slot);
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Visit the state of every device, one segment at a time. The state object is reused
+     * between calls.
+     */
+    public void forEach(Consumer<DeviceState> consumer) {
+        DeviceState state = new DeviceState();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Table table = segment.table;
+                for (int slot = 0; slot < table.capacity(); slot++) {
+                    long key = table.keys[slot];
+                    if (key != EMPTY && key != TOMBSTONE) {
+                        unpack(key, table.latitudes[slot], table.longitudes[slot], table.positionTimes[slot],
+                            table.lastSeen[slot], table.packed[slot], state);
+                        consumer.accept(state);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of devices.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the memory used by the tables, in bytes.
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.table.capacity() * Table.SLOT_BYTES;
+        }
+        return bytes;
+    }
+
+    private static void merge(Table table, int slot, long timestampMillis, UplinkData data) {
+        // An older or replayed uplink does not move the latest position back in time
+        if (data.getGpsLatitude() != null && data.getGpsLongitude() != null
+                && timestampMillis >= table.positionTimes[slot]) {
+            table.latitudes[slot] = (int) Math.round(data.getGpsLatitude() * COORDINATE_SCALE);
+            table.longitudes[slot] = (int) Math.round(data.getGpsLongitude() * COORDINATE_SCALE);
+            table.positionTimes[slot] = timestampMillis;
+        }
+        if (timestampMillis > table.lastSeen[slot]) {
+            table.lastSeen[slot] = timestampMillis;
+        }
+
+        long packed = table.packed[slot];
+        if (data.getBatteryLevel() != null) {
+            packed = withByte(packed, BATTERY_SHIFT, Math.min(254, Math.max(0, data.getBatteryLevel())) + 1);
+        }
+        if (data.getBatteryStatus() != null) {
+            packed = withByte(packed, BATTERY_STATUS_SHIFT, data.getBatteryStatus().ordinal() + 1);
+        }
+        if (data.getDynamicMotionState() != null) {
+            packed = withByte(packed, MOTION_SHIFT, data.getDynamicMotionState().ordinal() + 1);
+        }
+        if (data.getTrackingMode() != null) {
+            packed = withByte(packed, MODE_SHIFT, Mode.fromName(data.getTrackingMode()).ordinal() + 1);
+        }
+        if (data.getAckToken() != null) {
+            packed = withByte(packed, ACK_SHIFT, (data.getAckToken() & 0x7F) + 1);
+        }
+        if (data.getTemperatureMeasure() != null) {
+            long eighths = Math.round(data.getTemperatureMeasure() * 8);
+            short temperature = (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, eighths));
+            packed = (packed & ~(0xFFFFL << TEMPERATURE_SHIFT)) | ((long) (temperature & 0xFFFF) << TEMPERATURE_SHIFT);
+        }
+        table.packed[slot] = packed;
+    }
+
+    private static void unpack(long deviceId, int latitude, int longitude, long positionTime, long lastSeen,
+                               long packed, DeviceState out) {
+        out.setDeviceId(deviceId);
+        boolean hasPosition = positionTime != NO_TIME;
+        out.setLatitude(hasPosition ? latitude / COORDINATE_SCALE : Double.NaN);
+        out.setLongitude(hasPosition ? longitude / COORDINATE_SCALE : Double.NaN);
+        out.setPositionTimeMillis(hasPosition ? positionTime : 0);
+        out.setLastSeenMillis(lastSeen);
+
+        out.setBatteryLevel(byteAt(packed, BATTERY_SHIFT) - 1);
+        int batteryStatus = byteAt(packed, BATTERY_STATUS_SHIFT);
+        out.setBatteryStatus(batteryStatus == 0 ? null : BATTERY_STATUSES[batteryStatus - 1]);
+        int motion = byteAt(packed, MOTION_SHIFT);
+        out.setDynamicMotionState(motion == 0 ? null : MOTION_STATES[motion - 1]);
+        int mode = byteAt(packed, MODE_SHIFT);
+        out.setTrackingMode(mode == 0 ? null : MODES[mode - 1].name());
+        out.setAckToken(byteAt(packed, ACK_SHIFT) - 1);
+        short temperature = (short) (packed >>> TEMPERATURE_SHIFT);
+        out.setTemperature(temperature == NO_TEMPERATURE ? Double.NaN : temperature / 8.0);
+    }
+
+    private static long withByte(long packed, int shift, int value) {
+        return (packed & ~(0xFFL << shift)) | ((long) value << shift);
+    }
+
+    private static int byteAt(long packed, int shift) {
+        return (int) (packed >>> shift) & 0xFF;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * One lock domain. {@code used} counts live and removed slots, which both lengthen probes.
+     */
+    private static final class Segment {
+        volatile Table table;
+        int size;
+        int used;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        Table grow() {
+            Table old = table;
+            // Rebuilding without tombstones may be enough when many devices were removed
+            int capacity = size + 1 > old.capacity() * LOAD_FACTOR / 2 ? old.capacity() << 1 : old.capacity();
+            Table grown = new Table(capacity);
+            for (int slot = 0; slot < old.capacity(); slot++) {
+                long key = old.keys[slot];
+                if (key != EMPTY && key != TOMBSTONE) {
+                    int target = grown.insertionSlot(mix(key));
+                    grown.keys[target] = key;
+                    grown.latitudes[target] = old.latitudes[slot];
+                    grown.longitudes[target] = old.longitudes[slot];
+                    grown.positionTimes[target] = old.positionTimes[slot];
+                    grown.lastSeen[target] = old.lastSeen[slot];
+                    grown.packed[target] = old.packed[slot];
+                }
+            }
+            used = size;
+            table = grown;
+            return grown;
+        }
+
+        void removeAt(Table table, int slot) {
+            int version = table.versions[slot];
+            INTS.setOpaque(table.versions, slot, version + 1);
+            VarHandle.storeStoreFence();
+            LONGS.setRelease(table.keys, slot, TOMBSTONE);
+            INTS.setRelease(table.versions, slot, version + 2);
+            size--;
+        }
+    }
+
+    /**
+     * Open-addressing table with linear probing. Removed slots keep a tombstone until the
+     * next rebuild so that concurrent probes are never cut short.
+     */
+    private static final class Table {
+        static final int SLOT_BYTES = 8 + 4 + 4 + 4 + 8 + 8 + 8;
+
+        final long[] keys;
+        final int[] versions;
+        final int[] latitudes;
+        final int[] longitudes;
+        final long[] positionTimes;
+        final long[] lastSeen;
+        final long[] packed;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            versions = new int[capacity];
+            latitudes = new int[capacity];
+            longitudes = new int[capacity];
+            positionTimes = new long[capacity];
+            lastSeen = new long[capacity];
+            packed = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        int find(long key, long hash) {
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long k = (long) LONGS.getAcquire(keys, slot);
+                if (k == key) return slot;
+                if (k == EMPTY) return -1;
+            }
+        }
+
+        int insertionSlot(long hash) {
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long k = keys[slot];
+                if (k == EMPTY || k == TOMBSTONE) return slot;
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.geo.GeofenceEngine;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-zone dwell time of devices, accumulated as positions arrive.
+ * <p>
+ * Each position comes with the zones the device is in at that time. The time between two
+ * consecutive positions of a device is credited to the zones of the earlier one, capped at
+ * {@code maxGapMillis} so that a device that stops reporting does not accumulate dwell time
+ * forever. The time after the newest position is credited when the next one arrives.
+ * Durations are added to {@link LongAdder} counters per (zone, device) and per (zone, hour),
+ * split at hour boundaries, so writers on different devices never contend on a lock and
+ * reads are snapshots that do not block them.
+ * <p>
+ * A position older than the newest one of its device by at most {@code allowedLatenessMillis}
+ * is inserted in the device's recent history and the interval it falls in is re-credited,
+ * giving the same totals as if it had arrived in order. Older positions are dropped and
+ * counted. At most {@value #HISTORY} recent positions are kept per device.
+ * <p>
+ * Counters are kept until dropped: {@link #evictHoursBefore} discards old hourly buckets and
+ * {@link #purge} the counters of a departed device, so that long-running services stay bounded.
+ */
+public class DwellTimeAccumulator {
+
+    /** Size of the hourly buckets. */
+    public static final long HOUR_MILLIS = 3_600_000L;
+
+    private static final int STRIPES = 16;
+    private static final int HISTORY = 16;
+    private static final int[] NONE = new int[0];
+
+    private final long maxGapMillis;
+    private final long allowedLatenessMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ConcurrentHashMap<Integer, ZoneCounters> zones = new ConcurrentHashMap<>();
+    private final LongAdder droppedCount = new LongAdder();
+    private final AtomicLong evictedBefore = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param maxGapMillis          Longest interval between two positions credited as dwell time
+     * @param allowedLatenessMillis How far behind the newest position of a device a late position is still accounted
+     */
+    public DwellTimeAccumulator(long maxGapMillis, long allowedLatenessMillis) {
+        if (maxGapMillis <= 0 || allowedLatenessMillis < 0) {
+            throw new IllegalArgumentException("Invalid dwell time gap or lateness");
+        }
+        this.maxGapMillis = maxGapMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Account the GPS position of a decoded uplink, with its zones looked up in a geofence engine.
+     *
+     * @return false if the uplink has no position or is too late
+     */
+    public boolean observe(long deviceId, long timestampMillis, UplinkData data, GeofenceEngine geofences) {
+        if (data.getGpsLatitude() == null || data.getGpsLongitude() == null) {
+            return false;
+        }
+        return observe(deviceId, timestampMillis, geofences.findGeofences(data.getGpsLatitude(), data.getGpsLongitude()));
+    }
+
+    /**
+     * Account a position of a device inside the given zones; an empty array means outside of any zone.
+     *
+     * @return false if the position is too late to be accounted
+     */
+    public boolean observe(long deviceId, long timestampMillis, int[] zoneIds) {
+        int[] inside = zoneIds.length == 0 ? NONE : zoneIds.clone();
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            History history = stripe.devices.get(deviceId);
+            if (history == null) {
+                history = new History();
+                stripe.devices.put(deviceId, history);
+                history.insert(0, timestampMillis, inside);
+                return true;
+            }
+
+            int last = history.count - 1;
+            long latest = history.times[last];
+            if (timestampMillis > latest) {
+                credit(deviceId, history.zones[last], latest, timestampMillis, 1);
+                history.insert(history.count, timestampMillis, inside);
+                history.prune(timestampMillis - allowedLatenessMillis);
+                return true;
+            }
+            if (timestampMillis < latest - allowedLatenessMillis || timestampMillis < history.times[0]) {
+                droppedCount.increment();
+                return false;
+            }
+
+            int i = last;
+            while (history.times[i] > timestampMillis) {
+                i--;
+            }
+            if (history.times[i] == timestampMillis) {
+                return true;
+            }
+            // Split the interval the late position falls in
+            long from = history.times[i];
+            long to = history.times[i + 1];
+            credit(deviceId, history.zones[i], from, to, -1);
+            credit(deviceId, history.zones[i], from, timestampMillis, 1);
+            credit(deviceId, inside, timestampMillis, to, 1);
+            history.insert(i + 1, timestampMillis, inside);
+            return true;
+        }
+    }
+
+    /**
+     * Get the dwell time of a device in a zone.
+     */
+    public long getDwellMillis(int zoneId, long deviceId) {
+        ZoneCounters counters = zones.get(zoneId);
+        LongAdder adder = counters == null ? null : counters.byDevice.get(deviceId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Get the dwell time of all devices in a zone.
+     */
+    public long getZoneDwellMillis(int zoneId) {
+        ZoneCounters counters = zones.get(zoneId);
+        return counters == null ? 0 : counters.total.sum();
+    }
+
+    /**
+     * Get the dwell time of all devices in a zone during the hour containing a timestamp.
+     */
+    public long getHourlyDwellMillis(int zoneId, long timestampMillis) {
+        ZoneCounters counters = zones.get(zoneId);
+        LongAdder adder = counters == null ? null : counters.byHour.get(hourOf(timestampMillis));
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Get a snapshot of the dwell time per device in a zone.
+     */
+    public Map<Long, Long> getDeviceDwell(int zoneId) {
+        Map<Long, Long> snapshot = new HashMap<>();
+        ZoneCounters counters = zones.get(zoneId);
+        if (counters != null) {
+            counters.byDevice.forEach((deviceId, adder) -> {
+                long sum = adder.sum();
+                if (sum != 0) {
+                    snapshot.put(deviceId, sum);
+                }
+            });
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get a snapshot of the dwell time per hour in a zone, keyed by the start of the hour.
+     */
+    public SortedMap<Long, Long> getHourlyDwell(int zoneId) {
+        SortedMap<Long, Long> snapshot = new TreeMap<>();
+        ZoneCounters counters = zones.get(zoneId);
+        if (counters != null) {
+            counters.byHour.forEach((hour, adder) -> {
+                long sum = adder.sum();
+                if (sum != 0) {
+                    snapshot.put(hour, sum);
+                }
+            });
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forget the recent positions of a device. Its accumulated dwell time is kept.
+     *
+     * @return true if the device was known
+     */
+    public boolean remove(long deviceId) {
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            return stripe.devices.remove(deviceId) != null;
+        }
+    }
+
+    /**
+     * Forget a device entirely: its recent positions and its dwell time per zone. The zone
+     * totals and hourly buckets keep the time it was credited.
+     *
+     * @return true if the device had positions or dwell time
+     */
+    public boolean purge(long deviceId) {
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            // Credits of a device are made under its stripe lock, so none can recreate a counter
+            boolean known = stripe.devices.remove(deviceId) != null;
+            for (ZoneCounters counters : zones.values()) {
+                known |= counters.byDevice.remove(deviceId) != null;
+            }
+            return known;
+        }
+    }
+
+    /**
+     * Drop the hourly buckets of the hours before the one containing a timestamp. Time later
+     * credited to or withdrawn from these hours, by late positions, only changes the totals.
+     *
+     * @return The number of buckets dropped
+     */
+    public int evictHoursBefore(long timestampMillis) {
+        long cutoff = evictedBefore.accumulateAndGet(hourOf(timestampMillis), Math::max);
+        int evicted = 0;
+        for (ZoneCounters counters : zones.values()) {
+            for (Iterator<Long> hours = counters.byHour.keySet().iterator(); hours.hasNext(); ) {
+                if (hours.next() < cutoff) {
+                    hours.remove();
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Get the number of positions dropped for arriving too late.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Add or withdraw the capped interval starting at {@code from} to the counters of each zone.
+     */
+    private void credit(long deviceId, int[] zoneIds, long from, long to, int sign) {
+        long end = Math.min(to, from + maxGapMillis);
+        if (zoneIds.length == 0 || end <= from) {
+            return;
+        }
+        long firstHour = evictedBefore.get();
+        for (int zoneId : zoneIds) {
+            ZoneCounters counters = zones.computeIfAbsent(zoneId, id -> new ZoneCounters());
+            counters.total.add(sign * (end - from));
+            counters.byDevice.computeIfAbsent(deviceId, id -> new LongAdder()).add(sign * (end - from));
+            for (long start = from; start < end; ) {
+                long hour = hourOf(start);
+                long stop = Math.min(end, hour + HOUR_MILLIS);
+                if (hour >= firstHour) {
+                    counters.byHour.computeIfAbsent(hour, h -> new LongAdder()).add(sign * (stop - start));
+                }
+                start = stop;
+            }
+        }
+    }
+
+    private static long hourOf(long timestampMillis) {
+        return Math.floorDiv(timestampMillis, HOUR_MILLIS) * HOUR_MILLIS;
+    }
+
+    private static int stripeFor(long deviceId) {
+        return (int) ((deviceId * 0x9E3779B97F4A7C15L) >>> 60);
+    }
+
+    private static final class Stripe {
+        final LongObjectHashMap<History> devices = new LongObjectHashMap<>();
+    }
+
+    private static final class ZoneCounters {
+        final LongAdder total = new LongAdder();
+        final ConcurrentHashMap<Long, LongAdder> byDevice = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, LongAdder> byHour = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Recent positions of a device in time order, with the zones of each.
+     */
+    private static final class History {
+        final long[] times = new long[HISTORY];
+        final int[][] zones = new int[HISTORY][];
+        int count;
+
+        void insert(int index, long time, int[] inside) {
+            if (count == HISTORY) {
+                // Give up the oldest position; later positions can no longer be inserted before it
+                dropFirst();
+                index--;
+            }
+            System.arraycopy(times, index, times, index + 1, count - index);
+            System.arraycopy(zones, index, zones, index + 1, count - index);
+            times[index] = time;
+            zones[index] = inside;
+            count++;
+        }
+
+        /**
+         * Drop positions no late position can fall before, keeping the one preceding the cutoff.
+         */
+        void prune(long cutoff) {
+            while (count > 1 && times[1] <= cutoff) {
+                dropFirst();
+            }
+        }
+
+        private void dropFirst() {
+            System.arraycopy(times, 1, times, 0, count - 1);
+            System.arraycopy(zones, 1, zones, 0, count - 1);
+            zones[--count] = null;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+import com.github.kevinmarvin.abeeway.utils.LongLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Streaming per-device position smoothing with a constant-velocity Kalman filter.
+ * <p>
+ * Each device keeps a position, a north/east velocity in m/s and the covariance of one axis;
+ * with the same noise on both axes the two covariances evolve identically, so three values
+ * describe both. That is 8 primitives per device, stored in parallel arrays per stripe.
+ * <p>
+ * Measurements are weighted by their reported accuracy, inflated by the fix {@code age}
+ * (a stale fix may be off by the distance walked since). The dynamic motion state tunes the
+ * model: a static badge has its velocity cleared and almost no process noise, so jitter is
+ * averaged out; a moving badge gets enough process noise to follow turns. Devices silent for
+ * longer than the reset gap restart from their next measurement.
+ * <p>
+ * Updates do not allocate once a device is known. All methods are thread-safe.
+ */
+public class PositionFilter {
+
+    private static final int STRIPES = 16;
+    private static final long NO_SLOT = -1;
+
+    /** Accuracy assumed for GPS fixes without a reported accuracy, in meters. */
+    public static final double DEFAULT_GPS_ACCURACY_METERS = 10.0;
+
+    // Speed used to turn the fix age into extra position uncertainty, in m/s
+    private static final double AGE_SPEED = 1.5;
+    // Acceleration noise of a moving badge, in m/s^2
+    private static final double MOVING_ACCELERATION = 1.0;
+    // Position drift of a static badge (carried around a desk), in m^2/s
+    private static final double STATIC_DRIFT = 0.01;
+    private static final long DEFAULT_RESET_GAP_MILLIS = 10 * 60_000L;
+
+    private final long resetGapMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public PositionFilter() {
+        this(DEFAULT_RESET_GAP_MILLIS);
+    }
+
+    /**
+     * @param resetGapMillis Silence after which a device restarts from its next measurement
+     */
+    public PositionFilter(long resetGapMillis) {
+        if (resetGapMillis <= 0) {
+            throw new IllegalArgumentException("resetGapMillis must be positive: " + resetGapMillis);
+        }
+        this.resetGapMillis = resetGapMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Filter the GPS position of a decoded uplink.
+     *
+     * @param out Receives the filtered latitude, longitude and accuracy in meters
+     * @return false if the uplink carries no position
+     */
+    public boolean filter(long deviceId, long timestampMillis, UplinkData data, double[] out) {
+        if (data.getGpsLatitude() == null || data.getGpsLongitude() == null) {
+            return false;
+        }
+        double accuracy = data.getHorizontalAccuracy() instanceof Number
+            ? ((Number) data.getHorizontalAccuracy()).doubleValue()
+            : DEFAULT_GPS_ACCURACY_METERS;
+        int age = data.getAge() != null ? data.getAge() : 0;
+        filter(deviceId, timestampMillis, data.getGpsLatitude(), data.getGpsLongitude(), accuracy, age,
+            data.getDynamicMotionState(), out);
+        return true;
+    }
+
+    /**
+     * Filter one position measurement, for example a WiFi or BLE estimate.
+     *
+     * @param accuracyMeters Measurement accuracy (one standard deviation)
+     * @param ageSeconds     Age of the measurement when reported
+     * @param motionState    Motion state of the device, or null if unknown
+     * @param out            Receives the filtered latitude, longitude and accuracy in meters
+     */
+    public void filter(long deviceId, long timestampMillis, double latitude, double longitude,
+                       double accuracyMeters, int ageSeconds, DynamicMotionState motionState, double[] out) {
+        double stale = Math.max(0, ageSeconds) * AGE_SPEED;
+        double measurementVariance = accuracyMeters * accuracyMeters + stale * stale;
+
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            int slot = stripe.slotFor(deviceId);
+            long last = stripe.times[slot];
+            if (last == Long.MIN_VALUE || Math.abs(timestampMillis - last) > resetGapMillis) {
+                stripe.reset(slot, timestampMillis, latitude, longitude, measurementVariance);
+                write(stripe, slot, out);
+                return;
+            }
+            // A late measurement is applied at the current filter time
+            double dt = Math.max(0, timestampMillis - last) / 1000.0;
+
+            boolean moving = motionState == DynamicMotionState.MOVING || motionState == DynamicMotionState.START_MOVING;
+            boolean stopped = motionState == DynamicMotionState.STATIC || motionState == DynamicMotionState.START_STATIC;
+            double q = MOVING_ACCELERATION * MOVING_ACCELERATION;
+
+            double p00 = stripe.p00[slot];
+            double p01 = stripe.p01[slot];
+            double p11 = stripe.p11[slot];
+            double vNorth = stripe.vNorth[slot];
+            double vEast = stripe.vEast[slot];
+            if (stopped) {
+                vNorth = 0;
+                vEast = 0;
+                p01 = 0;
+                p11 = 0;
+            }
+
+            // Predict
+            double lat = stripe.latitudes[slot];
+            double lon = stripe.longitudes[slot];
+            double metersPerDegreeLon = Math.max(1.0, GeoUtils.metersPerDegreeLongitude(lat));
+            lat += vNorth * dt / GeoUtils.METERS_PER_DEGREE;
+            lon += vEast * dt / metersPerDegreeLon;
+            double dt2 = dt * dt;
+            if (stopped) {
+                p00 += STATIC_DRIFT * dt;
+            } else {
+                p00 += dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4;
+                p01 += dt * p11 + q * dt2 * dt / 2;
+                p11 += q * dt2;
+            }
+            if (!moving && !stopped) {
+                // Unknown motion: let the velocity decay rather than extrapolate indefinitely
+                double decay = Math.exp(-dt / 60.0);
+                vNorth *= decay;
+                vEast *= decay;
+            }
+
+            // Update
+            double s = p00 + measurementVariance;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            double innovationNorth = (latitude - lat) * GeoUtils.METERS_PER_DEGREE;
+            double innovationEast = wrapLongitudeDelta(longitude - lon) * metersPerDegreeLon;
+            lat += k0 * innovationNorth / GeoUtils.METERS_PER_DEGREE;
+            lon += k0 * innovationEast / metersPerDegreeLon;
+            if (!stopped) {
+                vNorth += k1 * innovationNorth;
+                vEast += k1 * innovationEast;
+            }
+            p11 -= k1 * p01;
+            p01 -= k0 * p01;
+            p00 -= k0 * p00;
+
+            stripe.latitudes[slot] = lat;
+            stripe.longitudes[slot] = lon;
+            stripe.vNorth[slot] = vNorth;
+            stripe.vEast[slot] = vEast;
+            stripe.p00[slot] = p00;
+            stripe.p01[slot] = p01;
+            stripe.p11[slot] = p11;
+            stripe.times[slot] = Math.max(last, timestampMillis);
+            write(stripe, slot, out);
+        }
+    }
+
+    /**
+     * Forget the filter state of a device.
+     *
+     * @return true if the device was known
+     */
+    public boolean remove(long deviceId) {
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            return stripe.remove(deviceId);
+        }
+    }
+
+    /**
+     * Get the number of devices with filter state.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.slots.size();
+            }
+        }
+        return size;
+    }
+
+    private static void write(Stripe stripe, int slot, double[] out) {
+        out[0] = stripe.latitudes[slot];
+        out[1] = stripe.longitudes[slot];
+        out[2] = Math.sqrt(stripe.p00[slot]);
+    }
+
+    private static double wrapLongitudeDelta(double delta) {
+        if (delta > 180.0) return delta - 360.0;
+        if (delta < -180.0) return delta + 360.0;
+        return delta;
+    }
+
+    private static int stripeFor(long deviceId) {
+        return (int) ((deviceId * 0x9E3779B97F4A7C15L) >>> 60);
+    }
+
+    /**
+     * Filter state of the devices of one stripe, in parallel arrays. Freed slots are reused.
+     */
+    private static final class Stripe {
+        final LongLongHashMap slots = new LongLongHashMap();
+        int[] freeSlots = new int[16];
+        int freeCount;
+        int slotCount;
+
+        long[] times = new long[16];
+        double[] latitudes = new double[16];
+        double[] longitudes = new double[16];
+        double[] vNorth = new double[16];
+        double[] vEast = new double[16];
+        double[] p00 = new double[16];
+        double[] p01 = new double[16];
+        double[] p11 = new double[16];
+
+        int slotFor(long deviceId) {
+            long slot = slots.get(deviceId, NO_SLOT);
+            if (slot != NO_SLOT) {
+                return (int) slot;
+            }
+            int created;
+            if (freeCount > 0) {
+                created = freeSlots[--freeCount];
+            } else {
+                if (slotCount == times.length) {
+                    grow(slotCount << 1);
+                }
+                created = slotCount++;
+            }
+            times[created] = Long.MIN_VALUE;
+            slots.put(deviceId, created);
+            return created;
+        }
+
+        boolean remove(long deviceId) {
+            long slot = slots.remove(deviceId, NO_SLOT);
+            if (slot == NO_SLOT) {
+                return false;
+            }
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+            }
+            freeSlots[freeCount++] = (int) slot;
+            return true;
+        }
+
+        void reset(int slot, long timestampMillis, double latitude, double longitude, double variance) {
+            times[slot] = timestampMillis;
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            vNorth[slot] = 0;
+            vEast[slot] = 0;
+            p00[slot] = variance;
+            p01[slot] = 0;
+            // Initial velocity uncertainty of a walking badge
+            p11[slot] = AGE_SPEED * AGE_SPEED;
+        }
+
+        private void grow(int capacity) {
+            times = Arrays.copyOf(times, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            vNorth = Arrays.copyOf(vNorth, capacity);
+            vEast = Arrays.copyOf(vEast, capacity);
+            p00 = Arrays.copyOf(p00, capacity);
+            p01 = Arrays.copyOf(p01, capacity);
+            p11 = Arrays.copyOf(p11, capacity);
+        }
+    }
+}
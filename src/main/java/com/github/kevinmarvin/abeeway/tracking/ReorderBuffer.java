@@ -0,0 +1,380 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Event-time reordering of decoded uplinks per device.
+ * <p>
+ * The event time of an uplink is its reception time minus its {@code age}, when the uplink
+ * reports one. Uplinks are buffered in a small min-heap per device and emitted in event-time
+ * order once the watermark passes them. The watermark trails the latest event time seen by
+ * {@code allowedLatenessMillis} and can also be advanced explicitly, for instance from the wall
+ * clock when traffic stops. Devices waiting for the watermark are ordered by their oldest
+ * uplink in a shared indexed heap, so advancing the watermark only touches devices with
+ * something to emit.
+ * <p>
+ * Memory is bounded: a device holds at most {@code perDeviceCapacity} uplinks and the buffer
+ * at most {@code maxBuffered}. Beyond either limit the oldest uplink of the device, or of the
+ * whole buffer, is emitted early; in the latter case the watermark moves up to it. An uplink
+ * older than the watermark or than the last uplink emitted for its device is dropped and
+ * counted, so each device's output stays in order. A device keeps no state once it has nothing
+ * buffered and the watermark passed its last uplink. All methods are synchronized; the
+ * listener is called while the buffer is locked.
+ */
+public class ReorderBuffer {
+
+    private final long allowedLatenessMillis;
+    private final int perDeviceCapacity;
+    private final int maxBuffered;
+    private final RecordListener listener;
+
+    private final LongObjectHashMap<DeviceHeap> devices = new LongObjectHashMap<>();
+    private DeviceHeap[] queue = new DeviceHeap[64];
+    private long[] queueKeys = new long[64];
+    private int queueSize;
+    private int buffered;
+    private long maxEventTime = Long.MIN_VALUE;
+    private long watermark = Long.MIN_VALUE;
+    private long lateCount;
+    private long forcedCount;
+
+    /**
+     * @param allowedLatenessMillis How far behind the latest event time the watermark trails
+     * @param perDeviceCapacity     Maximum number of uplinks buffered per device
+     * @param maxBuffered           Maximum number of uplinks buffered in total
+     * @param listener              Receives the uplinks in event-time order per device
+     */
+    public ReorderBuffer(long allowedLatenessMillis, int perDeviceCapacity, int maxBuffered, RecordListener listener) {
+        if (allowedLatenessMillis < 0 || perDeviceCapacity < 1 || maxBuffered < 1) {
+            throw new IllegalArgumentException("Invalid lateness or capacity");
+        }
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.perDeviceCapacity = perDeviceCapacity;
+        this.maxBuffered = maxBuffered;
+        this.listener = listener;
+    }
+
+    /**
+     * Compute the event time of an uplink: the reception time minus the reported age, in seconds.
+     */
+    public static long eventTime(long receivedMillis, UplinkData data) {
+        Integer age = data.getAge();
+        return age != null && age > 0 ? receivedMillis - age * 1000L : receivedMillis;
+    }
+
+    /**
+     * Add an uplink decoded with its reception timestamp, and emit whatever the new watermark releases.
+     *
+     * @return false if the uplink is too late and was dropped
+     * @throws IllegalArgumentException if the uplink has no timestamp
+     */
+    public boolean add(long deviceId, UplinkData data) {
+        if (!data.hasTimestamp()) {
+            throw new IllegalArgumentException("Uplink has no timestamp");
+        }
+        return add(deviceId, data.getTimestampMillis(), data);
+    }
+
+    /**
+     * Add an uplink received at the given time, and emit whatever the new watermark releases.
+     *
+     * @return false if the uplink is too late and was dropped
+     */
+    public synchronized boolean add(long deviceId, long receivedMillis, UplinkData data) {
+        long time = eventTime(receivedMillis, data);
+        DeviceHeap device = devices.get(deviceId);
+        if (time < watermark || device != null && time < device.lastEmitted) {
+            lateCount++;
+            return false;
+        }
+        if (device == null) {
+            device = new DeviceHeap(deviceId);
+            devices.put(deviceId, device);
+        }
+
+        if (device.size == perDeviceCapacity) {
+            forcedCount++;
+            if (time <= device.times[0]) {
+                // Older than everything buffered: it is the one to emit
+                device.lastEmitted = time;
+                listener.onRecord(deviceId, time, data);
+                advance(time);
+                return true;
+            }
+            emitHead(device);
+        }
+        device.push(time, data, perDeviceCapacity);
+        buffered++;
+        reposition(device);
+
+        while (buffered > maxBuffered) {
+            // Nothing buffered is older than the head of the shared heap, so the watermark can move to it
+            DeviceHeap oldest = queue[0];
+            watermark = Math.max(watermark, queueKeys[0]);
+            if (oldest.size == 0) {
+                retire(oldest);
+            } else {
+                forcedCount++;
+                emitHead(oldest);
+            }
+        }
+        advance(time);
+        return true;
+    }
+
+    /**
+     * Advance the watermark and emit every uplink at or before it.
+     *
+     * @return The number of uplinks emitted
+     */
+    public synchronized int advanceWatermark(long watermarkMillis) {
+        if (watermarkMillis <= watermark) {
+            return 0;
+        }
+        watermark = watermarkMillis;
+        return release();
+    }
+
+    /**
+     * Emit every buffered uplink by moving the watermark to the latest event time seen.
+     *
+     * @return The number of uplinks emitted
+     */
+    public synchronized int flush() {
+        return advanceWatermark(maxEventTime);
+    }
+
+    /**
+     * Get the current watermark.
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Get the number of uplinks waiting for the watermark.
+     */
+    public synchronized int getBufferedCount() {
+        return buffered;
+    }
+
+    /**
+     * Get the number of devices holding state.
+     */
+    public synchronized int getDeviceCount() {
+        return devices.size();
+    }
+
+    /**
+     * Get the number of uplinks dropped for arriving too late.
+     */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Get the number of uplinks emitted before the watermark because a capacity was reached.
+     */
+    public synchronized long getForcedCount() {
+        return forcedCount;
+    }
+
+    /**
+     * Receives uplinks in event-time order per device.
+     */
+    @FunctionalInterface
+    public interface RecordListener {
+        void onRecord(long deviceId, long eventTimeMillis, UplinkData data);
+    }
+
+    private void advance(long eventTime) {
+        if (eventTime > maxEventTime) {
+            maxEventTime = eventTime;
+            watermark = Math.max(watermark, eventTime - allowedLatenessMillis);
+        }
+        release();
+    }
+
+    private int release() {
+        int emitted = 0;
+        while (queueSize > 0 && queueKeys[0] <= watermark) {
+            DeviceHeap device = queue[0];
+            if (device.size == 0) {
+                retire(device);
+            } else {
+                emitHead(device);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * Emit the oldest uplink of a device, retiring the device once it has nothing left ahead of the watermark.
+     */
+    private void emitHead(DeviceHeap device) {
+        long time = device.times[0];
+        UplinkData data = device.pop();
+        buffered--;
+        device.lastEmitted = time;
+        listener.onRecord(device.deviceId, time, data);
+        if (device.size == 0 && time <= watermark) {
+            retire(device);
+        } else {
+            reposition(device);
+        }
+    }
+
+    private void retire(DeviceHeap device) {
+        devices.remove(device.deviceId);
+        if (device.queueIndex >= 0) {
+            int index = device.queueIndex;
+            DeviceHeap last = queue[--queueSize];
+            queue[queueSize] = null;
+            device.queueIndex = -1;
+            if (last != device) {
+                queue[index] = last;
+                queueKeys[index] = queueKeys[queueSize];
+                last.queueIndex = index;
+                siftDown(index);
+                siftUp(last.queueIndex);
+            }
+        }
+    }
+
+    /**
+     * Insert a device in the shared heap or restore its position after its key changed.
+     */
+    private void reposition(DeviceHeap device) {
+        if (device.queueIndex < 0) {
+            if (queueSize == queue.length) {
+                queue = Arrays.copyOf(queue, queueSize << 1);
+                queueKeys = Arrays.copyOf(queueKeys, queueSize << 1);
+            }
+            device.queueIndex = queueSize;
+            queue[queueSize++] = device;
+            queueKeys[device.queueIndex] = device.key();
+            siftUp(device.queueIndex);
+        } else {
+            queueKeys[device.queueIndex] = device.key();
+            siftDown(device.queueIndex);
+            siftUp(device.queueIndex);
+        }
+    }
+
+    private void siftUp(int index) {
+        DeviceHeap device = queue[index];
+        long key = queueKeys[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (queueKeys[parent] <= key) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        queue[index] = device;
+        queueKeys[index] = key;
+        device.queueIndex = index;
+    }
+
+    private void siftDown(int index) {
+        DeviceHeap device = queue[index];
+        long key = queueKeys[index];
+        int half = queueSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < queueSize && queueKeys[child + 1] < queueKeys[child]) {
+                child++;
+            }
+            if (key <= queueKeys[child]) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        queue[index] = device;
+        queueKeys[index] = key;
+        device.queueIndex = index;
+    }
+
+    private void move(int from, int to) {
+        queue[to] = queue[from];
+        queueKeys[to] = queueKeys[from];
+        queue[to].queueIndex = to;
+    }
+
+    /**
+     * Min-heap of the buffered uplinks of one device, keyed by event time.
+     */
+    private static final class DeviceHeap {
+        final long deviceId;
+        long[] times = new long[2];
+        UplinkData[] records = new UplinkData[2];
+        int size;
+        long lastEmitted = Long.MIN_VALUE;
+        int queueIndex = -1;
+
+        DeviceHeap(long deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        /**
+         * Position in the shared heap: the oldest buffered uplink, or the last emitted one
+         * while that is still ahead of the watermark.
+         */
+        long key() {
+            return size > 0 ? times[0] : lastEmitted;
+        }
+
+        void push(long time, UplinkData data, int capacity) {
+            if (size == times.length) {
+                int grown = Math.min(capacity, size << 1);
+                times = Arrays.copyOf(times, grown);
+                records = Arrays.copyOf(records, grown);
+            }
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (times[parent] <= time) {
+                    break;
+                }
+                times[index] = times[parent];
+                records[index] = records[parent];
+                index = parent;
+            }
+            times[index] = time;
+            records[index] = data;
+        }
+
+        UplinkData pop() {
+            UplinkData head = records[0];
+            int last = --size;
+            long time = times[last];
+            UplinkData data = records[last];
+            records[last] = null;
+            int index = 0;
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && times[child + 1] < times[child]) {
+                    child++;
+                }
+                if (time <= times[child]) {
+                    break;
+                }
+                times[index] = times[child];
+                records[index] = records[child];
+                index = child;
+            }
+            if (size > 0) {
+                times[index] = time;
+                records[index] = data;
+            }
+            return head;
+        }
+    }
+}
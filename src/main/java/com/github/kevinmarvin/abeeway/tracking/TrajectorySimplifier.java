@@ -0,0 +1,293 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Online trajectory compression of the decoded position stream.
+ * <p>
+ * Each device keeps an anchor, the last point emitted, and a bounded window of the points
+ * received since. A new point extends the window as long as every buffered point stays
+ * within the tolerance of the segment from the anchor to the new point (opening-window
+ * Douglas-Peucker). When a buffered point falls outside, the previous point is emitted and
+ * becomes the anchor. Points on straight lines and jitter around a stationary position are
+ * therefore dropped, while corners are kept.
+ * <p>
+ * A point is also emitted when the window is full or when {@code maxIntervalMillis} elapsed
+ * since the anchor, so downstream consumers still see a stationary device at a bounded rate.
+ * The last point of a trajectory is only emitted by {@link #flush(long)}. Memory per device is
+ * fixed by the window size. All methods are thread-safe; the listener is called while the
+ * device's stripe is locked.
+ */
+public class TrajectorySimplifier {
+
+    private static final int STRIPES = 16;
+
+    private final double toleranceMeters;
+    private final int windowSize;
+    private final long maxIntervalMillis;
+    private final PointListener listener;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder receivedCount = new LongAdder();
+    private final LongAdder emittedCount = new LongAdder();
+
+    /**
+     * @param toleranceMeters   Maximum distance between a dropped point and the simplified trajectory
+     * @param windowSize        Maximum number of points buffered per device
+     * @param maxIntervalMillis Maximum time between two emitted points of a device
+     * @param listener          Receives the significant points
+     */
+    public TrajectorySimplifier(double toleranceMeters, int windowSize, long maxIntervalMillis, PointListener listener) {
+        if (!(toleranceMeters > 0) || windowSize < 1 || maxIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Tolerance, window size and max interval must be positive");
+        }
+        this.toleranceMeters = toleranceMeters;
+        this.windowSize = windowSize;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Add the GPS position of a decoded uplink.
+     *
+     * @return false if the uplink carries no position
+     */
+    public boolean add(long deviceId, long timestampMillis, UplinkData data) {
+        if (data.getGpsLatitude() == null || data.getGpsLongitude() == null) {
+            return false;
+        }
+        add(deviceId, timestampMillis, data.getGpsLatitude(), data.getGpsLongitude());
+        return true;
+    }
+
+    /**
+     * Add a position to the trajectory of a device. Positions older than the last one are ignored.
+     */
+    public void add(long deviceId, long timestampMillis, double latitude, double longitude) {
+        receivedCount.increment();
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            Track track = stripe.tracks.get(deviceId);
+            if (track == null) {
+                track = new Track(windowSize);
+                stripe.tracks.put(deviceId, track);
+                track.setAnchor(timestampMillis, latitude, longitude);
+                emit(deviceId, timestampMillis, latitude, longitude);
+                return;
+            }
+            if (timestampMillis <= track.lastTime()) {
+                return;
+            }
+
+            if (timestampMillis - track.anchorTime > maxIntervalMillis) {
+                // Close the window on the last buffered point, then on this point if that
+                // one is still too old to anchor it
+                if (track.count > 0) {
+                    emitLast(deviceId, track);
+                }
+                if (timestampMillis - track.anchorTime > maxIntervalMillis) {
+                    track.setAnchor(timestampMillis, latitude, longitude);
+                    emit(deviceId, timestampMillis, latitude, longitude);
+                    return;
+                }
+            }
+
+            if (track.count > 0 && !track.fits(latitude, longitude, toleranceMeters)) {
+                emitLast(deviceId, track);
+            } else if (track.count == windowSize) {
+                emitLast(deviceId, track);
+            }
+            track.append(timestampMillis, latitude, longitude);
+        }
+    }
+
+    /**
+     * Emit the last pending point of a device, ending its trajectory, and forget the device.
+     *
+     * @return true if the device had state
+     */
+    public boolean flush(long deviceId) {
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            Track track = stripe.tracks.remove(deviceId);
+            if (track == null) {
+                return false;
+            }
+            if (track.count > 0) {
+                emitLast(deviceId, track);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Flush every device whose last position is older than the given time.
+     *
+     * @return The number of devices flushed
+     */
+    public int flushIdle(long lastPositionBeforeMillis) {
+        int flushed = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                long[] idle = new long[stripe.tracks.size()];
+                int[] count = new int[1];
+                stripe.tracks.forEach((deviceId, track) -> {
+                    if (track.lastTime() < lastPositionBeforeMillis) {
+                        idle[count[0]++] = deviceId;
+                    }
+                });
+                for (int i = 0; i < count[0]; i++) {
+                    flush(idle[i]);
+                }
+                flushed += count[0];
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * Get the number of devices with a trajectory in progress.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.tracks.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of positions received.
+     */
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    /**
+     * Get the number of positions emitted.
+     */
+    public long getEmittedCount() {
+        return emittedCount.sum();
+    }
+
+    /**
+     * Receives the significant points of each device, in time order per device.
+     */
+    @FunctionalInterface
+    public interface PointListener {
+        void onPoint(long deviceId, long timestampMillis, double latitude, double longitude);
+    }
+
+    /**
+     * Emit the newest buffered point and make it the anchor.
+     */
+    private void emitLast(long deviceId, Track track) {
+        int last = track.count - 1;
+        long time = track.times[last];
+        double latitude = track.latitudes[last];
+        double longitude = track.longitudes[last];
+        track.setAnchor(time, latitude, longitude);
+        emit(deviceId, time, latitude, longitude);
+    }
+
+    private void emit(long deviceId, long timestampMillis, double latitude, double longitude) {
+        emittedCount.increment();
+        listener.onPoint(deviceId, timestampMillis, latitude, longitude);
+    }
+
+    private static int stripeFor(long deviceId) {
+        return (int) ((deviceId * 0x9E3779B97F4A7C15L) >>> 60);
+    }
+
+    private static final class Stripe {
+        final LongObjectHashMap<Track> tracks = new LongObjectHashMap<>();
+    }
+
+    /**
+     * Anchor and window of one device. Buffered points are kept as planar offsets in meters
+     * from the anchor, scaled at the anchor latitude.
+     */
+    private static final class Track {
+        long anchorTime;
+        double anchorLatitude;
+        double anchorLongitude;
+        double metersPerDegreeLon;
+
+        final long[] times;
+        final double[] latitudes;
+        final double[] longitudes;
+        final double[] xs;
+        final double[] ys;
+        int count;
+
+        Track(int windowSize) {
+            times = new long[windowSize];
+            latitudes = new double[windowSize];
+            longitudes = new double[windowSize];
+            xs = new double[windowSize];
+            ys = new double[windowSize];
+        }
+
+        long lastTime() {
+            return count > 0 ? times[count - 1] : anchorTime;
+        }
+
+        void setAnchor(long time, double latitude, double longitude) {
+            anchorTime = time;
+            anchorLatitude = latitude;
+            anchorLongitude = longitude;
+            metersPerDegreeLon = GeoUtils.metersPerDegreeLongitude(latitude);
+            count = 0;
+        }
+
+        void append(long time, double latitude, double longitude) {
+            times[count] = time;
+            latitudes[count] = latitude;
+            longitudes[count] = longitude;
+            xs[count] = x(longitude);
+            ys[count] = y(latitude);
+            count++;
+        }
+
+        /**
+         * Check whether every buffered point lies within the tolerance of the segment from
+         * the anchor to the candidate point.
+         */
+        boolean fits(double latitude, double longitude, double tolerance) {
+            double ex = x(longitude);
+            double ey = y(latitude);
+            double lengthSquared = ex * ex + ey * ey;
+            double toleranceSquared = tolerance * tolerance;
+            for (int i = 0; i < count; i++) {
+                double px = xs[i];
+                double py = ys[i];
+                double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (px * ex + py * ey) / lengthSquared)) : 0;
+                double dx = px - t * ex;
+                double dy = py - t * ey;
+                if (dx * dx + dy * dy > toleranceSquared) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double x(double longitude) {
+            double delta = longitude - anchorLongitude;
+            if (delta > 180.0) delta -= 360.0;
+            if (delta < -180.0) delta += 360.0;
+            return delta * metersPerDegreeLon;
+        }
+
+        private double y(double latitude) {
+            return (latitude - anchorLatitude) * GeoUtils.METERS_PER_DEGREE;
+        }
+    }
+}
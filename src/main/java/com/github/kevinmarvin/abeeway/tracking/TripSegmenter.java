@@ -0,0 +1,265 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.enums.EventType;
+import com.github.kevinmarvin.abeeway.models.TripRecord;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+/**
+ * Streaming trip segmentation from motion signals and position deltas.
+ * <p>
+ * A trip starts on a {@link EventType#MOTION_START} event, a {@code START_MOVING} or
+ * {@code MOVING} motion state, or a position farther than {@code startDistanceMeters} from
+ * where the device last rested. It ends on a {@link EventType#MOTION_END} event, a
+ * {@code STATIC} or {@code START_STATIC} motion state, or after {@code idleTimeoutMillis}
+ * without any uplink showing motion; a timed-out trip ends at its last moving uplink.
+ * <p>
+ * Distance is summed between reported positions, skipping steps shorter than
+ * {@code minStepMeters} so that fix jitter does not add up. Each device keeps a fixed-size
+ * state whether or not it is travelling. All methods are thread-safe; the listener is
+ * called while the device's stripe is locked.
+ */
+public class TripSegmenter {
+
+    private static final int STRIPES = 16;
+
+    private final double startDistanceMeters;
+    private final double minStepMeters;
+    private final long idleTimeoutMillis;
+    private final TripListener listener;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param startDistanceMeters Displacement from the resting position that starts a trip without a motion signal
+     * @param minStepMeters       Shortest step counted in the trip distance
+     * @param idleTimeoutMillis   Time without motion after which an open trip ends
+     * @param listener            Receives trip starts and completed trips
+     */
+    public TripSegmenter(double startDistanceMeters, double minStepMeters, long idleTimeoutMillis, TripListener listener) {
+        if (!(startDistanceMeters > 0) || minStepMeters < 0 || idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Invalid trip segmentation thresholds");
+        }
+        this.startDistanceMeters = startDistanceMeters;
+        this.minStepMeters = minStepMeters;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Feed a decoded uplink of a device. Uplinks must arrive in time order per device;
+     * older uplinks are ignored.
+     */
+    public void observe(long deviceId, long timestampMillis, UplinkData data) {
+        boolean hasPosition = data.getGpsLatitude() != null && data.getGpsLongitude() != null;
+        double latitude = hasPosition ? data.getGpsLatitude() : Double.NaN;
+        double longitude = hasPosition ? data.getGpsLongitude() : Double.NaN;
+
+        EventType event = data.getEventType();
+        DynamicMotionState motion = data.getDynamicMotionState();
+        boolean moving = event == EventType.MOTION_START
+            || motion == DynamicMotionState.START_MOVING || motion == DynamicMotionState.MOVING;
+        boolean stopping = event == EventType.MOTION_END
+            || motion == DynamicMotionState.STATIC || motion == DynamicMotionState.START_STATIC;
+
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            DeviceTrip state = stripe.devices.get(deviceId);
+            if (state == null) {
+                state = new DeviceTrip();
+                stripe.devices.put(deviceId, state);
+            } else if (timestampMillis < state.lastTime) {
+                return;
+            }
+            state.lastTime = timestampMillis;
+
+            if (state.active && timestampMillis - state.lastMovingTime > idleTimeoutMillis) {
+                end(deviceId, state, state.lastMovingTime);
+            }
+
+            if (!state.active) {
+                boolean displaced = hasPosition && state.hasRestPosition
+                    && GeoUtils.distanceMeters(state.restLatitude, state.restLongitude, latitude, longitude) > startDistanceMeters;
+                if ((moving && !stopping) || (displaced && !stopping)) {
+                    start(deviceId, state, timestampMillis);
+                }
+            }
+
+            if (hasPosition) {
+                if (state.active) {
+                    state.addPosition(latitude, longitude, minStepMeters);
+                } else {
+                    state.rest(latitude, longitude);
+                }
+            }
+
+            if (state.active) {
+                if (stopping) {
+                    end(deviceId, state, timestampMillis);
+                } else if (moving || hasPosition && state.lastStepCounted) {
+                    state.lastMovingTime = timestampMillis;
+                }
+            }
+        }
+    }
+
+    /**
+     * End the open trips of devices without motion for longer than the idle timeout.
+     *
+     * @return The number of trips ended
+     */
+    public int closeIdle(long nowMillis) {
+        int closed = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                int[] count = new int[1];
+                stripe.devices.forEach((deviceId, state) -> {
+                    if (state.active && nowMillis - state.lastMovingTime > idleTimeoutMillis) {
+                        end(deviceId, state, state.lastMovingTime);
+                        count[0]++;
+                    }
+                });
+                closed += count[0];
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Check whether a device is on a trip.
+     */
+    public boolean isTravelling(long deviceId) {
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            DeviceTrip state = stripe.devices.get(deviceId);
+            return state != null && state.active;
+        }
+    }
+
+    /**
+     * Forget a device, discarding its open trip.
+     *
+     * @return true if the device was known
+     */
+    public boolean remove(long deviceId) {
+        Stripe stripe = stripes[stripeFor(deviceId)];
+        synchronized (stripe) {
+            return stripe.devices.remove(deviceId) != null;
+        }
+    }
+
+    /**
+     * Receives trip boundaries.
+     */
+    public interface TripListener {
+        /**
+         * A trip started. Coordinates are {@code NaN} if the device has not reported a position yet.
+         */
+        default void onTripStart(long deviceId, long timestampMillis, double latitude, double longitude) {
+        }
+
+        /**
+         * A trip ended.
+         */
+        void onTripEnd(TripRecord trip);
+    }
+
+    private void start(long deviceId, DeviceTrip state, long timestampMillis) {
+        state.active = true;
+        state.startTime = timestampMillis;
+        state.lastMovingTime = timestampMillis;
+        state.distance = 0;
+        state.positionCount = 0;
+        state.lastStepCounted = false;
+        // Start from where the device rested, so the first step is counted
+        if (state.hasRestPosition) {
+            state.startLatitude = state.restLatitude;
+            state.startLongitude = state.restLongitude;
+            state.lastLatitude = state.restLatitude;
+            state.lastLongitude = state.restLongitude;
+        } else {
+            state.startLatitude = Double.NaN;
+            state.startLongitude = Double.NaN;
+            state.lastLatitude = Double.NaN;
+            state.lastLongitude = Double.NaN;
+        }
+        listener.onTripStart(deviceId, timestampMillis, state.startLatitude, state.startLongitude);
+    }
+
+    private void end(long deviceId, DeviceTrip state, long endTime) {
+        TripRecord trip = new TripRecord();
+        trip.setDeviceId(deviceId);
+        trip.setStartTimeMillis(state.startTime);
+        trip.setEndTimeMillis(Math.max(state.startTime, endTime));
+        trip.setStartLatitude(state.startLatitude);
+        trip.setStartLongitude(state.startLongitude);
+        trip.setEndLatitude(state.lastLatitude);
+        trip.setEndLongitude(state.lastLongitude);
+        trip.setDistanceMeters(state.distance);
+        trip.setPositionCount(state.positionCount);
+        state.active = false;
+        if (!Double.isNaN(state.lastLatitude)) {
+            state.rest(state.lastLatitude, state.lastLongitude);
+        }
+        listener.onTripEnd(trip);
+    }
+
+    private static int stripeFor(long deviceId) {
+        return (int) ((deviceId * 0x9E3779B97F4A7C15L) >>> 60);
+    }
+
+    private static final class Stripe {
+        final LongObjectHashMap<DeviceTrip> devices = new LongObjectHashMap<>();
+    }
+
+    /**
+     * Per-device segmentation state, the same size whether a trip is open or not.
+     */
+    private static final class DeviceTrip {
+        long lastTime = Long.MIN_VALUE;
+
+        boolean hasRestPosition;
+        double restLatitude;
+        double restLongitude;
+
+        boolean active;
+        long startTime;
+        long lastMovingTime;
+        double startLatitude;
+        double startLongitude;
+        double lastLatitude;
+        double lastLongitude;
+        double distance;
+        int positionCount;
+        boolean lastStepCounted;
+
+        void rest(double latitude, double longitude) {
+            hasRestPosition = true;
+            restLatitude = latitude;
+            restLongitude = longitude;
+        }
+
+        void addPosition(double latitude, double longitude, double minStepMeters) {
+            positionCount++;
+            lastStepCounted = false;
+            if (Double.isNaN(lastLatitude)) {
+                startLatitude = latitude;
+                startLongitude = longitude;
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+                return;
+            }
+            double step = GeoUtils.distanceMeters(lastLatitude, lastLongitude, latitude, longitude);
+            if (step >= minStepMeters) {
+                distance += step;
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+                lastStepCounted = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.github.kevinmarvin.abeeway.tracking;
+
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.models.WindowResult;
+import com.github.kevinmarvin.abeeway.utils.LongLongHashMap;
+import com.github.kevinmarvin.abeeway.utils.LongObjectHashMap;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Event-time window aggregation of a field of decoded uplinks, per key.
+ * <p>
+ * Windows are {@code sizeMillis} long and start every {@code slideMillis}: equal values give
+ * tumbling windows, a shorter slide gives hopping windows, and a sliding window is a hopping
+ * window whose slide is the wanted time resolution. Values are pre-aggregated into panes of
+ * {@code gcd(size, slide)} milliseconds, each holding count, sum, min, max and last value per
+ * key in primitive arrays, so a value is added once whatever the number of windows it belongs
+ * to. Windows are combined from their panes and handed to the listener when the watermark
+ * passes their end; values for windows already closed are dropped and counted.
+ * <p>
+ * All methods are synchronized; the listener is called while the aggregator is locked.
+ */
+public class WindowedAggregator {
+
+    /** Key by device. */
+    public static final KeyExtractor BY_DEVICE = (deviceId, data) -> deviceId;
+
+    /** Key by message type ordinal, {@code -1} if unknown. */
+    public static final KeyExtractor BY_MESSAGE_TYPE =
+        (deviceId, data) -> data.getMessageType() == null ? -1 : data.getMessageType().ordinal();
+
+    /** Value 1 for every uplink, to count messages. */
+    public static final ToDoubleFunction<UplinkData> MESSAGE = data -> 1;
+
+    /** Step count of activity status messages. */
+    public static final ToDoubleFunction<UplinkData> STEP_COUNT =
+        data -> data.getStepCount() == null ? Double.NaN : data.getStepCount();
+
+    /** Battery level in percent. */
+    public static final ToDoubleFunction<UplinkData> BATTERY_LEVEL =
+        data -> data.getBatteryLevel() == null ? Double.NaN : data.getBatteryLevel();
+
+    /** Temperature in degrees Celsius. */
+    public static final ToDoubleFunction<UplinkData> TEMPERATURE =
+        data -> data.getTemperatureMeasure() == null ? Double.NaN : data.getTemperatureMeasure();
+
+    private final long sizeMillis;
+    private final long paneMillis;
+    private final int panesPerWindow;
+    private final int panesPerSlide;
+    private final KeyExtractor keyExtractor;
+    private final ToDoubleFunction<UplinkData> valueExtractor;
+    private final WindowListener listener;
+
+    private final LongObjectHashMap<Pane> panes = new LongObjectHashMap<>();
+    private final ArrayDeque<Pane> freePanes = new ArrayDeque<>();
+    private final Pane merged = new Pane();
+    // First window still open, set by the first watermark
+    private long nextWindow;
+    private long watermark = Long.MIN_VALUE;
+    private long lateCount;
+
+    /**
+     * @param sizeMillis     Window length
+     * @param slideMillis    Interval between window starts, at most the window length
+     * @param keyExtractor   Key of an uplink, such as {@link #BY_DEVICE}
+     * @param valueExtractor Aggregated field of an uplink, {@code NaN} when absent
+     * @param listener       Receives the results of closed windows
+     */
+    public WindowedAggregator(long sizeMillis, long slideMillis, KeyExtractor keyExtractor,
+                              ToDoubleFunction<UplinkData> valueExtractor, WindowListener listener) {
+        if (sizeMillis <= 0 || slideMillis <= 0 || slideMillis > sizeMillis) {
+            throw new IllegalArgumentException("Window size and slide must be positive, with slide <= size");
+        }
+        this.sizeMillis = sizeMillis;
+        this.paneMillis = gcd(sizeMillis, slideMillis);
+        long perWindow = sizeMillis / paneMillis;
+        if (perWindow > 4096) {
+            throw new IllegalArgumentException("Window size must be at most 4096 times gcd(size, slide)");
+        }
+        this.panesPerWindow = (int) perWindow;
+        this.panesPerSlide = (int) (slideMillis / paneMillis);
+        this.keyExtractor = keyExtractor;
+        this.valueExtractor = valueExtractor;
+        this.listener = listener;
+    }
+
+    /**
+     * Add a decoded uplink.
+     *
+     * @return false if the uplink has no value for the field or its windows are closed
+     */
+    public boolean add(long deviceId, long timestampMillis, UplinkData data) {
+        double value = valueExtractor.applyAsDouble(data);
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        return add(keyExtractor.key(deviceId, data), timestampMillis, value);
+    }
+
+    /**
+     * Add a value of a key.
+     *
+     * @return false if the windows of the timestamp are closed
+     */
+    public synchronized boolean add(long key, long timestampMillis, double value) {
+        long pane = Math.floorDiv(timestampMillis, paneMillis);
+        // Late only when the last window holding the pane was closed by a watermark
+        if (watermark != Long.MIN_VALUE && pane < nextWindow * panesPerSlide) {
+            lateCount++;
+            return false;
+        }
+        Pane target = panes.get(pane);
+        if (target == null) {
+            target = freePanes.isEmpty() ? new Pane() : freePanes.poll();
+            panes.put(pane, target);
+        }
+        target.add(key, timestampMillis, value);
+        return true;
+    }
+
+    /**
+     * Advance the watermark, closing every window ending at or before it.
+     *
+     * @return The number of windows closed with at least one value
+     */
+    public synchronized int advanceWatermark(long watermarkMillis) {
+        if (watermarkMillis <= watermark) {
+            return 0;
+        }
+        if (watermark == Long.MIN_VALUE) {
+            nextWindow = panes.isEmpty() ? firstWindowEndingAfter(watermarkMillis) : firstWindowContaining(minPane());
+        }
+        watermark = watermarkMillis;
+        int closed = 0;
+        while (windowEnd(nextWindow) <= watermarkMillis) {
+            if (panes.isEmpty()) {
+                nextWindow = Math.max(nextWindow, firstWindowEndingAfter(watermarkMillis));
+                break;
+            }
+            long firstPane = nextWindow * panesPerSlide;
+            long minPane = minPane();
+            if (minPane >= firstPane + panesPerWindow) {
+                // Skip the empty windows before the oldest pane
+                nextWindow = Math.max(nextWindow + 1, firstWindowContaining(minPane));
+                continue;
+            }
+            if (emit(nextWindow)) {
+                closed++;
+            }
+            nextWindow++;
+            releasePanesBefore(nextWindow * panesPerSlide);
+        }
+        return closed;
+    }
+
+    /**
+     * Get the current watermark.
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Get the number of values dropped because their windows were closed.
+     */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Key of an uplink.
+     */
+    @FunctionalInterface
+    public interface KeyExtractor {
+        long key(long deviceId, UplinkData data);
+    }
+
+    /**
+     * Receives the results of closed windows, in window order and per window in no particular key order.
+     */
+    @FunctionalInterface
+    public interface WindowListener {
+        void onWindow(WindowResult result);
+    }
+
+    private boolean emit(long window) {
+        merged.clear();
+        long firstPane = window * panesPerSlide;
+        for (int i = 0; i < panesPerWindow; i++) {
+            Pane pane = panes.get(firstPane + i);
+            if (pane != null) {
+                merged.merge(pane);
+            }
+        }
+        long start = firstPane * paneMillis;
+        for (int i = 0; i < merged.size; i++) {
+            WindowResult result = new WindowResult();
+            result.setKey(merged.keys[i]);
+            result.setWindowStartMillis(start);
+            result.setWindowEndMillis(start + sizeMillis);
+            result.setCount(merged.counts[i]);
+            result.setSum(merged.sums[i]);
+            result.setMin(merged.mins[i]);
+            result.setMax(merged.maxs[i]);
+            result.setLast(merged.lasts[i]);
+            result.setLastTimeMillis(merged.lastTimes[i]);
+            listener.onWindow(result);
+        }
+        return merged.size > 0;
+    }
+
+    private void releasePanesBefore(long firstKept) {
+        for (long pane = firstKept - panesPerSlide; pane < firstKept; pane++) {
+            Pane released = panes.remove(pane);
+            if (released != null) {
+                released.clear();
+                freePanes.push(released);
+            }
+        }
+    }
+
+    private long minPane() {
+        long[] min = {Long.MAX_VALUE};
+        panes.forEach((pane, value) -> min[0] = Math.min(min[0], pane));
+        return min[0];
+    }
+
+    private long windowEnd(long window) {
+        return (window * panesPerSlide + panesPerWindow) * paneMillis;
+    }
+
+    private long firstWindowContaining(long pane) {
+        return Math.floorDiv(pane - panesPerWindow + panesPerSlide, panesPerSlide);
+    }
+
+    private long firstWindowEndingAfter(long timestampMillis) {
+        return Math.floorDiv(Math.floorDiv(timestampMillis, paneMillis) - panesPerWindow, panesPerSlide) + 1;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Aggregates per key of one pane, in parallel arrays indexed through a key map.
+     */
+    private static final class Pane {
+        final LongLongHashMap index = new LongLongHashMap();
+        long[] keys = new long[16];
+        long[] counts = new long[16];
+        double[] sums = new double[16];
+        double[] mins = new double[16];
+        double[] maxs = new double[16];
+        double[] lasts = new double[16];
+        long[] lastTimes = new long[16];
+        int size;
+
+        void add(long key, long time, double value) {
+            int i = entry(key);
+            counts[i]++;
+            sums[i] += value;
+            mins[i] = Math.min(mins[i], value);
+            maxs[i] = Math.max(maxs[i], value);
+            if (time >= lastTimes[i]) {
+                lasts[i] = value;
+                lastTimes[i] = time;
+            }
+        }
+
+        void merge(Pane other) {
+            for (int j = 0; j < other.size; j++) {
+                int i = entry(other.keys[j]);
+                counts[i] += other.counts[j];
+                sums[i] += other.sums[j];
+                mins[i] = Math.min(mins[i], other.mins[j]);
+                maxs[i] = Math.max(maxs[i], other.maxs[j]);
+                if (other.lastTimes[j] >= lastTimes[i]) {
+                    lasts[i] = other.lasts[j];
+                    lastTimes[i] = other.lastTimes[j];
+                }
+            }
+        }
+
+        void clear() {
+            index.clear();
+            size = 0;
+        }
+
+        private int entry(long key) {
+            long found = index.get(key, -1);
+            if (found >= 0) {
+                return (int) found;
+            }
+            int i = size++;
+            if (i == keys.length) {
+                int capacity = i << 1;
+                keys = Arrays.copyOf(keys, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                sums = Arrays.copyOf(sums, capacity);
+                mins = Arrays.copyOf(mins, capacity);
+                maxs = Arrays.copyOf(maxs, capacity);
+                lasts = Arrays.copyOf(lasts, capacity);
+                lastTimes = Arrays.copyOf(lastTimes, capacity);
+            }
+            index.put(key, i);
+            keys[i] = key;
+            counts[i] = 0;
+            sums[i] = 0;
+            mins[i] = Double.POSITIVE_INFINITY;
+            maxs[i] = Double.NEGATIVE_INFINITY;
+            lasts[i] = Double.NaN;
+            lastTimes[i] = Long.MIN_VALUE;
+            return i;
+        }
+    }
+}
@@ -197,4 +197,47 @@ public class ByteUtils {
     public static int toUnsigned(byte b) {
         return b & 0xFF;
     }
+    
+    /**
+     * Pack a 6-byte MAC address into the low 48 bits of a long (big-endian).
+     */
+    public static long macToLong(byte[] bytes, int offset) {
+        return bytesToLong(bytes, offset, 6);
+    }
+    
+    /**
+     * Pack a MAC address string (with or without ':' / '-' separators) into a long.
+     */
+    public static long macToLong(String macAddress) {
+        long result = 0;
+        int digits = 0;
+        for (int i = 0; i < macAddress.length(); i++) {
+            char c = macAddress.charAt(i);
+            if (c == ':' || c == '-') continue;
+            int nibble = Character.digit(c, 16);
+            if (nibble < 0 || ++digits > 12) {
+                throw new IllegalArgumentException("Invalid MAC address: " + macAddress);
+            }
+            result = (result << 4) | nibble;
+        }
+        if (digits != 12) {
+            throw new IllegalArgumentException("Invalid MAC address: " + macAddress);
+        }
+        return result;
+    }
+    
+    /**
+     * Format a packed 48-bit MAC address as upper-case hex with colons (AA:BB:CC:DD:EE:FF).
+     */
+    public static String formatMacAddress(long mac) {
+        char[] chars = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (mac >>> (40 - i * 8)) & 0xFF;
+            int pos = i * 3;
+            if (i > 0) chars[pos - 1] = ':';
+            chars[pos] = HEX_CHARS[b >>> 4];
+            chars[pos + 1] = HEX_CHARS[b & 0x0F];
+        }
+        return new String(chars);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,520 @@
+package com.github.kevinmarvin.abeeway.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative {@code int}s, organised like a Roaring bitmap.
+ * <p>
+ * Values are split on their high 16 bits into chunks of 65536. A chunk holding up to 4096
+ * values is a sorted {@code char[]}; a denser chunk is a 1024-word bitmap, so a chunk never
+ * takes more than 8 KiB and set operations work a word or a sorted run at a time. Chunks
+ * are kept sorted by key. Not thread-safe.
+ */
+public class CompressedBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys;
+    private Chunk[] chunks;
+    private int size;
+
+    public CompressedBitmap() {
+        keys = new char[4];
+        chunks = new Chunk[4];
+    }
+
+    /**
+     * Create a bitmap holding the given values.
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @return false if it was already present
+     */
+    public boolean add(int value) {
+        checkValue(value);
+        int index = find((char) (value >>> 16));
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, (char) (value >>> 16), new Chunk());
+        }
+        return chunks[index].add((char) value);
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @return false if it was absent
+     */
+    public boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = find((char) (value >>> 16));
+        if (index < 0 || !chunks[index].remove((char) value)) {
+            return false;
+        }
+        if (chunks[index].cardinality == 0) {
+            removeChunk(index);
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a value is present.
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = find((char) (value >>> 16));
+        return index >= 0 && chunks[index].contains((char) value);
+    }
+
+    /**
+     * Get the number of values.
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove every value.
+     */
+    public void clear() {
+        Arrays.fill(chunks, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Visit the values in increasing order.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            chunks[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * Get the values in increasing order.
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] count = {0};
+        forEach(value -> values[count[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Copy this bitmap.
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(4, size));
+        copy.chunks = new Chunk[copy.keys.length];
+        for (int i = 0; i < size; i++) {
+            copy.chunks[i] = chunks[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Get the values present in both bitmaps.
+     */
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.appendIfNotEmpty(a.keys[i], Chunk.and(a.chunks[i], b.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the values present in either bitmap.
+     */
+    public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.appendIfNotEmpty(a.keys[i], a.chunks[i++].copy());
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.appendIfNotEmpty(b.keys[j], b.chunks[j++].copy());
+            } else {
+                result.appendIfNotEmpty(a.keys[i], Chunk.or(a.chunks[i++], b.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the values present in {@code a} but not in {@code b}.
+     */
+    public static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                result.appendIfNotEmpty(a.keys[i], Chunk.andNot(a.chunks[i], b.chunks[j]));
+            } else {
+                result.appendIfNotEmpty(a.keys[i], a.chunks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count the values present in both bitmaps without building their intersection.
+     */
+    public static int andCardinality(CompressedBitmap a, CompressedBitmap b) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                cardinality += Chunk.andCardinality(a.chunks[i++], b.chunks[j++]);
+            }
+        }
+        return cardinality;
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertChunk(int index, char key, Chunk chunk) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        size++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        chunks[--size] = null;
+    }
+
+    private void appendIfNotEmpty(char key, Chunk chunk) {
+        if (chunk.cardinality > 0) {
+            insertChunk(size, key, chunk);
+        }
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+    }
+
+    /**
+     * Values sharing their high 16 bits: a sorted array while sparse, a bitmap when dense.
+     */
+    private static final class Chunk {
+        char[] array;
+        long[] bitmap;
+        int cardinality;
+
+        Chunk() {
+            array = new char[4];
+        }
+
+        Chunk(char[] array, int cardinality) {
+            this.array = array;
+            this.cardinality = cardinality;
+        }
+
+        Chunk(long[] bitmap, int cardinality) {
+            this.bitmap = bitmap;
+            this.cardinality = cardinality;
+        }
+
+        boolean add(char low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] = before | (1L << low);
+                if (before == bitmap[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, low);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+            index = -index - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] = before & ~(1L << low);
+                if (before == bitmap[low >>> 6]) {
+                    return false;
+                }
+                if (--cardinality <= ARRAY_MAX) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        boolean contains(char low) {
+            return bitmap != null
+                ? (bitmap[low >>> 6] & (1L << low)) != 0
+                : Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        void forEach(int high, IntConsumer consumer) {
+            if (bitmap != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    for (long word = bitmap[w]; word != 0; word &= word - 1) {
+                        consumer.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    consumer.accept(high | array[i]);
+                }
+            }
+        }
+
+        Chunk copy() {
+            return bitmap != null
+                ? new Chunk(bitmap.clone(), cardinality)
+                : new Chunk(Arrays.copyOf(array, Math.max(4, cardinality)), cardinality);
+        }
+
+        private void toBitmap() {
+            bitmap = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            array = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                for (long word = bitmap[w]; word != 0; word &= word - 1) {
+                    array[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            bitmap = null;
+        }
+
+        /** Shrink a bitmap result holding few values. */
+        private static Chunk fromBitmap(long[] words, int cardinality) {
+            Chunk chunk = new Chunk(words, cardinality);
+            if (cardinality <= ARRAY_MAX) {
+                chunk.toArray();
+            }
+            return chunk;
+        }
+
+        static Chunk and(Chunk a, Chunk b) {
+            if (a.bitmap != null && b.bitmap != null) {
+                // Count first, so that a sparse result is written straight into an array
+                int cardinality = andCardinality(a, b);
+                if (cardinality > ARRAY_MAX) {
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] = a.bitmap[w] & b.bitmap[w];
+                    }
+                    return new Chunk(words, cardinality);
+                }
+                char[] result = new char[Math.max(4, cardinality)];
+                int count = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    for (long word = a.bitmap[w] & b.bitmap[w]; word != 0; word &= word - 1) {
+                        result[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    }
+                }
+                return new Chunk(result, count);
+            }
+            if (a.bitmap != null) {
+                return filter(b, a, true);
+            }
+            if (b.bitmap != null) {
+                return filter(a, b, true);
+            }
+            char[] result = new char[Math.min(a.cardinality, b.cardinality)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality && j < b.cardinality) {
+                if (a.array[i] < b.array[j]) {
+                    i++;
+                } else if (a.array[i] > b.array[j]) {
+                    j++;
+                } else {
+                    result[count++] = a.array[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new Chunk(result, count);
+        }
+
+        static Chunk or(Chunk a, Chunk b) {
+            if (a.bitmap != null || b.bitmap != null) {
+                long[] words = a.bitmap != null ? a.bitmap.clone() : b.bitmap.clone();
+                Chunk other = a.bitmap != null ? b : a;
+                if (other.bitmap != null) {
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] |= other.bitmap[w];
+                    }
+                } else {
+                    for (int i = 0; i < other.cardinality; i++) {
+                        words[other.array[i] >>> 6] |= 1L << other.array[i];
+                    }
+                }
+                return new Chunk(words, bitCount(words));
+            }
+            char[] result = new char[a.cardinality + b.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality || j < b.cardinality) {
+                if (j == b.cardinality || (i < a.cardinality && a.array[i] < b.array[j])) {
+                    result[count++] = a.array[i++];
+                } else if (i == a.cardinality || a.array[i] > b.array[j]) {
+                    result[count++] = b.array[j++];
+                } else {
+                    result[count++] = a.array[i++];
+                    j++;
+                }
+            }
+            Chunk chunk = new Chunk(result, count);
+            if (count > ARRAY_MAX) {
+                chunk.toBitmap();
+            }
+            return chunk;
+        }
+
+        static Chunk andNot(Chunk a, Chunk b) {
+            if (a.bitmap != null) {
+                long[] words = a.bitmap.clone();
+                if (b.bitmap != null) {
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] &= ~b.bitmap[w];
+                    }
+                } else {
+                    for (int i = 0; i < b.cardinality; i++) {
+                        words[b.array[i] >>> 6] &= ~(1L << b.array[i]);
+                    }
+                }
+                return fromBitmap(words, bitCount(words));
+            }
+            if (b.bitmap != null) {
+                return filter(a, b, false);
+            }
+            char[] result = new char[a.cardinality];
+            int count = 0;
+            int j = 0;
+            for (int i = 0; i < a.cardinality; i++) {
+                while (j < b.cardinality && b.array[j] < a.array[i]) {
+                    j++;
+                }
+                if (j == b.cardinality || b.array[j] != a.array[i]) {
+                    result[count++] = a.array[i];
+                }
+            }
+            return new Chunk(result, count);
+        }
+
+        static int andCardinality(Chunk a, Chunk b) {
+            if (a.bitmap != null && b.bitmap != null) {
+                int cardinality = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    cardinality += Long.bitCount(a.bitmap[w] & b.bitmap[w]);
+                }
+                return cardinality;
+            }
+            return and(a, b).cardinality;
+        }
+
+        /** Keep the values of an array chunk that are, or are not, in a bitmap chunk. */
+        private static Chunk filter(Chunk array, Chunk bitmap, boolean keepPresent) {
+            char[] result = new char[array.cardinality];
+            int count = 0;
+            int flip = keepPresent ? 0 : 1;
+            for (int i = 0; i < array.cardinality; i++) {
+                char low = array.array[i];
+                result[count] = low;
+                count += ((int) (bitmap.bitmap[low >>> 6] >>> low) & 1) ^ flip;
+            }
+            return new Chunk(result, count);
+        }
+
+        private static int bitCount(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            return cardinality;
+        }
+    }
+}
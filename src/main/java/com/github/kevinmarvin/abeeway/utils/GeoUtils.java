@@ -0,0 +1,41 @@
+package com.github.kevinmarvin.abeeway.utils;
+
+/**
+ * Utility class for geographic calculations on decoded positions.
+ */
+public class GeoUtils {
+
+    /** Mean Earth radius in meters. */
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    /** Length of one degree of latitude in meters. */
+    public static final double METERS_PER_DEGREE = Math.toRadians(EARTH_RADIUS_METERS);
+
+    /**
+     * Great-circle distance between two points in meters (haversine formula).
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Fast equirectangular distance in meters, accurate for the short distances between
+     * consecutive positions of one device.
+     */
+    public static double approximateDistanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    /**
+     * Length of one degree of longitude in meters at the given latitude.
+     */
+    public static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+}
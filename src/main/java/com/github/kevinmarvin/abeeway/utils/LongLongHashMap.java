@@ -0,0 +1,238 @@
+package com.github.kevinmarvin.abeeway.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to primitive {@code long} values.
+ * <p>
+ * Used for device slots, cell keys and counters where a {@code HashMap<Long, Long>} would box
+ * both sides of every entry. Absent keys are reported through a caller-chosen default value.
+ * Not thread-safe.
+ */
+public class LongLongHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // The zero key marks empty slots, so its value is kept separately
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        allocate(LongObjectHashMap.tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Get the value for a key, or {@code defaultValue} if absent.
+     */
+    public long get(long key, long defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) return values[slot];
+            if (k == 0) return defaultValue;
+        }
+    }
+
+    /**
+     * Check whether a key is present.
+     */
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) return true;
+            if (k == 0) return false;
+        }
+    }
+
+    /**
+     * Associate a value with a key.
+     *
+     * @return The previous value, or {@code defaultValue} if the key was absent
+     */
+    public long put(long key, long value, long defaultValue) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : defaultValue;
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == 0) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Associate a value with a key.
+     */
+    public void put(long key, long value) {
+        put(key, value, 0);
+    }
+
+    /**
+     * Add a delta to the value of a key, treating an absent key as 0.
+     *
+     * @return The new value
+     */
+    public long addTo(long key, long delta) {
+        if (key == 0) {
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            return zeroValue += delta;
+        }
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                return values[slot] += delta;
+            }
+            if (k == 0) {
+                keys[slot] = key;
+                values[slot] = delta;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return delta;
+            }
+        }
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @return The removed value, or {@code defaultValue} if the key was absent
+     */
+    public long remove(long key, long defaultValue) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : defaultValue;
+            if (hasZeroKey) size--;
+            hasZeroKey = false;
+            zeroValue = 0;
+            return previous;
+        }
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == 0) return defaultValue;
+            if (k == key) {
+                long previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the map is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Visit every entry. The map must not be modified during iteration.
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Callback for {@link #forEach}.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    private int slotFor(long key) {
+        return (int) LongObjectHashMap.mix(key) & mask;
+    }
+
+    private void shiftBack(int hole) {
+        for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = slotFor(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = slotFor(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,263 @@
+package com.github.kevinmarvin.abeeway.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe interning cache for MAC addresses (WiFi BSSIDs and BLE beacon MACs).
+ * <p>
+ * The same access points and beacons appear in a very large number of uplinks. Decoding each
+ * of them into a fresh {@code String} wastes heap wherever decoded positions are retained, so
+ * this cache maps the packed 48-bit MAC to one canonical, formatted string instance.
+ * <p>
+ * The cache is split into independently locked segments. Each segment keeps its entries in
+ * dense arrays indexed by an open-addressing table and evicts with the CLOCK algorithm once
+ * it is full, so the total number of cached addresses never exceeds the configured maximum.
+ */
+public class MacAddressCache {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int maximumSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MacAddressCache(int maximumSize) {
+        this(maximumSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public MacAddressCache(int maximumSize, int concurrencyLevel) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+        }
+
+        int segmentCount = Integer.highestOneBit(Math.min(concurrencyLevel, maximumSize));
+        int perSegment = (maximumSize + segmentCount - 1) / segmentCount;
+
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+        this.maximumSize = perSegment * segmentCount;
+    }
+
+    /**
+     * Get the canonical formatted string for a MAC address read from a payload.
+     */
+    public String intern(byte[] payload, int offset) {
+        return intern(ByteUtils.macToLong(payload, offset));
+    }
+
+    /**
+     * Get the canonical formatted string (AA:BB:CC:DD:EE:FF) for a packed 48-bit MAC address.
+     */
+    public String intern(long mac) {
+        long hash = mix(mac);
+        Segment segment = segments[segmentShift == 64 ? 0 : (int) (hash >>> segmentShift)];
+
+        synchronized (segment) {
+            String cached = segment.get(mac, (int) hash);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+
+            misses.increment();
+            String formatted = ByteUtils.formatMacAddress(mac);
+            if (segment.put(mac, (int) hash, formatted)) {
+                evictions.increment();
+            }
+            return formatted;
+        }
+    }
+
+    /**
+     * Get the number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups that had to format a new string.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of entries evicted to stay within the size bound.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the fraction of lookups answered from the cache (0.0 when unused).
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Get the current number of cached addresses.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the maximum number of addresses this cache will hold.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Spread the MAC bits over the whole long (MurmurHash3 finalizer).
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * One lock-protected slice of the cache.
+     * Entries live in dense arrays; the index table maps hash slots to entry positions + 1.
+     */
+    private static final class Segment {
+        private final long[] keys;
+        private final String[] values;
+        private final boolean[] referenced;
+        private final int[] index;
+        private final int indexMask;
+        private int size;
+        private int hand;
+
+        Segment(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new String[capacity];
+            this.referenced = new boolean[capacity];
+            this.index = new int[Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1];
+            this.indexMask = index.length - 1;
+        }
+
+        String get(long key, int hash) {
+            for (int slot = hash & indexMask; ; slot = (slot + 1) & indexMask) {
+                int entry = index[slot];
+                if (entry == 0) {
+                    return null;
+                }
+                if (keys[entry - 1] == key) {
+                    referenced[entry - 1] = true;
+                    return values[entry - 1];
+                }
+            }
+        }
+
+        /**
+         * Insert a key known to be absent; returns true if another entry was evicted.
+         */
+        boolean put(long key, int hash, String value) {
+            int entry;
+            boolean evicted = false;
+
+            if (size < keys.length) {
+                entry = size++;
+            } else {
+                entry = selectVictim();
+                removeFromIndex(keys[entry]);
+                evicted = true;
+            }
+
+            keys[entry] = key;
+            values[entry] = value;
+            referenced[entry] = false;
+
+            int slot = hash & indexMask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & indexMask;
+            }
+            index[slot] = entry + 1;
+            return evicted;
+        }
+
+        /**
+         * Advance the clock hand, giving referenced entries a second chance.
+         */
+        private int selectVictim() {
+            while (true) {
+                int candidate = hand;
+                hand = (hand + 1) % keys.length;
+                if (referenced[candidate]) {
+                    referenced[candidate] = false;
+                } else {
+                    return candidate;
+                }
+            }
+        }
+
+        /**
+         * Remove a key from the index table using backward-shift deletion.
+         */
+        private void removeFromIndex(long key) {
+            int slot = (int) mix(key) & indexMask;
+            while (keys[index[slot] - 1] != key) {
+                slot = (slot + 1) & indexMask;
+            }
+
+            int hole = slot;
+            for (int next = (hole + 1) & indexMask; index[next] != 0; next = (next + 1) & indexMask) {
+                int home = (int) mix(keys[index[next] - 1]) & indexMask;
+                // Move the entry back if the hole lies on its probe path
+                if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+                    index[hole] = index[next];
+                    hole = next;
+                }
+            }
+            index[hole] = 0;
+        }
+
+        void clear() {
+            Arrays.fill(values, null);
+            Arrays.fill(referenced, false);
+            Arrays.fill(index, 0);
+            size = 0;
+            hand = 0;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.kevinmarvin.abeeway.utils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parser of ISO-8601 timestamps to epoch milliseconds.
+ * <p>
+ * The common network server forms, {@code yyyy-MM-ddTHH:mm:ss[.fraction](Z|±HH:MM)}, are
+ * parsed in place without allocating. Uplinks of a day share the same date, so the epoch
+ * milliseconds of the last date seen are cached and the date part only costs a comparison.
+ * Other ISO-8601 forms fall back to {@code java.time}; a timestamp without offset is taken as UTC.
+ */
+public class TimestampParser {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static volatile CachedDate cachedDate = new CachedDate(19700101, 0);
+
+    private TimestampParser() {
+    }
+
+    /**
+     * Parse an ISO-8601 timestamp.
+     *
+     * @return The epoch milliseconds
+     * @throws IllegalArgumentException if the text is not an ISO-8601 timestamp
+     */
+    public static long parse(CharSequence text) {
+        long millis = parseFast(text);
+        if (millis != Long.MIN_VALUE) {
+            return millis;
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                throw new IllegalArgumentException("Invalid ISO-8601 timestamp: " + text, e);
+            }
+        }
+    }
+
+    /**
+     * Parse the common form, or return {@code Long.MIN_VALUE} to fall back to {@code java.time}.
+     */
+    private static long parseFast(CharSequence text) {
+        int length = text.length();
+        if (length < 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(13) != ':'
+            || text.charAt(16) != ':' || (text.charAt(10) != 'T' && text.charAt(10) != 't')) {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0 || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        int index = 19;
+        int millis = 0;
+        if (text.charAt(index) == '.') {
+            int start = ++index;
+            while (index < length && isDigit(text.charAt(index))) {
+                if (index - start < 3) {
+                    millis = millis * 10 + (text.charAt(index) - '0');
+                }
+                index++;
+            }
+            int count = index - start;
+            if (count == 0 || count > 9) {
+                return Long.MIN_VALUE;
+            }
+            for (int i = count; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        int offsetSeconds;
+        if (index == length - 1 && (text.charAt(index) == 'Z' || text.charAt(index) == 'z')) {
+            offsetSeconds = 0;
+        } else if (index == length - 6 && (text.charAt(index) == '+' || text.charAt(index) == '-')
+            && text.charAt(index + 3) == ':') {
+            int offsetHours = digits(text, index + 1, 2);
+            int offsetMinutes = digits(text, index + 4, 2);
+            if ((offsetHours | offsetMinutes) < 0 || offsetHours > 18 || offsetMinutes > 59) {
+                return Long.MIN_VALUE;
+            }
+            offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+            if (text.charAt(index) == '-') {
+                offsetSeconds = -offsetSeconds;
+            }
+        } else {
+            return Long.MIN_VALUE;
+        }
+
+        long dayMillis = epochDayMillis(year, month, day);
+        if (dayMillis == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return dayMillis + (hour * 3600L + minute * 60L + second - offsetSeconds) * 1000L + millis;
+    }
+
+    private static long epochDayMillis(int year, int month, int day) {
+        int key = year * 10000 + month * 100 + day;
+        CachedDate cached = cachedDate;
+        if (cached.key == key) {
+            return cached.epochMillis;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > LocalDate.of(year, month, 1).lengthOfMonth()) {
+            return Long.MIN_VALUE;
+        }
+        long epochMillis = LocalDate.of(year, month, day).toEpochDay() * MILLIS_PER_DAY;
+        cachedDate = new CachedDate(key, epochMillis);
+        return epochMillis;
+    }
+
+    /**
+     * Read a fixed number of decimal digits, or return -1 if one is not a digit.
+     */
+    private static int digits(CharSequence text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static final class CachedDate {
+        final int key;
+        final long epochMillis;
+
+        CachedDate(int key, long epochMillis) {
+            this.key = key;
+            this.epochMillis = epochMillis;
+        }
+    }
+}
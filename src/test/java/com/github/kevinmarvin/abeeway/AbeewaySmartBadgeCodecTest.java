@@ -5,8 +5,13 @@ import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
 import com.github.kevinmarvin.abeeway.models.DecodedUplink;
 import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
 import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.encoders.CommandEncoder;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand;
+import com.github.kevinmarvin.abeeway.enums.DownMessageType;
 import com.github.kevinmarvin.abeeway.enums.MessageType;
+import com.github.kevinmarvin.abeeway.enums.Mode;
 import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.TimestampParser;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +20,9 @@ import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -179,6 +187,86 @@ public class AbeewaySmartBadgeCodecTest {
         assertEquals(MessageType.EVENT, ((UplinkData) result3.getData()).getMessageType());
     }
     
+    @Test
+    @Order(11)
+    void testUplinkTimestamp() throws DecodingException {
+        byte[] heartbeat = {(byte) 0x20, 0x50};
+        long millis = Instant.parse("2024-03-10T08:15:30.250Z").toEpochMilli();
+
+        UplinkData fromLong = (UplinkData) codec.decodeUplink(heartbeat, 1, millis).getData();
+        assertEquals(millis, fromLong.getTimestampMillis());
+        UplinkData fromString = (UplinkData) codec.decodeUplink(heartbeat, 1, "2024-03-10T08:15:30.250Z").getData();
+        assertEquals(millis, fromString.getTimestampMillis());
+        UplinkData none = (UplinkData) codec.decodeUplink(heartbeat, 1, null).getData();
+        assertFalse(none.hasTimestamp());
+
+        DecodedUplink invalid = codec.decodeUplink(heartbeat, 1, "yesterday");
+        assertFalse(((UplinkData) invalid.getData()).hasTimestamp());
+        assertEquals(1, invalid.getWarnings().size());
+
+        // Fast path and java.time fallback agree
+        String[] timestamps = {
+            "2024-03-10T08:15:30Z", "2024-03-10T08:15:30.5Z", "2024-03-10T08:15:30.123456789Z",
+            "2024-03-10T23:59:59.999+02:00", "2024-03-11T00:00:00-05:30", "2024-02-29T12:00:00.000Z",
+            "1969-12-31T23:59:59.001Z"
+        };
+        for (String timestamp : timestamps) {
+            assertEquals(OffsetDateTime.parse(timestamp).toInstant().toEpochMilli(),
+                TimestampParser.parse(timestamp), timestamp);
+        }
+        assertEquals(Instant.parse("2024-03-10T08:15:30Z").toEpochMilli(), TimestampParser.parse("2024-03-10T08:15:30"));
+        assertThrows(IllegalArgumentException.class, () -> TimestampParser.parse("2023-02-29T12:00:00Z"));
+        assertThrows(IllegalArgumentException.class, () -> TimestampParser.parse("2024-03-10T24:00:00Z"));
+    }
+    
+    @Test
+    @Order(12)
+    void testTypedCommandEncoding() throws EncodingException, DecodingException {
+        // Same frames as the map-based encoding
+        Map<String, Object> setMode = new HashMap<>();
+        setMode.put("messageType", "SET_MODE");
+        setMode.put("mode", "PERMANENT_TRACKING");
+        assertArrayEquals(codec.encodeDownlink(setMode, 2).getBytes(),
+            codec.encodeCommand(new DownlinkCommand.SetMode(Mode.PERMANENT_TRACKING), 2).getBytes());
+        assertArrayEquals(new byte[]{0x01}, codec.encodeCommand(DownlinkCommand.REQUEST_CONFIG, 2).getBytes());
+        assertArrayEquals(new byte[]{0x07, 0x12, 0x34},
+            codec.encodeCommand(new DownlinkCommand.Debug(ByteUtils.hexToBytes("1234")), 2).getBytes());
+        assertEquals(DownMessageType.POSITION_ON_DEMAND, DownlinkCommand.POSITION_ON_DEMAND.messageType());
+
+        // SET_PARAM values are big-endian on their schema size, and read back by the configuration decoder
+        Map<String, Object> setParam = new HashMap<>();
+        setParam.put("messageType", "SET_PARAM");
+        setParam.put("parameterId", 0x01);
+        setParam.put("parameterValue", 120);
+        byte[] setParamFrame = codec.encodeDownlink(setParam, 2).getBytes();
+        assertArrayEquals(new byte[]{0x09, 0x01, 0x00, 0x78}, setParamFrame);
+        assertArrayEquals(setParamFrame, codec.encodeCommand(new DownlinkCommand.SetParameters(
+            AbeewaySmartBadgeCodec.newParameters().setGpsTimeout(120).build()), 2).getBytes());
+        setParamFrame[0] = (byte) 0x90;
+        UplinkData configuration = (UplinkData) codec.decodeUplink(setParamFrame, 1, null).getData();
+        assertEquals(120, configuration.getDeviceConfiguration().get("gpsTimeout"));
+
+        // Position polls written back to back into one buffer
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, codec.encodeCommand(DownlinkCommand.POSITION_ON_DEMAND, buffer));
+        }
+        assertArrayEquals(new byte[]{0x04, 0x04, 0x04}, buffer.array());
+        assertThrows(EncodingException.class, () -> codec.encodeCommand(DownlinkCommand.POSITION_ON_DEMAND, buffer));
+        ByteBuffer small = ByteBuffer.allocate(1);
+        assertThrows(EncodingException.class,
+            () -> codec.encodeCommand(new DownlinkCommand.SetMode(Mode.OFF), small));
+        assertEquals(0, small.position());
+
+        // Shared constant frames cannot be written to
+        ByteBuffer frame = CommandEncoder.constantFrame(DownlinkCommand.POSITION_ON_DEMAND);
+        assertTrue(frame.isReadOnly());
+        assertEquals(0x04, frame.get());
+        assertEquals(1, CommandEncoder.constantFrame(DownlinkCommand.POSITION_ON_DEMAND).remaining());
+        assertNull(CommandEncoder.constantFrame(new DownlinkCommand.SetMode(Mode.OFF)));
+        assertThrows(IllegalArgumentException.class, () -> new DownlinkCommand.SetMode(Mode.UNKNOWN));
+    }
+    
     // Future test methods would include:
     // - testAllUplinkExamples() - Load from examples.json and validate all test cases
     // - testAllDownlinkEncodeExamples() - Test all downlink encoding scenarios
@@ -186,4 +274,4 @@ public class AbeewaySmartBadgeCodecTest {
     // - testConfigurationDecoding() - Test parameter decoding
     // - testErrorHandling() - Test various error conditions
     // - testPerformance() - Performance benchmarks
-}
\ No newline at end of file
+}
@@ -0,0 +1,194 @@
+package com.github.kevinmarvin.abeeway;
+
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.enums.EventType;
+import com.github.kevinmarvin.abeeway.enums.Mode;
+import com.github.kevinmarvin.abeeway.fleet.ConfigurationComplianceIndex;
+import com.github.kevinmarvin.abeeway.fleet.DeviceSegmentIndex;
+import com.github.kevinmarvin.abeeway.models.BitmapValue;
+import com.github.kevinmarvin.abeeway.models.DeviceState;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+import com.github.kevinmarvin.abeeway.utils.CompressedBitmap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test suite for fleet-wide indexes and the compressed bitmap behind them.
+ */
+@TestMethodOrder(OrderAnnotation.class)
+public class FleetTest {
+
+    @Test
+    @Order(1)
+    void testCompressedBitmapMatchesBitSet() {
+        Random random = new Random(7);
+        CompressedBitmap a = new CompressedBitmap();
+        CompressedBitmap b = new CompressedBitmap();
+        BitSet expectedA = new BitSet();
+        BitSet expectedB = new BitSet();
+        // Dense and sparse chunks, and chunks turning from one form to the other
+        for (int i = 0; i < 60_000; i++) {
+            int value = random.nextInt(4) == 0 ? random.nextInt(1 << 22) : 65536 + random.nextInt(12_000);
+            assertEquals(!expectedA.get(value), a.add(value));
+            expectedA.set(value);
+            value = random.nextInt(2) == 0 ? random.nextInt(1 << 22) : 65536 + random.nextInt(20_000);
+            b.add(value);
+            expectedB.set(value);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            int value = 65536 + random.nextInt(12_000);
+            assertEquals(expectedA.get(value), a.remove(value));
+            expectedA.clear(value);
+        }
+        assertBitmap(expectedA, a);
+        assertTrue(a.contains(expectedA.nextSetBit(0)));
+        assertFalse(a.contains(-1));
+
+        BitSet and = (BitSet) expectedA.clone();
+        and.and(expectedB);
+        BitSet or = (BitSet) expectedA.clone();
+        or.or(expectedB);
+        BitSet andNot = (BitSet) expectedA.clone();
+        andNot.andNot(expectedB);
+        assertBitmap(and, CompressedBitmap.and(a, b));
+        assertBitmap(or, CompressedBitmap.or(a, b));
+        assertBitmap(andNot, CompressedBitmap.andNot(a, b));
+        assertEquals(and.cardinality(), CompressedBitmap.andCardinality(a, b));
+        assertThrows(IllegalArgumentException.class, () -> a.add(-5));
+    }
+
+    @Test
+    @Order(2)
+    void testComplianceIndexTracksReportedValues() throws Exception {
+        AbeewaySmartBadgeCodec codec = new AbeewaySmartBadgeCodec();
+        AbeewayParams params = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setOperatingMode(AbeewayParams.OperatingMode.PERMANENT_TRACKING)
+            .setTemperatureAlertThreshold(45.5)
+            .build();
+        byte[] frame = codec.encodeParameters(params, 2).getBytes();
+        frame[0] = (byte) 0x90;
+        Map<String, Object> compliant = ((UplinkData) codec.decodeUplink(frame, 1, null).getData()).getDeviceConfiguration();
+
+        ConfigurationComplianceIndex index = new ConfigurationComplianceIndex();
+        for (long device = 1; device <= 10; device++) {
+            index.update(device, compliant);
+        }
+        Map<String, Object> drifted = new HashMap<>();
+        drifted.put("gpsTimeout", 60);
+        drifted.put("operatingMode", "MOTION_TRACKING");
+        index.update(3L, drifted);
+        index.update(7L, drifted);
+        index.update(11L, drifted);
+
+        // Values are matched on their encoding, whichever form they are given in
+        assertArrayEquals(new long[]{3L, 7L, 11L}, index.deviceIds(index.devicesWithout("gpsTimeout", 120)));
+        assertEquals(8, index.devicesWith("operatingMode", AbeewayParams.OperatingMode.PERMANENT_TRACKING.name()).cardinality());
+        assertEquals(10, index.devicesWith("temperatureAlertThreshold", 455).cardinality());
+        assertEquals(10, index.devicesWith("temperatureAlertThreshold", 45.5).cardinality());
+        assertTrue(index.devicesWithout("temperatureAlertThreshold", 45.5).isEmpty());
+        assertEquals(1, CompressedBitmap.andNot(index.allDevices(), index.devicesReporting("temperatureAlertThreshold")).cardinality());
+
+        Map<Object, Integer> modes = index.distribution("operatingMode");
+        Iterator<Map.Entry<Object, Integer>> entries = modes.entrySet().iterator();
+        Map.Entry<Object, Integer> first = entries.next();
+        assertEquals("PERMANENT_TRACKING", first.getKey());
+        assertEquals(Integer.valueOf(8), first.getValue());
+        assertEquals(Integer.valueOf(3), modes.get("MOTION_TRACKING"));
+        assertEquals(Integer.valueOf(10), index.distribution("temperatureAlertThreshold").get(45.5));
+
+        // Bitmap parameters are indexed on their flags
+        BitmapValue flags = BitmapValue.of(ParameterSchema.getDefault().get("configFlags"), "bleAdvertising");
+        Map<String, Object> withFlags = new HashMap<>();
+        withFlags.put("configFlags", flags);
+        index.update(2L, withFlags);
+        assertEquals(flags, index.distribution("configFlags").keySet().iterator().next());
+
+        // A 4-byte value from 2^31 up is indexed, and a bad entry does not stop the others
+        Map<String, Object> unsigned = ((UplinkData) codec.decodeUplink(new byte[]{(byte) 0x90, 0x10,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, 1, null).getData()).getDeviceConfiguration();
+        unsigned.put("operatingMode", "NOT_A_MODE");
+        unsigned.put("gpsTimeout", 90);
+        index.update(5L, unsigned);
+        assertArrayEquals(new long[]{5L}, index.deviceIds(index.devicesWith("uplinkPeriod", 0xFFFFFFFFL)));
+        assertArrayEquals(new long[]{5L}, index.deviceIds(index.devicesWith("gpsTimeout", 90)));
+        assertEquals(8, index.devicesWith("operatingMode", "PERMANENT_TRACKING").cardinality());
+        index.update(5L, compliant);
+
+        index.remove(7L);
+        index.update(7L, compliant);
+        assertArrayEquals(new long[]{3L, 11L}, index.deviceIds(index.devicesWithout("gpsTimeout", 120)));
+        assertEquals(11, index.getDeviceCount());
+        assertThrows(IllegalArgumentException.class, () -> index.devicesWith("noSuchParameter", 1));
+    }
+
+    @Test
+    @Order(3)
+    void testSegmentIndexCombinesFields() {
+        DeviceSegmentIndex index = new DeviceSegmentIndex();
+        BatteryStatus[] statuses = {BatteryStatus.OPERATING, BatteryStatus.WARNING, BatteryStatus.CRITICAL};
+        DynamicMotionState[] motions = {DynamicMotionState.STATIC, DynamicMotionState.MOVING};
+        String[] modes = {"PERMANENT_TRACKING", "MOTION_TRACKING", "STANDBY", "SOS_MODE", "UNKNOWN"};
+        for (long device = 1; device <= 60; device++) {
+            index.update(state(device, statuses[(int) (device % 3)], motions[(int) (device % 2)],
+                modes[(int) (device % 5)], (int) device));
+        }
+
+        // CRITICAL and PERMANENT_TRACKING and MOVING: device % 3 == 2, % 5 == 0 and odd
+        DeviceSegmentIndex.Query segment = index.where(BatteryStatus.CRITICAL)
+            .and(Mode.PERMANENT_TRACKING)
+            .and(DynamicMotionState.MOVING);
+        assertArrayEquals(new long[]{5L, 35L}, sorted(segment.deviceIds()));
+
+        int lowBattery = index.whereBatteryBelow(20).count();
+        assertEquals(19, lowBattery);
+        assertEquals(index.where(BatteryStatus.WARNING).or(BatteryStatus.CRITICAL).count(),
+            index.whereAll().andNot(BatteryStatus.OPERATING).count());
+        assertEquals(index.where(Mode.SOS_MODE).count() - 6,
+            index.where(Mode.SOS_MODE).andNot(index.where(DynamicMotionState.STATIC)).count());
+
+        // Changed fields move devices between bitmaps, removed devices leave them
+        index.update(state(35L, BatteryStatus.OPERATING, DynamicMotionState.MOVING, "PERMANENT_TRACKING", 90));
+        index.remove(5L);
+        assertEquals(0, index.where(BatteryStatus.CRITICAL).and(Mode.PERMANENT_TRACKING).and(DynamicMotionState.MOVING).count());
+        assertEquals(59, index.getDeviceCount());
+        assertEquals(18, index.whereBatteryBelow(20).count());
+        assertThrows(IllegalArgumentException.class, () -> index.where(EventType.GEOFENCE_ENTER));
+        assertThrows(IllegalArgumentException.class, () -> index.whereBatteryBelow(15));
+    }
+
+    private static DeviceState state(long deviceId, BatteryStatus status, DynamicMotionState motion,
+                                     String mode, int batteryLevel) {
+        DeviceState state = new DeviceState();
+        state.setDeviceId(deviceId);
+        state.setBatteryStatus(status);
+        state.setDynamicMotionState(motion);
+        state.setTrackingMode(mode);
+        state.setBatteryLevel(batteryLevel);
+        return state;
+    }
+
+    private static long[] sorted(long[] values) {
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static void assertBitmap(BitSet expected, CompressedBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+    }
+}
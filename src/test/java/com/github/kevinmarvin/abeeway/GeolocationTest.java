@@ -0,0 +1,285 @@
+package com.github.kevinmarvin.abeeway;
+
+import com.github.kevinmarvin.abeeway.enums.EventType;
+import com.github.kevinmarvin.abeeway.geo.BadgeSpatialIndex;
+import com.github.kevinmarvin.abeeway.geo.BleFingerprintIndex;
+import com.github.kevinmarvin.abeeway.geo.BssidLocationLearner;
+import com.github.kevinmarvin.abeeway.geo.BssidLocationStore;
+import com.github.kevinmarvin.abeeway.geo.GeofenceEngine;
+import com.github.kevinmarvin.abeeway.geo.OffHeapBssidIndex;
+import com.github.kevinmarvin.abeeway.geo.WifiPositionResolver;
+import com.github.kevinmarvin.abeeway.models.BleBeacon;
+import com.github.kevinmarvin.abeeway.models.GeofenceTransition;
+import com.github.kevinmarvin.abeeway.models.PositionEstimate;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.models.WiFiAccessPoint;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Test suite for local WiFi/BLE geolocation.
+ */
+@TestMethodOrder(OrderAnnotation.class)
+public class GeolocationTest {
+
+    @Test
+    @Order(1)
+    void testOffHeapIndexLoadAndGrow() throws IOException {
+        String csv = "bssid,lat,lon,accuracy\n"
+            + "00:11:22:33:44:55,48.8566,2.3522,25\n"
+            + "001122334456,-33.8688,151.2093\r\n"
+            + "not-a-mac,1,2,3\n"
+            + "00:11:22:33:44:57,48.8570,2.3530,40";
+
+        OffHeapBssidIndex index = new OffHeapBssidIndex(1);
+        long loaded = index.loadCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(3, loaded);
+
+        double[] out = new double[3];
+        assertTrue(index.lookup(0x001122334455L, out));
+        assertEquals(48.8566, out[0], 1e-7);
+        assertEquals(2.3522, out[1], 1e-7);
+        assertEquals(25, out[2]);
+
+        assertTrue(index.lookup(0x001122334456L, out));
+        assertEquals(-33.8688, out[0], 1e-7);
+        assertEquals(50, out[2]); // default accuracy
+
+        assertFalse(index.lookup(0x001122334458L, out));
+
+        // Force several rehashes
+        for (long mac = 1; mac <= 10_000; mac++) {
+            index.put(mac << 8, mac / 1000.0, -mac / 1000.0, 10);
+        }
+        assertEquals(10_003, index.size());
+        assertTrue(index.lookup(5000L << 8, out));
+        assertEquals(5.0, out[0], 1e-7);
+        assertEquals(-5.0, out[1], 1e-7);
+    }
+
+    @Test
+    @Order(2)
+    void testRssiWeightedResolution() {
+        OffHeapBssidIndex index = new OffHeapBssidIndex();
+        index.put(0x0000000000A1L, 45.0, 5.0, 20);
+        index.put(0x0000000000A2L, 45.001, 5.001, 20);
+
+        UplinkData data = new UplinkData();
+        data.setWifiAccessPoints(List.of(
+            new WiFiAccessPoint("00:00:00:00:00:A1", -40),
+            new WiFiAccessPoint("00:00:00:00:00:A2", -80),
+            new WiFiAccessPoint("00:00:00:00:00:FF", -30))); // unknown AP is ignored
+
+        PositionEstimate estimate = new WifiPositionResolver(index).resolve(data);
+
+        assertNotNull(estimate);
+        assertEquals(2, estimate.getSourceCount());
+        // The strong AP dominates
+        assertTrue(estimate.getLatitude() > 45.0 && estimate.getLatitude() < 45.0002);
+        assertTrue(estimate.getAccuracy() >= 20);
+
+        assertNull(new WifiPositionResolver(index, 3).resolve(data));
+        assertNull(new WifiPositionResolver(index).resolve(new UplinkData()));
+    }
+
+    @Test
+    @Order(3)
+    void testLearningFromCoLocatedGpsFixes(@TempDir Path tempDir) throws IOException {
+        BssidLocationStore store = new BssidLocationStore();
+        BssidLocationLearner learner = new BssidLocationLearner(store, 30_000);
+        long device = 0x0018B20000000001L;
+
+        UplinkData scan = new UplinkData();
+        scan.setWifiAccessPoints(List.of(
+            new WiFiAccessPoint("AA:00:00:00:00:01", -50),
+            new WiFiAccessPoint("AA:00:00:00:00:02", -70)));
+
+        learner.observe(device, 1_000, scan);
+        learner.observe(device, 11_000, gpsFix(50.0, 4.0));
+        // Too far apart in time: this scan is not credited with the earlier fix
+        learner.observe(device, 100_000, scan);
+        // A second pairing moves the running mean
+        learner.observe(device, 105_000, gpsFix(50.001, 4.0));
+
+        assertEquals(2, store.size());
+        assertEquals(2, store.getSampleCount(0xAA0000000001L));
+
+        double[] out = new double[3];
+        assertTrue(store.lookup(0xAA0000000001L, out));
+        assertTrue(out[0] > 50.0 && out[0] < 50.001);
+        assertEquals(4.0, out[1], 1e-9);
+
+        Path file = tempDir.resolve("bssids.bin");
+        store.save(file);
+        BssidLocationStore reloaded = BssidLocationStore.load(file);
+
+        double[] reloadedOut = new double[3];
+        assertTrue(reloaded.lookup(0xAA0000000001L, reloadedOut));
+        assertEquals(out[0], reloadedOut[0], 1e-7);
+        assertEquals(out[2], reloadedOut[2], 1e-3);
+        assertEquals(2, reloaded.getSampleCount(0xAA0000000002L));
+
+        // The learned store plugs straight into the resolver
+        assertNotNull(new WifiPositionResolver(reloaded).resolve(scan));
+    }
+
+    @Test
+    @Order(4)
+    void testBleFingerprintNearestNeighbours() {
+        BleFingerprintIndex index = new BleFingerprintIndex();
+        long b1 = 0xC0FFEE000001L, b2 = 0xC0FFEE000002L, b3 = 0xC0FFEE000003L;
+
+        int roomA = index.addFingerprint(10.0, 20.0, new long[]{b1, b2}, new int[]{-50, -80});
+        int roomB = index.addFingerprint(10.0, 20.001, new long[]{b2, b3}, new int[]{-55, -70});
+        index.addFingerprint(10.001, 20.0, new long[]{b3}, new int[]{-60});
+        assertEquals(3, index.size());
+        assertEquals(3, index.getBeaconCount());
+
+        List<BleBeacon> scan = List.of(
+            new BleBeacon("C0:FF:EE:00:00:01", -52),
+            new BleBeacon("C0:FF:EE:00:00:02", -78));
+
+        List<BleFingerprintIndex.Match> matches = index.nearest(scan, 2);
+        assertEquals(2, matches.size());
+        assertEquals(roomA, matches.get(0).getFingerprintId());
+        assertEquals(roomB, matches.get(1).getFingerprintId());
+        // Only differences of 2 dB on each beacon
+        assertEquals(Math.sqrt(8), matches.get(0).getDistance(), 1e-4);
+
+        PositionEstimate estimate = index.locate(scan, 1);
+        assertEquals(10.0, estimate.getLatitude(), 1e-9);
+        assertEquals(20.0, estimate.getLongitude(), 1e-9);
+
+        assertNull(index.locate(List.of(new BleBeacon("01:02:03:04:05:06", -40)), 3));
+    }
+
+    @Test
+    @Order(5)
+    void testGeofenceEnterAndExitTransitions() {
+        GeofenceEngine engine = new GeofenceEngine(0.005);
+        // A square of about 1.1 km crossing several grid cells, and a 100 m circle inside it
+        int square = engine.addPolygon(new double[]{48.0, 48.0, 48.01, 48.01}, new double[]{2.0, 2.01, 2.01, 2.0});
+        int circle = engine.addCircle(48.005, 2.005, 100);
+        assertEquals(2, engine.size());
+
+        long device = 42L;
+        assertTrue(engine.evaluate(device, 47.99, 2.005).isEmpty());
+
+        List<GeofenceTransition> enter = engine.evaluate(device, 48.002, 2.002);
+        assertEquals(1, enter.size());
+        assertEquals(square, enter.get(0).getGeofenceId());
+        assertEquals(EventType.GEOFENCE_ENTER, enter.get(0).getEventType());
+
+        // Still inside the square: no transition
+        assertTrue(engine.evaluate(device, 48.003, 2.003).isEmpty());
+
+        List<GeofenceTransition> intoCircle = engine.evaluate(device, 48.0051, 2.0051);
+        assertEquals(1, intoCircle.size());
+        assertEquals(circle, intoCircle.get(0).getGeofenceId());
+        assertArrayEquals(new int[]{square, circle}, engine.getInsideGeofences(device));
+
+        List<GeofenceTransition> leave = engine.evaluate(device, gpsFix(48.02, 2.005));
+        assertEquals(2, leave.size());
+        assertTrue(leave.stream().allMatch(t -> t.getEventType() == EventType.GEOFENCE_EXIT));
+
+        // Removing a geofence exits devices inside it on their next position
+        engine.evaluate(device, 48.001, 2.001);
+        engine.removeGeofence(square);
+        List<GeofenceTransition> removed = engine.evaluate(device, 48.001, 2.001);
+        assertEquals(EventType.GEOFENCE_EXIT, removed.get(0).getEventType());
+        assertEquals(1, engine.size());
+
+        // A 10 x 10 degree region, far above the grid cell cap, is found alongside grid fences
+        int region = engine.addPolygon(new double[]{40.0, 40.0, 50.0, 50.0}, new double[]{0.0, 10.0, 10.0, 0.0});
+        assertArrayEquals(new int[]{circle, region}, engine.findGeofences(48.005, 2.005));
+        assertArrayEquals(new int[]{region}, engine.findGeofences(45.0, 5.0));
+        engine.removeGeofence(region);
+        assertArrayEquals(new int[0], engine.findGeofences(45.0, 5.0));
+    }
+
+    @Test
+    @Order(6)
+    void testNearestBadgesMatchBruteForce() {
+        BadgeSpatialIndex index = new BadgeSpatialIndex(0.002);
+        SplittableRandom random = new SplittableRandom(7);
+        int badges = 2_000;
+        double[] lats = new double[badges];
+        double[] lons = new double[badges];
+        for (int round = 0; round < 2; round++) {
+            // The second round moves every badge, most of them into other cells
+            for (int i = 0; i < badges; i++) {
+                lats[i] = 45.0 + random.nextDouble() * 0.05;
+                lons[i] = 5.0 + random.nextDouble() * 0.05;
+                index.update(i + 1, lats[i], lons[i]);
+            }
+        }
+        assertEquals(badges, index.size());
+
+        for (int q = 0; q < 50; q++) {
+            double lat = 45.0 + random.nextDouble() * 0.05;
+            double lon = 5.0 + random.nextDouble() * 0.05;
+            double[] distances = new double[badges];
+            for (int i = 0; i < badges; i++) {
+                distances[i] = GeoUtils.approximateDistanceMeters(lat, lon, lats[i], lons[i]);
+            }
+            double[] sorted = distances.clone();
+            Arrays.sort(sorted);
+
+            List<BadgeSpatialIndex.Neighbor> nearest = index.nearest(lat, lon, 5, 10_000);
+            assertEquals(5, nearest.size());
+            for (int n = 0; n < 5; n++) {
+                assertEquals(sorted[n], nearest.get(n).getDistanceMeters(), 0.5);
+            }
+
+            long expectedInRadius = Arrays.stream(distances).filter(d -> d <= 300).count();
+            assertEquals(expectedInRadius, index.withinRadius(lat, lon, 300).size());
+        }
+
+        // SOS responders exclude the caller
+        UplinkData sos = gpsFix(lats[0], lons[0]);
+        sos.setEventType(EventType.SOS_PRESS);
+        assertTrue(BadgeSpatialIndex.isSosAlert(sos));
+        assertFalse(BadgeSpatialIndex.isSosAlert(gpsFix(lats[0], lons[0])));
+        assertTrue(index.update(1, sos));
+        List<BadgeSpatialIndex.Neighbor> responders = index.nearestTo(1, 3, 5_000);
+        assertEquals(3, responders.size());
+        assertTrue(responders.stream().noneMatch(n -> n.getDeviceId() == 1));
+
+        assertTrue(index.remove(1));
+        assertFalse(index.remove(1));
+        assertTrue(index.nearestTo(1, 3, 5_000).isEmpty());
+        assertEquals(badges - 1, index.size());
+
+        // Near the pole the column span covers the whole globe, each badge is returned once
+        BadgeSpatialIndex polar = new BadgeSpatialIndex(1.0);
+        double[] polarLons = {0.0, 90.0, -90.0, -179.5};
+        for (int i = 0; i < polarLons.length; i++) {
+            polar.update(i + 1, 89.5, polarLons[i]);
+        }
+        assertEquals(4, polar.withinRadius(89.5, 0.0, 200_000).size());
+        List<BadgeSpatialIndex.Neighbor> polarNearest = polar.nearest(89.5, 0.0, 10, 200_000);
+        assertEquals(4, polarNearest.size());
+        assertEquals(4, polarNearest.stream().mapToLong(BadgeSpatialIndex.Neighbor::getDeviceId).distinct().count());
+    }
+
+    private static UplinkData gpsFix(double latitude, double longitude) {
+        UplinkData fix = new UplinkData();
+        fix.setGpsLatitude(latitude);
+        fix.setGpsLongitude(longitude);
+        return fix;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.kevinmarvin.abeeway;
+
+import com.github.kevinmarvin.abeeway.decoders.PositionDecoder;
+import com.github.kevinmarvin.abeeway.models.BleBeacon;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.MacAddressCache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for MAC address packing and the interning cache.
+ */
+@TestMethodOrder(OrderAnnotation.class)
+public class MacAddressCacheTest {
+
+    @Test
+    @Order(1)
+    void testMacPackingRoundTrip() {
+        long mac = ByteUtils.macToLong("a4:5e:60:01:fF:9c");
+        assertEquals(0xA45E6001FF9CL, mac);
+        assertEquals("A4:5E:60:01:FF:9C", ByteUtils.formatMacAddress(mac));
+        assertEquals(mac, ByteUtils.macToLong("A45E6001FF9C"));
+
+        assertThrows(IllegalArgumentException.class, () -> ByteUtils.macToLong("A4:5E:60"));
+    }
+
+    @Test
+    @Order(2)
+    void testInterningReturnsCanonicalInstance() {
+        MacAddressCache cache = new MacAddressCache(100);
+
+        String first = cache.intern(0x001122334455L);
+        String second = cache.intern(0x001122334455L);
+
+        assertEquals("00:11:22:33:44:55", first);
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    @Order(3)
+    void testSizeBoundWithClockEviction() {
+        MacAddressCache cache = new MacAddressCache(64, 4);
+
+        for (long mac = 0; mac < 1000; mac++) {
+            assertEquals(ByteUtils.formatMacAddress(mac), cache.intern(mac));
+        }
+
+        assertTrue(cache.size() <= cache.getMaximumSize());
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        // A recently used entry survives a sweep that evicts unreferenced ones
+        String hot = cache.intern(999);
+        for (long mac = 2000; mac < 2010; mac++) {
+            cache.intern(mac);
+            assertSame(hot, cache.intern(999));
+        }
+    }
+
+    @Test
+    @Order(4)
+    void testPositionDecoderSharesBeaconMacs() {
+        MacAddressCache cache = new MacAddressCache(1024);
+        PositionDecoder decoder = new PositionDecoder(cache);
+
+        // BLE beacon scan: raw position type 4, one beacon with RSSI -60
+        byte[] payload = {0x40, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, (byte) 0xC4};
+
+        UplinkData first = new UplinkData();
+        decoder.decodePositionMessage(first, payload);
+        UplinkData second = new UplinkData();
+        decoder.decodePositionMessage(second, payload);
+
+        BleBeacon a = first.getBleBeacons().get(0);
+        BleBeacon b = second.getBleBeacons().get(0);
+        assertEquals("01:02:03:04:05:06", a.getMacAddress());
+        assertEquals(-60, a.getRssi());
+        assertSame(a.getMacAddress(), b.getMacAddress());
+        assertEquals(1, cache.getHitCount());
+    }
+}
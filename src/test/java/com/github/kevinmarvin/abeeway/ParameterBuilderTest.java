@@ -1,15 +1,35 @@
 package com.github.kevinmarvin.abeeway;
 
+import com.github.kevinmarvin.abeeway.exceptions.DecodingException;
 import com.github.kevinmarvin.abeeway.exceptions.EncodingException;
+import com.github.kevinmarvin.abeeway.fleet.ConfigurationReconciler;
+import com.github.kevinmarvin.abeeway.models.BitmapValue;
 import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
+import com.github.kevinmarvin.abeeway.models.PackedDownlink;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
 import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+import com.github.kevinmarvin.abeeway.parameters.ParameterCatalog;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+import com.github.kevinmarvin.abeeway.parameters.ParameterType;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkPacker;
 import com.github.kevinmarvin.abeeway.encoders.ParameterEncoder;
+import com.github.kevinmarvin.abeeway.encoders.ParameterEncodingCache;
+import com.github.kevinmarvin.abeeway.encoders.ParameterTemplate;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Order;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -214,4 +234,324 @@ public class ParameterBuilderTest {
             assertNotNull(downlink);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(9)
+    void testCompiledSchemaSharedByEncoderAndDecoder() throws EncodingException, DecodingException {
+        ParameterSchema schema = ParameterSchema.getDefault();
+        for (ParameterDefinition definition : schema.getDefinitions()) {
+            assertSame(definition, schema.get(definition.getId()));
+            assertSame(definition, schema.get(definition.getName()));
+        }
+        assertNull(schema.get("noSuchParameter"));
+        assertNull(schema.get(0xFF));
+        assertNull(schema.get(-1));
+        assertEquals(0x10, schema.getId("uplinkPeriod"));
+        assertEquals(4, schema.get("uplinkPeriod").getSize());
+        assertEquals(ParameterType.STRING, schema.get("operatingMode").getType());
+        assertTrue(schema.get("proximityThreshold").isSigned());
+
+        // A SET_PARAM frame read back as a configuration uplink gives the same values
+        AbeewayParams params = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setUplinkPeriod(86400)
+            .setOperatingMode(AbeewayParams.OperatingMode.PERMANENT_TRACKING)
+            .setProximityThreshold(-75)
+            .setTemperatureAlertThreshold(-12.5)
+            .build();
+        byte[] frame = codec.encodeParameters(params, 2).getBytes();
+        // Header, then id and value of 2, 4, 1, 1 and 2 bytes
+        assertEquals(1 + 3 + 5 + 2 + 2 + 3, frame.length);
+        frame[0] = (byte) 0x90;
+        UplinkData data = (UplinkData) codec.decodeUplink(frame, 1, null).getData();
+        Map<String, Object> configuration = data.getDeviceConfiguration();
+        assertEquals(120, configuration.get("gpsTimeout"));
+        assertEquals(86400, configuration.get("uplinkPeriod"));
+        assertEquals("PERMANENT_TRACKING", configuration.get("operatingMode"));
+        assertEquals(-75, configuration.get("proximityThreshold"));
+        assertEquals(-12.5, (Double) configuration.get("temperatureAlertThreshold"), 1e-9);
+
+        // Enumerated parameters also accept their value names
+        AbeewayParams byName = AbeewaySmartBadgeCodec.newParameters().setCustomParameter(0xC2, "SOS_MODE").build();
+        assertArrayEquals(new byte[]{0x09, (byte) 0xC2, 6}, codec.encodeParameters(byName, 2).getBytes());
+        AbeewayParams tooLarge = AbeewaySmartBadgeCodec.newParameters().setCustomParameter(0x01, 70000).build();
+        assertThrows(EncodingException.class, () -> codec.encodeParameters(tooLarge, 2));
+
+        // Names with equal hash codes are both found, duplicate names are rejected
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        ParameterSchema colliding = ParameterSchema.builder()
+            .add(new ParameterDefinition(1, "Aa", null, ParameterType.NUMBER, 1, 1.0, null, null, null, null, null))
+            .add(new ParameterDefinition(2, "BB", null, ParameterType.NUMBER, 1, 1.0, null, null, null, null, null))
+            .build();
+        assertEquals(1, colliding.getId("Aa"));
+        assertEquals(2, colliding.getId("BB"));
+        assertNull(colliding.get("C#"));
+        IllegalArgumentException duplicate = assertThrows(IllegalArgumentException.class, () -> ParameterSchema.builder()
+            .add(new ParameterDefinition(1, "gpsTimeout", null, ParameterType.NUMBER, 1, 1.0, null, null, null, null, null))
+            .add(new ParameterDefinition(2, "gpsTimeout", null, ParameterType.NUMBER, 1, 1.0, null, null, null, null, null))
+            .build());
+        assertTrue(duplicate.getMessage().contains("gpsTimeout"));
+    }
+
+    @Test
+    @Order(10)
+    void testBundledCatalogMatchesItsCompiledForm() throws IOException {
+        byte[] json;
+        byte[] binary;
+        try (InputStream in = ParameterCatalog.class.getResourceAsStream(ParameterCatalog.JSON_RESOURCE)) {
+            json = in.readAllBytes();
+        }
+        try (InputStream in = ParameterCatalog.class.getResourceAsStream(ParameterCatalog.BINARY_RESOURCE)) {
+            binary = in.readAllBytes();
+        }
+
+        // parameters.bin must be recompiled whenever parameters.json changes
+        ParameterSchema fromJson = ParameterCatalog.parseJson(json);
+        assertArrayEquals(ParameterCatalog.writeBinary(fromJson, ParameterCatalog.crc(json)), binary,
+            "parameters.bin is stale, run mvn -Pcompile-catalog process-classes");
+        ParameterSchema fromBinary = ParameterCatalog.readBinary(binary, ParameterCatalog.crc(json));
+        assertEquals(fromJson.size(), fromBinary.size());
+        for (ParameterDefinition expected : fromJson.getDefinitions()) {
+            ParameterDefinition actual = fromBinary.get(expected.getName());
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.getMultiplier(), actual.getMultiplier());
+            assertEquals(expected.getMinValue(), actual.getMinValue());
+            assertEquals(expected.getMaxValue(), actual.getMaxValue());
+            assertEquals(expected.getUnit(), actual.getUnit());
+            assertEquals(expected.getDescription(), actual.getDescription());
+        }
+        assertEquals(fromJson.size(), ParameterSchema.getDefault().size());
+
+        // A binary compiled from another source is ignored, and a bad catalog is rejected
+        assertNull(ParameterCatalog.readBinary(binary, ParameterCatalog.crc(json) ^ 1));
+        assertThrows(IllegalArgumentException.class, () -> ParameterCatalog.readBinary(json, -1));
+        byte[] corrupt = binary.clone();
+        corrupt[13] = (byte) 0xFF; // type ordinal of the first definition
+        assertThrows(IllegalArgumentException.class, () -> ParameterCatalog.readBinary(corrupt, -1));
+        assertThrows(IllegalArgumentException.class, () -> ParameterCatalog.parseJson(
+            "{\"parameters\": [{\"id\": 1, \"name\": \"x\", \"type\": \"FLOAT\", \"size\": 1}]}"
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @Order(11)
+    void testBitmapParameterRoundTrip() throws EncodingException, DecodingException {
+        ParameterDefinition definition = ParameterSchema.getDefault().get("configFlags");
+        BitmapValue flags = BitmapValue.of(definition, "configAckEnabled", "wifiBeforeGps")
+            .with("bleAdvertising", true);
+        assertTrue(flags.isSet("wifiBeforeGps"));
+        assertTrue(flags.isSet(7));
+        assertFalse(flags.isSet("sosBuzzerEnabled"));
+        assertThrows(IllegalArgumentException.class, () -> flags.isSet("noSuchFlag"));
+
+        // Flags 0 to 7 in the first byte, 8 to 15 in the second
+        AbeewayParams params = AbeewaySmartBadgeCodec.newParameters().setCustomParameter(0xD0, flags).build();
+        byte[] frame = codec.encodeParameters(params, 2).getBytes();
+        assertArrayEquals(new byte[]{0x09, (byte) 0xD0, (byte) 0x81, 0x01}, frame);
+
+        frame[0] = (byte) 0x90;
+        UplinkData data = (UplinkData) codec.decodeUplink(frame, 1, null).getData();
+        BitmapValue decoded = (BitmapValue) data.getDeviceConfiguration().get("configFlags");
+        assertEquals(flags, decoded);
+        assertEquals(3, decoded.cardinality());
+        List<String> set = new ArrayList<>();
+        decoded.forEach(set::add);
+        assertEquals(Arrays.asList("configAckEnabled", "bleAdvertising", "wifiBeforeGps"), set);
+        Map<String, Boolean> map = decoded.toMap();
+        assertEquals(10, map.size());
+        assertEquals(Boolean.TRUE, map.get("configAckEnabled"));
+        assertEquals(Boolean.FALSE, map.get("buttonOnOffEnabled"));
+
+        // A bitmap of another parameter is rejected
+        AbeewayParams misplaced = AbeewaySmartBadgeCodec.newParameters().setCustomParameter(0x01, flags).build();
+        assertThrows(EncodingException.class, () -> codec.encodeParameters(misplaced, 2));
+    }
+
+    @Test
+    @Order(12)
+    void testReconcilerSendsOnlyDifferingParameters() throws EncodingException, DecodingException {
+        ParameterDefinition flagsDefinition = ParameterSchema.getDefault().get("configFlags");
+        AbeewayParams template = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setUplinkPeriod(3600)
+            .setOperatingMode(AbeewayParams.OperatingMode.PERMANENT_TRACKING)
+            .setProximityThreshold(-75)
+            .setTemperatureAlertThreshold(-12.5)
+            .setCustomParameter(0xD0, BitmapValue.of(flagsDefinition, "configAckEnabled", "wifiBeforeGps"))
+            .build();
+        ConfigurationReconciler reconciler = new ConfigurationReconciler();
+        reconciler.setGroupConfiguration("site", template);
+
+        // A device reporting the template, read back through the decoder, is up to date
+        byte[] frame = codec.encodeParameters(template, 2).getBytes();
+        frame[0] = (byte) 0x90;
+        UplinkData data = (UplinkData) codec.decodeUplink(frame, 1, null).getData();
+        assertTrue(reconciler.report(1L, data));
+        reconciler.assignGroup(1L, "site");
+        assertEquals(0, reconciler.diff(1L).length);
+        assertTrue(reconciler.reconcile(1L, 2).isEmpty());
+
+        // Device overrides take precedence over the group
+        reconciler.setDeviceConfiguration(1L, AbeewaySmartBadgeCodec.newParameters().setGpsTimeout(200).build());
+        assertArrayEquals(new int[]{0x01}, reconciler.diff(1L));
+        List<EncodedDownlink> downlinks = reconciler.reconcile(1L, 2);
+        assertEquals(1, downlinks.size());
+        assertArrayEquals(new byte[]{0x09, 0x01, 0x00, (byte) 200}, downlinks.get(0).getBytes());
+
+        // A drifted device gets the drifted parameters, in id order
+        data.getDeviceConfiguration().put("uplinkPeriod", 600);
+        data.getDeviceConfiguration().put("configFlags", BitmapValue.of(flagsDefinition, "configAckEnabled"));
+        reconciler.report(2L, data);
+        reconciler.assignGroup(2L, "site");
+        assertArrayEquals(new int[]{0x10, 0xD0}, reconciler.diff(2L));
+        assertArrayEquals(new byte[]{0x09, 0x10, 0, 0, 0x0E, 0x10, (byte) 0xD0, 0x01, 0x01},
+            reconciler.reconcile(2L, 2).get(0).getBytes());
+
+        // A 4-byte value from 2^31 up and an unknown value name do not stop the report
+        UplinkData unsigned = (UplinkData) codec.decodeUplink(new byte[]{(byte) 0x90, 0x10,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01, 0x00, 0x78}, 1, null).getData();
+        unsigned.getDeviceConfiguration().put("operatingMode", "NOT_A_MODE");
+        reconciler.report(4L, unsigned);
+        reconciler.assignGroup(4L, "site");
+        int[] ids = reconciler.diff(4L);
+        assertEquals(template.getParameterNames().size() - 1, ids.length);
+        assertEquals(0x10, ids[0]);
+        assertArrayEquals(new byte[]{0x09, 0x10, 0, 0, 0x0E, 0x10},
+            Arrays.copyOf(reconciler.reconcile(4L, 2).get(0).getBytes(), 6));
+
+        // A device that never reported gets everything, split to the payload limit
+        ConfigurationReconciler small = new ConfigurationReconciler(ParameterSchema.getDefault(), 8);
+        small.setGroupConfiguration("site", template);
+        small.assignGroup(3L, "site");
+        int parameters = 0;
+        for (EncodedDownlink downlink : small.reconcile(3L, 2)) {
+            assertTrue(downlink.getBytes().length <= 8);
+            byte[] bytes = downlink.getBytes();
+            bytes[0] = (byte) 0x90;
+            parameters += ((UplinkData) codec.decodeUplink(bytes, 1, null).getData()).getDeviceConfiguration().size();
+        }
+        assertEquals(template.getParameterNames().size(), parameters);
+
+        Map<Long, Integer> frames = new HashMap<>();
+        assertEquals(3, reconciler.reconcileAll(2, (deviceId, list) -> frames.put(deviceId, list.size())));
+        assertEquals(Integer.valueOf(1), frames.get(2L));
+        assertThrows(IllegalArgumentException.class, () -> reconciler.assignGroup(4L, "unknown"));
+    }
+
+    @Test
+    @Order(13)
+    void testEncodeIntoCallerBuffer() throws EncodingException {
+        AbeewayParams params = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setUplinkPeriod(3600)
+            .setProximityThreshold(-75)
+            .build();
+        byte[] expected = codec.encodeParameters(params, 2).getBytes();
+
+        // Frames for several devices written back to back into one buffer
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(expected.length, codec.encodeParameters(params, buffer));
+        assertEquals(expected.length, codec.encodeParameters(params, buffer));
+        assertEquals(2 * expected.length, buffer.position());
+        byte[] second = new byte[expected.length];
+        buffer.flip().position(expected.length);
+        buffer.get(second);
+        assertArrayEquals(expected, second);
+
+        // A buffer too small is left untouched
+        ByteBuffer small = ByteBuffer.allocate(expected.length - 1);
+        assertThrows(EncodingException.class, () -> codec.encodeParameters(params, small));
+        assertEquals(0, small.position());
+        AbeewayParams invalid = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120).setCustomParameter(0x01, 70000).build();
+        ByteBuffer large = ByteBuffer.allocate(64);
+        assertThrows(EncodingException.class, () -> codec.encodeParameters(invalid, large));
+        assertEquals(0, large.position());
+    }
+
+    @Test
+    @Order(14)
+    void testPackDownlinksForDataRate() throws EncodingException, DecodingException {
+        ParameterSchema schema = ParameterSchema.getDefault();
+        AbeewayParams.Builder builder = AbeewaySmartBadgeCodec.newParameters();
+        int payload = 0;
+        for (ParameterDefinition definition : schema.getDefinitions()) {
+            if (definition.getType() == ParameterType.NUMBER) {
+                Integer min = definition.getMinValue();
+                builder.setCustomParameter(definition.getId(), min != null ? Math.max(0, min) : 0);
+                payload += 1 + definition.getSize();
+            }
+        }
+        AbeewayParams params = builder.build();
+
+        // US915 DR8 carries 33 bytes: the fewest frames for the payload, every parameter once
+        DownlinkPacker packer = new DownlinkPacker(DownlinkPacker.Region.US915);
+        List<PackedDownlink> downlinks = packer.pack(params, 8, 2);
+        assertEquals((payload + 31) / 32, downlinks.size());
+        int parameters = 0;
+        for (PackedDownlink downlink : downlinks) {
+            byte[] bytes = downlink.getBytes();
+            assertTrue(bytes.length <= 33);
+            assertEquals(0x09, bytes[0]);
+            assertEquals(2, downlink.getfPort());
+            assertEquals(packer.timeOnAirMillis(bytes.length, 8), downlink.getTimeOnAirMillis());
+            assertTrue(downlink.getTimeOnAirMillis(12) > downlink.getTimeOnAirMillis(7));
+            bytes[0] = (byte) 0x90;
+            Map<String, Object> configuration = ((UplinkData) codec.decodeUplink(bytes, 1, null).getData()).getDeviceConfiguration();
+            assertEquals(downlink.getParameterCount(), configuration.size());
+            parameters += configuration.size();
+        }
+        assertEquals(params.getParameterNames().size(), parameters);
+
+        // A single frame at a fast EU868 rate
+        List<PackedDownlink> single = new DownlinkPacker(DownlinkPacker.Region.EU868).pack(params, 5, 2);
+        assertEquals(1, single.size());
+        assertEquals(codec.encodeParameters(params, 2).getBytes().length, single.get(0).getBytes().length);
+
+        // Semtech LoRa calculator: 13 byte PHY payload at SF7/125 kHz, SF12/125 kHz with DE
+        assertEquals(41.216, DownlinkPacker.timeOnAirMillis(0, 7, 125), 1e-9);
+        assertEquals(1155.072, DownlinkPacker.timeOnAirMillis(0, 12, 125), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> packer.pack(params, 0, 2));
+    }
+
+    @Test
+    @Order(15)
+    void testCachedAndTemplateEncoding() throws EncodingException {
+        AbeewayParams campaign = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120).setUplinkPeriod(3600).setGeofenceRadius(150).build();
+        AbeewayParams same = AbeewaySmartBadgeCodec.newParameters()
+            .setGeofenceRadius(150).setUplinkPeriod(3600).setGpsTimeout(120).build();
+        byte[] expected = codec.encodeParameters(campaign, 2).getBytes();
+
+        // Equal sets built separately share one frame, which callers cannot modify
+        ParameterEncodingCache cache = new ParameterEncodingCache(2);
+        EncodedDownlink first = cache.encodeParameters(campaign, 2);
+        assertArrayEquals(expected, first.getBytes());
+        first.getBytes()[0] = (byte) 0x90;
+        assertArrayEquals(expected, first.getBytes());
+        assertArrayEquals(expected, cache.encodeParameters(same, 3).getBytes());
+        assertEquals(3, cache.encodeParameters(same, 3).getfPort());
+        assertThrows(UnsupportedOperationException.class, () -> first.setBytes(new byte[]{0x09}));
+        assertTrue(cache.frame(campaign).isReadOnly());
+        assertEquals(1, cache.getMissCount());
+        cache.encodeParameters(AbeewaySmartBadgeCodec.newParameters().setGpsTimeout(60).build(), 2);
+        cache.encodeParameters(AbeewaySmartBadgeCodec.newParameters().setGpsTimeout(90).build(), 2);
+        assertEquals(2, cache.size());
+
+        // Per-device overrides patched into the compiled frame
+        ParameterTemplate template = codec.compileParameters(campaign);
+        assertArrayEquals(expected, template.encode(Map.of(), 2).getBytes());
+        Map<String, Object> overrides = Map.of("geofenceRadius", 500, "gpsTimeout", 90);
+        AbeewayParams device = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(90).setUplinkPeriod(3600).setGeofenceRadius(500).build();
+        byte[] patched = template.encode(overrides, 2).getBytes();
+        assertArrayEquals(codec.encodeParameters(device, 2).getBytes(), patched);
+        ByteBuffer buffer = ByteBuffer.allocate(64).position(5);
+        assertEquals(template.getFrameSize(), template.encode(overrides, buffer));
+        assertArrayEquals(patched, Arrays.copyOfRange(buffer.array(), 5, 5 + patched.length));
+        assertArrayEquals(expected, template.encode(Map.of(), 2).getBytes());
+
+        assertThrows(EncodingException.class, () -> template.encode(Map.of("lorawanPeriod", 60), 2));
+        assertThrows(EncodingException.class, () -> template.encode(Map.of("gpsTimeout", -1), 2));
+    }
+}
@@ -0,0 +1,556 @@
+package com.github.kevinmarvin.abeeway;
+
+import com.github.kevinmarvin.abeeway.decoders.ProximityDecoder;
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.enums.EventType;
+import com.github.kevinmarvin.abeeway.enums.MessageType;
+import com.github.kevinmarvin.abeeway.exceptions.DecodingException;
+import com.github.kevinmarvin.abeeway.geo.GeofenceEngine;
+import com.github.kevinmarvin.abeeway.models.DecodedUplink;
+import com.github.kevinmarvin.abeeway.models.DeviceState;
+import com.github.kevinmarvin.abeeway.models.ProximityData;
+import com.github.kevinmarvin.abeeway.models.TripRecord;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.models.WindowResult;
+import com.github.kevinmarvin.abeeway.tracking.ContactAggregator;
+import com.github.kevinmarvin.abeeway.tracking.DeviceStateStore;
+import com.github.kevinmarvin.abeeway.tracking.DwellTimeAccumulator;
+import com.github.kevinmarvin.abeeway.tracking.PositionFilter;
+import com.github.kevinmarvin.abeeway.tracking.ReorderBuffer;
+import com.github.kevinmarvin.abeeway.tracking.TrajectorySimplifier;
+import com.github.kevinmarvin.abeeway.tracking.TripSegmenter;
+import com.github.kevinmarvin.abeeway.tracking.WindowedAggregator;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test suite for the device tracking stages built on decoded uplinks.
+ */
+@TestMethodOrder(OrderAnnotation.class)
+public class TrackingTest {
+
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    @Order(1)
+    void testProximityDecodingAndContactAggregation() throws DecodingException {
+        AbeewaySmartBadgeCodec codec = new AbeewaySmartBadgeCodec();
+        // Two peers: one at -60 dBm (contact), one at -80 dBm (detected only)
+        byte[] payload = ByteUtils.hexToBytes("E0" + "AABBCC000001C4" + "AABBCC000002B0");
+        DecodedUplink decoded = codec.decodeUplink(payload, 18, null);
+        UplinkData data = (UplinkData) decoded.getData();
+        assertEquals(MessageType.PROXIMITY_DETECTION, data.getMessageType());
+
+        List<ProximityData> peers = data.getProximityData();
+        assertEquals(2, peers.size());
+        assertEquals("AA:BB:CC:00:00:01", peers.get(0).getDeviceId());
+        assertEquals(-60, peers.get(0).getRssi());
+        assertEquals(ProximityDecoder.CONTACT, peers.get(0).getProximityType());
+        assertEquals(1.12, peers.get(0).getDistance(), 0.01);
+        assertEquals(ProximityDecoder.DETECTED, peers.get(1).getProximityType());
+        assertTrue(peers.get(1).getDistance() > peers.get(0).getDistance());
+
+        // One-hour window in 6 buckets, gaps up to 2 minutes count as continuous exposure
+        ContactAggregator aggregator = new ContactAggregator(60 * MINUTE, 6, 2 * MINUTE, 1_000);
+        long badge = 0xAABBCC000000L;
+        long peer = 0xAABBCC000001L;
+        long start = 1_000 * 60 * MINUTE;
+        assertEquals(1, aggregator.observe(badge, start, data));
+        for (int minute = 1; minute <= 10; minute++) {
+            aggregator.observe(badge, peer, start + minute * MINUTE);
+            // The peer reports the same contact: shared pair state counts it once
+            aggregator.observe(peer, badge, start + minute * MINUTE + 1);
+        }
+        assertEquals(10 * MINUTE + 1, aggregator.getExposureMillis(badge, peer));
+        assertEquals(aggregator.getExposureMillis(badge, peer), aggregator.getExposureMillis(peer, badge));
+
+        // A 30-minute gap starts a new episode without crediting the gap
+        aggregator.observe(badge, peer, start + 40 * MINUTE);
+        aggregator.observe(badge, peer, start + 41 * MINUTE);
+        assertEquals(11 * MINUTE + 1, aggregator.getExposureMillis(badge, peer));
+
+        aggregator.observe(badge, 0xAABBCC000003L, start + 41 * MINUTE);
+        List<ContactAggregator.Exposure> contacts = aggregator.getContacts(badge, 0);
+        assertEquals(2, contacts.size());
+        assertEquals(peer, contacts.get(0).getPeerId());
+        assertEquals(1, aggregator.getContacts(badge, MINUTE).size());
+
+        // Moving the window past the first contacts expires them, late contacts are dropped
+        aggregator.observe(badge, peer, start + 75 * MINUTE);
+        assertEquals(MINUTE, aggregator.getExposureMillis(badge, peer));
+        assertFalse(aggregator.observe(badge, 0xAABBCC000004L, start));
+        assertEquals(1, aggregator.getDroppedCount());
+        assertEquals(3, aggregator.getBadgeCount());
+
+        // Badges whose pairs all expired give their slots back
+        aggregator.observe(0xAABBCC000005L, 0xAABBCC000006L, start + 200 * MINUTE);
+        assertEquals(2, aggregator.getBadgeCount());
+        assertEquals(0, aggregator.getExposureMillis(badge, peer));
+        assertTrue(aggregator.observe(badge, peer, start + 201 * MINUTE));
+        assertEquals(4, aggregator.getBadgeCount());
+        assertEquals(2, aggregator.getPairCount());
+    }
+
+    @Test
+    @Order(2)
+    void testDeviceStateMergeAndConsistentReads() throws Exception {
+        DeviceStateStore store = new DeviceStateStore(16);
+        long devEui = 0x20635F0106000123L;
+
+        UplinkData heartbeat = new UplinkData();
+        heartbeat.setBatteryLevel(87);
+        heartbeat.setBatteryStatus(BatteryStatus.OPERATING);
+        heartbeat.setTrackingMode("MOTION_TRACKING");
+        heartbeat.setAckToken(5);
+        heartbeat.setTemperatureMeasure(21.375);
+        store.update(devEui, 1_000L, heartbeat);
+
+        UplinkData position = new UplinkData();
+        position.setGpsLatitude(48.8583701);
+        position.setGpsLongitude(2.2944813);
+        position.setDynamicMotionState(DynamicMotionState.MOVING);
+        store.update(devEui, 2_000L, new DecodedUplink(position, null, null));
+
+        DeviceState state = store.get(devEui);
+        assertNotNull(state);
+        assertEquals(48.8583701, state.getLatitude(), 1e-7);
+        assertEquals(2.2944813, state.getLongitude(), 1e-7);
+        assertEquals(2_000L, state.getPositionTimeMillis());
+        assertEquals(87, state.getBatteryLevel());
+        assertEquals(BatteryStatus.OPERATING, state.getBatteryStatus());
+        assertEquals(DynamicMotionState.MOVING, state.getDynamicMotionState());
+        assertEquals("MOTION_TRACKING", state.getTrackingMode());
+        assertEquals(5, state.getAckToken());
+        assertEquals(21.375, state.getTemperature());
+        assertEquals(2_000L, state.getLastSeenMillis());
+
+        // A replayed older position leaves the latest one in place
+        UplinkData replayed = new UplinkData();
+        replayed.setGpsLatitude(45.0);
+        replayed.setGpsLongitude(5.0);
+        store.update(devEui, 1_500L, replayed);
+        state = store.get(devEui);
+        assertEquals(48.8583701, state.getLatitude(), 1e-7);
+        assertEquals(2_000L, state.getPositionTimeMillis());
+
+        DeviceState unknownFields = new DeviceState();
+        store.update(devEui + 1, 3_000L, new UplinkData());
+        assertTrue(store.get(devEui + 1, unknownFields));
+        assertFalse(unknownFields.hasPosition());
+        assertEquals(-1, unknownFields.getBatteryLevel());
+        assertTrue(Double.isNaN(unknownFields.getTemperature()));
+
+        // Growing the tables through many inserts, with idle devices removed
+        for (long id = 1; id <= 20_000; id++) {
+            store.update(id, id, new UplinkData());
+        }
+        assertEquals(20_002, store.size());
+        // Ids 1 to 9999 and the two devices above were last seen before 10 s
+        assertEquals(10_001, store.removeIdle(10_000L));
+        assertNull(store.get(5_000L));
+        assertNull(store.get(devEui));
+        assertNotNull(store.get(15_000L));
+        assertTrue(store.remove(15_000L));
+        assertFalse(store.remove(15_000L));
+
+        // A reader racing a writer always sees the latitude and longitude of the same update
+        AtomicBoolean torn = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            DeviceState read = new DeviceState();
+            for (int i = 0; i < 200_000; i++) {
+                if (store.get(42L, read) && read.hasPosition() && read.getLatitude() != read.getLongitude()) {
+                    torn.set(true);
+                }
+            }
+        });
+        reader.start();
+        UplinkData moving = new UplinkData();
+        for (int i = 0; i < 200_000; i++) {
+            double coordinate = (i % 1_000) / 100.0;
+            moving.setGpsLatitude(coordinate);
+            moving.setGpsLongitude(coordinate);
+            store.update(42L, 20_000L + i, moving);
+        }
+        reader.join();
+        assertFalse(torn.get());
+    }
+
+    @Test
+    @Order(3)
+    void testPositionFilterSmoothsJitterAndFollowsMotion() {
+        PositionFilter filter = new PositionFilter();
+        SplittableRandom random = new SplittableRandom(3);
+        double[] out = new double[3];
+        double metersPerDegreeLon = GeoUtils.metersPerDegreeLongitude(45.0);
+
+        // Static badge with 15 m jitter: the filtered position converges on the true one
+        double worstRaw = 0;
+        for (int i = 0; i < 60; i++) {
+            double lat = 45.0 + random.nextGaussian() * 15 / GeoUtils.METERS_PER_DEGREE;
+            double lon = 5.0 + random.nextGaussian() * 15 / metersPerDegreeLon;
+            filter.filter(1L, i * 30_000L, lat, lon, 15, 0, DynamicMotionState.STATIC, out);
+            worstRaw = Math.max(worstRaw, GeoUtils.distanceMeters(45.0, 5.0, lat, lon));
+        }
+        assertTrue(GeoUtils.distanceMeters(45.0, 5.0, out[0], out[1]) < 6);
+        assertTrue(worstRaw > 25);
+        assertTrue(out[2] < 5);
+
+        // Badge walking north at 1.5 m/s: the filter tracks it and learns the velocity
+        double errorSum = 0;
+        for (int i = 0; i < 60; i++) {
+            double trueLat = 46.0 + i * 15 * 1.5 / GeoUtils.METERS_PER_DEGREE;
+            double lat = trueLat + random.nextGaussian() * 10 / GeoUtils.METERS_PER_DEGREE;
+            filter.filter(2L, i * 15_000L, lat, 5.0, 10, 0, DynamicMotionState.MOVING, out);
+            if (i >= 20) {
+                errorSum += Math.abs(out[0] - trueLat) * GeoUtils.METERS_PER_DEGREE;
+            }
+        }
+        assertTrue(errorSum / 40 < 8, "mean error " + errorSum / 40);
+
+        // Stale fixes weigh less, and a long silence restarts the filter at the new fix
+        UplinkData fix = new UplinkData();
+        fix.setGpsLatitude(45.01);
+        fix.setGpsLongitude(5.0);
+        fix.setAge(15);
+        fix.setDynamicMotionState(DynamicMotionState.STATIC);
+        assertTrue(filter.filter(1L, 60 * 30_000L, fix, out));
+        assertTrue(GeoUtils.distanceMeters(45.0, 5.0, out[0], out[1]) < 200);
+        filter.filter(1L, 3_600_000L * 5, 45.02, 5.0, 10, 0, null, out);
+        assertEquals(45.02, out[0], 1e-9);
+
+        assertFalse(filter.filter(1L, 0, new UplinkData(), out));
+        assertEquals(2, filter.size());
+        assertTrue(filter.remove(1L));
+        assertEquals(1, filter.size());
+    }
+
+    @Test
+    @Order(4)
+    void testTrajectorySimplificationKeepsCorners() {
+        List<double[]> emitted = new ArrayList<>();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(5, 64, 60 * MINUTE,
+            (deviceId, time, lat, lon) -> emitted.add(new double[]{time, lat, lon}));
+        double step = 10 / GeoUtils.METERS_PER_DEGREE;
+
+        // 50 points north, then 50 points east from the corner, with 1 m of jitter
+        SplittableRandom random = new SplittableRandom(5);
+        long time = 0;
+        for (int i = 0; i <= 50; i++) {
+            simplifier.add(7L, time += 10_000, 45.0 + i * step + random.nextGaussian() * 1e-5 * 0.9, 5.0);
+        }
+        for (int i = 1; i <= 50; i++) {
+            simplifier.add(7L, time += 10_000, 45.0 + 50 * step, 5.0 + i * step * 1.41);
+        }
+        assertEquals(2, emitted.size());
+        assertTrue(simplifier.flush(7L));
+        assertEquals(3, emitted.size());
+        // Start, corner and end
+        assertEquals(45.0, emitted.get(0)[1], 1e-4);
+        assertEquals(45.0 + 50 * step, emitted.get(1)[1], 1e-4);
+        assertEquals(5.0, emitted.get(1)[2], 1e-4);
+        assertEquals(time, (long) emitted.get(2)[0]);
+        assertEquals(101, simplifier.getReceivedCount());
+
+        // A stationary badge still emits once per interval and once per full window
+        emitted.clear();
+        TrajectorySimplifier bounded = new TrajectorySimplifier(5, 8, 5 * MINUTE,
+            (deviceId, t, lat, lon) -> emitted.add(new double[]{t, lat, lon}));
+        for (int i = 0; i < 30; i++) {
+            bounded.add(8L, i * MINUTE, 45.0, 5.0);
+        }
+        // First point, then the point closing each 5-minute interval: minutes 0, 5, ..., 25
+        assertEquals(6, emitted.size());
+        for (int i = 0; i < 40; i++) {
+            bounded.add(9L, i * 1_000L, 45.0, 5.0);
+        }
+        // First point, then every 8th point as the window fills
+        assertEquals(6 + 1 + 4, emitted.size());
+        assertEquals(2, bounded.flushIdle(Long.MAX_VALUE));
+        assertEquals(0, bounded.size());
+    }
+
+    @Test
+    @Order(5)
+    void testTripSegmentationFromMotionSignals() {
+        List<TripRecord> trips = new ArrayList<>();
+        List<Long> starts = new ArrayList<>();
+        TripSegmenter segmenter = new TripSegmenter(200, 15, 10 * MINUTE, new TripSegmenter.TripListener() {
+            @Override
+            public void onTripStart(long deviceId, long timestampMillis, double latitude, double longitude) {
+                starts.add(timestampMillis);
+            }
+
+            @Override
+            public void onTripEnd(TripRecord trip) {
+                trips.add(trip);
+            }
+        });
+        double step = 100 / GeoUtils.METERS_PER_DEGREE;
+
+        // Resting, then moving north 100 m per minute for 5 minutes, then static
+        segmenter.observe(1L, 0, motion(45.0, 5.0, DynamicMotionState.STATIC));
+        segmenter.observe(1L, MINUTE, motion(45.0, 5.0, DynamicMotionState.START_MOVING));
+        assertTrue(segmenter.isTravelling(1L));
+        for (int i = 1; i <= 5; i++) {
+            segmenter.observe(1L, (1 + i) * MINUTE, motion(45.0 + i * step, 5.0, DynamicMotionState.MOVING));
+        }
+        segmenter.observe(1L, 7 * MINUTE, motion(45.0 + 5 * step, 5.0, DynamicMotionState.START_STATIC));
+        assertFalse(segmenter.isTravelling(1L));
+
+        assertEquals(1, trips.size());
+        TripRecord trip = trips.get(0);
+        assertEquals(MINUTE, trip.getStartTimeMillis());
+        assertEquals(6 * MINUTE, trip.getDurationMillis());
+        assertEquals(500, trip.getDistanceMeters(), 1);
+        assertEquals(45.0, trip.getStartLatitude(), 1e-9);
+        assertEquals(45.0 + 5 * step, trip.getEndLatitude(), 1e-9);
+
+        // A displacement without motion state starts a trip, a MOTION_END event ends it
+        segmenter.observe(1L, 20 * MINUTE, motion(45.0 + 8 * step, 5.0, null));
+        assertTrue(segmenter.isTravelling(1L));
+        UplinkData motionEnd = new UplinkData();
+        motionEnd.setEventType(EventType.MOTION_END);
+        segmenter.observe(1L, 21 * MINUTE, motionEnd);
+        assertEquals(2, trips.size());
+        assertEquals(300, trips.get(1).getDistanceMeters(), 1);
+
+        // An open trip times out at its last moving uplink
+        segmenter.observe(2L, 0, motion(46.0, 5.0, DynamicMotionState.MOVING));
+        segmenter.observe(2L, MINUTE, motion(46.0 + step, 5.0, DynamicMotionState.MOVING));
+        assertEquals(0, segmenter.closeIdle(5 * MINUTE));
+        assertEquals(1, segmenter.closeIdle(30 * MINUTE));
+        assertEquals(MINUTE, trips.get(2).getEndTimeMillis());
+        // Started without a resting position: the first position of the trip is its start
+        assertEquals(46.0, trips.get(2).getStartLatitude(), 1e-9);
+        assertEquals(3, starts.size());
+    }
+
+    @Test
+    @Order(6)
+    void testZoneDwellTimeWithLatePositions() {
+        GeofenceEngine geofences = new GeofenceEngine();
+        int lobby = geofences.addCircle(45.0, 5.0, 100);
+        DwellTimeAccumulator dwell = new DwellTimeAccumulator(30 * MINUTE, 15 * MINUTE);
+
+        // Inside, inside, outside, inside: the intervals starting inside are credited
+        dwell.observe(1L, 40 * MINUTE, motion(45.0, 5.0, null), geofences);
+        dwell.observe(1L, 50 * MINUTE, motion(45.0003, 5.0, null), geofences);
+        dwell.observe(1L, 70 * MINUTE, motion(45.01, 5.0, null), geofences);
+        dwell.observe(1L, 80 * MINUTE, motion(45.0, 5.0, null), geofences);
+        assertEquals(30 * MINUTE, dwell.getDwellMillis(lobby, 1L));
+        assertEquals(20 * MINUTE, dwell.getHourlyDwellMillis(lobby, 0));
+        assertEquals(10 * MINUTE, dwell.getHourlyDwellMillis(lobby, 60 * MINUTE));
+        assertFalse(dwell.observe(1L, 90 * MINUTE, new UplinkData(), geofences));
+
+        // A silent device is credited at most the max gap
+        dwell.observe(2L, 0, new int[]{lobby});
+        dwell.observe(2L, 3 * 60 * MINUTE, new int[0]);
+        assertEquals(30 * MINUTE, dwell.getDwellMillis(lobby, 2L));
+        assertEquals(60 * MINUTE, dwell.getZoneDwellMillis(lobby));
+
+        // Late positions within the bounded window give the same totals as in-order arrival
+        long[] times = {0, 5, 10, 15, 20, 25, 30, 35, 40};
+        int[][] zoneSets = {{1}, {1, 2}, {2}, {}, {2}, {1}, {1}, {2}, {}};
+        DwellTimeAccumulator ordered = new DwellTimeAccumulator(30 * MINUTE, 15 * MINUTE);
+        DwellTimeAccumulator shuffled = new DwellTimeAccumulator(30 * MINUTE, 15 * MINUTE);
+        for (int i = 0; i < times.length; i++) {
+            ordered.observe(3L, times[i] * MINUTE, zoneSets[i]);
+        }
+        int[] arrival = {0, 2, 1, 4, 3, 6, 5, 8, 7};
+        for (int i : arrival) {
+            assertTrue(shuffled.observe(3L, times[i] * MINUTE, zoneSets[i]));
+        }
+        for (int zone = 1; zone <= 2; zone++) {
+            assertEquals(ordered.getDwellMillis(zone, 3L), shuffled.getDwellMillis(zone, 3L));
+            assertEquals(ordered.getHourlyDwell(zone), shuffled.getHourlyDwell(zone));
+        }
+        assertEquals(20 * MINUTE, shuffled.getDwellMillis(1, 3L));
+        assertEquals(20 * MINUTE, shuffled.getDwellMillis(2, 3L));
+        assertEquals(1, shuffled.getDeviceDwell(2).size());
+
+        // Beyond the allowed lateness the position is dropped
+        assertFalse(shuffled.observe(3L, 20 * MINUTE + 1, new int[]{1}));
+        assertEquals(1, shuffled.getDroppedCount());
+        assertEquals(20 * MINUTE, shuffled.getDwellMillis(1, 3L));
+
+        // Old hours and departed devices can be dropped; later credits skip evicted hours
+        assertEquals(1, dwell.evictHoursBefore(60 * MINUTE + 1));
+        assertEquals(0, dwell.getHourlyDwellMillis(lobby, 0));
+        assertEquals(10 * MINUTE, dwell.getHourlyDwellMillis(lobby, 60 * MINUTE));
+        assertTrue(dwell.observe(1L, 75 * MINUTE, new int[]{lobby}));
+        assertEquals(15 * MINUTE, dwell.getHourlyDwellMillis(lobby, 60 * MINUTE));
+        assertEquals(1, dwell.getHourlyDwell(lobby).size());
+        assertTrue(dwell.purge(2L));
+        assertFalse(dwell.purge(2L));
+        assertEquals(0, dwell.getDwellMillis(lobby, 2L));
+        assertFalse(dwell.getDeviceDwell(lobby).containsKey(2L));
+        assertEquals(65 * MINUTE, dwell.getZoneDwellMillis(lobby));
+    }
+
+    @Test
+    @Order(7)
+    void testWindowedAggregationClosesOnWatermark() {
+        // Tumbling 10 minute windows of step counts per device
+        List<WindowResult> steps = new ArrayList<>();
+        WindowedAggregator tumbling = new WindowedAggregator(10 * MINUTE, 10 * MINUTE,
+            WindowedAggregator.BY_DEVICE, WindowedAggregator.STEP_COUNT, steps::add);
+        assertTrue(tumbling.add(1L, MINUTE, activity(100)));
+        assertTrue(tumbling.add(1L, 4 * MINUTE, activity(50)));
+        assertTrue(tumbling.add(1L, 12 * MINUTE, activity(30)));
+        assertTrue(tumbling.add(2L, 9 * MINUTE, activity(10)));
+        assertFalse(tumbling.add(2L, 9 * MINUTE, new UplinkData()));
+
+        assertEquals(0, tumbling.advanceWatermark(10 * MINUTE - 1));
+        assertEquals(1, tumbling.advanceWatermark(10 * MINUTE));
+        assertEquals(2, steps.size());
+        steps.sort((a, b) -> Long.compare(a.getKey(), b.getKey()));
+        WindowResult first = steps.get(0);
+        assertEquals(1L, first.getKey());
+        assertEquals(0, first.getWindowStartMillis());
+        assertEquals(10 * MINUTE, first.getWindowEndMillis());
+        assertEquals(2, first.getCount());
+        assertEquals(150, first.getSum());
+        assertEquals(50, first.getMin());
+        assertEquals(100, first.getMax());
+        assertEquals(50, first.getLast());
+        assertEquals(10, steps.get(1).getSum());
+
+        // The first window is closed, the second one is not
+        assertFalse(tumbling.add(1L, 5 * MINUTE, activity(1)));
+        assertTrue(tumbling.add(1L, 15 * MINUTE, activity(20)));
+        assertEquals(1, tumbling.getLateCount());
+        assertEquals(1, tumbling.advanceWatermark(25 * MINUTE));
+        assertEquals(50, steps.get(2).getSum());
+        assertEquals(20, steps.get(2).getLast());
+
+        // Empty windows are skipped up to the next value
+        assertTrue(tumbling.add(1L, 500 * MINUTE, activity(7)));
+        assertEquals(1, tumbling.advanceWatermark(1000 * MINUTE));
+        assertEquals(500 * MINUTE, steps.get(3).getWindowStartMillis());
+
+        // Out-of-order values before the first watermark all land in their windows
+        List<WindowResult> hourly = new ArrayList<>();
+        WindowedAggregator early = new WindowedAggregator(60 * MINUTE, 60 * MINUTE,
+            WindowedAggregator.BY_DEVICE, WindowedAggregator.STEP_COUNT, hourly::add);
+        assertTrue(early.add(1L, 630 * MINUTE, activity(5)));
+        assertTrue(early.add(1L, 599 * MINUTE, activity(3)));
+        assertEquals(0, early.getLateCount());
+        assertEquals(2, early.advanceWatermark(660 * MINUTE));
+        assertEquals(540 * MINUTE, hourly.get(0).getWindowStartMillis());
+        assertEquals(3, hourly.get(0).getSum());
+        assertEquals(600 * MINUTE, hourly.get(1).getWindowStartMillis());
+        assertFalse(early.add(1L, 650 * MINUTE, activity(1)));
+
+        // Hopping 10 minute windows every 5 minutes, counting messages per type
+        List<WindowResult> counts = new ArrayList<>();
+        WindowedAggregator hopping = new WindowedAggregator(10 * MINUTE, 5 * MINUTE,
+            WindowedAggregator.BY_MESSAGE_TYPE, WindowedAggregator.MESSAGE, counts::add);
+        UplinkData heartbeat = new UplinkData();
+        heartbeat.setMessageType(MessageType.HEARTBEAT);
+        for (long minute : new long[]{1, 4, 6, 12}) {
+            hopping.add(1L, minute * MINUTE, heartbeat);
+        }
+        assertEquals(4, hopping.advanceWatermark(20 * MINUTE));
+        long[] expected = {2, 3, 2, 1};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(MessageType.HEARTBEAT.ordinal(), counts.get(i).getKey());
+            assertEquals((i - 1) * 5 * MINUTE, counts.get(i).getWindowStartMillis());
+            assertEquals(expected[i], counts.get(i).getCount());
+        }
+    }
+
+    @Test
+    @Order(8)
+    void testReorderBufferEmitsInEventTimeOrder() {
+        List<long[]> emitted = new ArrayList<>();
+        ReorderBuffer buffer = new ReorderBuffer(60_000, 4, 100,
+            (deviceId, eventTime, data) -> emitted.add(new long[]{deviceId, eventTime}));
+
+        // Event time is the reception time minus the age
+        assertTrue(buffer.add(1L, 100_000, aged(0)));
+        assertTrue(buffer.add(1L, 105_000, aged(30)));
+        assertTrue(buffer.add(1L, 110_000, aged(0)));
+        assertTrue(emitted.isEmpty());
+        assertTrue(buffer.add(1L, 170_000, aged(0)));
+        assertEquals(110_000, buffer.getWatermark());
+        assertEquals(3, emitted.size());
+        assertArrayEquals(new long[]{1L, 75_000}, emitted.get(0));
+        assertArrayEquals(new long[]{1L, 100_000}, emitted.get(1));
+        assertArrayEquals(new long[]{1L, 110_000}, emitted.get(2));
+
+        // Behind the watermark
+        assertFalse(buffer.add(2L, 120_000, aged(60)));
+        assertEquals(1, buffer.getLateCount());
+
+        // A full device emits its oldest uplink early, and then refuses anything older
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.add(2L, 160_000 - i * 1_000, aged(0)));
+        }
+        assertEquals(1, buffer.getForcedCount());
+        assertArrayEquals(new long[]{2L, 156_000}, emitted.get(3));
+        assertFalse(buffer.add(2L, 155_000, aged(0)));
+
+        assertEquals(5, buffer.flush());
+        assertEquals(0, buffer.getBufferedCount());
+        assertEquals(0, buffer.getDeviceCount());
+
+        // Shuffled arrival within the lateness comes out ordered per device, within the memory ceiling
+        emitted.clear();
+        ReorderBuffer bounded = new ReorderBuffer(60_000, 8, 2_000,
+            (deviceId, eventTime, data) -> emitted.add(new long[]{deviceId, eventTime}));
+        SplittableRandom random = new SplittableRandom(7);
+        int received = 0;
+        for (int second = 0; second < 600; second++) {
+            for (int device = 0; device < 50; device++) {
+                if (random.nextInt(10) == 0) {
+                    bounded.add(device, second * 1_000L, aged(random.nextInt(30)));
+                    received++;
+                }
+            }
+            assertTrue(bounded.getBufferedCount() <= 2_000);
+        }
+        bounded.flush();
+        assertEquals(received, emitted.size() + bounded.getLateCount());
+        assertEquals(0, bounded.getLateCount());
+        Map<Long, Long> lastTimes = new HashMap<>();
+        for (long[] record : emitted) {
+            Long previous = lastTimes.put(record[0], record[1]);
+            assertTrue(previous == null || previous <= record[1]);
+        }
+    }
+
+    private static UplinkData motion(double latitude, double longitude, DynamicMotionState state) {
+        UplinkData data = new UplinkData();
+        data.setGpsLatitude(latitude);
+        data.setGpsLongitude(longitude);
+        data.setDynamicMotionState(state);
+        return data;
+    }
+
+    private static UplinkData activity(int stepCount) {
+        UplinkData data = new UplinkData();
+        data.setMessageType(MessageType.ACTIVITY_STATUS);
+        data.setStepCount(stepCount);
+        return data;
+    }
+
+    private static UplinkData aged(int ageSeconds) {
+        UplinkData data = new UplinkData();
+        data.setAge(ageSeconds);
+        return data;
+    }
+}
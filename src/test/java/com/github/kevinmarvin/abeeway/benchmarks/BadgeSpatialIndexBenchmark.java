@@ -0,0 +1,90 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.geo.BadgeSpatialIndex;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Update and query rates of the live badge index with 1M badges.
+ * <p>
+ * Badges are spread over a 2 x 2 degree region and move by up to about 50 m per update, so
+ * some updates cross cells. Queries are 10-nearest within 2 km and 200 m radius searches.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.BadgeSpatialIndexBenchmark
+ * </pre>
+ */
+public class BadgeSpatialIndexBenchmark {
+
+    private static final int BADGES = 1_000_000;
+    private static final int UPDATES = 10_000_000;
+    private static final int QUERIES = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        BadgeSpatialIndex index = new BadgeSpatialIndex();
+        double[] latitudes = new double[BADGES];
+        double[] longitudes = new double[BADGES];
+        SplittableRandom random = new SplittableRandom(1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BADGES; i++) {
+            latitudes[i] = 45.0 + random.nextDouble() * 2;
+            longitudes[i] = 5.0 + random.nextDouble() * 2;
+            index.update(i + 1, latitudes[i], longitudes[i]);
+        }
+        System.out.printf("Loaded %,d badges in %.2f s%n", index.size(), (System.nanoTime() - start) / 1e9);
+
+        runUpdates(index, latitudes, longitudes, 1);
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (processors > 1) {
+            runUpdates(index, latitudes, longitudes, processors);
+        }
+
+        for (int k : new int[]{1, 10}) {
+            start = System.nanoTime();
+            long found = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                found += index.nearest(45.0 + random.nextDouble() * 2, 5.0 + random.nextDouble() * 2, k, 2_000).size();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%2d-nearest: %,.0f queries/s (%.1f us/query), %.1f results/query%n",
+                k, QUERIES / seconds, seconds * 1e6 / QUERIES, (double) found / QUERIES);
+        }
+
+        start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            found += index.withinRadius(45.0 + random.nextDouble() * 2, 5.0 + random.nextDouble() * 2, 200).size();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("200 m radius: %,.0f queries/s (%.1f us/query), %.1f results/query%n",
+            QUERIES / seconds, seconds * 1e6 / QUERIES, (double) found / QUERIES);
+    }
+
+    private static void runUpdates(BadgeSpatialIndex index, double[] latitudes, double[] longitudes, int threadCount)
+            throws InterruptedException {
+        AtomicLong total = new AtomicLong();
+        Thread[] threads = new Thread[threadCount];
+        int perThread = UPDATES / threadCount;
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                for (int i = 0; i < perThread; i++) {
+                    int badge = random.nextInt(BADGES);
+                    double latitude = latitudes[badge] + (random.nextDouble() - 0.5) * 0.0009;
+                    double longitude = longitudes[badge] + (random.nextDouble() - 0.5) * 0.0013;
+                    index.update(badge + 1, latitude, longitude);
+                }
+                total.addAndGet(perThread);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d thread(s): %,.0f updates/s%n", threadCount, total.get() / seconds);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.geo.BleFingerprintIndex;
+import com.github.kevinmarvin.abeeway.models.BleBeacon;
+import com.github.kevinmarvin.abeeway.models.PositionEstimate;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * k-NN query benchmark for BLE fingerprint positioning over synthetic sites.
+ * <p>
+ * Each site is a building with beacons on a 10 m grid and fingerprints surveyed every 2 m;
+ * a fingerprint (and a query) hears the beacons within 25 m with log-distance path loss.
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *     com.github.kevinmarvin.abeeway.benchmarks.BleFingerprintBenchmark [sites] [fingerprintsPerSite]
+ * </pre>
+ */
+public class BleFingerprintBenchmark {
+
+    private static final double SITE_SIZE_METERS = 200.0;
+    private static final double BEACON_SPACING = 10.0;
+    private static final double HEARING_RANGE = 25.0;
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    public static void main(String[] args) {
+        int sites = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int fingerprintsPerSite = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int queries = 200_000;
+        int k = 5;
+
+        SplittableRandom random = new SplittableRandom(3);
+        BleFingerprintIndex index = new BleFingerprintIndex();
+
+        long start = System.nanoTime();
+        for (int site = 0; site < sites; site++) {
+            for (int f = 0; f < fingerprintsPerSite; f++) {
+                double x = random.nextDouble(SITE_SIZE_METERS);
+                double y = random.nextDouble(SITE_SIZE_METERS);
+                index.addFingerprint(latitude(site, y), longitude(site, x), scan(site, x, y, random));
+            }
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Indexed %,d fingerprints over %,d beacons in %.2f s%n",
+            index.size(), index.getBeaconCount(), buildSeconds);
+
+        List<double[]> truths = new ArrayList<>();
+        List<List<BleBeacon>> scans = new ArrayList<>();
+        for (int q = 0; q < 4096; q++) {
+            int site = random.nextInt(sites);
+            double x = random.nextDouble(SITE_SIZE_METERS);
+            double y = random.nextDouble(SITE_SIZE_METERS);
+            truths.add(new double[]{latitude(site, y), longitude(site, x)});
+            scans.add(scan(site, x, y, random));
+        }
+
+        PositionEstimate estimate = new PositionEstimate();
+        for (int i = 0; i < 20_000; i++) {
+            index.locate(scans.get(i & 4095), k, estimate);
+        }
+
+        double errorSum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            int q = i & 4095;
+            if (index.locate(scans.get(q), k, estimate)) {
+                double dy = (estimate.getLatitude() - truths.get(q)[0]) * METERS_PER_DEGREE;
+                double dx = (estimate.getLongitude() - truths.get(q)[1]) * METERS_PER_DEGREE;
+                errorSum += Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("k=%d queries: %,.0f/s (%.1f us each), mean error %.1f m%n",
+            k, queries / seconds, seconds * 1e6 / queries, errorSum / queries);
+    }
+
+    private static List<BleBeacon> scan(int site, double x, double y, SplittableRandom random) {
+        List<BleBeacon> beacons = new ArrayList<>();
+        int perRow = (int) (SITE_SIZE_METERS / BEACON_SPACING) + 1;
+        for (int row = 0; row < perRow; row++) {
+            for (int column = 0; column < perRow; column++) {
+                double dx = column * BEACON_SPACING - x;
+                double dy = row * BEACON_SPACING - y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                if (distance > HEARING_RANGE) continue;
+                int rssi = (int) Math.round(-59 - 20 * Math.log10(Math.max(distance, 0.5)) + random.nextGaussian() * 3);
+                long mac = ((long) site << 16) | ((long) row << 8) | column;
+                beacons.add(new BleBeacon(ByteUtils.formatMacAddress(mac), rssi));
+            }
+        }
+        return beacons;
+    }
+
+    private static double latitude(int site, double y) {
+        return 45.0 + site * 0.01 + y / METERS_PER_DEGREE;
+    }
+
+    private static double longitude(int site, double x) {
+        return 5.0 + x / METERS_PER_DEGREE;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.AbeewaySmartBadgeCodec;
+import com.github.kevinmarvin.abeeway.encoders.ParameterEncoder;
+import com.github.kevinmarvin.abeeway.encoders.ParameterEncodingCache;
+import com.github.kevinmarvin.abeeway.encoders.ParameterTemplate;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+
+import java.util.Map;
+
+/**
+ * Preparation of a ten-parameter campaign for 100k devices: encoding the same parameters
+ * for every device against sharing the frame of the cache, and a template patched with a
+ * per-device geofence radius against building and encoding a parameter set per device.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.CampaignEncodingBenchmark
+ * </pre>
+ */
+public class CampaignEncodingBenchmark {
+
+    private static final int DEVICES = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        ParameterEncoder encoder = new ParameterEncoder();
+        ParameterEncodingCache cache = new ParameterEncodingCache(encoder, 64);
+        AbeewayParams campaign = campaign(150);
+        ParameterTemplate template = encoder.compile(campaign);
+
+        for (int round = 0; round < 5; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < DEVICES; i++) {
+                checksum += encoder.encodeParameters(campaign, 2).getBytes().length;
+            }
+            double encoded = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < DEVICES; i++) {
+                checksum += cache.frame(campaign).remaining();
+            }
+            double cached = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < DEVICES; i++) {
+                checksum += encoder.encodeParameters(campaign(100 + i % 400), 2).getBytes().length;
+            }
+            double overridesEncoded = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < DEVICES; i++) {
+                checksum += template.encode(Map.of("geofenceRadius", 100 + i % 400), 2).getBytes().length;
+            }
+            double overridesPatched = (System.nanoTime() - start) / 1e6;
+            System.out.printf("same config: encoded %.1f ms, cached %.1f ms; per-device radius: encoded %.1f ms, "
+                + "template %.1f ms (checksum %d)%n", encoded, cached, overridesEncoded, overridesPatched, checksum);
+        }
+    }
+
+    private static AbeewayParams campaign(int geofenceRadius) {
+        return AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setUplinkPeriod(3600)
+            .setLorawanPeriod(7200)
+            .setMotionSensitivity(AbeewayParams.MotionSensitivity.MEDIUM)
+            .setWifiScanTimeout(10)
+            .setBatteryLowThreshold(20)
+            .setTemperatureAlertThreshold(45.5)
+            .setGeofenceRadius(geofenceRadius)
+            .setProximityThreshold(-75)
+            .setOperatingMode(AbeewayParams.OperatingMode.MOTION_TRACKING)
+            .build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.encoders.CommandEncoder;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkCommand;
+import com.github.kevinmarvin.abeeway.enums.Mode;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Position-on-demand polling with a mode switch every eighth device: map-based commands
+ * built per poll against typed commands written into one reused buffer.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.CommandEncoderBenchmark
+ * </pre>
+ */
+public class CommandEncoderBenchmark {
+
+    private static final int POLLS = 10_000_000;
+
+    public static void main(String[] args) throws Exception {
+        CommandEncoder encoder = new CommandEncoder();
+        DownlinkCommand setMode = new DownlinkCommand.SetMode(Mode.PERMANENT_TRACKING);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        for (int round = 0; round < 5; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < POLLS; i++) {
+                Map<String, Object> data = new HashMap<>();
+                if ((i & 7) == 0) {
+                    data.put("messageType", "SET_MODE");
+                    data.put("mode", "PERMANENT_TRACKING");
+                } else {
+                    data.put("messageType", "POSITION_ON_DEMAND");
+                }
+                checksum += encoder.encodeDownlink(data, 2).getBytes().length;
+            }
+            double map = (System.nanoTime() - start) / (double) POLLS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < POLLS; i++) {
+                if (buffer.remaining() < 2) {
+                    buffer.clear();
+                }
+                checksum += encoder.encode((i & 7) == 0 ? setMode : DownlinkCommand.POSITION_ON_DEMAND, buffer);
+            }
+            double typed = (System.nanoTime() - start) / (double) POLLS;
+            System.out.printf("map %.1f ns/command, typed into buffer %.1f ns/command (checksum %d)%n",
+                map, typed, checksum);
+        }
+    }
+}
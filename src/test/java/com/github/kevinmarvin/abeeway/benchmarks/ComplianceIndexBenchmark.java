@@ -0,0 +1,54 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.fleet.ConfigurationComplianceIndex;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+import com.github.kevinmarvin.abeeway.utils.CompressedBitmap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Configuration compliance over 1M devices reporting three parameters, with a few percent
+ * of drifted values: incremental updates, then "!=" and combined queries and a distribution.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.ComplianceIndexBenchmark
+ * </pre>
+ */
+public class ComplianceIndexBenchmark {
+
+    private static final int DEVICES = 1_000_000;
+    private static final String[] MODES = {"MOTION_TRACKING", "PERMANENT_TRACKING", "STANDBY", "SOS_MODE"};
+
+    public static void main(String[] args) {
+        ConfigurationComplianceIndex index = new ConfigurationComplianceIndex(
+            ParameterSchema.getDefault(), DEVICES);
+        Random random = new Random(42);
+        Map<String, Object> configuration = new HashMap<>();
+        long start = System.nanoTime();
+        for (long device = 1; device <= DEVICES; device++) {
+            configuration.put("gpsTimeout", random.nextInt(50) == 0 ? 60 : 120);
+            configuration.put("uplinkPeriod", random.nextInt(20) == 0 ? 600 : 3600);
+            configuration.put("operatingMode", MODES[random.nextInt(100) < 90 ? 0 : 1 + random.nextInt(3)]);
+            index.update(device, configuration);
+        }
+        System.out.printf("Indexed %d devices in %.0f ms%n", DEVICES, (System.nanoTime() - start) / 1e6);
+
+        for (int round = 0; round < 5; round++) {
+            start = System.nanoTime();
+            CompressedBitmap wrongTimeout = index.devicesWithout("gpsTimeout", 120);
+            double without = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            CompressedBitmap drifted = CompressedBitmap.or(wrongTimeout, index.devicesWithout("uplinkPeriod", 3600));
+            CompressedBitmap urgent = CompressedBitmap.and(drifted, index.devicesWith("operatingMode", "MOTION_TRACKING"));
+            double combined = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            Map<Object, Integer> modes = index.distribution("operatingMode");
+            double distribution = (System.nanoTime() - start) / 1e6;
+            System.out.printf("!= %.2f ms (%d), OR+AND %.2f ms (%d), distribution %.3f ms %s%n",
+                without, wrongTimeout.cardinality(), combined, urgent.cardinality(), distribution, modes);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.AbeewaySmartBadgeCodec;
+import com.github.kevinmarvin.abeeway.fleet.ConfigurationReconciler;
+import com.github.kevinmarvin.abeeway.models.EncodedDownlink;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Fleet reconciliation: 500k devices reporting a full configuration decoded from a frame,
+ * 5% of them drifted on one to three parameters, diffed against one group template.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.ConfigurationReconcilerBenchmark
+ * </pre>
+ */
+public class ConfigurationReconcilerBenchmark {
+
+    private static final int DEVICES = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        AbeewaySmartBadgeCodec codec = new AbeewaySmartBadgeCodec();
+        AbeewayParams template = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setUplinkPeriod(3600)
+            .setLorawanPeriod(7200)
+            .setMotionSensitivity(AbeewayParams.MotionSensitivity.MEDIUM)
+            .setWifiScanTimeout(10)
+            .setBatteryLowThreshold(20)
+            .setTemperatureAlertThreshold(45.5)
+            .setGeofenceRadius(150)
+            .setProximityThreshold(-75)
+            .setOperatingMode(AbeewayParams.OperatingMode.MOTION_TRACKING)
+            .build();
+        byte[] frame = codec.encodeParameters(template, 2).getBytes();
+        frame[0] = (byte) 0x90;
+        Map<String, Object> reported = ((UplinkData) codec.decodeUplink(frame, 1, null).getData()).getDeviceConfiguration();
+        Map<String, Object> drifted = new HashMap<>(reported);
+        drifted.put("uplinkPeriod", 600);
+        drifted.put("geofenceRadius", 300);
+
+        ConfigurationReconciler reconciler = new ConfigurationReconciler();
+        reconciler.setGroupConfiguration("fleet", template);
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (long device = 1; device <= DEVICES; device++) {
+            reconciler.report(device, random.nextInt(20) == 0 ? drifted : reported);
+            reconciler.assignGroup(device, "fleet");
+        }
+        System.out.printf("Reported %d configurations in %.0f ms%n", DEVICES, (System.nanoTime() - start) / 1e6);
+
+        for (int round = 0; round < 5; round++) {
+            long[] bytes = {0};
+            start = System.nanoTime();
+            int count = reconciler.reconcileAll(2, (deviceId, downlinks) -> {
+                for (EncodedDownlink downlink : downlinks) {
+                    bytes[0] += downlink.getBytes().length;
+                }
+            });
+            System.out.printf("Reconciled %d devices in %.0f ms: %d need downlinks, %d bytes%n",
+                DEVICES, (System.nanoTime() - start) / 1e6, count, bytes[0]);
+        }
+
+        // Full-configuration resend for comparison
+        ConfigurationReconciler unreported = new ConfigurationReconciler();
+        unreported.setGroupConfiguration("fleet", template);
+        unreported.assignGroup(1L, "fleet");
+        List<EncodedDownlink> full = unreported.reconcile(1L, 2);
+        System.out.printf("Full configuration: %d bytes per device, %d bytes for the fleet%n",
+            full.get(0).getBytes().length, (long) full.get(0).getBytes().length * DEVICES);
+    }
+}
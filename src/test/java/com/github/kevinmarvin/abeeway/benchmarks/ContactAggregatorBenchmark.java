@@ -0,0 +1,57 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.tracking.ContactAggregator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Contact aggregation throughput and report latency for a 10k-badge site.
+ * <p>
+ * Badges work in teams of 20 and report 4 contacts from their team every 2 minutes over an
+ * 8-hour shift, into a 24-hour window of hourly buckets.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.ContactAggregatorBenchmark
+ * </pre>
+ */
+public class ContactAggregatorBenchmark {
+
+    private static final int BADGES = 10_000;
+    private static final int TEAM_SIZE = 20;
+    private static final long MINUTE = 60_000L;
+
+    public static void main(String[] args) {
+        ContactAggregator aggregator = new ContactAggregator(24 * 60 * MINUTE, 24, 5 * MINUTE, 2_000_000);
+        SplittableRandom random = new SplittableRandom(1);
+        long shiftStart = 1_700_000_000_000L;
+
+        long observations = 0;
+        long start = System.nanoTime();
+        for (long t = 0; t < 8 * 60 * MINUTE; t += 2 * MINUTE) {
+            for (int badge = 0; badge < BADGES; badge++) {
+                long timestamp = shiftStart + t + random.nextLong(2 * MINUTE);
+                int team = badge / TEAM_SIZE * TEAM_SIZE;
+                for (int c = 0; c < 4; c++) {
+                    aggregator.observe(0xA0000000L + badge, 0xA0000000L + team + random.nextInt(TEAM_SIZE), timestamp);
+                    observations++;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d contacts in %.2f s: %,.0f contacts/s, %,d pairs, %,d dropped%n",
+            observations, seconds, observations / seconds, aggregator.getPairCount(), aggregator.getDroppedCount());
+
+        start = System.nanoTime();
+        long[] totals = new long[1];
+        aggregator.forEachPair((a, b, millis) -> totals[0] += millis);
+        System.out.printf("Full contact graph report in %.1f ms (%,.0f exposure hours)%n",
+            (System.nanoTime() - start) / 1e6, totals[0] / 3.6e6);
+
+        start = System.nanoTime();
+        int reported = 0;
+        for (int badge = 0; badge < 100; badge++) {
+            reported += aggregator.getContacts(0xA0000000L + badge * 97, 15 * MINUTE).size();
+        }
+        System.out.printf("Per-badge contact report in %.1f ms (%d contacts over 15 min per badge)%n",
+            (System.nanoTime() - start) / 1e6 / 100, reported / 100);
+    }
+}
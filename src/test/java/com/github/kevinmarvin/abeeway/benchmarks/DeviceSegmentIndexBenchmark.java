@@ -0,0 +1,76 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.enums.Mode;
+import com.github.kevinmarvin.abeeway.fleet.DeviceSegmentIndex;
+import com.github.kevinmarvin.abeeway.models.DeviceState;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.tracking.DeviceStateStore;
+
+import java.util.Random;
+
+/**
+ * Fleet segmentation over 1M devices: "critical battery, permanent tracking and moving",
+ * and "battery below 20% and not static", through the segment index against a scan of the
+ * {@link DeviceStateStore}.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.DeviceSegmentIndexBenchmark
+ * </pre>
+ */
+public class DeviceSegmentIndexBenchmark {
+
+    private static final int DEVICES = 1_000_000;
+    private static final int QUERIES = 200;
+    private static final BatteryStatus[] STATUSES = {BatteryStatus.OPERATING, BatteryStatus.WARNING, BatteryStatus.CRITICAL};
+    private static final DynamicMotionState[] MOTIONS = {DynamicMotionState.STATIC, DynamicMotionState.MOVING};
+    private static final String[] MODES = {"MOTION_TRACKING", "PERMANENT_TRACKING", "STANDBY", "START_END_TRACKING"};
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        DeviceStateStore store = new DeviceStateStore(DEVICES);
+        DeviceSegmentIndex index = new DeviceSegmentIndex(DEVICES);
+        UplinkData data = new UplinkData();
+        DeviceState state = new DeviceState();
+        long start = System.nanoTime();
+        for (long device = 1; device <= DEVICES; device++) {
+            data.setBatteryLevel(random.nextInt(101));
+            data.setBatteryStatus(STATUSES[random.nextInt(10) < 8 ? 0 : 1 + random.nextInt(2)]);
+            data.setDynamicMotionState(MOTIONS[random.nextInt(2)]);
+            data.setTrackingMode(MODES[random.nextInt(MODES.length)]);
+            store.update(device, device, data);
+            store.get(device, state);
+            index.update(state);
+        }
+        System.out.printf("Stored and indexed %d devices in %.0f ms%n", DEVICES, (System.nanoTime() - start) / 1e6);
+
+        for (int round = 0; round < 5; round++) {
+            int critical = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                critical = index.where(BatteryStatus.CRITICAL).and(Mode.PERMANENT_TRACKING)
+                    .and(DynamicMotionState.MOVING).count();
+            }
+            double indexed = (System.nanoTime() - start) / 1e6 / QUERIES;
+
+            int low = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                low = index.whereBatteryBelow(20).andNot(DynamicMotionState.STATIC).count();
+            }
+            double indexedLow = (System.nanoTime() - start) / 1e6 / QUERIES;
+
+            int[] scanned = {0};
+            start = System.nanoTime();
+            store.forEach(s -> {
+                if (s.getBatteryStatus() == BatteryStatus.CRITICAL && "PERMANENT_TRACKING".equals(s.getTrackingMode())
+                        && s.getDynamicMotionState() == DynamicMotionState.MOVING) {
+                    scanned[0]++;
+                }
+            });
+            double scan = (System.nanoTime() - start) / 1e6;
+            System.out.printf("Index %.3f ms (%d), battery segment %.3f ms (%d), scan %.1f ms (%d)%n",
+                indexed, critical, indexedLow, low, scan, scanned[0]);
+        }
+    }
+}
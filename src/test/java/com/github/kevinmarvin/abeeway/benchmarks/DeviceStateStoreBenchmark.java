@@ -0,0 +1,98 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.enums.BatteryStatus;
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.models.DeviceState;
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.tracking.DeviceStateStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Update and read rates of the device state store with 1M devices, and its memory use
+ * against the usual {@code ConcurrentHashMap<String, Object>} of per-device maps.
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.DeviceStateStoreBenchmark
+ * </pre>
+ */
+public class DeviceStateStoreBenchmark {
+
+    private static final int DEVICES = 1_000_000;
+    private static final int OPERATIONS = 20_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        UplinkData[] uplinks = new UplinkData[256];
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < uplinks.length; i++) {
+            UplinkData data = new UplinkData();
+            data.setGpsLatitude(45.0 + random.nextDouble());
+            data.setGpsLongitude(5.0 + random.nextDouble());
+            data.setBatteryLevel(random.nextInt(100));
+            data.setBatteryStatus(BatteryStatus.OPERATING);
+            data.setDynamicMotionState(DynamicMotionState.MOVING);
+            data.setTrackingMode("MOTION_TRACKING");
+            data.setAckToken(i & 0x0F);
+            data.setTemperatureMeasure(20.5);
+            uplinks[i] = data;
+        }
+
+        long heapBefore = usedHeap();
+        DeviceStateStore store = new DeviceStateStore(DEVICES);
+        long start = System.nanoTime();
+        for (int i = 0; i < DEVICES; i++) {
+            store.update(0x20635F0000000000L + i, i, uplinks[i & 0xFF]);
+        }
+        System.out.printf("Loaded %,d devices in %.2f s, %,d bytes/device (tables), %,d bytes/device (heap)%n",
+            store.size(), (System.nanoTime() - start) / 1e9, store.memoryBytes() / DEVICES,
+            (usedHeap() - heapBefore) / DEVICES);
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            store.update(0x20635F0000000000L + random.nextInt(DEVICES), i, uplinks[i & 0xFF]);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Updates: %,.0f/s%n", OPERATIONS / seconds);
+
+        DeviceState state = new DeviceState();
+        long found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (store.get(0x20635F0000000000L + random.nextInt(DEVICES), state)) {
+                found++;
+            }
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Reads: %,.0f/s (%,d found)%n", OPERATIONS / seconds, found);
+
+        heapBefore = usedHeap();
+        Map<String, Object> baseline = new ConcurrentHashMap<>();
+        for (int i = 0; i < DEVICES; i++) {
+            UplinkData data = uplinks[i & 0xFF];
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("latitude", data.getGpsLatitude());
+            fields.put("longitude", data.getGpsLongitude());
+            fields.put("batteryLevel", data.getBatteryLevel());
+            fields.put("batteryStatus", data.getBatteryStatus());
+            fields.put("dynamicMotionState", data.getDynamicMotionState());
+            fields.put("trackingMode", data.getTrackingMode());
+            fields.put("ackToken", data.getAckToken());
+            fields.put("temperature", data.getTemperatureMeasure());
+            fields.put("lastSeen", (long) i);
+            baseline.put(Long.toHexString(0x20635F0000000000L + i), fields);
+        }
+        System.out.printf("ConcurrentHashMap<String, Object> baseline: %,d bytes/device (heap)%n",
+            (usedHeap() - heapBefore) / DEVICES);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.AbeewaySmartBadgeCodec;
+import com.github.kevinmarvin.abeeway.encoders.DownlinkPacker;
+import com.github.kevinmarvin.abeeway.models.PackedDownlink;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+import com.github.kevinmarvin.abeeway.parameters.ParameterType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Frames and airtime of random configuration campaigns at US915 DR8 (SF12, 33 bytes):
+ * splitting the SET_PARAM frame in parameter order when it is full, against the
+ * first-fit decreasing packer. Also times the packer.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.DownlinkPackerBenchmark
+ * </pre>
+ */
+public class DownlinkPackerBenchmark {
+
+    private static final int CAMPAIGNS = 10_000;
+    private static final int DATA_RATE = 8;
+
+    public static void main(String[] args) throws Exception {
+        List<ParameterDefinition> definitions = new ArrayList<>();
+        for (ParameterDefinition definition : ParameterSchema.getDefault().getDefinitions()) {
+            if (definition.getType() == ParameterType.NUMBER) {
+                definitions.add(definition);
+            }
+        }
+        Random random = new Random(42);
+        AbeewayParams[] campaigns = new AbeewayParams[CAMPAIGNS];
+        for (int i = 0; i < CAMPAIGNS; i++) {
+            AbeewayParams.Builder builder = AbeewaySmartBadgeCodec.newParameters();
+            for (ParameterDefinition definition : definitions) {
+                if (random.nextInt(3) > 0) {
+                    Integer min = definition.getMinValue();
+                    builder.setCustomParameter(definition.getId(), min != null ? Math.max(0, min) : 0);
+                }
+            }
+            campaigns[i] = builder.build();
+        }
+        DownlinkPacker packer = new DownlinkPacker(DownlinkPacker.Region.US915);
+        int capacity = DownlinkPacker.Region.US915.getMaxPayload(DATA_RATE) - 1;
+
+        long sequentialFrames = 0;
+        double sequentialAirtime = 0;
+        for (AbeewayParams params : campaigns) {
+            int frame = 1;
+            for (String name : params.getParameterNames()) {
+                int size = 1 + ParameterSchema.getDefault().get(Integer.parseInt(name.substring("custom_".length()))).getSize();
+                if (frame + size > capacity + 1) {
+                    sequentialAirtime += packer.timeOnAirMillis(frame, DATA_RATE);
+                    sequentialFrames++;
+                    frame = 1;
+                }
+                frame += size;
+            }
+            sequentialAirtime += packer.timeOnAirMillis(frame, DATA_RATE);
+            sequentialFrames++;
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long packedFrames = 0;
+            double packedAirtime = 0;
+            long start = System.nanoTime();
+            for (AbeewayParams params : campaigns) {
+                for (PackedDownlink downlink : packer.pack(params, DATA_RATE, 2)) {
+                    packedFrames++;
+                    packedAirtime += downlink.getTimeOnAirMillis();
+                }
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / CAMPAIGNS;
+            System.out.printf("sequential %d frames %.0f s airtime, packed %d frames %.0f s airtime, %.1f us/campaign%n",
+                sequentialFrames, sequentialAirtime / 1000, packedFrames, packedAirtime / 1000, micros);
+        }
+    }
+}
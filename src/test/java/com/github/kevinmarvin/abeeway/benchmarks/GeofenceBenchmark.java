@@ -0,0 +1,72 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.geo.GeofenceEngine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Geofence evaluation throughput, in positions per second, as the number of geofences grows.
+ * <p>
+ * Geofences are random hexagons (50-300 m) and circles spread over a 1 x 1 degree region;
+ * 100k devices report random positions in the same region.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.GeofenceBenchmark
+ * </pre>
+ */
+public class GeofenceBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final int POSITIONS = 5_000_000;
+
+    public static void main(String[] args) {
+        int[] fenceCounts = {1_000, 10_000, 100_000, 500_000};
+        for (int fenceCount : fenceCounts) {
+            run(fenceCount);
+        }
+    }
+
+    private static void run(int fenceCount) {
+        SplittableRandom random = new SplittableRandom(fenceCount);
+        GeofenceEngine engine = new GeofenceEngine(0.005);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < fenceCount; i++) {
+            double latitude = 45.0 + random.nextDouble();
+            double longitude = 5.0 + random.nextDouble();
+            double radius = random.nextDouble(50, 300);
+            if ((i & 1) == 0) {
+                engine.addCircle(latitude, longitude, radius);
+            } else {
+                double[] lats = new double[6];
+                double[] lons = new double[6];
+                for (int v = 0; v < 6; v++) {
+                    double angle = v * Math.PI / 3;
+                    lats[v] = latitude + Math.sin(angle) * radius / 111_195.0;
+                    lons[v] = longitude + Math.cos(angle) * radius / 78_000.0;
+                }
+                engine.addPolygon(lats, lons);
+            }
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+        double[] latitudes = new double[1 << 16];
+        double[] longitudes = new double[1 << 16];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = 45.0 + random.nextDouble();
+            longitudes[i] = 5.0 + random.nextDouble();
+        }
+
+        for (int i = 0; i < 500_000; i++) {
+            engine.evaluate(i % DEVICES, latitudes[i & 0xFFFF], longitudes[i & 0xFFFF]);
+        }
+
+        long transitions = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < POSITIONS; i++) {
+            transitions += engine.evaluate(i % DEVICES, latitudes[(i * 7) & 0xFFFF], longitudes[(i * 7) & 0xFFFF]).size();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,9d geofences: built in %.2f s, %,.0f positions/s, %,d transitions%n",
+            fenceCount, buildSeconds, POSITIONS / seconds, transitions);
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.parameters.ParameterCatalog;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Startup cost of the parameter catalog: the first load in a fresh JVM, which is what a
+ * service start pays, then the steady-state load time of the JSON and compiled forms.
+ * Run once per path, as the first load also pays for class loading:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.ParameterCatalogBenchmark json
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.ParameterCatalogBenchmark binary
+ * </pre>
+ */
+public class ParameterCatalogBenchmark {
+
+    private static final int ROUNDS = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        boolean binaryFirst = args.length == 0 || !args[0].equals("json");
+        byte[] json = read(ParameterCatalog.JSON_RESOURCE);
+        byte[] binary = read(ParameterCatalog.BINARY_RESOURCE);
+
+        long start = System.nanoTime();
+        ParameterSchema schema = binaryFirst ? ParameterCatalog.readBinary(binary, -1) : ParameterCatalog.parseJson(json);
+        System.out.printf("First %s load: %.2f ms (%d parameters)%n",
+            binaryFirst ? "binary" : "JSON", (System.nanoTime() - start) / 1e6, schema.size());
+
+        for (int round = 0; round < 3; round++) {
+            int checksum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                checksum += ParameterCatalog.parseJson(json).size();
+            }
+            double jsonMicros = (System.nanoTime() - start) / 1e3 / ROUNDS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                checksum += ParameterCatalog.readBinary(binary, ParameterCatalog.crc(json)).size();
+            }
+            double binaryMicros = (System.nanoTime() - start) / 1e3 / ROUNDS;
+            System.out.printf("JSON %.1f us/load (%d bytes), binary %.1f us/load (%d bytes) (checksum %d)%n",
+                jsonMicros, json.length, binaryMicros, binary.length, checksum);
+        }
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = ParameterCatalog.class.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+}
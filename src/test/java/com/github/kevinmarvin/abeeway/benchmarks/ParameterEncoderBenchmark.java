@@ -0,0 +1,90 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.AbeewaySmartBadgeCodec;
+import com.github.kevinmarvin.abeeway.encoders.ParameterEncoder;
+import com.github.kevinmarvin.abeeway.parameters.AbeewayParams;
+import com.github.kevinmarvin.abeeway.parameters.ParameterDefinition;
+import com.github.kevinmarvin.abeeway.parameters.ParameterSchema;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SET_PARAM encoding of a ten-parameter campaign: the former {@code List<Byte>} frame
+ * building, the {@code byte[]} path and frames written back to back into one reused buffer.
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.github.kevinmarvin.abeeway.benchmarks.ParameterEncoderBenchmark
+ * </pre>
+ */
+public class ParameterEncoderBenchmark {
+
+    private static final int FRAMES = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        AbeewayParams params = AbeewaySmartBadgeCodec.newParameters()
+            .setGpsTimeout(120)
+            .setUplinkPeriod(3600)
+            .setLorawanPeriod(7200)
+            .setMotionSensitivity(AbeewayParams.MotionSensitivity.MEDIUM)
+            .setWifiScanTimeout(10)
+            .setBatteryLowThreshold(20)
+            .setTemperatureAlertThreshold(45.5)
+            .setGeofenceRadius(150)
+            .setProximityThreshold(-75)
+            .setOperatingMode(AbeewayParams.OperatingMode.MOTION_TRACKING)
+            .build();
+        ParameterEncoder encoder = new ParameterEncoder();
+        int frameSize = encoder.encodedSize(params);
+        ByteBuffer buffer = ByteBuffer.allocate(frameSize * 1024);
+
+        for (int round = 0; round < 5; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) {
+                checksum += encodeWithList(params).length;
+            }
+            double list = (System.nanoTime() - start) / (double) FRAMES;
+
+            start = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) {
+                checksum += encoder.encodeParameters(params, 2).getBytes().length;
+            }
+            double array = (System.nanoTime() - start) / (double) FRAMES;
+
+            start = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) {
+                if (buffer.remaining() < frameSize) {
+                    buffer.clear();
+                }
+                checksum += encoder.encodeParameters(params, buffer);
+            }
+            double reused = (System.nanoTime() - start) / (double) FRAMES;
+            System.out.printf("List<Byte> %.0f ns/frame, byte[] %.0f ns/frame, reused buffer %.0f ns/frame (checksum %d)%n",
+                list, array, reused, checksum);
+        }
+    }
+
+    /**
+     * The frame building replaced by the buffer path, kept as the baseline.
+     */
+    private static byte[] encodeWithList(AbeewayParams params) {
+        ParameterSchema schema = ParameterSchema.getDefault();
+        List<Byte> encodedBytes = new ArrayList<>();
+        encodedBytes.add((byte) 0x09);
+        for (Map.Entry<String, Object> entry : params.getParameters().entrySet()) {
+            ParameterDefinition definition = schema.get(entry.getKey());
+            long raw = definition.toRaw(entry.getValue());
+            encodedBytes.add((byte) definition.getId());
+            for (int shift = (definition.getSize() - 1) * 8; shift >= 0; shift -= 8) {
+                encodedBytes.add((byte) (raw >> shift));
+            }
+        }
+        byte[] result = new byte[encodedBytes.size()];
+        for (int i = 0; i < encodedBytes.size(); i++) {
+            result[i] = encodedBytes.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.enums.DynamicMotionState;
+import com.github.kevinmarvin.abeeway.tracking.PositionFilter;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * Position filter throughput with 100k devices, and allocation per update. The first round
+ * includes growing the per-device state; the second one should not allocate.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.PositionFilterBenchmark
+ * </pre>
+ */
+public class PositionFilterBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final int UPDATES = 20_000_000;
+
+    public static void main(String[] args) {
+        PositionFilter filter = new PositionFilter();
+        SplittableRandom random = new SplittableRandom(1);
+        double[] jitter = new double[1 << 16];
+        for (int i = 0; i < jitter.length; i++) {
+            jitter[i] = random.nextGaussian() * 1e-4;
+        }
+        DynamicMotionState[] states = {DynamicMotionState.STATIC, DynamicMotionState.MOVING, null};
+        double[] out = new double[3];
+
+        for (int round = 0; round < 2; round++) {
+            ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            double checksum = 0;
+            for (int i = 0; i < UPDATES; i++) {
+                int device = i % DEVICES;
+                filter.filter(device, (long) (i / DEVICES) * 30_000L,
+                    45.0 + device * 1e-5 + jitter[i & 0xFFFF], 5.0 + jitter[(i * 7) & 0xFFFF],
+                    10, i & 0x0F, states[device % 3], out);
+                checksum += out[2];
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            System.out.printf("Round %d: %,.0f updates/s, %.3f bytes allocated/update (checksum %.1f)%n",
+                round, UPDATES / seconds, (double) allocated / UPDATES, checksum / UPDATES);
+        }
+    }
+}
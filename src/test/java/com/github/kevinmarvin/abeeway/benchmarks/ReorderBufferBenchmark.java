@@ -0,0 +1,62 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.models.UplinkData;
+import com.github.kevinmarvin.abeeway.tracking.ReorderBuffer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Reordering throughput and memory with 1M badges reporting every 5 minutes, with positions
+ * aged up to 2 minutes and a 3 minute allowed lateness, under a 500k uplink ceiling.
+ * <pre>
+ * java -Xmx2g -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.ReorderBufferBenchmark
+ * </pre>
+ */
+public class ReorderBufferBenchmark {
+
+    private static final int DEVICES = 1_000_000;
+    private static final int ROUNDS = 12;
+    private static final long PERIOD = 5 * 60_000L;
+
+    public static void main(String[] args) {
+        long[] emitted = new long[2];
+        long[] lastTimes = new long[DEVICES];
+        Arrays.fill(lastTimes, Long.MIN_VALUE);
+        ReorderBuffer buffer = new ReorderBuffer(3 * 60_000L, 8, 500_000, (deviceId, eventTime, data) -> {
+            if (eventTime < lastTimes[(int) deviceId]) {
+                emitted[1]++;
+            }
+            lastTimes[(int) deviceId] = eventTime;
+            emitted[0]++;
+        });
+        UplinkData[] aged = new UplinkData[121];
+        for (int age = 0; age < aged.length; age++) {
+            aged[age] = new UplinkData();
+            aged[age].setAge(age);
+        }
+        SplittableRandom random = new SplittableRandom(1);
+
+        long start = System.nanoTime();
+        long peakBuffered = 0;
+        long peakMemory = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int d = 0; d < DEVICES; d++) {
+                // Devices report in turn over the period, so reception time keeps increasing
+                long received = round * PERIOD + d * PERIOD / DEVICES;
+                buffer.add(d, received, aged[random.nextInt(aged.length)]);
+                if ((d & 0xFFFF) == 0) {
+                    peakBuffered = Math.max(peakBuffered, buffer.getBufferedCount());
+                    Runtime runtime = Runtime.getRuntime();
+                    peakMemory = Math.max(peakMemory, runtime.totalMemory() - runtime.freeMemory());
+                }
+            }
+        }
+        buffer.flush();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long received = (long) DEVICES * ROUNDS;
+        System.out.printf("%,d uplinks in %.2f s: %,.0f uplinks/s, %,d emitted, %,d late, %,d forced, %,d out of order%n",
+            received, seconds, received / seconds, emitted[0], buffer.getLateCount(), buffer.getForcedCount(), emitted[1]);
+        System.out.printf("Peak %,d buffered, peak heap %,d MB%n", peakBuffered, peakMemory >> 20);
+    }
+}
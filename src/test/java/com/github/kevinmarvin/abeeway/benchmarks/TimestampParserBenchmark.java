@@ -0,0 +1,47 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.utils.TimestampParser;
+
+import java.time.Instant;
+
+/**
+ * ISO-8601 timestamp parsing: {@link TimestampParser} against {@code Instant.parse}, on the
+ * network server form with millisecond fraction over one day.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.TimestampParserBenchmark
+ * </pre>
+ */
+public class TimestampParserBenchmark {
+
+    private static final int COUNT = 1 << 16;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        String[] timestamps = new String[COUNT];
+        long base = Instant.parse("2024-03-10T00:00:00Z").toEpochMilli();
+        for (int i = 0; i < COUNT; i++) {
+            timestamps[i] = Instant.ofEpochMilli(base + i * 1_317L + 1).toString();
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (String timestamp : timestamps) {
+                    checksum += TimestampParser.parse(timestamp);
+                }
+            }
+            double fast = (System.nanoTime() - start) / (double) (ROUNDS * COUNT);
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS / 10; r++) {
+                for (String timestamp : timestamps) {
+                    checksum -= Instant.parse(timestamp).toEpochMilli() * 10;
+                }
+            }
+            double instant = (System.nanoTime() - start) / (double) (ROUNDS / 10 * COUNT);
+            System.out.printf("TimestampParser %.1f ns/parse, Instant.parse %.1f ns/parse (checksum %d)%n",
+                fast, instant, checksum);
+        }
+    }
+}
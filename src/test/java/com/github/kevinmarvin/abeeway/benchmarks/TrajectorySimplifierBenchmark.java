@@ -0,0 +1,63 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.tracking.TrajectorySimplifier;
+import com.github.kevinmarvin.abeeway.utils.GeoUtils;
+
+import java.util.SplittableRandom;
+
+/**
+ * Trajectory simplification throughput and compression ratio.
+ * <p>
+ * 10k badges report every 30 s, alternating stops with 3 m jitter and walks along straight
+ * legs with random turns. Tolerance is 10 m, with at least one point per 15 minutes.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.TrajectorySimplifierBenchmark
+ * </pre>
+ */
+public class TrajectorySimplifierBenchmark {
+
+    private static final int DEVICES = 10_000;
+    private static final int REPORTS_PER_DEVICE = 1_000;
+
+    public static void main(String[] args) {
+        long[] emitted = new long[1];
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(10, 64, 15 * 60_000L,
+            (deviceId, time, lat, lon) -> emitted[0]++);
+        SplittableRandom random = new SplittableRandom(1);
+
+        double[] latitudes = new double[DEVICES];
+        double[] longitudes = new double[DEVICES];
+        double[] headings = new double[DEVICES];
+        boolean[] walking = new boolean[DEVICES];
+        for (int d = 0; d < DEVICES; d++) {
+            latitudes[d] = 45.0 + random.nextDouble();
+            longitudes[d] = 5.0 + random.nextDouble();
+        }
+        double metersPerDegreeLon = GeoUtils.metersPerDegreeLongitude(45.5);
+        double jitter = 3.0 / GeoUtils.METERS_PER_DEGREE;
+
+        long start = System.nanoTime();
+        for (int r = 0; r < REPORTS_PER_DEVICE; r++) {
+            long time = r * 30_000L;
+            for (int d = 0; d < DEVICES; d++) {
+                if (random.nextInt(40) == 0) {
+                    walking[d] = !walking[d];
+                    headings[d] = random.nextDouble(2 * Math.PI);
+                } else if (walking[d] && random.nextInt(10) == 0) {
+                    headings[d] = random.nextDouble(2 * Math.PI);
+                }
+                if (walking[d]) {
+                    latitudes[d] += Math.cos(headings[d]) * 40 / GeoUtils.METERS_PER_DEGREE;
+                    longitudes[d] += Math.sin(headings[d]) * 40 / metersPerDegreeLon;
+                }
+                simplifier.add(d, time, latitudes[d] + random.nextGaussian() * jitter,
+                    longitudes[d] + random.nextGaussian() * jitter);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        simplifier.flushIdle(Long.MAX_VALUE);
+        long received = simplifier.getReceivedCount();
+        System.out.printf("%,d positions in %.2f s: %,.0f positions/s, %,d emitted (%.1f%% kept)%n",
+            received, seconds, received / seconds, emitted[0], 100.0 * emitted[0] / received);
+    }
+}
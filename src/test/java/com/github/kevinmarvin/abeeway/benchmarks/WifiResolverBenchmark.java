@@ -0,0 +1,117 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.geo.OffHeapBssidIndex;
+import com.github.kevinmarvin.abeeway.geo.WifiPositionResolver;
+import com.github.kevinmarvin.abeeway.models.PositionEstimate;
+import com.github.kevinmarvin.abeeway.models.WiFiAccessPoint;
+import com.github.kevinmarvin.abeeway.utils.ByteUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Loader and lookup-throughput benchmark for the local WiFi resolver.
+ * <p>
+ * Not part of the test suite. Run with the test classpath, for example:
+ * <pre>
+ * java -Xmx4g -XX:MaxDirectMemorySize=4g -cp target/classes:target/test-classes \
+ *     com.github.kevinmarvin.abeeway.benchmarks.WifiResolverBenchmark 50000000
+ * </pre>
+ * The synthetic CSV (about 40 bytes per BSSID) is written to the temp directory and deleted afterwards.
+ */
+public class WifiResolverBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        long bssidCount = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+
+        Path csv = Files.createTempFile("bssids", ".csv");
+        try {
+            long start = System.nanoTime();
+            writeCsv(csv, bssidCount);
+            System.out.printf("Generated %,d BSSIDs (%,d MB) in %.1f s%n",
+                bssidCount, Files.size(csv) >> 20, (System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            OffHeapBssidIndex index = OffHeapBssidIndex.loadCsv(csv);
+            double loadSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Loaded %,d BSSIDs in %.2f s (%,.0f records/s, %,d MB off-heap)%n",
+                index.size(), loadSeconds, index.size() / loadSeconds, index.memoryBytes() >> 20);
+
+            benchmarkLookups(index, bssidCount, lookups);
+            benchmarkResolve(index, bssidCount, lookups / 5);
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    private static void writeCsv(Path csv, long count) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("bssid,lat,lon,accuracy\n");
+            StringBuilder line = new StringBuilder(48);
+            for (long i = 0; i < count; i++) {
+                line.setLength(0);
+                line.append(ByteUtils.formatMacAddress(bssid(i))).append(',')
+                    .append(String.format("%.6f", random.nextDouble(-60, 70))).append(',')
+                    .append(String.format("%.6f", random.nextDouble(-180, 180))).append(',')
+                    .append(random.nextInt(10, 200)).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    private static void benchmarkLookups(OffHeapBssidIndex index, long bssidCount, int lookups) {
+        SplittableRandom random = new SplittableRandom(7);
+        double[] out = new double[3];
+        long found = 0;
+
+        for (int warmup = 0; warmup < 1_000_000; warmup++) {
+            index.lookup(bssid(random.nextLong(bssidCount)), out);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            // One in four lookups is for an unknown BSSID
+            long key = (i & 3) == 0 ? bssid(bssidCount + i) : bssid(random.nextLong(bssidCount));
+            if (index.lookup(key, out)) found++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Lookups: %,.0f/s (%.0f ns each, %,d hits)%n", lookups / seconds, seconds * 1e9 / lookups, found);
+    }
+
+    private static void benchmarkResolve(OffHeapBssidIndex index, long bssidCount, int scans) {
+        WifiPositionResolver resolver = new WifiPositionResolver(index);
+        SplittableRandom random = new SplittableRandom(11);
+        List<List<WiFiAccessPoint>> scanPool = new ArrayList<>();
+        for (int s = 0; s < 1024; s++) {
+            List<WiFiAccessPoint> scan = new ArrayList<>();
+            for (int a = 0; a < 5; a++) {
+                scan.add(new WiFiAccessPoint(ByteUtils.formatMacAddress(bssid(random.nextLong(bssidCount))), random.nextInt(-95, -40)));
+            }
+            scanPool.add(scan);
+        }
+
+        PositionEstimate estimate = new PositionEstimate();
+        long resolved = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            if (resolver.resolve(scanPool.get(i & 1023), estimate)) resolved++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Resolve (5 APs): %,.0f scans/s (%.2f us each, %,d resolved)%n",
+            scans / seconds, seconds * 1e6 / scans, resolved);
+    }
+
+    /**
+     * Spread sequential ids over the BSSID space, keeping a fixed vendor prefix.
+     */
+    private static long bssid(long i) {
+        return (0xA4L << 40) | ((i * 0x9E3779B97F4A7C15L) >>> 24);
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.kevinmarvin.abeeway.benchmarks;
+
+import com.github.kevinmarvin.abeeway.tracking.WindowedAggregator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Windowed aggregation throughput: 100k badges report step counts every minute for a day,
+ * aggregated per badge into hourly windows sliding every 15 minutes.
+ * <pre>
+ * java -cp target/classes:target/test-classes com.github.kevinmarvin.abeeway.benchmarks.WindowedAggregatorBenchmark
+ * </pre>
+ */
+public class WindowedAggregatorBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final int MINUTES = 24 * 60;
+
+    public static void main(String[] args) {
+        long[] results = new long[1];
+        double[] total = new double[1];
+        WindowedAggregator aggregator = new WindowedAggregator(60 * 60_000L, 15 * 60_000L,
+            WindowedAggregator.BY_DEVICE, WindowedAggregator.STEP_COUNT, result -> {
+                results[0]++;
+                total[0] += result.getSum();
+            });
+        SplittableRandom random = new SplittableRandom(1);
+
+        long start = System.nanoTime();
+        for (int minute = 0; minute < MINUTES; minute++) {
+            long time = minute * 60_000L;
+            for (int d = 0; d < DEVICES; d++) {
+                aggregator.add(d, time + random.nextInt(60_000), random.nextInt(120));
+            }
+            aggregator.advanceWatermark(time);
+        }
+        aggregator.advanceWatermark(Long.MAX_VALUE - 60 * 60_000L);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long values = (long) DEVICES * MINUTES;
+        System.out.printf("%,d values in %.2f s: %,.0f values/s, %,d window results (steps %.0f)%n",
+            values, seconds, values / seconds, results[0], total[0]);
+    }
+}